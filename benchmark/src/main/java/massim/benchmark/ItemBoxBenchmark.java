@@ -0,0 +1,90 @@
+package massim.benchmark;
+
+import massim.scenario.city.data.Item;
+import massim.scenario.city.data.ItemBox;
+import massim.scenario.city.data.Location;
+import massim.scenario.city.data.facilities.Storage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks storing, counting and removing items in {@link ItemBox}es and {@link Storage}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ItemBoxBenchmark {
+
+    @Param({"10", "100"})
+    private int itemTypes;
+
+    @Param({"2", "10"})
+    private int teams;
+
+    private Item[] items;
+    private String[] teamNames;
+    private ItemBox box;
+    private Storage storage;
+
+    @Setup
+    public void setup() {
+        items = new Item[itemTypes];
+        for (int i = 0; i < itemTypes; i++) items[i] = new Item("item" + i, 1, 1, new HashSet<>(), new HashSet<>());
+        teamNames = new String[teams];
+        for (int i = 0; i < teams; i++) teamNames[i] = "team" + i;
+        box = new ItemBox();
+        storage = new Storage("storage0", new Location(2.3, 48.8), Integer.MAX_VALUE,
+                              new HashSet<>(Arrays.asList(teamNames)));
+        for (Item item : items) {
+            box.store(item, 10);
+            for (String team : teamNames) storage.store(item, 10, team);
+        }
+    }
+
+    @Benchmark
+    public void boxStoreRemove() {
+        for (Item item : items) {
+            box.store(item, 1);
+            box.remove(item, 1);
+        }
+    }
+
+    @Benchmark
+    public void boxGetItemCount(Blackhole bh) {
+        for (Item item : items) bh.consume(box.getItemCount(item));
+    }
+
+    @Benchmark
+    public Object boxToItemAmountData() {
+        return box.toItemAmountData();
+    }
+
+    @Benchmark
+    public void storageStoreRemove() {
+        for (String team : teamNames) {
+            for (Item item : items) {
+                storage.store(item, 1, team);
+                storage.removeStored(item, 1, team);
+            }
+        }
+    }
+
+    @Benchmark
+    public void storageGetStored(Blackhole bh) {
+        for (String team : teamNames) {
+            for (Item item : items) bh.consume(storage.getStored(item, team));
+        }
+    }
+
+    @Benchmark
+    public Object storageToStorageData() {
+        return storage.toStorageData(Arrays.asList(teamNames));
+    }
+}
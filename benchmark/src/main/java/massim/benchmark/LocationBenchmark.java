@@ -0,0 +1,91 @@
+package massim.benchmark;
+
+import massim.scenario.city.data.Location;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks coordinate access, hashing and map lookups of {@link Location}s.
+ * The legacy* benchmarks repeat the per-call rounding that was done before coordinates were precomputed
+ * and serve as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LocationBenchmark {
+
+    @Param({"1000", "100000"})
+    private int locations;
+
+    @Param({"5"})
+    private int proximity;
+
+    private Location[] locs;
+    private double[] lats;
+    private double[] lons;
+    private Map<Location, Integer> locationMap;
+
+    @Setup
+    public void setup() {
+        Location.setProximity(proximity);
+        Random random = new Random(17);
+        locs = new Location[locations];
+        lats = new double[locations];
+        lons = new double[locations];
+        locationMap = new HashMap<>();
+        for (int i = 0; i < locations; i++) {
+            lats[i] = 48.82 + random.nextDouble() * 0.08;
+            lons[i] = 2.26 + random.nextDouble() * 0.15;
+            locs[i] = new Location(lons[i], lats[i]);
+            locationMap.put(locs[i], i);
+        }
+    }
+
+    @Benchmark
+    public void getLatLon(Blackhole bh) {
+        for (Location loc : locs) {
+            bh.consume(loc.getLat());
+            bh.consume(loc.getLon());
+        }
+    }
+
+    @Benchmark
+    public void legacyGetLatLon(Blackhole bh) {
+        for (int i = 0; i < lats.length; i++) {
+            bh.consume(BigDecimal.valueOf(lats[i]).setScale(proximity, BigDecimal.ROUND_HALF_UP).doubleValue());
+            bh.consume(BigDecimal.valueOf(lons[i]).setScale(proximity, BigDecimal.ROUND_HALF_UP).doubleValue());
+        }
+    }
+
+    @Benchmark
+    public void hashCodes(Blackhole bh) {
+        for (Location loc : locs) bh.consume(loc.hashCode());
+    }
+
+    @Benchmark
+    public void legacyHashCodes(Blackhole bh) {
+        double divisor = 1d / Math.pow(10d, proximity);
+        for (int i = 0; i < lats.length; i++) {
+            int result = 1;
+            long temp = Math.round(lats[i] / divisor);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            temp = Math.round(lons[i] / divisor);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            bh.consume(result);
+        }
+    }
+
+    @Benchmark
+    public void mapLookup(Blackhole bh) {
+        for (Location loc : locs) bh.consume(locationMap.get(loc));
+    }
+}
@@ -0,0 +1,198 @@
+package massim.scenario.city;
+
+import massim.protocol.messagecontent.Action;
+import massim.protocol.scenario.city.Actions;
+import massim.protocol.scenario.city.data.JobData;
+import massim.scenario.city.data.*;
+import massim.scenario.city.data.facilities.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ActionExecutor#execute(String, Map, int)} for one action type at a time.
+ * Before each invocation, all agents are moved to a fitting facility and given what they need for the action
+ * to succeed, then all of them execute the action.
+ * Each agent delivers to and bids for its own job. The delivery jobs require more items than are ever delivered,
+ * so that they stay active (the deliveries are partial successes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ActionExecutorBenchmark {
+
+    @Param({Action.NO_ACTION, Actions.GO_TO, Actions.CHARGE, Actions.RECHARGE, Actions.BUY, Actions.STORE,
+            Actions.RETRIEVE, Actions.GATHER, Actions.GIVE, Actions.DUMP, Actions.ASSEMBLE, Actions.DELIVER_JOB,
+            Actions.BID_FOR_JOB, Actions.BUILD, Actions.DISMANTLE})
+    private String action;
+
+    @Param({"50"})
+    private int agentsPerTeam;
+
+    private WorldState world;
+    private ActionExecutor executor;
+    private List<String> agents;
+    private Map<String, ActionCommand> commands;
+    private Item item;
+    private Shop shop;
+    private Item assembledItem;
+    private WellType wellType;
+    private List<Job> jobs = new ArrayList<>();
+    private List<Location> freeLocations = new ArrayList<>();
+    private int step = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticWorld synthetic = new SyntheticWorld(agentsPerTeam, 0.04, 4, 0, false);
+        world = synthetic.getWorldState();
+        executor = new ActionExecutor(world);
+        agents = world.getAgents();
+        agents.sort(String::compareTo);
+        shop = world.getShops().get(0);
+        item = shop.getOfferedItemsSorted().stream().filter(i -> !i.needsAssembly()).findFirst()
+                .orElse(world.getResources().get(0));
+        Set<Role> roles = new HashSet<>();
+        agents.forEach(agent -> roles.add(world.getEntity(agent).getRole()));
+        assembledItem = world.getAssembledItems().stream()
+                .filter(i -> roles.containsAll(i.getRequiredRoles()))
+                .findFirst().orElseThrow(() -> new IllegalStateException("No item can be assembled"));
+        wellType = world.getWellTypes().iterator().next();
+
+        for (int i = 0; i < agents.size(); i++) {
+            Storage storage = get(world.getStorages(), i);
+            ItemBox required = new ItemBox();
+            required.store(item, Integer.MAX_VALUE);
+            Job job = action.equals(Actions.BID_FOR_JOB)?
+                    new AuctionJob(1000, storage, step, Integer.MAX_VALUE, required, Integer.MAX_VALUE, 0)
+                    : new Job(1000, storage, step, Integer.MAX_VALUE, required, JobData.POSTER_SYSTEM);
+            world.addJob(job);
+            jobs.add(job);
+        }
+        world.processNewJobs();
+        jobs.forEach(Job::activate);
+
+        // wells are built on locations without a facility, one per agent
+        Location center = world.getMap().getCenter();
+        for (int offset = 1; freeLocations.size() < agents.size(); offset++) {
+            Location location = new Location(center.getLon() + offset * 1e-3, center.getLat());
+            if (world.getFacilityByLocation(location) == null) freeLocations.add(location);
+        }
+
+        Map<String, Action> actions = new HashMap<>();
+        for (int i = 0; i < agents.size(); i++) actions.put(agents.get(i), createAction(i));
+        commands = executor.compile(actions);
+    }
+
+    /**
+     * @param index the index of the agent in {@link #agents}
+     * @return the action the agent executes in each invocation
+     */
+    private Action createAction(int index) {
+        switch (action) {
+            case Actions.GO_TO:
+                return new Action(action, world.getStorages().get(index % world.getStorages().size()).getName());
+            case Actions.BUY:
+            case Actions.STORE:
+            case Actions.RETRIEVE:
+            case Actions.DUMP:
+                return new Action(action, item.getName(), "1");
+            case Actions.ASSEMBLE:
+                return new Action(action, assembledItem.getName());
+            case Actions.DELIVER_JOB:
+                return new Action(action, jobs.get(index).getName());
+            case Actions.BID_FOR_JOB:
+                return new Action(action, jobs.get(index).getName(), "500");
+            case Actions.BUILD:
+                return new Action(action, wellType.getName());
+            case Actions.GIVE: // even agents give to the next (odd) one
+                if (index % 2 == 1) return new Action(Actions.RECEIVE);
+                return index + 1 < agents.size()?
+                        new Action(action, agents.get(index + 1), item.getName(), "1") : Action.STD_NO_ACTION;
+            default:
+                return new Action(action);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        step++;
+        executor.preProcess();
+        new ArrayList<>(world.getWells()).forEach(world::removeWell);
+        for (int i = 0; i < agents.size(); i++) {
+            String agent = agents.get(i);
+            Entity entity = world.getEntity(agent);
+            String team = world.getTeamForAgent(agent);
+            entity.clearInventory();
+            entity.clearRoute();
+            switch (action) {
+                case Actions.GO_TO:
+                    entity.setLocation(world.getMap().getCenter());
+                    break;
+                case Actions.CHARGE:
+                    entity.discharge();
+                    entity.setLocation(get(world.getChargingStations(), i).getLocation());
+                    break;
+                case Actions.BUY:
+                    world.getTeam(team).addMassium(shop.getPrice(item));
+                    shop.restock(item, 1);
+                    entity.setLocation(shop.getLocation());
+                    break;
+                case Actions.STORE:
+                    entity.addItem(item, 1);
+                    Storage storage = get(world.getStorages(), i);
+                    storage.removeStored(item, storage.getStored(item, team), team);
+                    entity.setLocation(storage.getLocation());
+                    break;
+                case Actions.RETRIEVE:
+                    storage = get(world.getStorages(), i);
+                    storage.store(item, 1, team);
+                    entity.setLocation(storage.getLocation());
+                    break;
+                case Actions.GATHER:
+                    entity.setLocation(get(world.getResourceNodes(), i).getLocation());
+                    break;
+                case Actions.GIVE:
+                    entity.addItem(item, 1);
+                    entity.setLocation(get(world.getStorages(), i / 2).getLocation());
+                    break;
+                case Actions.DUMP:
+                    entity.addItem(item, 1);
+                    entity.setLocation(get(world.getDumps(), i).getLocation());
+                    break;
+                case Actions.ASSEMBLE:
+                    for (Item part : world.getBillOfMaterials().getParts(assembledItem)) entity.addItem(part, 1);
+                    entity.setLocation(get(world.getWorkshops(), i).getLocation());
+                    break;
+                case Actions.DELIVER_JOB:
+                    entity.addItem(item, 1);
+                    entity.setLocation(jobs.get(i).getStorage().getLocation());
+                    break;
+                case Actions.BUILD:
+                    world.getTeam(team).addMassium(wellType.getCost());
+                    entity.setLocation(freeLocations.get(i));
+                    break;
+                case Actions.DISMANTLE:
+                    entity.setLocation(freeLocations.get(i));
+                    world.addWell(wellType, agent);
+                    break;
+                default:
+                    entity.setLocation(world.getMap().getCenter());
+            }
+        }
+    }
+
+    private static <F extends Facility> F get(List<F> facilities, int index) {
+        return facilities.get(index % facilities.size());
+    }
+
+    @Benchmark
+    public Map<String, ActionCommand> execute() {
+        for (String agent : agents) executor.execute(agent, commands, step);
+        executor.postProcess();
+        return commands;
+    }
+}
@@ -0,0 +1,117 @@
+package massim.scenario.city;
+
+import massim.protocol.messagecontent.Action;
+import massim.protocol.scenario.city.Actions;
+import massim.scenario.city.data.WorldState;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-step operations of the {@link CitySimulation} in synthetic worlds of different sizes.
+ * In each step, half of the agents move to a random facility while the others do nothing.
+ * The phases of a step that are not measured are executed before and after each invocation, so that each
+ * benchmark sees the simulation in the same state as the server would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CitySimulationBenchmark {
+
+    @Param({"10", "50", "200"})
+    private int agentsPerTeam;
+
+    @Param({"0.04", "0.02"})
+    private double quadSize;
+
+    @Param({"4"})
+    private int resources;
+
+    @Param({"0.2"})
+    private double jobProbability;
+
+    @Param({"false", "true"})
+    private boolean parallelActions;
+
+    private SyntheticWorld world;
+    private List<String> facilities;
+    private Map<String, Action> actions;
+    private int step;
+
+    /**
+     * The phases of a step in execution order (named like the benchmarks measuring them).
+     */
+    private final static List<String> PHASES = Arrays.asList("preStep", "step", "getSnapshot");
+    private int measured;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        measured = PHASES.indexOf(benchmark.substring(benchmark.lastIndexOf('.') + 1));
+        world = new SyntheticWorld(agentsPerTeam, quadSize, resources, jobProbability, parallelActions);
+        world.idle(100); // let some jobs appear
+        WorldState state = world.getWorldState();
+        facilities = new ArrayList<>();
+        state.getStorages().forEach(f -> facilities.add(f.getName()));
+        state.getShops().forEach(f -> facilities.add(f.getName()));
+        state.getChargingStations().forEach(f -> facilities.add(f.getName()));
+        facilities.sort(String::compareTo);
+    }
+
+    @Setup(Level.Invocation)
+    public void beforeStep() {
+        step = world.nextStep();
+        Random random = new Random(step);
+        actions = new HashMap<>();
+        for (String agent : world.getWorldState().getAgents()) {
+            if (random.nextBoolean())
+                actions.put(agent, new Action(Actions.GO_TO, facilities.get(random.nextInt(facilities.size()))));
+            else actions.put(agent, Action.STD_NO_ACTION);
+        }
+        if (measured >= 0) for (int i = 0; i < measured; i++) runPhase(i);
+    }
+
+    @TearDown(Level.Invocation)
+    public void afterStep() {
+        if (measured >= 0) for (int i = measured + 1; i < PHASES.size(); i++) runPhase(i);
+    }
+
+    private void runPhase(int phase) {
+        switch (phase) {
+            case 0: world.getSimulation().preStep(step); break;
+            case 1: world.getSimulation().step(step, actions); break;
+            case 2: world.getSimulation().getSnapshot(); break;
+        }
+    }
+
+    @Benchmark
+    public Object preStep() {
+        return world.getSimulation().preStep(step);
+    }
+
+    @Benchmark
+    public Map<String, Action> step() {
+        world.getSimulation().step(step, actions);
+        return actions;
+    }
+
+    @Benchmark
+    public Object getSnapshot() {
+        return world.getSimulation().getSnapshot();
+    }
+
+    /**
+     * A complete step as executed by the server (without the agents).
+     */
+    @Benchmark
+    public Object fullStep() {
+        world.getSimulation().preStep(step);
+        world.getSimulation().step(step, actions);
+        return world.getSimulation().getSnapshot();
+    }
+}
@@ -0,0 +1,109 @@
+package massim.scenario.city;
+
+import massim.config.TeamConfig;
+import massim.protocol.messagecontent.Action;
+import massim.scenario.city.data.WorldState;
+import massim.util.Log;
+import massim.util.RNG;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.*;
+
+/**
+ * Creates city simulations of configurable size on a map without roads (see {@link CityMap#NO_MAP}),
+ * so that benchmarks do not need an OSM file.
+ * The base configuration is read from <code>synthetic-world.json</code>.
+ */
+public class SyntheticWorld {
+
+    /**
+     * The teams of the simulation.
+     */
+    public final static String[] TEAMS = {"A", "B"};
+
+    private final CitySimulation sim = new CitySimulation();
+    private int step = 0;
+
+    /**
+     * Creates and initializes a new simulation.
+     * @param agentsPerTeam the number of agents of each team
+     * @param quadSize the size of the quadrants facilities are generated in (smaller means more facilities)
+     * @param resources the number of base items (the number of assembled items grows with it)
+     * @param jobProbability the probability for a new job in each step
+     * @param parallelActions whether to execute the actions in parallel
+     */
+    public SyntheticWorld(int agentsPerTeam, double quadSize, int resources, double jobProbability,
+                          boolean parallelActions) {
+        Log.setLogLevel(Log.Level.ERROR);
+        JSONObject config = new JSONObject(new JSONTokener(
+                SyntheticWorld.class.getClassLoader().getResourceAsStream("synthetic-world.json")));
+        config.put("parallelActions", parallelActions);
+        config.put("entities", new JSONArray().put(new JSONObject().put("spaceShip", agentsPerTeam)));
+        JSONObject generate = config.getJSONObject("generate");
+        generate.getJSONObject("facilities").put("quadSize", quadSize);
+        generate.getJSONObject("items").put("resourcesMin", resources).put("resourcesMax", resources);
+        generate.getJSONObject("jobs").put("jobProbability", jobProbability);
+
+        Set<TeamConfig> teams = new HashSet<>();
+        for (String name : TEAMS) {
+            TeamConfig team = new TeamConfig(name);
+            for (int i = 1; i <= agentsPerTeam; i++) team.addAgent(agentName(name, i), "1");
+            teams.add(team);
+        }
+
+        RNG.initialize(config.getLong("randomSeed"));
+        sim.init(config.getInt("steps"), config, teams);
+    }
+
+    /**
+     * @param team the name of the team
+     * @param number the number of the agent (starting at 1)
+     * @return the name of the agent
+     */
+    public static String agentName(String team, int number) {
+        return "agent" + team + number;
+    }
+
+    /**
+     * Runs a number of steps in which no agent does anything (e.g. to let some jobs appear).
+     * @param steps the number of steps to run
+     */
+    public void idle(int steps) {
+        for (int i = 0; i < steps; i++) {
+            sim.preStep(step);
+            sim.step(step++, noActions());
+        }
+    }
+
+    /**
+     * @return a new mapping from each agent to the no-action
+     */
+    public Map<String, Action> noActions() {
+        Map<String, Action> actions = new HashMap<>();
+        getWorldState().getAgents().forEach(agent -> actions.put(agent, Action.STD_NO_ACTION));
+        return actions;
+    }
+
+    /**
+     * @return the simulation
+     */
+    public CitySimulation getSimulation() {
+        return sim;
+    }
+
+    /**
+     * @return the state of the simulation
+     */
+    public WorldState getWorldState() {
+        return sim.getWorldState();
+    }
+
+    /**
+     * @return the step the simulation is at (increased with each call)
+     */
+    public int nextStep() {
+        return step++;
+    }
+}
@@ -104,6 +104,13 @@ public abstract class EISEntity implements Runnable{
      */
     protected abstract Document actionToXML(Action action);
 
+    /**
+     * Maps an IILang-action to a MASSim action for the current action id.
+     * @param action the action to transform
+     * @return the MASSim action (to pass to the server)
+     */
+    public abstract massim.protocol.messagecontent.Action toMassimAction(Action action);
+
     /**
      * Sets the environment interface for all entities
      * @param environmentInterface the EI
@@ -196,6 +203,31 @@ public abstract class EISEntity implements Runnable{
         return entity;
     }
 
+    /**
+     * Creates an entity that is not connected to a server, but gets its messages passed directly
+     * (e.g. from a server running in the same JVM, see {@link #perceive(MessageContent)}).
+     * @param name name of the entity
+     * @param scenario the scenario to use
+     * @return an entity with the given parameters or null if the scenario is not known
+     */
+    public static EISEntity createLocalEntity(String name, String scenario) {
+        return createEntity(name, scenario, null, 0, null, null);
+    }
+
+    /**
+     * Processes a message (content) without any serialization, as if it had been received from the server.
+     * @param content a sim-start, request-action or sim-end message content
+     * @return all current percepts of this entity (like {@link #getAllPercepts()} without scheduling)
+     */
+    public List<Percept> perceive(MessageContent content) {
+        processMessage(new Message(System.currentTimeMillis(), content));
+        List<Percept> ret = new LinkedList<>();
+        ret.addAll(simStartPercepts);
+        ret.addAll(requestActionPercepts);
+        ret.addAll(simEndPercepts);
+        return ret;
+    }
+
     /**
      * Stops this entity and its thread. Closes the socket, if there is one.
      */
@@ -221,51 +253,58 @@ public abstract class EISEntity implements Runnable{
             // process message
             Message msg = Message.parse(doc, getPerceptTypes());
             if (msg == null) continue;
+            processMessage(msg);
+        }
+    }
 
-            if (msg.getContent() instanceof SimStart) {
-                simStartPercepts.clear();
-                simStartPercepts.add(new Percept("simStart"));
-                simStartPercepts.addAll(simStartToIIL((SimStart) msg.getContent()));
-
-                if (times) annotatePercepts(simStartPercepts, new Numeral(msg.getTimestamp()));
-                if (notifications) EI.sendNotifications(getName(), simStartPercepts);
-                if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(simStartPercepts)));
-            }
-            else if (msg.getContent() instanceof RequestAction) {
-                RequestAction rac = (RequestAction) msg.getContent();
-                long id = rac.getId();
-
-                requestActionPercepts.clear();
-                requestActionPercepts.add(new Percept("requestAction"));
-                requestActionPercepts.addAll(requestActionToIIL(msg));
-
-                if (times) annotatePercepts(requestActionPercepts, new Numeral(msg.getTimestamp()));
-                if (notifications) EI.sendNotifications(this.getName(), requestActionPercepts);
-                currentActionId = id;
-                if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(requestActionPercepts)));
-            }
-            else if (msg.getContent() instanceof SimEnd) {
-                simStartPercepts.clear();
-                requestActionPercepts.clear();
-                simEndPercepts.clear();
-                simEndPercepts.add(new Percept("simEnd"));
-                simEndPercepts.addAll(simEndToIIL((SimEnd) msg.getContent()));
-                if (times) annotatePercepts(simEndPercepts,new Numeral(msg.getTimestamp()));
-                if (notifications) EI.sendNotifications(this.getName(), simEndPercepts);
-                if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(simEndPercepts)));
-            }
-            else if (msg.getContent() instanceof Bye) {
-                simStartPercepts.clear();
-                requestActionPercepts.clear();
-                byePercepts.clear();
-                byePercepts.add(new Percept("bye"));
-                if (times) annotatePercepts(byePercepts,new Numeral(msg.getTimestamp()));
-                if (notifications) EI.sendNotifications(this.getName(), byePercepts);
-                if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(byePercepts)));
-            }
-            else {
-                log("unexpected type " + msg.getContent().getClass());
-            }
+    /**
+     * Maps a received message to percepts and stores them.
+     * @param msg the message to process
+     */
+    private void processMessage(Message msg) {
+        if (msg.getContent() instanceof SimStart) {
+            simStartPercepts.clear();
+            simStartPercepts.add(new Percept("simStart"));
+            simStartPercepts.addAll(simStartToIIL((SimStart) msg.getContent()));
+
+            if (times) annotatePercepts(simStartPercepts, new Numeral(msg.getTimestamp()));
+            if (notifications) EI.sendNotifications(getName(), simStartPercepts);
+            if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(simStartPercepts)));
+        }
+        else if (msg.getContent() instanceof RequestAction) {
+            RequestAction rac = (RequestAction) msg.getContent();
+            long id = rac.getId();
+
+            requestActionPercepts.clear();
+            requestActionPercepts.add(new Percept("requestAction"));
+            requestActionPercepts.addAll(requestActionToIIL(msg));
+
+            if (times) annotatePercepts(requestActionPercepts, new Numeral(msg.getTimestamp()));
+            if (notifications) EI.sendNotifications(this.getName(), requestActionPercepts);
+            currentActionId = id;
+            if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(requestActionPercepts)));
+        }
+        else if (msg.getContent() instanceof SimEnd) {
+            simStartPercepts.clear();
+            requestActionPercepts.clear();
+            simEndPercepts.clear();
+            simEndPercepts.add(new Percept("simEnd"));
+            simEndPercepts.addAll(simEndToIIL((SimEnd) msg.getContent()));
+            if (times) annotatePercepts(simEndPercepts,new Numeral(msg.getTimestamp()));
+            if (notifications) EI.sendNotifications(this.getName(), simEndPercepts);
+            if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(simEndPercepts)));
+        }
+        else if (msg.getContent() instanceof Bye) {
+            simStartPercepts.clear();
+            requestActionPercepts.clear();
+            byePercepts.clear();
+            byePercepts.add(new Percept("bye"));
+            if (times) annotatePercepts(byePercepts,new Numeral(msg.getTimestamp()));
+            if (notifications) EI.sendNotifications(this.getName(), byePercepts);
+            if (queued) perceptsQueue.add(Collections.synchronizedSet(new HashSet<>(byePercepts)));
+        }
+        else {
+            log("unexpected type " + msg.getContent().getClass());
         }
     }
 
@@ -488,7 +527,8 @@ public abstract class EISEntity implements Runnable{
 
     protected void setType(String type) {
         try {
-            if(EI.isEntityConnected(getName())) EI.setType(getName(), type);
+            // local entities are not registered with an environment interface
+            if(EI != null && EI.isEntityConnected(getName())) EI.setType(getName(), type);
         } catch (EntityException e) {
             e.printStackTrace();
         }
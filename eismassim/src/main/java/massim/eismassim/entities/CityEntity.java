@@ -239,6 +239,11 @@ public class CityEntity extends EISEntity {
 
     @Override
     public Document actionToXML(Action action) {
+        return new Message(null, toMassimAction(action)).toXML();
+    }
+
+    @Override
+    public massim.protocol.messagecontent.Action toMassimAction(Action action) {
 
         // translate parameters to String
         List<String> parameters = new Vector<>();
@@ -259,7 +264,6 @@ public class CityEntity extends EISEntity {
         massim.protocol.messagecontent.Action massimAction =
                 new massim.protocol.messagecontent.Action(action.getName(), parameters.toArray(new String[parameters.size()]));
         massimAction.setID(currentActionId);
-
-        return new Message(null, massimAction).toXML();
+        return massimAction;
     }
 }
@@ -0,0 +1,33 @@
+package massim.javaagents;
+
+import massim.LocalAgent;
+import massim.Server;
+import massim.util.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Runs the server and the Java agents in one JVM without network connections (e.g. for automated evaluation runs).
+ * Usage: HeadlessMain [server config file] [javaagents config directory]
+ */
+public class HeadlessMain {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: HeadlessMain <server config file> <javaagents config directory>");
+            System.exit(1);
+        }
+
+        try {
+            Scheduler scheduler = new Scheduler(args[1]);
+            Map<String, LocalAgent> agents =
+                    scheduler.createLocalAgents(args[1] + File.separator + "eismassimconfig.json");
+            Server.runHeadless(IOUtil.readJSONObjectWithImport(args[0]), agents);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
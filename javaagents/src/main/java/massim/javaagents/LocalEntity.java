@@ -0,0 +1,51 @@
+package massim.javaagents;
+
+import eis.iilang.Percept;
+import massim.LocalAgent;
+import massim.eismassim.EISEntity;
+import massim.javaagents.agents.Agent;
+import massim.protocol.messagecontent.Action;
+import massim.protocol.messagecontent.RequestAction;
+import massim.protocol.messagecontent.SimEnd;
+import massim.protocol.messagecontent.SimStart;
+
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Connects a Java agent directly to a server running in the same JVM.
+ * The percepts are translated by an (unconnected) EIS entity, so the agent sees exactly the same percepts as with
+ * a network connection and EIS scheduling enabled.
+ */
+class LocalEntity implements LocalAgent {
+
+    private Agent agent;
+    private EISEntity entity;
+
+    /**
+     * @param agent the agent to step
+     * @param entity the entity translating the messages for the agent
+     */
+    LocalEntity(Agent agent, EISEntity entity) {
+        this.agent = agent;
+        this.entity = entity;
+    }
+
+    @Override
+    public void handleInitialPercept(SimStart percept) {
+        entity.perceive(percept);
+    }
+
+    @Override
+    public Action requestAction(RequestAction percept) {
+        List<Percept> percepts = entity.perceive(percept);
+        agent.setPercepts(new Vector<>(percepts));
+        eis.iilang.Action action = agent.step();
+        return action == null? null : entity.toMassimAction(action);
+    }
+
+    @Override
+    public void handleFinalPercept(SimEnd percept) {
+        agent.setPercepts(new Vector<>(entity.perceive(percept)));
+    }
+}
@@ -8,11 +8,14 @@ import eis.exceptions.PerceiveException;
 import eis.exceptions.RelationException;
 import eis.iilang.EnvironmentState;
 import eis.iilang.Percept;
+import massim.LocalAgent;
+import massim.eismassim.EISEntity;
 import massim.eismassim.EnvironmentInterface;
 import massim.javaagents.agents.Agent;
 import massim.javaagents.agents.BasicAgent;
 import massim.javaagents.agents.DummyAgent;
 import massim.javaagents.agents.WarpAgent;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -86,21 +89,7 @@ public class Scheduler implements AgentListener, EnvironmentListener{
         MailService mailService = new MailService();
         for (AgentConf agentConf: agentConfigurations) {
 
-            Agent agent = null;
-            switch(agentConf.className){
-                case "BasicAgent":
-                    agent = new BasicAgent(agentConf.name, mailService);
-                    break;
-                case "WarpAgent":
-                    agent = new WarpAgent(agentConf.name, mailService);
-                    break;
-                case "DummyAgent":
-                    agent = new DummyAgent(agentConf.name, mailService);
-                    break;
-                // [add further types here]
-                default:
-                    System.out.println("Unknown agent type/class " + agentConf.className);
-            }
+            Agent agent = createAgent(agentConf, mailService);
             if(agent == null) continue;
 
             mailService.registerAgent(agent, agentConf.team);
@@ -124,6 +113,70 @@ public class Scheduler implements AgentListener, EnvironmentListener{
         ei.attachEnvironmentListener(this);
     }
 
+    /**
+     * Creates the agents for a server running in the same JVM (instead of connecting them to an environment
+     * interface). Each agent is wrapped in a {@link LocalEntity} that is registered for the server account of
+     * its entity.
+     * @param eisConfigPath path to the eismassim config (which maps entities to server accounts)
+     * @return the wrapped agents by server account
+     * @throws IOException if the eismassim config cannot be read
+     */
+    Map<String, LocalAgent> createLocalAgents(String eisConfigPath) throws IOException {
+        JSONObject eisConfig = new JSONObject(new String(Files.readAllBytes(Paths.get(eisConfigPath))));
+        String scenario = eisConfig.optString("scenario");
+        Map<String, String> accounts = new HashMap<>();
+        JSONArray entities = eisConfig.optJSONArray("entities");
+        if (entities != null) {
+            for (int i = 0; i < entities.length(); i++) {
+                JSONObject entity = entities.getJSONObject(i);
+                accounts.put(entity.getString("name"), entity.getString("username"));
+            }
+        }
+
+        Map<String, LocalAgent> localAgents = new HashMap<>();
+        MailService mailService = new MailService();
+        for (AgentConf agentConf: agentConfigurations) {
+            String account = accounts.get(agentConf.entity);
+            if (account == null) {
+                System.out.println("No account configured for entity " + agentConf.entity);
+                continue;
+            }
+            EISEntity entity = EISEntity.createLocalEntity(agentConf.entity, scenario);
+            if (entity == null) {
+                System.out.println("Unknown scenario " + scenario);
+                break;
+            }
+            Agent agent = createAgent(agentConf, mailService);
+            if(agent == null) continue;
+
+            mailService.registerAgent(agent, agentConf.team);
+            localAgents.put(account, new LocalEntity(agent, entity));
+            agents.put(agentConf.name, agent);
+        }
+        return localAgents;
+    }
+
+    /**
+     * Creates a new agent of the configured class.
+     * @param agentConf the configuration of the agent
+     * @param mailService the mail service to use
+     * @return the new agent or null if the class is unknown
+     */
+    private Agent createAgent(AgentConf agentConf, MailService mailService) {
+        switch(agentConf.className){
+            case "BasicAgent":
+                return new BasicAgent(agentConf.name, mailService);
+            case "WarpAgent":
+                return new WarpAgent(agentConf.name, mailService);
+            case "DummyAgent":
+                return new DummyAgent(agentConf.name, mailService);
+            // [add further types here]
+            default:
+                System.out.println("Unknown agent type/class " + agentConf.className);
+                return null;
+        }
+    }
+
     /**
      * Steps all agents and relevant infrastructure.
      */
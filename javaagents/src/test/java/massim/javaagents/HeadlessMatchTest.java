@@ -0,0 +1,101 @@
+package massim.javaagents;
+
+import massim.LocalAgent;
+import massim.Server;
+import massim.protocol.messagecontent.Action;
+import massim.protocol.messagecontent.RequestAction;
+import massim.protocol.messagecontent.SimEnd;
+import massim.protocol.messagecontent.SimStart;
+import massim.scenario.city.CityMap;
+import massim.util.IOUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a short match with the test agents in the same JVM as the server (like {@link HeadlessMain}).
+ */
+public class HeadlessMatchTest {
+
+    private final static int STEPS = 20;
+    private final static String AGENTS = "conf/TestAgents";
+
+    @Test
+    public void agentsPlayMatch() throws IOException {
+        File results = Files.createTempDirectory("results").toFile();
+
+        JSONObject conf = IOUtil.readJSONObjectWithImport("../server/conf/QuickTest.json");
+        JSONObject server = conf.getJSONObject("server");
+        server.put("resultPath", results.getPath()).put("replayPath", "").put("logPath", results.getPath())
+                .put("teamSize", 28);
+        JSONObject match = conf.getJSONArray("match").getJSONObject(0);
+        match.put("map", CityMap.NO_MAP).put("steps", STEPS);
+        match.put("entities", new JSONArray().put(new JSONObject().put("spaceShip", 28)));
+
+        // the test agents are configured for an older scenario version
+        JSONObject eisConf = IOUtil.readJSONObject(AGENTS + File.separator + "eismassimconfig.json");
+        File eisConfFile = new File(results, "eismassimconfig.json");
+        IOUtil.writeJSONToFile(eisConf.put("scenario", "city2018"), eisConfFile);
+
+        Scheduler scheduler = new Scheduler(AGENTS);
+        Map<String, CountingAgent> agents = new HashMap<>();
+        scheduler.createLocalAgents(eisConfFile.getPath())
+                .forEach((account, agent) -> agents.put(account, new CountingAgent(agent)));
+        assert agents.size() == 56 : agents.size();
+        Server.runHeadless(conf, new HashMap<>(agents));
+
+        File[] resultFiles = results.listFiles((dir, name) -> name.startsWith("result_"));
+        assert resultFiles != null && resultFiles.length == 1 : "the match did not finish";
+        agents.forEach((account, agent) -> {
+            assert agent.started.get() == 1 : account;
+            assert agent.requests.get() == STEPS : account + " was asked for " + agent.requests + " actions";
+            assert agent.actions.get() > 0 : account + " did not act";
+            assert agent.finished.get() == 1 : account;
+        });
+
+        Files.walk(results.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    /**
+     * Counts the messages an agent receives and the actions it returns.
+     */
+    private static class CountingAgent implements LocalAgent {
+
+        private final LocalAgent agent;
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger actions = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+
+        private CountingAgent(LocalAgent agent) {
+            this.agent = agent;
+        }
+
+        @Override
+        public void handleInitialPercept(SimStart percept) {
+            started.incrementAndGet();
+            agent.handleInitialPercept(percept);
+        }
+
+        @Override
+        public Action requestAction(RequestAction percept) {
+            requests.incrementAndGet();
+            Action action = agent.requestAction(percept);
+            if (action != null) actions.incrementAndGet();
+            return action;
+        }
+
+        @Override
+        public void handleFinalPercept(SimEnd percept) {
+            finished.incrementAndGet();
+            agent.handleFinalPercept(percept);
+        }
+    }
+}
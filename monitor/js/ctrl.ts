@@ -1,7 +1,11 @@
-import { Redraw, Ctrl, ReplayCtrl, ViewModel, Agent, Well, Facility } from './interfaces';
+import { Redraw, Ctrl, ReplayCtrl, LiveCtrl, ViewModel, Agent, Well, Facility } from './interfaces';
+import applyDelta from './delta';
 
 const TEAMS = ['a', 'b', 'c'];
 
+// monitor protocol version: full state on connect, then deltas
+const PROTOCOL = 2;
+
 export default function(redraw: Redraw, replayPath?: string): Ctrl {
   const vm: ViewModel = {
     state: 'connecting',
@@ -9,14 +13,33 @@ export default function(redraw: Redraw, replayPath?: string): Ctrl {
     selectionIndex: 0,
   };
 
+  // position in the server's step history (if the viewer left the live state)
+  var history = { live: true, playing: false, first: -1, last: -1 };
+  var socket: WebSocket | undefined = undefined;
+
   const connect = function() {
     const protocol = document.location.protocol === 'https:' ? 'wss:' : 'ws:';
-    const ws = new WebSocket(protocol + '//' + document.location.host + '/socket');
+    const ws = new WebSocket(protocol + '//' + document.location.host + '/socket?protocol=' + PROTOCOL);
+    socket = ws;
+    history = { live: true, playing: false, first: -1, last: -1 };
 
     ws.onmessage = function(msg) {
       const data = JSON.parse(msg.data);
       console.log(data);
-      if (data.simId) vm.static = data;
+      if (data.simId) {
+        vm.static = data;
+        history = { live: true, playing: false, first: -1, last: -1 };
+      }
+      else if (data.metrics) vm.metrics = data.metrics;
+      else if (data.history) history = data.history;
+      else if (data.delta) {
+        if (vm.dynamic && vm.dynamic.step === data.base) vm.dynamic = applyDelta(vm.dynamic, data.delta);
+        else if (!vm.dynamic || vm.dynamic.step < data.step) {
+          // missed a step: reconnect to get the full state again
+          ws.close();
+          return;
+        }
+      }
       else vm.dynamic = data;
       redraw();
     };
@@ -41,8 +64,13 @@ export default function(redraw: Redraw, replayPath?: string): Ctrl {
     var step = 0;
     var timer: number | undefined = undefined;
 
+    // steps requested per range and when to request the next one
+    const RANGE = 20;
+    const READ_AHEAD = 10;
+
     var cache: any = {};
     var cacheSize = 0;
+    var loading: any = {};
 
     function stop() {
       if (timer) clearInterval(timer);
@@ -76,26 +104,25 @@ export default function(redraw: Redraw, replayPath?: string): Ctrl {
       xhr.send();
     }
 
-    function loadDynamic(step: number) {
-      // got from cache
-      if (cache[step]) {
-        vm.dynamic = cache[step];
-        vm.state = (vm.dynamic && vm.dynamic.step == step) ? 'online' : 'connecting';
-        redraw();
-        return;
-      }
+    function showStep(s: number) {
+      vm.dynamic = cache[s];
+      vm.state = (vm.dynamic && vm.dynamic.step == s) ? 'online' : 'connecting';
+      redraw();
+    }
 
-      const group = Math.floor(step / 5) * 5;
+    // requests a range of steps and shows the current step once it arrives
+    function loadRange(from: number, required: boolean) {
+      if (loading[from]) return;
+      loading[from] = true;
       const xhr = new XMLHttpRequest();
-      xhr.open('GET', path + '/' + group + '.json');
+      xhr.open('GET', path + '/steps?from=' + from + '&count=' + RANGE);
       xhr.onload = function() {
+        delete loading[from];
         if (xhr.status === 200) {
           var response = JSON.parse(xhr.responseText);
-          vm.dynamic = response[step];
-          vm.state = (vm.dynamic && vm.dynamic.step == step) ? 'online' : 'connecting';
 
           // write to cache
-          if (cacheSize > 100) {
+          if (cacheSize > 10 * RANGE) {
             cache = {};
             cacheSize = 0;
           }
@@ -103,20 +130,37 @@ export default function(redraw: Redraw, replayPath?: string): Ctrl {
             cache[s] = response[s];
             cacheSize++;
           }
-        } else {
+          if (step >= from && step < from + RANGE) showStep(step);
+        } else if (required) {
           vm.state = 'error';
           stop();
+          redraw();
         }
-        redraw();
       };
       xhr.onerror = function() {
-        vm.state = 'error';
-        stop();
-        redraw();
+        delete loading[from];
+        if (required) {
+          vm.state = 'error';
+          stop();
+          redraw();
+        }
       };
       xhr.send();
     }
 
+    function loadDynamic(step: number) {
+      if (!cache[step]) {
+        loadRange(step, true);
+        return;
+      }
+      showStep(step);
+
+      // read ahead
+      var next = step + 1;
+      while (cache[next] && next - step <= READ_AHEAD) next++;
+      if (next - step <= READ_AHEAD && (!vm.static || next < vm.static.steps)) loadRange(next, false);
+    }
+
     function setStep(s: number) {
       // keep step in bounds
       step = Math.max(0, s);
@@ -158,7 +202,34 @@ export default function(redraw: Redraw, replayPath?: string): Ctrl {
     };
   };
 
+  const makeLiveCtrl = function(): LiveCtrl {
+    function send(command: any) {
+      if (socket && socket.readyState === WebSocket.OPEN) socket.send(JSON.stringify(command));
+    }
+
+    function step(): number {
+      return vm.dynamic ? vm.dynamic.step : 0;
+    }
+
+    return {
+      live: () => history.live,
+      step,
+      setStep(s: number) {
+        send({ seek: Math.max(0, s) });
+      },
+      toggle() {
+        if (history.live || history.playing) send({ seek: step() });
+        else send({ play: step() + 1 });
+      },
+      goLive() {
+        send({ live: true });
+      },
+      playing: () => history.playing
+    };
+  };
+
   const replay = replayPath ? makeReplayCtrl(replayPath) : undefined;
+  const live = replay ? undefined : makeLiveCtrl();
   if (!replay) connect();
 
   const entities = function(): Array<Agent | Facility> {
@@ -186,6 +257,7 @@ export default function(redraw: Redraw, replayPath?: string): Ctrl {
 
   return {
     replay: replay,
+    live: live,
     vm: vm,
     entities: entities,
     setSelection(names: string[]) {
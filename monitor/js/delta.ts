@@ -0,0 +1,31 @@
+// Applies the deltas computed by the server's JsonDelta (see JsonDelta.java for
+// the format). The base object is modified and returned.
+export default function applyDelta(base: any, delta: any): any {
+  if (delta.d) delta.d.forEach((key: string) => delete base[key]);
+  if (delta.s) for (const key in delta.s) base[key] = delta.s[key];
+  if (delta.o) for (const key in delta.o) applyDelta(base[key], delta.o[key]);
+  if (delta.a) for (const key in delta.a) base[key] = applyArrayDelta(base[key], delta.a[key]);
+  return base;
+}
+
+function applyArrayDelta(base: any[], delta: any): any[] {
+  if (delta.t !== undefined) return base.slice(delta.t);
+  if (delta.p) return base.concat(delta.p);
+
+  const keyField: string = delta.k;
+  const elements: { [key: string]: any } = Object.create(null);
+  const order: string[] = [];
+  base.forEach(element => {
+    elements[element[keyField]] = element;
+    order.push(element[keyField]);
+  });
+  if (delta.d) delta.d.forEach((key: string) => delete elements[key]);
+  if (delta.o) for (const key in delta.o) applyDelta(elements[key], delta.o[key]);
+  if (delta.s) delta.s.forEach((element: any) => {
+    // replaced elements keep their position, added ones are appended
+    if (!(element[keyField] in elements)) order.push(element[keyField]);
+    elements[element[keyField]] = element;
+  });
+  const keys: string[] = delta.n || order;
+  return keys.filter(key => key in elements).map(key => elements[key]);
+}
@@ -7,6 +7,7 @@ export interface Ctrl {
   normalizeTeam(team: string): string;
   vm: ViewModel;
   replay?: ReplayCtrl,
+  live?: LiveCtrl,
 }
 
 export interface MapView {
@@ -19,6 +20,7 @@ export interface ViewModel {
   selectionIndex: number;
   dynamic?: DynamicWorld;
   static?: StaticWorld;
+  metrics?: StepMetrics;
 }
 
 export interface ReplayCtrl {
@@ -31,6 +33,15 @@ export interface ReplayCtrl {
   playing(): boolean;
 }
 
+export interface LiveCtrl {
+  live(): boolean;
+  step(): number;
+  setStep(s: number): void;
+  toggle(): void;
+  goLive(): void;
+  playing(): boolean;
+}
+
 export type FacilityType = 'workshop' | 'resourceNode' | 'shop' | 'dump' |
                            'chargingStation' | 'storage';
 
@@ -169,6 +180,21 @@ export interface Job {
   auctionTime: number;
 }
 
+export interface PhaseMetrics {
+  count: number;
+  mean: number;
+  p50: number;
+  p95: number;
+  max: number;
+  total: number;
+}
+
+export interface StepMetrics {
+  match: string;
+  phases: { [phase: string]: PhaseMetrics };
+  agentLatency: { [agent: string]: PhaseMetrics };
+}
+
 export interface DynamicWorld {
   step: number;
   workshops: Workshop[];
@@ -1,4 +1,4 @@
-import { Ctrl, ReplayCtrl, StaticWorld, DynamicWorld, Shop, Storage, Well, WellType, isAgent } from './interfaces';
+import { Ctrl, ReplayCtrl, LiveCtrl, StaticWorld, DynamicWorld, StepMetrics, Shop, Storage, Well, WellType, isAgent } from './interfaces';
 
 import { h } from 'snabbdom';
 import { VNode } from 'snabbdom/vnode';
@@ -38,6 +38,20 @@ function replay(ctrl: ReplayCtrl) {
   ]);
 }
 
+function rewind(ctrl: LiveCtrl) {
+  return h('div.btn.replay', [
+    h('div', [h('strong', 'Live:'), ' ', ctrl.live() ? 'following' : ('step ' + ctrl.step())]),
+    h('div', [
+      h('button', { on: { click: () => ctrl.setStep(ctrl.step() - 10) } }, '<<'),
+      h('button', {
+        on: { click: () => ctrl.toggle() }
+      }, ctrl.live() || ctrl.playing() ? '||' : '>'),
+      h('button', { on: { click: () => ctrl.setStep(ctrl.step() + 10) } }, '>>'),
+      h('button', { on: { click: () => ctrl.goLive() } }, '>>|')
+    ])
+  ]);
+}
+
 function simulation(ctrl: Ctrl, staticWorld: StaticWorld, dynamic: DynamicWorld) {
   return h('div', [
     h('div', [h('strong', 'Simulation:'), ' ', staticWorld.simId]),
@@ -131,6 +145,15 @@ function jobs(dynamic: DynamicWorld) {
   ]);
 }
 
+function metrics(metrics: StepMetrics) {
+  return h('div', [
+    h('strong', 'Step timing (ms, mean / p95)'),
+    h('ul', Object.keys(metrics.phases).map(phase =>
+      h('li', [phase, ': ', h('em', metrics.phases[phase].mean.toFixed(1)), ' / ', metrics.phases[phase].p95.toFixed(1)])
+    ))
+  ]);
+}
+
 function wellType(name: string, staticWorld: StaticWorld): WellType | undefined {
   return staticWorld.wellTypes.filter(t => t.name == name)[0];
 }
@@ -151,8 +174,10 @@ export default function(ctrl: Ctrl) {
     ]);
   else return h('div#overlay', [
     ctrl.replay ? replay(ctrl.replay) : undefined,
+    ctrl.live ? rewind(ctrl.live) : undefined,
     h('div.btn', simulation(ctrl, ctrl.vm.static, ctrl.vm.dynamic)),
     h('div.btn', details(ctrl, ctrl.vm.static)),
-    h('div.btn', jobs(ctrl.vm.dynamic))
+    h('div.btn', jobs(ctrl.vm.dynamic)),
+    ctrl.vm.metrics ? h('div.btn', metrics(ctrl.vm.metrics)) : undefined
   ]);
 }
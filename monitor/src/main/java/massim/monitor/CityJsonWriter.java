@@ -0,0 +1,762 @@
+package massim.monitor;
+
+import massim.protocol.WorldData;
+import massim.protocol.scenario.city.data.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the city world data as JSON directly into a reusable byte buffer (UTF-8), without building a
+ * {@link JSONObject} tree or introspecting the data classes for each object.
+ * <br>
+ * The output has the same content as <code>new JSONObject(data).toString()</code>: one key per public getter,
+ * no keys for null values, and numbers and strings formatted like org.json does it. Only the order of the keys
+ * differs (org.json's order depends on its internal hash map). Other world data is converted with org.json.
+ * <br>
+ * The buffer's content can also be turned into a {@link JSONObject} tree (e.g. to compute deltas), which is much
+ * faster than parsing the string or converting the data with org.json.
+ * <br>
+ * Instances are not thread-safe; they are meant to be reused for each step.
+ */
+public final class CityJsonWriter {
+
+    private byte[] buffer = new byte[1 << 16];
+    private int size = 0;
+    private boolean first;
+
+    private int position; // for reading the buffer back
+    private final StringBuilder chars = new StringBuilder();
+
+    /**
+     * Replaces the buffer's content with the JSON of the world data.
+     * @param data the static or dynamic world data
+     * @return this writer
+     */
+    public CityJsonWriter write(WorldData data) {
+        size = 0;
+        if (data instanceof StaticCityData) writeStatic((StaticCityData) data);
+        else if (data instanceof DynamicCityData) writeDynamic((DynamicCityData) data);
+        else writeRaw(new JSONObject(data).toString());
+        return this;
+    }
+
+    /**
+     * @return the number of bytes in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the buffer's content
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Writes the buffer's content to a stream.
+     * @param out the stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * @return the buffer's content as string
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the buffer's content back into a JSON tree. Integral numbers become Integer (or Long), all other numbers
+     * Double, so the tree is written exactly like the buffer's content (apart from the order of the keys).
+     * @return the JSON object in the buffer
+     */
+    public JSONObject toJSONObject() {
+        position = 0;
+        return (JSONObject) readValue();
+    }
+
+    // reading the buffer back
+
+    private Object readValue() {
+        byte b = buffer[position];
+        switch (b) {
+            case '{':
+                JSONObject object = new JSONObject();
+                position++;
+                if (buffer[position] == '}') {
+                    position++;
+                    return object;
+                }
+                while (true) {
+                    String key = readString();
+                    position++; // ':'
+                    object.put(key, readValue());
+                    if (buffer[position++] == '}') return object; // else ','
+                }
+            case '[':
+                JSONArray array = new JSONArray();
+                position++;
+                if (buffer[position] == ']') {
+                    position++;
+                    return array;
+                }
+                while (true) {
+                    array.put(readValue());
+                    if (buffer[position++] == ']') return array; // else ','
+                }
+            case '"':
+                return readString();
+            case 'n':
+                position += 4;
+                return JSONObject.NULL;
+            case 't':
+                position += 4;
+                return Boolean.TRUE;
+            case 'f':
+                position += 5;
+                return Boolean.FALSE;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean integral = true;
+        while (position < size) {
+            byte b = buffer[position];
+            if (b == ',' || b == '}' || b == ']') break;
+            if (b == '.' || b == 'e' || b == 'E') integral = false;
+            position++;
+        }
+        String number = new String(buffer, start, position - start, StandardCharsets.US_ASCII);
+        if (integral) {
+            try {
+                long value = Long.parseLong(number);
+                if (value == (int) value) return (int) value;
+                return value;
+            } catch (NumberFormatException ignored) {} // too large
+        }
+        return Double.valueOf(number);
+    }
+
+    /**
+     * Reads a string as written by {@link #string(String)}.
+     */
+    private String readString() {
+        position++; // opening quote
+        int start = position;
+        boolean plain = true;
+        while (buffer[position] != '"') {
+            if (buffer[position] == '\\' || buffer[position] < 0) {
+                plain = false;
+                break;
+            }
+            position++;
+        }
+        if (plain) {
+            String value = new String(buffer, start, position - start, StandardCharsets.US_ASCII);
+            position++;
+            return value;
+        }
+        // escape sequences or UTF-8
+        position = start;
+        chars.setLength(0);
+        while (true) {
+            byte b = buffer[position];
+            if (b == '"') break;
+            if (b == '\\') {
+                char escaped = (char) buffer[position + 1];
+                position += 2;
+                switch (escaped) {
+                    case 'b': chars.append('\b'); break;
+                    case 't': chars.append('\t'); break;
+                    case 'n': chars.append('\n'); break;
+                    case 'f': chars.append('\f'); break;
+                    case 'r': chars.append('\r'); break;
+                    case 'u':
+                        chars.append((char) Integer.parseInt(
+                                new String(buffer, position, 4, StandardCharsets.US_ASCII), 16));
+                        position += 4;
+                        break;
+                    default: chars.append(escaped);
+                }
+            }
+            else if (b >= 0) {
+                chars.append((char) b);
+                position++;
+            }
+            else {
+                int length = (b & 0xE0) == 0xC0? 2 : (b & 0xF0) == 0xE0? 3 : 4;
+                chars.append(new String(buffer, position, length, StandardCharsets.UTF_8));
+                position += length;
+            }
+        }
+        position++;
+        return chars.toString();
+    }
+
+    private void writeStatic(StaticCityData data) {
+        begin();
+        field("simId", data.getSimId());
+        field("steps", data.getSteps());
+        field("map", data.getMap());
+        field("seedCapital", data.getSeedCapital());
+        if (data.getTeams() != null) {
+            key("teams");
+            beginArray();
+            for (String team : data.getTeams()) {
+                element();
+                string(team);
+            }
+            endArray();
+        }
+        if (data.getRoles() != null) {
+            key("roles");
+            beginArray();
+            for (RoleData role : data.getRoles()) {
+                element();
+                role(role);
+            }
+            endArray();
+        }
+        if (data.getItems() != null) {
+            key("items");
+            beginArray();
+            for (ItemData item : data.getItems()) {
+                element();
+                item(item);
+            }
+            endArray();
+        }
+        if (data.getWellTypes() != null) {
+            key("wellTypes");
+            beginArray();
+            for (WellTypeData type : data.getWellTypes()) {
+                element();
+                wellType(type);
+            }
+            endArray();
+        }
+        if (data.getUpgrades() != null) {
+            key("upgrades");
+            beginArray();
+            for (UpgradeData upgrade : data.getUpgrades()) {
+                element();
+                upgrade(upgrade);
+            }
+            endArray();
+        }
+        field("minLat", data.getMinLat());
+        field("maxLat", data.getMaxLat());
+        field("minLon", data.getMinLon());
+        field("maxLon", data.getMaxLon());
+        end();
+    }
+
+    private void writeDynamic(DynamicCityData data) {
+        begin();
+        field("step", data.getStep());
+        if (data.getEntities() != null) {
+            key("entities");
+            beginArray();
+            for (EntityData entity : data.getEntities()) {
+                element();
+                entity(entity);
+            }
+            endArray();
+        }
+        facilities("shops", data.getShops());
+        facilities("workshops", data.getWorkshops());
+        facilities("chargingStations", data.getChargingStations());
+        facilities("dumps", data.getDumps());
+        facilities("resourceNodes", data.getResourceNodes());
+        facilities("storages", data.getStorages());
+        facilities("wells", data.getWells());
+        if (data.getJobs() != null) {
+            key("jobs");
+            beginArray();
+            for (JobData job : data.getJobs()) {
+                element();
+                job(job);
+            }
+            endArray();
+        }
+        if (data.getTeams() != null) {
+            key("teams");
+            beginArray();
+            for (TeamData team : data.getTeams()) {
+                element();
+                begin();
+                field("name", team.getName());
+                field("massium", team.getMassium());
+                field("score", team.getScore());
+                end();
+            }
+            endArray();
+        }
+        end();
+    }
+
+    private void role(RoleData role) {
+        if (role == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("name", role.getName());
+        field("baseSpeed", role.getBaseSpeed());
+        field("maxSpeed", role.getMaxSpeed());
+        field("baseBattery", role.getBaseBattery());
+        field("maxBattery", role.getMaxBattery());
+        field("baseLoad", role.getBaseLoad());
+        field("maxLoad", role.getMaxLoad());
+        field("baseSkill", role.getBaseSkill());
+        field("maxSkill", role.getMaxSkill());
+        field("baseVision", role.getBaseVision());
+        field("maxVision", role.getMaxVision());
+        end();
+    }
+
+    private void item(ItemData item) {
+        if (item == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("name", item.getName());
+        field("volume", item.getVolume());
+        names("parts", item.getParts());
+        names("roles", item.getRoles());
+        end();
+    }
+
+    private void names(String key, List<NameData> names) {
+        if (names == null) return;
+        key(key);
+        beginArray();
+        for (NameData name : names) {
+            element();
+            if (name == null) raw("null");
+            else {
+                begin();
+                field("name", name.getName());
+                end();
+            }
+        }
+        endArray();
+    }
+
+    private void wellType(WellTypeData type) {
+        if (type == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("name", type.getName());
+        field("initialIntegrity", type.getInitialIntegrity());
+        field("integrity", type.getIntegrity());
+        field("cost", type.getCost());
+        field("efficiency", type.getEfficiency());
+        end();
+    }
+
+    private void upgrade(UpgradeData upgrade) {
+        if (upgrade == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("name", upgrade.getName());
+        field("cost", upgrade.getCost());
+        field("step", upgrade.getStep());
+        end();
+    }
+
+    private void entity(EntityData entity) {
+        if (entity == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("name", entity.getName());
+        field("team", entity.getTeam());
+        field("role", entity.getRole());
+        field("lat", entity.getLat());
+        field("lon", entity.getLon());
+        field("charge", entity.getCharge());
+        field("chargeMax", entity.getChargeMax());
+        field("load", entity.getLoad());
+        field("loadMax", entity.getLoadMax());
+        field("vision", entity.getVision());
+        field("skill", entity.getSkill());
+        field("speed", entity.getSpeed());
+        field("facility", entity.getFacility());
+        field("routeLength", entity.getRouteLength());
+        ActionData action = entity.getLastAction();
+        if (action != null) {
+            key("lastAction");
+            begin();
+            field("type", action.getType());
+            field("result", action.getResult());
+            if (action.getParams() != null) {
+                key("params");
+                beginArray();
+                for (String param : action.getParams()) {
+                    element();
+                    string(param);
+                }
+                endArray();
+            }
+            end();
+        }
+        itemAmounts("items", entity.getItems());
+        if (entity.getRoute() != null) {
+            key("route");
+            beginArray();
+            for (WayPointData waypoint : entity.getRoute()) {
+                element();
+                if (waypoint == null) raw("null");
+                else {
+                    begin();
+                    field("index", waypoint.getIndex());
+                    field("lat", waypoint.getLat());
+                    field("lon", waypoint.getLon());
+                    end();
+                }
+            }
+            endArray();
+        }
+        end();
+    }
+
+    private void itemAmounts(String key, List<ItemAmountData> items) {
+        if (items == null) return;
+        key(key);
+        beginArray();
+        for (ItemAmountData item : items) {
+            element();
+            if (item == null) raw("null");
+            else {
+                begin();
+                field("name", item.getName());
+                field("amount", item.getAmount());
+                end();
+            }
+        }
+        endArray();
+    }
+
+    private void facilities(String key, List<? extends FacilityData> facilities) {
+        if (facilities == null) return;
+        key(key);
+        beginArray();
+        for (FacilityData facility : facilities) {
+            element();
+            facility(facility);
+        }
+        endArray();
+    }
+
+    private void facility(FacilityData facility) {
+        if (facility == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("name", facility.getName());
+        field("lat", facility.getLat());
+        field("lon", facility.getLon());
+        if (facility instanceof ShopData) {
+            ShopData shop = (ShopData) facility;
+            field("restock", shop.getRestock());
+            if (shop.getOfferedItems() != null) {
+                key("offeredItems");
+                beginArray();
+                for (StockData stock : shop.getOfferedItems()) {
+                    element();
+                    if (stock == null) raw("null");
+                    else {
+                        begin();
+                        field("name", stock.getName());
+                        field("price", stock.getPrice());
+                        field("amount", stock.getAmount());
+                        end();
+                    }
+                }
+                endArray();
+            }
+        }
+        else if (facility instanceof ChargingStationData) {
+            field("rate", ((ChargingStationData) facility).getRate());
+        }
+        else if (facility instanceof ResourceNodeData) {
+            field("resource", ((ResourceNodeData) facility).getResource());
+        }
+        else if (facility instanceof StorageData) {
+            StorageData storage = (StorageData) facility;
+            field("totalCapacity", storage.getTotalCapacity());
+            field("usedCapacity", storage.getUsedCapacity());
+            stored("storedItems", storage.getStoredItems());
+            if (storage.getAllStoredItems() != null) {
+                key("allStoredItems");
+                beginArray();
+                for (StorageData.TeamStoredData teamStored : storage.getAllStoredItems()) {
+                    element();
+                    if (teamStored == null) raw("null");
+                    else {
+                        begin();
+                        field("teamName", teamStored.getTeamName());
+                        stored("stored", teamStored.getStored());
+                        end();
+                    }
+                }
+                endArray();
+            }
+        }
+        else if (facility instanceof WellData) {
+            WellData well = (WellData) facility;
+            field("team", well.getTeam());
+            field("type", well.getType());
+            field("integrity", well.getIntegrity());
+        }
+        end();
+    }
+
+    private void stored(String key, List<StoredData> items) {
+        if (items == null) return;
+        key(key);
+        beginArray();
+        for (StoredData item : items) {
+            element();
+            if (item == null) raw("null");
+            else {
+                begin();
+                field("name", item.getName());
+                field("stored", item.getStored());
+                field("delivered", item.getDelivered());
+                end();
+            }
+        }
+        endArray();
+    }
+
+    private void job(JobData job) {
+        if (job == null) {
+            raw("null");
+            return;
+        }
+        begin();
+        field("id", job.getId());
+        field("storage", job.getStorage());
+        field("start", job.getStart());
+        field("end", job.getEnd());
+        field("reward", job.getReward());
+        field("poster", job.getPoster());
+        itemAmounts("requiredItems", job.getRequiredItems());
+        if (job.getDeliveredItems() != null) {
+            // the completion data has no getters, so org.json writes empty objects
+            key("deliveredItems");
+            beginArray();
+            for (JobData.CompletionData completion : job.getDeliveredItems()) {
+                element();
+                raw(completion == null? "null" : "{}");
+            }
+            endArray();
+        }
+        if (job instanceof AuctionJobData) {
+            AuctionJobData auction = (AuctionJobData) job;
+            field("auctionTime", auction.getAuctionTime());
+            field("fine", auction.getFine());
+            field("lowestBid", auction.getLowestBid());
+        }
+        if (job instanceof MissionData) field("missionID", ((MissionData) job).getMissionID());
+        end();
+    }
+
+    // JSON structure
+
+    private void begin() {
+        append('{');
+        first = true;
+    }
+
+    private void end() {
+        append('}');
+        first = false;
+    }
+
+    private void beginArray() {
+        append('[');
+        first = true;
+    }
+
+    private void endArray() {
+        append(']');
+        first = false;
+    }
+
+    /**
+     * Writes a comma if the current array already has an element.
+     */
+    private void element() {
+        if (!first) append(',');
+        first = false;
+    }
+
+    private void key(String key) {
+        element();
+        string(key);
+        append(':');
+    }
+
+    private void field(String key, String value) {
+        if (value == null) return;
+        key(key);
+        string(value);
+    }
+
+    private void field(String key, Integer value) {
+        if (value == null) return;
+        key(key);
+        number(value);
+    }
+
+    private void field(String key, long value) {
+        key(key);
+        number(value);
+    }
+
+    private void field(String key, double value) {
+        key(key);
+        raw(JSONObject.numberToString(value));
+    }
+
+    // values
+
+    private void number(long value) {
+        if (value == Long.MIN_VALUE) {
+            raw(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) digits++;
+        ensure(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes a quoted string, escaped like {@link JSONObject#quote(String)} does it.
+     */
+    private void string(String value) {
+        if (value == null) {
+            raw("null");
+            return;
+        }
+        ensure(value.length() + 2);
+        buffer[size++] = '"';
+        char previous = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    append('\\');
+                    append(c);
+                    break;
+                case '/':
+                    if (previous == '<') append('\\');
+                    append(c);
+                    break;
+                case '\b': raw("\\b"); break;
+                case '\t': raw("\\t"); break;
+                case '\n': raw("\\n"); break;
+                case '\f': raw("\\f"); break;
+                case '\r': raw("\\r"); break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        String hex = Integer.toHexString(c);
+                        raw("\\u");
+                        raw("0000".substring(hex.length()));
+                        raw(hex);
+                    }
+                    else if (c < 0x80) append(c);
+                    else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                             && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        utf8(Character.toCodePoint(c, value.charAt(++i)));
+                    }
+                    else utf8(c);
+            }
+            previous = c;
+        }
+        append('"');
+    }
+
+    private void utf8(int codePoint) {
+        ensure(4);
+        if (codePoint < 0x800) {
+            buffer[size++] = (byte) (0xC0 | (codePoint >> 6));
+        }
+        else if (codePoint < 0x10000) {
+            if (Character.isSurrogate((char) codePoint)) { // unpaired surrogate, like String.getBytes
+                buffer[size++] = '?';
+                return;
+            }
+            buffer[size++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        }
+        else {
+            buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        }
+        buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    /**
+     * Writes ASCII characters as they are.
+     */
+    private void raw(String ascii) {
+        ensure(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) buffer[size++] = (byte) ascii.charAt(i);
+    }
+
+    /**
+     * Writes the UTF-8 representation of the (possibly non ASCII) string as it is.
+     */
+    private void writeRaw(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void append(char c) {
+        ensure(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void ensure(int additional) {
+        if (size + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+    }
+}
@@ -0,0 +1,53 @@
+package massim.monitor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the steps of a replay in the layout of older server versions: one file per group of
+ * {@link #GROUP_SIZE} steps (<code>&lt;first step&gt;.json</code>, mapping each step to its JSON).
+ */
+class GroupReplayReader {
+
+    final static int GROUP_SIZE = 5;
+
+    private final File dir;
+
+    /**
+     * The last group read (reading a range of steps needs each group several times).
+     */
+    private int currentGroup = -1;
+    private JSONObject current;
+
+    GroupReplayReader(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Reads the JSON of one step.
+     * @param step the step to read
+     * @return the step's JSON or null if the step is not in the replay
+     * @throws IOException if the group file could not be read
+     */
+    synchronized String readStep(int step) throws IOException {
+        if (step < 0) return null;
+        int group = step / GROUP_SIZE * GROUP_SIZE;
+        if (group != currentGroup) {
+            File file = new File(dir, group + ".json");
+            if (!file.isFile()) return null;
+            try {
+                current = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            } catch (JSONException e) {
+                throw new IOException("Invalid replay file " + file + ": " + e.getMessage());
+            }
+            currentGroup = group;
+        }
+        JSONObject json = current.optJSONObject(String.valueOf(step));
+        return json == null? null : json.toString();
+    }
+}
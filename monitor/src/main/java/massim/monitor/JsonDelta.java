@@ -0,0 +1,229 @@
+package massim.monitor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * Computes and applies field-level differences between two JSON objects (e.g. two steps of a simulation).
+ * <br>
+ * The delta of an object may contain
+ * <ul>
+ *     <li><code>s</code>: the keys that were added or whose values were replaced, with their new values</li>
+ *     <li><code>d</code>: the keys that were removed</li>
+ *     <li><code>o</code>: deltas of values that are objects in both versions</li>
+ *     <li><code>a</code>: deltas of values that are arrays in both versions</li>
+ * </ul>
+ * Arrays of objects that all have a unique <code>name</code> (or <code>id</code>) are compared element-wise by that
+ * key (<code>k</code>): <code>s</code> holds added or replaced elements, <code>o</code> the deltas of changed
+ * elements, <code>d</code> the keys of removed elements and <code>n</code> the new order of the keys (only if it
+ * is not the old order followed by the added elements).
+ * Other arrays may only lose elements at the front (<code>t</code>, e.g. a route being followed) or gain elements
+ * at the end (<code>p</code>), otherwise they are replaced completely.
+ */
+public final class JsonDelta {
+
+    private final static String[] KEY_FIELDS = {"name", "id"};
+
+    private JsonDelta() {}
+
+    /**
+     * @param from the old version
+     * @param to the new version
+     * @return the delta turning the old version into the new one (empty if both are equal)
+     */
+    public static JSONObject diff(JSONObject from, JSONObject to) {
+        JSONObject delta = new JSONObject();
+        JSONObject set = new JSONObject();
+        JSONObject objects = new JSONObject();
+        JSONObject arrays = new JSONObject();
+        JSONArray deleted = new JSONArray();
+
+        for (String key : from.keySet()) {
+            if (!to.has(key)) deleted.put(key);
+        }
+        for (String key : to.keySet()) {
+            Object newValue = to.get(key);
+            Object oldValue = from.opt(key);
+            if (oldValue == null) set.put(key, newValue);
+            else if (oldValue instanceof JSONObject && newValue instanceof JSONObject) {
+                JSONObject sub = diff((JSONObject) oldValue, (JSONObject) newValue);
+                if (sub.length() > 0) objects.put(key, sub);
+            }
+            else if (oldValue instanceof JSONArray && newValue instanceof JSONArray) {
+                JSONArray oldArray = (JSONArray) oldValue;
+                JSONArray newArray = (JSONArray) newValue;
+                if (oldArray.similar(newArray)) continue;
+                JSONObject sub = diffArray(oldArray, newArray);
+                if (sub == null) set.put(key, newValue);
+                else arrays.put(key, sub);
+            }
+            else if (!equal(oldValue, newValue)) set.put(key, newValue);
+        }
+
+        if (set.length() > 0) delta.put("s", set);
+        if (deleted.length() > 0) delta.put("d", deleted);
+        if (objects.length() > 0) delta.put("o", objects);
+        if (arrays.length() > 0) delta.put("a", arrays);
+        return delta;
+    }
+
+    /**
+     * @return the delta of two (different) arrays or null if the new array should replace the old one
+     */
+    private static JSONObject diffArray(JSONArray from, JSONArray to) {
+        String keyField = findKeyField(from, to);
+        if (keyField != null) return diffKeyed(from, to, keyField);
+
+        // elements removed at the front
+        int dropped = from.length() - to.length();
+        if (dropped > 0 && isSlice(from, dropped, to, 0, to.length())) return new JSONObject().put("t", dropped);
+        // elements added at the end
+        if (dropped < 0 && isSlice(to, 0, from, 0, from.length())) {
+            JSONArray appended = new JSONArray();
+            for (int i = from.length(); i < to.length(); i++) appended.put(to.get(i));
+            return new JSONObject().put("p", appended);
+        }
+        return null;
+    }
+
+    private static JSONObject diffKeyed(JSONArray from, JSONArray to, String keyField) {
+        Map<String, JSONObject> oldElements = new LinkedHashMap<>();
+        for (int i = 0; i < from.length(); i++) {
+            JSONObject element = from.getJSONObject(i);
+            oldElements.put(element.getString(keyField), element);
+        }
+        JSONArray set = new JSONArray();
+        JSONObject objects = new JSONObject();
+        JSONArray order = new JSONArray();
+        List<String> newKeys = new ArrayList<>();
+        List<String> addedKeys = new ArrayList<>();
+        for (int i = 0; i < to.length(); i++) {
+            JSONObject element = to.getJSONObject(i);
+            String key = element.getString(keyField);
+            newKeys.add(key);
+            order.put(key);
+            JSONObject old = oldElements.get(key);
+            if (old == null) {
+                set.put(element);
+                addedKeys.add(key);
+            }
+            else if (!old.similar(element)) {
+                JSONObject sub = diff(old, element);
+                if (sub.toString().length() < element.toString().length()) objects.put(key, sub);
+                else set.put(element);
+            }
+        }
+        Set<String> remaining = new HashSet<>(newKeys);
+        JSONArray deleted = new JSONArray();
+        List<String> expectedOrder = new ArrayList<>();
+        for (String key : oldElements.keySet()) {
+            if (remaining.contains(key)) expectedOrder.add(key);
+            else deleted.put(key);
+        }
+        expectedOrder.addAll(addedKeys);
+
+        JSONObject delta = new JSONObject().put("k", keyField);
+        if (set.length() > 0) delta.put("s", set);
+        if (objects.length() > 0) delta.put("o", objects);
+        if (deleted.length() > 0) delta.put("d", deleted);
+        if (!expectedOrder.equals(newKeys)) delta.put("n", order);
+        return delta;
+    }
+
+    /**
+     * @return the field all elements of both arrays can be identified by (or null if there is none)
+     */
+    private static String findKeyField(JSONArray a, JSONArray b) {
+        if (a.length() + b.length() == 0) return null;
+        for (String field : KEY_FIELDS) {
+            if (hasUniqueKeys(a, field) && hasUniqueKeys(b, field)) return field;
+        }
+        return null;
+    }
+
+    private static boolean hasUniqueKeys(JSONArray array, String field) {
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < array.length(); i++) {
+            Object element = array.get(i);
+            if (!(element instanceof JSONObject)) return false;
+            Object key = ((JSONObject) element).opt(field);
+            if (!(key instanceof String) || !keys.add((String) key)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a[aStart...] equals b[bStart, bEnd)
+     */
+    private static boolean isSlice(JSONArray a, int aStart, JSONArray b, int bStart, int bEnd) {
+        for (int i = bStart; i < bEnd; i++) {
+            if (!equal(a.get(aStart + i - bStart), b.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        if (a instanceof JSONObject) return b instanceof JSONObject && ((JSONObject) a).similar(b);
+        if (a instanceof JSONArray) return b instanceof JSONArray && ((JSONArray) a).similar(b);
+        if (a instanceof Number && b instanceof Number) return a.toString().equals(b.toString());
+        return a.equals(b);
+    }
+
+    /**
+     * Applies a delta.
+     * @param base the old version (is modified)
+     * @param delta the delta as created by {@link #diff(JSONObject, JSONObject)}
+     * @return the new version (i.e. base)
+     */
+    public static JSONObject apply(JSONObject base, JSONObject delta) {
+        JSONArray deleted = delta.optJSONArray("d");
+        if (deleted != null) for (int i = 0; i < deleted.length(); i++) base.remove(deleted.getString(i));
+        JSONObject set = delta.optJSONObject("s");
+        if (set != null) for (String key : set.keySet()) base.put(key, set.get(key));
+        JSONObject objects = delta.optJSONObject("o");
+        if (objects != null) for (String key : objects.keySet()) apply(base.getJSONObject(key), objects.getJSONObject(key));
+        JSONObject arrays = delta.optJSONObject("a");
+        if (arrays != null) {
+            for (String key : arrays.keySet()) base.put(key, applyArray(base.getJSONArray(key), arrays.getJSONObject(key)));
+        }
+        return base;
+    }
+
+    private static JSONArray applyArray(JSONArray base, JSONObject delta) {
+        if (delta.has("t")) {
+            JSONArray result = new JSONArray();
+            for (int i = delta.getInt("t"); i < base.length(); i++) result.put(base.get(i));
+            return result;
+        }
+        if (delta.has("p")) {
+            JSONArray appended = delta.getJSONArray("p");
+            for (int i = 0; i < appended.length(); i++) base.put(appended.get(i));
+            return base;
+        }
+
+        String keyField = delta.getString("k");
+        Map<String, JSONObject> elements = new LinkedHashMap<>();
+        for (int i = 0; i < base.length(); i++) {
+            JSONObject element = base.getJSONObject(i);
+            elements.put(element.getString(keyField), element);
+        }
+        JSONArray deleted = delta.optJSONArray("d");
+        if (deleted != null) for (int i = 0; i < deleted.length(); i++) elements.remove(deleted.getString(i));
+        JSONObject objects = delta.optJSONObject("o");
+        if (objects != null) for (String key : objects.keySet()) apply(elements.get(key), objects.getJSONObject(key));
+        JSONArray set = delta.optJSONArray("s");
+        if (set != null) {
+            for (int i = 0; i < set.length(); i++) {
+                JSONObject element = set.getJSONObject(i);
+                elements.put(element.getString(keyField), element); // replaced elements keep their position
+            }
+        }
+        JSONArray order = delta.optJSONArray("n");
+        JSONArray result = new JSONArray();
+        if (order == null) elements.values().forEach(result::put);
+        else for (int i = 0; i < order.length(); i++) result.put(elements.get(order.getString(i)));
+        return result;
+    }
+}
@@ -4,6 +4,7 @@ import massim.protocol.WorldData;
 import massim.protocol.scenario.city.data.DynamicCityData;
 import massim.protocol.scenario.city.data.StaticCityData;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import org.webbitserver.BaseWebSocketHandler;
@@ -15,13 +16,23 @@ import org.webbitserver.handler.EmbeddedResourceHandler;
 import org.webbitserver.handler.StaticFileHandler;
 import org.webbitserver.handler.StringHttpHandler;
 
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Scanner;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import java.io.File;
+import java.io.IOException;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
@@ -30,14 +41,63 @@ import java.nio.file.Paths;
 
 /**
  * The web monitor for the MASSim server.
+ * <br>
+ * Viewers connecting with <code>/socket?protocol=2</code> ({@link #DELTA_PROTOCOL}) receive the complete state
+ * when they connect and after that only the changes of each step:
+ * <code>{"base": previous step, "step": step, "delta": changes}</code> (see {@link JsonDelta}). All other viewers
+ * receive the complete state each step.
+ * <br>
+ * Messages are not sent by the thread updating the state but by the web server's executor. Each viewer only
+ * queues the latest static data, state and metrics: if a viewer lags behind, states it has not received yet are
+ * replaced by newer ones (and counted as dropped), so that slow viewers can neither hold up the simulation nor
+ * accumulate messages. A state that is not newer than the last one queued for a viewer is skipped, and a delta is
+ * only sent if the viewer got the state it is based on (otherwise the complete state is sent).
+ * <br>
+ * The monitor also keeps the most recent steps (see {@link StepHistory}), so that viewers can go back in time by
+ * sending commands over the websocket:
+ * <ul>
+ *     <li><code>{"seek": step}</code>: stop following the simulation and show the given step</li>
+ *     <li><code>{"play": step, "interval": ms}</code>: play the stored steps from the given step on (one step per
+ *     interval, default {@value #DEFAULT_PLAYBACK_INTERVAL} ms) and follow the simulation again after the newest
+ *     one</li>
+ *     <li><code>{"live": true}</code>: follow the simulation again</li>
+ * </ul>
+ * After each command, the viewer receives <code>{"history": {"first", "last", "live", "playing"}}</code> with the
+ * range of stored steps and its new mode. All stored states are sent completely.
  */
 public class Monitor {
 
-    private String latestStatic;
-    private String latestDynamic;
+    /**
+     * The first version of the monitor protocol in which viewers receive deltas.
+     */
+    public final static int DELTA_PROTOCOL = 2;
+
+    /**
+     * Default number of bytes the step history may take up.
+     */
+    public final static long DEFAULT_HISTORY_BYTES = 64L * 1024 * 1024;
+
+    public final static int DEFAULT_PLAYBACK_INTERVAL = 1000;
+
+    private volatile String latestStatic;
+    private volatile State latestDynamic;
+    private final CityJsonWriter jsonWriter = new CityJsonWriter();
+
+    /**
+     * The state the next delta is computed against (only kept while delta viewers are connected).
+     */
+    private JSONObject deltaBase;
+
+    private ScheduledExecutorService executor;
+    private StepHistory history;
+    /**
+     * Stores the steps in the history (deflating them), so that the web server's executor is not held up.
+     */
+    private ExecutorService historyExecutor;
 
     private final ReentrantReadWriteLock poolLock = new ReentrantReadWriteLock();
-    private final HashSet<WebSocketConnection> pool = new HashSet<WebSocketConnection>();
+    private final HashMap<WebSocketConnection, Viewer> pool = new HashMap<WebSocketConnection, Viewer>();
+    private int viewerCount = 0;
 
     private final BaseWebSocketHandler socketHandler = new BaseWebSocketHandler() {
 
@@ -46,9 +106,11 @@ public class Monitor {
             Lock lock = poolLock.writeLock();
             lock.lock();
             try {
-                pool.add(client);
-                if (latestStatic != null) client.send(latestStatic);
-                if (latestDynamic != null) client.send(latestDynamic);
+                Viewer viewer = new Viewer(++viewerCount, client, acceptsDeltas(client));
+                pool.put(client, viewer);
+                if (latestStatic != null) viewer.queueStatic(latestStatic);
+                State latest = latestDynamic;
+                if (latest != null) viewer.queueDynamic(latest.step, latest.json, null);
                 System.out.println(String.format("[ MONITOR ] %d viewer(s) connected", pool.size()));
             } finally {
                 lock.unlock();
@@ -60,20 +122,220 @@ public class Monitor {
             Lock lock = poolLock.writeLock();
             lock.lock();
             try {
-                pool.remove(client);
+                Viewer viewer = pool.remove(client);
+                if (viewer != null) viewer.stopPlayback();
+                if (viewer != null) System.out.println(String.format("[ MONITOR ] %s disconnected", viewer));
                 System.out.println(String.format("[ MONITOR ] %d viewer(s) connected", pool.size()));
             } finally {
                 lock.unlock();
             }
         }
+
+        @Override
+        public void onMessage(WebSocketConnection client, String message) {
+            Viewer viewer;
+            Lock lock = poolLock.readLock();
+            lock.lock();
+            try {
+                viewer = pool.get(client);
+            } finally {
+                lock.unlock();
+            }
+            if (viewer == null || history == null) return;
+            try {
+                JSONObject command = new JSONObject(message);
+                if (command.has("seek")) seek(viewer, command.getInt("seek"));
+                else if (command.has("play"))
+                    play(viewer, command.getInt("play"), command.optInt("interval", DEFAULT_PLAYBACK_INTERVAL));
+                else if (command.has("live")) goLive(viewer);
+            } catch (JSONException e) {
+                System.out.println(String.format("[ MONITOR ] Invalid command from viewer %d: %s", viewer.id, message));
+            }
+        }
     };
 
+    /**
+     * The complete state of a step.
+     */
+    private static class State {
+
+        private final int step;
+        private final String json;
+
+        State(int step, String json) {
+            this.step = step;
+            this.json = json;
+        }
+    }
+
+    /**
+     * A connected viewer and the messages that have not been sent to it yet.
+     */
+    static class Viewer {
+
+        private final int id;
+        private final boolean deltas;
+        private final Executor executor;
+        private final Consumer<String> out;
+
+        /**
+         * Whether the viewer follows the simulation (otherwise it is shown stored steps).
+         */
+        private boolean live = true;
+        private int position = -1;
+        private ScheduledFuture<?> playback;
+
+        /**
+         * The step of the last state queued while following the simulation (-1 if none).
+         */
+        private int step = -1;
+
+        private String staticData;
+        private String dynamic;
+        private String metrics;
+        private boolean scheduled = false;
+
+        private long sent = 0;
+        private long dropped = 0;
+        private int lag = 0;
+        private int maxLag = 0;
+
+        Viewer(int id, WebSocketConnection connection, boolean deltas) {
+            this(id, deltas, connection, connection::send);
+        }
+
+        /**
+         * @param executor the executor to send the messages on
+         * @param out sends a message to the viewer
+         */
+        Viewer(int id, boolean deltas, Executor executor, Consumer<String> out) {
+            this.id = id;
+            this.deltas = deltas;
+            this.executor = executor;
+            this.out = out;
+        }
+
+        /**
+         * Queues new static data (i.e. a new simulation), dropping a state of the previous one.
+         */
+        synchronized void queueStatic(String json) {
+            live = true;
+            if (dynamic != null) dropped++;
+            dynamic = null;
+            lag = 0;
+            step = -1;
+            staticData = json;
+            schedule();
+        }
+
+        /**
+         * Queues a new state, replacing the previous one if it has not been sent yet. A state that is not newer
+         * than the last queued one is skipped (e.g. the delta of a step the viewer got completely when it returned
+         * to the simulation).
+         * @param step the step of the state
+         * @param full the complete state
+         * @param delta the changes since the previous step or null
+         */
+        synchronized void queueDynamic(int step, String full, String delta) {
+            if (!live || step <= this.step) return;
+            boolean replaced = dynamic != null;
+            if (replaced) dropped++;
+            // a delta only works if the viewer received the previous step
+            dynamic = deltas && delta != null && !replaced && this.step == step - 1? delta : full;
+            this.step = step;
+            lag++;
+            maxLag = Math.max(maxLag, lag);
+            schedule();
+        }
+
+        synchronized void queueMetrics(String json) {
+            metrics = json;
+            schedule();
+        }
+
+        /**
+         * Stops following the simulation and discards a queued state.
+         */
+        synchronized void leaveLive() {
+            live = false;
+            dynamic = null;
+            lag = 0;
+            step = -1;
+        }
+
+        synchronized void enterLive() {
+            live = true;
+        }
+
+        synchronized boolean isLive() {
+            return live;
+        }
+
+        void stopPlayback() {
+            if (playback != null) playback.cancel(false);
+            playback = null;
+        }
+
+        /**
+         * Sends a message directly (only on the web server's executor).
+         */
+        void send(String message) {
+            out.accept(message);
+            synchronized (this) {
+                sent++;
+            }
+        }
+
+        private void schedule() {
+            if (scheduled) return;
+            scheduled = true;
+            executor.execute(this::flush);
+        }
+
+        /**
+         * Sends all queued messages (on the web server's executor).
+         */
+        private void flush() {
+            String staticData, dynamic, metrics;
+            synchronized (this) {
+                staticData = this.staticData;
+                dynamic = this.dynamic;
+                metrics = this.metrics;
+                this.staticData = this.dynamic = this.metrics = null;
+                lag = 0;
+                scheduled = false;
+            }
+            for (String message: new String[]{staticData, dynamic, metrics}) {
+                if (message != null) send(message);
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("viewer %d%s: %d message(s) sent, %d state(s) dropped, lag %d (max %d) step(s)",
+                    id, deltas? " (deltas)" : "", sent, dropped, lag, maxLag);
+        }
+    }
+
     /**
      * Constructor.
      * Used by the massim server to create the "live" monitor.
      */
     public Monitor(int port) throws ExecutionException, InterruptedException {
-        ExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        this(port, DEFAULT_HISTORY_BYTES);
+    }
+
+    /**
+     * Creates the "live" monitor.
+     * @param port the port to listen on
+     * @param historyBytes the number of bytes the step history may take up (0 to disable it)
+     */
+    public Monitor(int port, long historyBytes) throws ExecutionException, InterruptedException {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        if (historyBytes > 0) {
+            history = new StepHistory(historyBytes);
+            historyExecutor = Executors.newSingleThreadExecutor();
+        }
         InetSocketAddress bind = new InetSocketAddress(port);
         String publicUri = "http://127.0.0.1:" + port + "/";
 
@@ -88,9 +350,11 @@ public class Monitor {
 
     /**
      * Creates a new monitor to watch replays with.
+     * Steps are read on demand, from the step stream (see {@link ReplayReader}) or from the group files of older
+     * replays, and can be requested in ranges (see {@link ReplayHandler}).
      * @param replayPath the path to a replay file
      */
-    Monitor(int port, String replayPath) throws ExecutionException, InterruptedException {
+    Monitor(int port, String replayPath) throws ExecutionException, InterruptedException, IOException {
         // read index.html from resources
         String html = new Scanner(Monitor.class.getClassLoader().getResourceAsStream("www/index.html"), "UTF-8")
             .useDelimiter("\\A")
@@ -102,51 +366,195 @@ public class Monitor {
 
         WebServer server = WebServers.createWebServer(executor, bind, URI.create(publicUri))
             .add(new EmbeddedResourceHandler("www"))
-            .add("/?/", new StringHttpHandler("text/html", html))
-            .add(new StaticFileHandler(replayPath))
+            .add("/?/", new StringHttpHandler("text/html", html));
+        File dir = new File(replayPath);
+        server.add(new ReplayHandler(ReplayReader.isReplay(dir)
+                ? new ReplayReader(dir)::readStep
+                : new GroupReplayReader(dir)::readStep));
+        server.add(new StaticFileHandler(replayPath))
             .start()
             .get();
 
         System.out.println(String.format("[ MONITOR ] Viewing replay %s on %s?/", replayPath, publicUri));
     }
 
-    private void broadcast(String message) {
+    private static boolean acceptsDeltas(WebSocketConnection client) {
+        try {
+            String protocol = client.httpRequest().queryParam("protocol");
+            return protocol != null && Integer.parseInt(protocol) >= DELTA_PROTOCOL;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues a message for all viewers.
+     * @param queue the viewers' queue method for the type of message
+     */
+    private void broadcast(Consumer<Viewer> queue) {
         Lock lock = poolLock.readLock();
         lock.lock();
         try {
-            for (WebSocketConnection client: this.pool) {
-                client.send(message);
+            for (Viewer viewer: this.pool.values()) {
+                queue.accept(viewer);
             }
         } finally {
             lock.unlock();
         }
     }
 
+    private boolean hasDeltaViewers() {
+        Lock lock = poolLock.readLock();
+        lock.lock();
+        try {
+            return pool.values().stream().anyMatch(viewer -> viewer.deltas);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the message counters of all connected viewers (one line per viewer)
+     */
+    public String viewerSummary() {
+        Lock lock = poolLock.readLock();
+        lock.lock();
+        try {
+            if (pool.isEmpty()) return "No viewers connected.";
+            return pool.values().stream()
+                    .sorted(Comparator.comparingInt(viewer -> viewer.id))
+                    .map(Viewer::toString)
+                    .collect(Collectors.joining("\n"));
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Updates the current state of the monitor.
      * Called by the massim server after each step.
      */
     public void updateState(WorldData worldData){
         if (worldData instanceof StaticCityData) {
-            this.latestStatic = staticToJson((StaticCityData) worldData);
-            this.broadcast(this.latestStatic);
+            String json = staticToJson((StaticCityData) worldData);
+            this.latestStatic = json;
+            this.deltaBase = null;
+            if (history != null) {
+                historyExecutor.execute(history::clear);
+                executor.execute(() -> broadcast(Viewer::stopPlayback));
+            }
+            this.broadcast(viewer -> viewer.queueStatic(json));
         } else if (worldData instanceof DynamicCityData) {
-            this.latestDynamic = dynamicToJson((DynamicCityData) worldData);
-            this.broadcast(this.latestDynamic);
+            DynamicCityData data = (DynamicCityData) worldData;
+            String json, delta;
+            synchronized (jsonWriter) {
+                json = jsonWriter.write(data).toString();
+                delta = deltaToJson(data.step);
+            }
+            this.latestDynamic = new State(data.step, json);
+            if (history != null) historyExecutor.execute(() -> history.add(data.step, json));
+            this.broadcast(viewer -> viewer.queueDynamic(data.step, json, delta));
+        }
+    }
+
+    /**
+     * Shows a stored step to a viewer (which stops following the simulation).
+     * Only called on the web server's executor.
+     * @param step the step (moved into the range of stored steps)
+     */
+    private void seek(Viewer viewer, int step) {
+        viewer.stopPlayback();
+        if (history.first() < 0) {
+            goLive(viewer);
+            return;
         }
+        viewer.leaveLive();
+        showStep(viewer, Math.min(Math.max(step, history.first()), history.last()));
+        sendHistoryStatus(viewer);
+    }
+
+    /**
+     * Plays the stored steps to a viewer, starting at the given step.
+     * Only called on the web server's executor.
+     */
+    private void play(Viewer viewer, int step, int interval) {
+        seek(viewer, step);
+        if (viewer.isLive()) return;
+        int period = Math.max(10, interval);
+        viewer.playback = executor.scheduleAtFixedRate(() -> {
+            int next = Math.max(viewer.position + 1, history.first());
+            if (next > history.last() || history.first() < 0) goLive(viewer);
+            else showStep(viewer, next);
+        }, period, period, TimeUnit.MILLISECONDS);
+        sendHistoryStatus(viewer);
+    }
+
+    /**
+     * Lets a viewer follow the simulation again, starting with the latest state (unless a newer state has already
+     * been queued for it).
+     * Only called on the web server's executor.
+     */
+    private void goLive(Viewer viewer) {
+        viewer.stopPlayback();
+        viewer.enterLive();
+        State latest = latestDynamic;
+        if (latest != null) viewer.queueDynamic(latest.step, latest.json, null);
+        sendHistoryStatus(viewer);
+    }
+
+    private void showStep(Viewer viewer, int step) {
+        String json = history.get(step);
+        if (json == null) return;
+        viewer.position = step;
+        viewer.send(json);
+    }
+
+    private void sendHistoryStatus(Viewer viewer) {
+        viewer.send(new JSONObject().put("history", new JSONObject()
+                .put("first", history.first())
+                .put("last", history.last())
+                .put("live", viewer.isLive())
+                .put("playing", viewer.playback != null))
+                .toString());
+    }
+
+    /**
+     * Sends the current step metrics of the server to all viewers.
+     * @param metrics the step metrics (as created by the server's profiler)
+     */
+    public void updateMetrics(JSONObject metrics) {
+        String json = new JSONObject().put("metrics", metrics).toString();
+        this.broadcast(viewer -> viewer.queueMetrics(json));
     }
 
     private String staticToJson(StaticCityData data) {
-        JSONObject d = new JSONObject(data);
-        return d.toString();
+        synchronized (jsonWriter) {
+            return jsonWriter.write(data).toString();
+        }
     }
 
-    private String dynamicToJson(DynamicCityData data) {
-        JSONObject d = new JSONObject(data);
-        return d.toString();
+    /**
+     * Computes the delta from the previous step to the step the JSON writer currently holds.
+     * @param step the step in the writer
+     * @return the delta message or null if there is no delta to send
+     */
+    private String deltaToJson(int step) {
+        if (!hasDeltaViewers()) {
+            deltaBase = null;
+            return null;
+        }
+        JSONObject json = jsonWriter.toJSONObject();
+        JSONObject base = deltaBase;
+        deltaBase = json;
+        if (base == null || base.optInt("step", -1) != step - 1) return null;
+        return new JSONObject()
+                .put("base", base.getInt("step"))
+                .put("step", step)
+                .put("delta", JsonDelta.diff(base, json))
+                .toString();
     }
 
-    public static void main(String[] args) throws ExecutionException, InterruptedException {
+    public static void main(String[] args) throws ExecutionException, InterruptedException, IOException {
         int port = 8000;
         String path = null;
 
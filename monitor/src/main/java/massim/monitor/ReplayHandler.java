@@ -0,0 +1,173 @@
+package massim.monitor;
+
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the steps of a replay to the browser, mapping each step to its JSON:
+ * <ul>
+ *     <li><code>/steps?from=&lt;step&gt;&amp;count=&lt;n&gt;</code>: any range of up to {@link #MAX_RANGE} steps</li>
+ *     <li><code>/&lt;first step&gt;.json</code>: a group of {@link GroupReplayReader#GROUP_SIZE} steps (as in
+ *     the layout of older replays)</li>
+ * </ul>
+ * Responses are gzipped if the browser accepts it. The steps are read (and the responses built) on a background
+ * thread, so that the web server's executor is not held up by the disk (or by applying deltas). After each range,
+ * the following range is read in advance, so that playing a replay does not wait either.
+ * All other requests (e.g. for <code>static.json</code>) are passed on to the next handler.
+ */
+class ReplayHandler implements HttpHandler {
+
+    /**
+     * Reads the JSON of single steps.
+     */
+    interface StepSource {
+        /**
+         * @return the step's JSON or null if the step is not in the replay
+         */
+        String readStep(int step) throws IOException;
+    }
+
+    final static int MAX_RANGE = 100;
+    private final static int DEFAULT_RANGE = 20;
+    private final static int CACHE_SIZE = 2 * MAX_RANGE;
+    private final static Pattern GROUP_REQUEST = Pattern.compile("^/(\\d+)\\.json$");
+
+    private final StepSource source;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replay-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The most recently read (or prefetched) steps.
+     */
+    private final Map<Integer, String> cache = new LinkedHashMap<Integer, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    ReplayHandler(StepSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+        String path = request.uri();
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+
+        int first, count;
+        boolean range = path.equals("/steps");
+        if (range) {
+            try {
+                first = Integer.parseInt(request.queryParam("from"));
+                String countParam = request.queryParam("count");
+                count = countParam == null? DEFAULT_RANGE : Integer.parseInt(countParam);
+            } catch (NumberFormatException e) {
+                response.status(400).end();
+                return;
+            }
+            count = Math.min(Math.max(count, 1), MAX_RANGE);
+        }
+        else {
+            Matcher matcher = GROUP_REQUEST.matcher(path);
+            if (!matcher.matches()) {
+                control.nextHandler();
+                return;
+            }
+            first = Integer.parseInt(matcher.group(1));
+            count = GroupReplayReader.GROUP_SIZE;
+        }
+
+        String encodings = request.header("Accept-Encoding");
+        boolean gzip = encodings != null && encodings.contains("gzip");
+        int from = first, size = count;
+        reader.execute(() -> {
+            byte[] content;
+            try {
+                content = readRange(from, size, gzip);
+            } catch (IOException e) {
+                control.execute(() -> response.error(e));
+                return;
+            }
+            control.execute(() -> {
+                if (content == null) {
+                    response.status(404).end();
+                    return;
+                }
+                response.header("Content-Type", "application/json; charset=utf-8");
+                if (gzip) response.header("Content-Encoding", "gzip");
+                response.content(content).end();
+            });
+            if (range) reader.execute(() -> prefetch(from + size, size));
+        });
+    }
+
+    /**
+     * Reads a range of steps (on the reader thread).
+     * @return the content of the response or null if not even the first step is in the replay
+     */
+    private byte[] readRange(int first, int count, boolean gzip) throws IOException {
+        StringBuilder steps = new StringBuilder("{");
+        for (int step = first; step < first + count; step++) {
+            String json = read(step);
+            if (json == null) break;
+            if (steps.length() > 1) steps.append(',');
+            steps.append('"').append(step).append("\":").append(json);
+        }
+        if (steps.length() == 1) return null;
+        byte[] content = steps.append('}').toString().getBytes(StandardCharsets.UTF_8);
+        return gzip? gzip(content) : content;
+    }
+
+    /**
+     * @return the step's JSON (from the cache if possible) or null
+     */
+    private String read(int step) throws IOException {
+        synchronized (cache) {
+            String json = cache.get(step);
+            if (json != null) return json;
+        }
+        String json = source.readStep(step);
+        if (json != null) {
+            synchronized (cache) {
+                cache.put(step, json);
+            }
+        }
+        return json;
+    }
+
+    private void prefetch(int first, int count) {
+        try {
+            for (int step = first; step < first + count; step++) {
+                if (read(step) == null) return;
+            }
+        } catch (IOException e) {
+            System.out.println(String.format("[ MONITOR ] Could not prefetch steps: %s", e.getMessage()));
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+}
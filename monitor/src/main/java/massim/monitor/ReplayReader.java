@@ -0,0 +1,324 @@
+package massim.monitor;
+
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the steps of a replay written by the server's replay writer.
+ * <br>
+ * A replay directory contains the static data as <code>static.json</code> and all steps in
+ * <code>steps.dat</code>: a header ({@link #MAGIC}, {@link #VERSION}, flags, keyframe interval) followed by one
+ * record per step. Each record consists of its type ({@link #KEYFRAME} or {@link #DELTA}, 1 byte), the length of
+ * its payload (varint) and the payload: the UTF-8 encoded JSON of the complete step (keyframe) or of the changes
+ * since the previous step (see {@link JsonDelta}), deflated if the {@link #FLAG_DEFLATE} flag is set.
+ * <code>steps.idx</code> holds one entry per record: the step (4 byte int), the offset of the record in
+ * <code>steps.dat</code> (8 byte long) and the record type (1 byte). All fixed-size numbers are big-endian.
+ * <br>
+ * To read a step, the reader starts at the closest keyframe before it (or the last step it has read, if that is
+ * closer) and applies the deltas. It can be used while the replay is still being written; it picks up new steps
+ * when they are requested. Step files of at least {@link #MAP_THRESHOLD} bytes are memory-mapped.
+ */
+public class ReplayReader implements Closeable {
+
+    public final static String STATIC_FILE = "static.json";
+    public final static String DATA_FILE = "steps.dat";
+    public final static String INDEX_FILE = "steps.idx";
+
+    public final static int MAGIC = 0x4d535250; // "MSRP"
+    public final static int VERSION = 2;
+
+    /**
+     * Header flag: payloads are compressed with deflate.
+     */
+    public final static int FLAG_DEFLATE = 1;
+
+    /**
+     * Record types.
+     */
+    public final static byte KEYFRAME = 0;
+    public final static byte DELTA = 1;
+
+    /**
+     * Size of the header of the data file and of each index entry in bytes.
+     */
+    public final static int HEADER_SIZE = 13;
+    public final static int INDEX_ENTRY_SIZE = 13;
+
+    /**
+     * Minimum size of a data file to be memory-mapped (smaller ones are read with seek and read).
+     */
+    public final static long MAP_THRESHOLD = 8 * 1024 * 1024;
+
+    private final File dir;
+    private final RandomAccessFile data;
+    private final boolean deflate;
+    private final Inflater inflater = new Inflater();
+    private MappedByteBuffer mapped;
+
+    private int[] steps = new int[0];
+    private long[] offsets = new long[0];
+    private byte[] types = new byte[0];
+    private int size = 0;
+    private long indexLength = 0;
+
+    /**
+     * The last reconstructed step (to play a replay without going back to the keyframe each time).
+     */
+    private int currentIndex = -1;
+    private JSONObject current;
+
+    /**
+     * Opens a replay.
+     * @param dir the replay directory
+     * @throws IOException if the replay has no step data or is not a valid replay
+     */
+    public ReplayReader(File dir) throws IOException {
+        this.dir = dir;
+        this.data = new RandomAccessFile(new File(dir, DATA_FILE), "r");
+        if (data.length() < HEADER_SIZE || data.readInt() != MAGIC) {
+            data.close();
+            throw new IOException("Not a replay: " + new File(dir, DATA_FILE));
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            data.close();
+            throw new IOException("Unsupported replay version " + version);
+        }
+        deflate = (data.readByte() & FLAG_DEFLATE) != 0;
+        data.readInt(); // keyframe interval (keyframes are marked in the index)
+        refresh();
+    }
+
+    /**
+     * @param dir a directory
+     * @return true if the directory contains a replay in this format
+     */
+    public static boolean isReplay(File dir) {
+        return new File(dir, DATA_FILE).isFile();
+    }
+
+    /**
+     * Writes an unsigned varint.
+     * @param out the stream to write to
+     * @param value a non-negative value
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @param in the stream to read from
+     * @return the value
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads all index entries that have been appended since the last call.
+     * If the index is missing, it is rebuilt from the data file.
+     */
+    private void refresh() throws IOException {
+        map();
+        File indexFile = new File(dir, INDEX_FILE);
+        if (!indexFile.isFile()) {
+            scanData();
+            return;
+        }
+        long length = indexFile.length() - indexFile.length() % INDEX_ENTRY_SIZE; // ignore partial entries
+        if (length <= indexLength) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.skip(indexLength) != indexLength) return;
+            for (long pos = indexLength; pos < length; pos += INDEX_ENTRY_SIZE) {
+                add(in.readInt(), in.readLong(), in.readByte());
+            }
+        }
+        indexLength = length;
+    }
+
+    /**
+     * Maps the data file (again, if it has grown) if it is large enough.
+     */
+    private void map() throws IOException {
+        long length = data.length();
+        if (length < MAP_THRESHOLD || length > Integer.MAX_VALUE) return;
+        if (mapped != null && mapped.capacity() == length) return;
+        mapped = data.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    /**
+     * Builds the index by reading all records of the data file that are not indexed yet.
+     */
+    private void scanData() throws IOException {
+        long offset = HEADER_SIZE;
+        if (size > 0) { // skip the last known record
+            data.seek(offsets[size - 1] + 1);
+            int length = readVarInt(data);
+            offset = data.getFilePointer() + length;
+        }
+        while (offset < data.length()) {
+            data.seek(offset);
+            byte type = data.readByte();
+            int length = readVarInt(data);
+            if (data.getFilePointer() + length > data.length()) break; // incomplete record
+            JSONObject payload = readPayload(length);
+            int step;
+            if (type == KEYFRAME) step = payload.getInt("step");
+            else {
+                JSONObject set = payload.optJSONObject("s");
+                step = set != null && set.has("step")? set.getInt("step") : steps[size - 1] + 1;
+            }
+            add(step, offset, type);
+            offset = data.getFilePointer();
+        }
+    }
+
+    private void add(int step, long offset, byte type) {
+        if (size == steps.length) {
+            steps = Arrays.copyOf(steps, Math.max(16, size * 2));
+            offsets = Arrays.copyOf(offsets, steps.length);
+            types = Arrays.copyOf(types, steps.length);
+        }
+        steps[size] = step;
+        offsets[size] = offset;
+        types[size] = type;
+        size++;
+    }
+
+    /**
+     * @return the number of steps available (so far)
+     */
+    public synchronized int getStepCount() {
+        return size;
+    }
+
+    /**
+     * Reads the JSON of one step.
+     * @param step the step to read
+     * @return the step's JSON or null if the step is not (yet) in the replay
+     * @throws IOException if the replay could not be read
+     */
+    public synchronized String readStep(int step) throws IOException {
+        int i = find(step);
+        if (i < 0) {
+            refresh();
+            i = find(step);
+            if (i < 0) return null;
+        }
+
+        int keyframe = i;
+        while (keyframe > 0 && types[keyframe] != KEYFRAME) keyframe--;
+        int start;
+        if (current != null && currentIndex >= keyframe && currentIndex <= i) start = currentIndex + 1;
+        else {
+            current = readRecord(keyframe);
+            start = keyframe + 1;
+        }
+        for (int k = start; k <= i; k++) {
+            JSONObject record = readRecord(k);
+            current = types[k] == KEYFRAME? record : JsonDelta.apply(current, record);
+        }
+        currentIndex = i;
+        return current.toString();
+    }
+
+    /**
+     * @return the payload of the i-th record
+     */
+    private JSONObject readRecord(int i) throws IOException {
+        if (mapped != null && offsets[i] + 1 < mapped.capacity()) {
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position((int) offsets[i] + 1);
+            int length = readVarInt(buffer);
+            if (length <= buffer.remaining()) {
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                return decode(payload);
+            }
+        }
+        data.seek(offsets[i] + 1);
+        return readPayload(readVarInt(data));
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35 && buffer.hasRemaining(); shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads (and inflates) a payload at the current position of the data file.
+     */
+    private JSONObject readPayload(int length) throws IOException {
+        byte[] payload = new byte[length];
+        data.readFully(payload);
+        return decode(payload);
+    }
+
+    /**
+     * Inflates (if necessary) and parses a payload.
+     */
+    private JSONObject decode(byte[] payload) throws IOException {
+        int length = payload.length;
+        if (deflate) {
+            inflater.reset();
+            inflater.setInput(payload);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 4);
+            byte[] buffer = new byte[8192];
+            try {
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        throw new IOException("Truncated record");
+                    out.write(buffer, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt record: " + e.getMessage());
+            }
+            payload = out.toByteArray();
+        }
+        return new JSONObject(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the index of the step's entry or -1
+     */
+    private int find(int step) {
+        // steps are usually written in order starting at 0
+        if (step >= 0 && step < size && steps[step] == step) return step;
+        for (int i = size - 1; i >= 0; i--) {
+            if (steps[i] == step) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mapped = null;
+        inflater.end();
+        data.close();
+    }
+}
@@ -0,0 +1,160 @@
+package massim.monitor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the JSON of the most recent steps of a live simulation (deflated) in a ring buffer, so that viewers can
+ * go back in time without a replay. The oldest steps are removed as soon as the stored steps take up more bytes
+ * than the budget.
+ * <br>
+ * Steps are deflated before the history is locked, so that reading steps is not held up by storing them.
+ */
+class StepHistory {
+
+    private final long budget;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+    private final byte[] deflateChunk = new byte[8192];
+    private final Inflater inflater = new Inflater();
+    private final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+    private final byte[] inflateChunk = new byte[8192];
+
+    private int[] steps = new int[64];
+    private byte[][] data = new byte[64][];
+    private int head = 0;
+    private int count = 0;
+    private long size = 0;
+
+    /**
+     * @param budget the maximum number of bytes the stored (deflated) steps may take up
+     */
+    StepHistory(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Stores a step. If the step is not newer than the last stored step (i.e. a new simulation started), all
+     * stored steps are removed first.
+     * @param step the step
+     * @param json the JSON of the step
+     */
+    void add(int step, String json) {
+        byte[] bytes = deflate(json.getBytes(StandardCharsets.UTF_8));
+        store(step, bytes);
+    }
+
+    private synchronized void store(int step, byte[] bytes) {
+        if (count > 0 && step <= last()) clear();
+        if (bytes.length > budget) return;
+        if (count == steps.length) grow();
+        int i = (head + count) % steps.length;
+        steps[i] = step;
+        data[i] = bytes;
+        count++;
+        size += bytes.length;
+        while (size > budget) {
+            size -= data[head].length;
+            data[head] = null;
+            head = (head + 1) % steps.length;
+            count--;
+        }
+    }
+
+    /**
+     * @param step a step
+     * @return the JSON of the step or null if the step is not stored (anymore)
+     */
+    synchronized String get(int step) {
+        int i = find(step);
+        if (i < 0) return null;
+        return new String(inflate(data[i]), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the oldest stored step or -1 if no step is stored
+     */
+    synchronized int first() {
+        return count == 0? -1 : steps[head];
+    }
+
+    /**
+     * @return the newest stored step or -1 if no step is stored
+     */
+    synchronized int last() {
+        return count == 0? -1 : steps[(head + count - 1) % steps.length];
+    }
+
+    /**
+     * @return the number of bytes the stored steps take up
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(data, null);
+        head = 0;
+        count = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the position of the step in the ring or -1
+     */
+    private int find(int step) {
+        if (count == 0) return -1;
+        // steps are usually stored without gaps
+        int offset = step - steps[head];
+        if (offset >= 0 && offset < count && steps[(head + offset) % steps.length] == step)
+            return (head + offset) % steps.length;
+        for (int k = 0; k < count; k++) {
+            int i = (head + k) % steps.length;
+            if (steps[i] == step) return i;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] newSteps = new int[steps.length * 2];
+        byte[][] newData = new byte[steps.length * 2][];
+        for (int k = 0; k < count; k++) {
+            newSteps[k] = steps[(head + k) % steps.length];
+            newData[k] = data[(head + k) % steps.length];
+        }
+        steps = newSteps;
+        data = newData;
+        head = 0;
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        synchronized (deflater) {
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            deflated.reset();
+            while (!deflater.finished()) deflated.write(deflateChunk, 0, deflater.deflate(deflateChunk));
+            return deflated.toByteArray();
+        }
+    }
+
+    private byte[] inflate(byte[] bytes) {
+        inflater.reset();
+        inflater.setInput(bytes);
+        inflated.reset();
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(inflateChunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated.write(inflateChunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt step in history", e);
+        }
+        return inflated.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+package massim.monitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the order of the messages a viewer receives.
+ */
+public class MonitorTest {
+
+    /**
+     * Sends the messages of a viewer only when told to (like the web server's executor would, eventually).
+     */
+    private static class Client {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<String> received = new ArrayList<>();
+        private final Monitor.Viewer viewer = new Monitor.Viewer(1, true, tasks::add, received::add);
+
+        List<String> flush() {
+            new ArrayList<>(tasks).forEach(Runnable::run);
+            tasks.clear();
+            return received;
+        }
+    }
+
+    private static String full(int step) {
+        return "full" + step;
+    }
+
+    private static String delta(int step) {
+        return "delta" + step;
+    }
+
+    @Test
+    public void deltasFollowTheirBase() {
+        Client client = new Client();
+        client.viewer.queueStatic("static");
+        client.viewer.queueDynamic(0, full(0), null);
+        client.flush();
+        client.viewer.queueDynamic(1, full(1), delta(1));
+        client.flush();
+        // the viewer lags behind: the newer state replaces the queued one and has to be sent completely
+        client.viewer.queueDynamic(2, full(2), delta(2));
+        client.viewer.queueDynamic(3, full(3), delta(3));
+        client.flush();
+        client.viewer.queueDynamic(4, full(4), delta(4));
+        assert client.flush().toString().equals("[static, full0, delta1, full3, delta4]");
+    }
+
+    @Test
+    public void returningViewerSkipsStaleStates() {
+        // the viewer returns to the simulation with the latest state, which is sent before the step's delta
+        Client client = new Client();
+        client.viewer.queueDynamic(0, full(0), null);
+        client.flush();
+        client.viewer.leaveLive();
+        client.viewer.queueDynamic(1, full(1), delta(1));
+        client.viewer.enterLive();
+        client.viewer.queueDynamic(2, full(2), null);
+        client.flush();
+        client.viewer.queueDynamic(2, full(2), delta(2));
+        client.viewer.queueDynamic(3, full(3), delta(3));
+        assert client.flush().toString().equals("[full0, full2, delta3]");
+
+        // the step's delta is queued before the viewer gets the (older) latest state
+        client = new Client();
+        client.viewer.queueDynamic(0, full(0), null);
+        client.flush();
+        client.viewer.leaveLive();
+        client.viewer.enterLive();
+        client.viewer.queueDynamic(2, full(2), delta(2));
+        client.viewer.queueDynamic(1, full(1), null);
+        client.flush();
+        client.viewer.queueDynamic(3, full(3), delta(3));
+        assert client.flush().toString().equals("[full0, full2, delta3]");
+    }
+
+    @Test
+    public void newSimulationStartsOver() {
+        Client client = new Client();
+        client.viewer.queueDynamic(5, full(5), null);
+        client.flush();
+        client.viewer.queueStatic("static");
+        client.viewer.queueDynamic(0, full(0), null);
+        client.viewer.queueMetrics("metrics");
+        client.flush();
+        client.viewer.queueDynamic(1, full(1), delta(1));
+        assert client.flush().toString().equals("[full5, static, full0, metrics, delta1]");
+    }
+}
@@ -0,0 +1,64 @@
+package massim.monitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests storing the recent steps of a simulation.
+ */
+public class StepHistoryTest {
+
+    private static String json(int step) {
+        StringBuilder json = new StringBuilder("{\"step\":").append(step).append(",\"entities\":[");
+        for (int i = 0; i < 100; i++)
+            json.append("{\"name\":\"agent").append(i).append("\",\"x\":").append(i * step).append("},");
+        return json.append("{}]}").toString();
+    }
+
+    @Test
+    public void keepsRecentSteps() {
+        StepHistory history = new StepHistory(Long.MAX_VALUE);
+        assert history.first() == -1 && history.last() == -1;
+        for (int step = 0; step < 200; step++) history.add(step, json(step));
+        assert history.first() == 0 && history.last() == 199;
+        assert history.get(123).equals(json(123));
+        assert history.get(200) == null;
+
+        // the oldest steps are removed to stay within the budget
+        long budget = history.size() / 4;
+        history = new StepHistory(budget);
+        for (int step = 0; step < 200; step++) history.add(step, json(step));
+        assert history.size() <= budget;
+        assert history.first() > 100 && history.last() == 199;
+        assert history.get(history.first() - 1) == null;
+        assert history.get(history.first()).equals(json(history.first()));
+
+        // a new simulation replaces the stored steps
+        history.add(0, json(0));
+        assert history.first() == 0 && history.last() == 0;
+    }
+
+    @Test
+    public void readsWhileStoring() throws Exception {
+        StepHistory history = new StepHistory(Long.MAX_VALUE);
+        history.add(0, json(0));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> storing = executor.submit(() -> {
+                for (int step = 1; step < 500; step++) history.add(step, json(step));
+            });
+            List<String> read = new ArrayList<>();
+            while (!storing.isDone()) read.add(history.get(history.last()));
+            storing.get();
+            for (String json : read) assert json.startsWith("{\"step\":");
+            assert history.get(499).equals(json(499));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import massim.protocol.Message;
 import massim.protocol.MessageContent;
 
 import javax.xml.bind.annotation.*;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -11,11 +12,14 @@ import java.util.List;
 /**
  * A generic action.
  * Annotated to support JAXB un/marshalling to/from a message XML document.
+ * Serializable as part of a simulation snapshot.
  * @author ta10
  */
 @XmlRootElement(name = "action") //the whole message object
 @XmlAccessorType(XmlAccessType.NONE) //use only annotated things for XML
-public class Action extends MessageContent {
+public class Action extends MessageContent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public final static String NO_ACTION = "noAction";
     private final static String UNKNOWN_ACTION = "unknownAction";
@@ -86,4 +90,16 @@ public class Action extends MessageContent {
     public List<String> getParameters(){
         return params == null? new LinkedList<>() : params;
     }
+
+    /**
+     * Keeps the standard actions unique when deserialized (they are compared by identity).
+     */
+    private Object readResolve(){
+        if (params == null && id == -1) {
+            for (Action std : new Action[]{STD_NO_ACTION, STD_UNKNOWN_ACTION, STD_RANDOM_FAIL_ACTION}) {
+                if (std.type.equals(type)) return std;
+            }
+        }
+        return this;
+    }
 }
\ No newline at end of file
@@ -6,13 +6,16 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
 
 /**
  * Holds data of a role for serialization.
  */
 @XmlRootElement(name = "role")
 @XmlAccessorType(XmlAccessType.NONE)
-public class RoleData {
+public class RoleData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute
     public String name;
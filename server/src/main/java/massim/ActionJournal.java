@@ -0,0 +1,162 @@
+package massim;
+
+import massim.config.TeamConfig;
+import massim.protocol.StaticWorldData;
+import massim.protocol.messagecontent.Action;
+import massim.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Records everything the course of a simulation depends on, so that it can be re-simulated deterministically
+ * (see {@link JournalPlayer}) instead of storing the state of each step.
+ * <br>
+ * A journal contains one JSON object per line. The first line holds the random seed, the number of steps, the
+ * complete sim config, the teams (with their agents, in the order they were passed to the simulation) and the
+ * static data of the simulation. Each further line describes one step: the console commands the simulation
+ * received before the step, the actions exactly as they were passed to the simulation (action type followed by
+ * the parameters), the agents whose actions were replaced by a random fail and the result of the simulation
+ * after the step (for verification).
+ */
+public class ActionJournal {
+
+    public final static int VERSION = 1;
+
+    private final File file;
+    private Writer writer;
+    private List<String[]> commands = new ArrayList<>();
+    private JSONObject currentStep;
+
+    /**
+     * Creates a journal and writes its header.
+     * @param file the file to write the journal to
+     * @param seed the seed the RNG was initialized with before the simulation was created
+     * @param steps the number of steps of the simulation
+     * @param simConfig the sim config the simulation was created with
+     * @param teams the teams of the simulation
+     * @param staticData the static data of the simulation
+     * @throws IOException if the journal could not be created
+     */
+    public ActionJournal(File file, long seed, int steps, JSONObject simConfig, Set<TeamConfig> teams,
+                         StaticWorldData staticData) throws IOException {
+        this.file = file;
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+
+        JSONArray teamsJSON = new JSONArray();
+        teams.forEach(team -> teamsJSON.put(new JSONObject()
+                .put("name", team.getName())
+                .put("agents", new JSONArray(team.getAgentNames()))));
+        writeLine(new JSONObject()
+                .put("journal", VERSION)
+                .put("seed", seed)
+                .put("steps", steps)
+                .put("config", simConfig)
+                .put("teams", teamsJSON)
+                .put("static", new JSONObject(staticData)));
+    }
+
+    /**
+     * Continues an existing journal (e.g. after the simulation was resumed from it).
+     * @param file the journal file
+     * @param length the length of the valid part of the journal (anything after it is removed)
+     * @throws IOException if the journal could not be opened
+     */
+    public ActionJournal(File file, long length) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records a command that is passed to the simulation before the next step.
+     * @param command the split command
+     */
+    public void recordCommand(String[] command) {
+        commands.add(command);
+    }
+
+    /**
+     * Records the actions of a step. Needs to be called before the actions are passed to the simulation.
+     * @param step the step
+     * @param actions the actions of all agents
+     */
+    public void beginStep(int step, Map<String, Action> actions) {
+        JSONArray commandsJSON = new JSONArray();
+        commands.forEach(command -> commandsJSON.put(new JSONArray(Arrays.asList(command))));
+        commands.clear();
+        JSONObject actionsJSON = new JSONObject();
+        actions.forEach((agent, action) -> actionsJSON.put(agent, toJSON(action)));
+        currentStep = new JSONObject()
+                .put("step", step)
+                .put("commands", commandsJSON)
+                .put("actions", actionsJSON);
+    }
+
+    /**
+     * Completes and writes the entry of the current step. Needs to be called after the simulation executed the step.
+     * @param actions the actions after the step (i.e. with actions replaced by random fails)
+     * @param result the result of the simulation after the step
+     */
+    public void endStep(Map<String, Action> actions, JSONObject result) {
+        if (currentStep == null) return;
+        JSONArray randomFails = new JSONArray();
+        actions.forEach((agent, action) -> {
+            if (action == Action.STD_RANDOM_FAIL_ACTION) randomFails.put(agent);
+        });
+        writeLine(currentStep.put("randomFail", randomFails).put("result", result));
+        currentStep = null;
+    }
+
+    /**
+     * @return the action type followed by the action's parameters
+     */
+    static JSONArray toJSON(Action action) {
+        JSONArray json = new JSONArray().put(action.getActionType());
+        action.getParameters().forEach(json::put);
+        return json;
+    }
+
+    /**
+     * @return the action described by the JSON array (see {@link #toJSON(Action)})
+     */
+    static Action toAction(JSONArray json) {
+        String type = json.getString(0);
+        if (json.length() == 1 && type.equals(Action.NO_ACTION)) return Action.STD_NO_ACTION;
+        String[] params = new String[json.length() - 1];
+        for (int i = 0; i < params.length; i++) params[i] = json.getString(i + 1);
+        return new Action(type, params);
+    }
+
+    private void writeLine(JSONObject json) {
+        if (writer == null) return;
+        try {
+            json.write(writer);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not write journal " + file + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    public void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not close journal " + file + ": " + e.getMessage());
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,41 @@
+package massim;
+
+import massim.protocol.messagecontent.Action;
+import massim.protocol.messagecontent.RequestAction;
+import massim.protocol.messagecontent.SimEnd;
+import massim.protocol.messagecontent.SimStart;
+
+import java.util.Map;
+
+/**
+ * Delivers percepts to the agents and collects their actions.
+ */
+interface AgentHandler {
+
+    /**
+     * Sends initial percepts to the agents.
+     * @param match name of the match the percepts belong to
+     * @param initialPercepts mapping from agent names to initial percepts
+     */
+    void handleInitialPercepts(String match, Map<String, SimStart> initialPercepts);
+
+    /**
+     * Sends the step percepts to the agents and waits for their actions.
+     * @param percepts mapping from agent names to percepts of the current simulation state
+     * @param profiler receives the agents' response times and the time needed to serialize the percepts
+     * @return mapping from agent names to actions received in response
+     */
+    Map<String, Action> requestActions(Map<String, RequestAction> percepts, StepProfiler profiler);
+
+    /**
+     * Sends sim-end percepts to the agents.
+     * @param match name of the match the percepts belong to
+     * @param finalPercepts mapping from agent names to sim-end percepts
+     */
+    void handleFinalPercepts(String match, Map<String, SimEnd> finalPercepts);
+
+    /**
+     * Stops all related threads and connections.
+     */
+    void stop();
+}
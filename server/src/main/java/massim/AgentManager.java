@@ -27,11 +27,18 @@ import java.util.concurrent.atomic.AtomicLong;
  * Handles agent accounts and network connections to all agents.
  * @author ta10
  */
-class AgentManager {
+class AgentManager implements AgentHandler {
 
     private Map<String, AgentProxy> agents = new HashMap<>();
 
+    /**
+     * The match each agent currently takes part in (agents of matches that run at the same time are disjoint).
+     */
+    private Map<String, String> agentMatches = new ConcurrentHashMap<>();
+
     private long agentTimeout;
+    private long minAgentTimeout;
+    private long disconnectedTimeout;
     private boolean disconnecting = false;
     private int maxPacketLength;
 
@@ -44,21 +51,27 @@ class AgentManager {
      * Creates a new agent manager responsible for sending and receiving messages.
      * @param teams a list of all teams to configure the manager for
      * @param agentTimeout the timeout to use for request-action messages (to wait for actions) in milliseconds
+     * @param minAgentTimeout the lower bound (in ms) for the timeout of agents that did not answer in time before
+     * @param disconnectedTimeout the time (in ms) to wait for agents that are not connected
      * @param maxPacketLength the maximum size of packets to <b>process</b> (they are received anyway, just not parsed
      *                        in case they are too big)
      */
-    AgentManager(List<TeamConfig> teams, long agentTimeout, int maxPacketLength) {
+    AgentManager(List<TeamConfig> teams, long agentTimeout, long minAgentTimeout, long disconnectedTimeout,
+                 int maxPacketLength) {
         teams.forEach(team -> team.getAgentNames().forEach((name) -> {
             agents.put(name, new AgentProxy(name, team.getName(), team.getPassword(name)));
         }));
         this.agentTimeout = agentTimeout;
+        this.minAgentTimeout = Math.min(minAgentTimeout, agentTimeout);
+        this.disconnectedTimeout = Math.min(disconnectedTimeout, agentTimeout);
         this.maxPacketLength = maxPacketLength;
     }
 
     /**
      * Stops all related threads and closes all sockets involved.
      */
-    void stop(){
+    @Override
+    public void stop(){
         disconnecting = true;
         agents.values().forEach(AgentProxy::close);
     }
@@ -69,7 +82,11 @@ class AgentManager {
      * @param agentName the name of the agent
      */
     void handleNewConnection(Socket s, String agentName){
-        if (agents.containsKey(agentName)) agents.get(agentName).handleNewConnection(s);
+        if (agents.containsKey(agentName)) {
+            String match = agentMatches.get(agentName);
+            if (match != null && !match.isEmpty()) Log.log(Log.Level.NORMAL, agentName + " belongs to match " + match);
+            agents.get(agentName).handleNewConnection(s);
+        }
     }
 
     /**
@@ -84,11 +101,17 @@ class AgentManager {
 
     /**
      * Sends initial percepts to the agents and stores them for later (possible agent reconnection).
+     * The agents are assigned to the given match until {@link #handleFinalPercepts(String, Map)} is called.
+     * @param match name of the match the percepts belong to
      * @param initialPercepts mapping from agent names to initial percepts
      */
-    void handleInitialPercepts(Map<String, SimStart> initialPercepts) {
+    @Override
+    public void handleInitialPercepts(String match, Map<String, SimStart> initialPercepts) {
         initialPercepts.forEach((agName, percept) -> {
             if (agents.containsKey(agName)){
+                String previous = agentMatches.put(agName, match);
+                if (previous != null && !previous.equals(match))
+                    Log.log(Log.Level.CRITICAL, "Agent " + agName + " is already part of match " + previous);
                 agents.get(agName).handleInitialPercept(percept);
             }
         });
@@ -96,18 +119,20 @@ class AgentManager {
 
     /**
      * Uses the percepts to send a request-action message and waits for the action answers.
-     * {@link #agentTimeout} is used to limit the waiting time per agent.
+     * The waiting time per agent is limited by its current timeout (see {@link AgentProxy#getTimeout()}), so the
+     * step ends as soon as all connected agents have answered.
      * @param percepts mapping from agent names to percepts of the current simulation state
      * @return mapping from agent names to actions received in response
      */
-    Map<String, Action> requestActions(Map<String, RequestAction> percepts) {
+    @Override
+    public Map<String, Action> requestActions(Map<String, RequestAction> percepts, StepProfiler profiler) {
         // each thread needs to countdown the latch when it finishes
         CountDownLatch latch = new CountDownLatch(percepts.keySet().size());
         Map<String, Action> resultMap = new ConcurrentHashMap<>();
         percepts.forEach((agName, percept) -> {
             // start a new thread to get each action
             new Thread(() -> {
-                Action action = agents.get(agName).requestAction(percept);
+                Action action = agents.get(agName).requestAction(percept, profiler);
                 resultMap.put(agName, action);
                 latch.countDown();
             }).start();
@@ -121,17 +146,47 @@ class AgentManager {
     }
 
     /**
-     * Sends sim-end percepts to the agents.
+     * Sends sim-end percepts to the agents and releases them from their match.
+     * @param match name of the match the percepts belong to
      * @param finalPercepts mapping from agent names to sim-end percepts
      */
-    void handleFinalPercepts(Map<String, SimEnd> finalPercepts) {
+    @Override
+    public void handleFinalPercepts(String match, Map<String, SimEnd> finalPercepts) {
         finalPercepts.forEach((agName, percept) -> {
             if (agents.containsKey(agName)){
+                agentMatches.remove(agName, match);
+                agents.get(agName).logStatistics();
+                agents.get(agName).resetStatistics();
                 agents.get(agName).handleFinalPercept(percept);
             }
         });
     }
 
+    /**
+     * Determines how long to wait for an agent's next action:
+     * <ul>
+     *     <li>the disconnected timeout if the agent has no connection (it could not receive the request anyway)</li>
+     *     <li>the agent timeout if the agent answered its last request in time</li>
+     *     <li>otherwise, the timeout is halved for each request in a row the agent did not answer in time, but not
+     *     below the min agent timeout and not below twice the agent's mean response time (of the answers it sent
+     *     in time), so that an agent that is slow but still answering is not cut off</li>
+     * </ul>
+     * @param connected whether the agent is connected
+     * @param consecutiveTimeouts the number of requests in a row the agent did not answer in time
+     * @param meanResponseTime the agent's mean response time in ms (0 if it never answered)
+     * @param agentTimeout the regular timeout in ms
+     * @param minAgentTimeout the lower bound for the timeout in ms
+     * @param disconnectedTimeout the timeout for agents that are not connected in ms
+     * @return the timeout for the agent's next action in milliseconds
+     */
+    static long getTimeout(boolean connected, int consecutiveTimeouts, double meanResponseTime, long agentTimeout,
+                           long minAgentTimeout, long disconnectedTimeout) {
+        if (!connected) return disconnectedTimeout;
+        if (consecutiveTimeouts == 0) return agentTimeout;
+        long floor = Math.min(agentTimeout, Math.max(minAgentTimeout, (long) Math.ceil(2 * meanResponseTime)));
+        return Math.max(floor, agentTimeout >> Math.min(consecutiveTimeouts, 62));
+    }
+
     /**
      * Stores account info of an agent.
      * Receives messages from and sends messages to remote agents.
@@ -144,9 +199,9 @@ class AgentManager {
         private String password;
 
         // networking things
-        private Socket socket;
+        private volatile Socket socket;
         private Thread sendThread;
-        private Thread receiveThread;
+        private volatile Thread receiveThread;
 
         // concurrency magic
         private AtomicLong messageCounter = new AtomicLong();
@@ -155,6 +210,13 @@ class AgentManager {
 
         private Document lastSimStartMessage;
 
+        // response statistics (only accessed by the thread requesting the action)
+        private long answers = 0;
+        private long timeouts = 0;
+        private int consecutiveTimeouts = 0;
+        private double meanResponseTime = 0;
+        private long maxResponseTime = 0;
+
         /**
          * Creates a new instance with the given credentials.
          * @param name the name of the agent
@@ -178,19 +240,28 @@ class AgentManager {
 
         /**
          * Creates a request-action message and sends it to the agent.
-         * Should be called within a new thread, as it blocks up to {@link #agentTimeout} milliseconds.
+         * Should be called within a new thread, as it blocks up to {@link #getTimeout()} milliseconds.
          * @param percept the step percept to forward
+         * @param profiler receives the agent's response time and the time needed to serialize the percept
          * @return the action that was received by the agent (or {@link Action#STD_NO_ACTION})
          */
-        Action requestAction(RequestAction percept) {
+        Action requestAction(RequestAction percept, StepProfiler profiler) {
+            long timeout = getTimeout();
             long id = messageCounter.getAndIncrement();
-            percept.finalize(id, System.currentTimeMillis() + agentTimeout);
+            long start = System.currentTimeMillis();
+            percept.finalize(id, start + timeout);
             CompletableFuture<Document> futureAction = new CompletableFuture<>();
             futureActions.put(id, futureAction);
-            sendMessage(new Message(System.currentTimeMillis(), percept).toXML());
+            long serializeStart = System.nanoTime();
+            Document message = new Message(start, percept).toXML();
+            profiler.record(StepProfiler.Phase.SERIALIZE, serializeStart);
+            long sent = System.nanoTime();
+            sendMessage(message);
             try {
                 // wait for action to be received
-                Document doc = futureAction.get(agentTimeout, TimeUnit.MILLISECONDS);
+                Document doc = futureAction.get(timeout, TimeUnit.MILLISECONDS);
+                profiler.recordLatency(name, System.nanoTime() - sent);
+                recordAnswer(System.currentTimeMillis() - start);
                 Message msg = Message.parse(doc, Action.class);
                 if(msg != null){
                     MessageContent content = msg.getContent();
@@ -201,11 +272,64 @@ class AgentManager {
             } catch (InterruptedException | ExecutionException e) {
                 Log.log(Log.Level.ERROR, "Interrupted while waiting for action.");
             } catch (TimeoutException e) {
-                Log.log(Log.Level.NORMAL, "No valid action available in time for agent " + name + ".");
+                profiler.recordLatency(name, System.nanoTime() - sent);
+                recordTimeout();
+                Log.log(Log.Level.NORMAL, "No valid action available in time for agent %s.", name);
+            } finally {
+                futureActions.remove(id);
             }
             return Action.STD_NO_ACTION;
         }
 
+        /**
+         * @return the current timeout for the agent in milliseconds (see
+         * {@link #getTimeout(boolean, int, double, long, long, long)})
+         */
+        long getTimeout() {
+            return AgentManager.getTimeout(isConnected(), consecutiveTimeouts, meanResponseTime, agentTimeout,
+                    minAgentTimeout, disconnectedTimeout);
+        }
+
+        /**
+         * @return true if the agent has an open socket and its receiving thread is still running
+         */
+        private boolean isConnected() {
+            Socket s = socket;
+            Thread receiver = receiveThread;
+            return s != null && !s.isClosed() && receiver != null && receiver.isAlive();
+        }
+
+        private void recordAnswer(long responseTime) {
+            answers++;
+            consecutiveTimeouts = 0;
+            meanResponseTime += (responseTime - meanResponseTime) / answers;
+            maxResponseTime = Math.max(maxResponseTime, responseTime);
+        }
+
+        private void recordTimeout() {
+            timeouts++;
+            consecutiveTimeouts++;
+        }
+
+        /**
+         * Resets the response statistics (and with it the timeout), so that each match starts with the full timeout.
+         */
+        void resetStatistics() {
+            answers = 0;
+            timeouts = 0;
+            consecutiveTimeouts = 0;
+            meanResponseTime = 0;
+            maxResponseTime = 0;
+        }
+
+        /**
+         * Logs the response statistics of the agent.
+         */
+        void logStatistics() {
+            Log.log(Log.Level.NORMAL, "Agent %s: %d actions (mean %.1f ms, max %d ms), %d timeouts",
+                    name, answers, meanResponseTime, maxResponseTime, timeouts);
+        }
+
         /**
          * Creates and send a sim-end message to the agent.
          * @param percept the percept to append to the message.
@@ -0,0 +1,338 @@
+package massim;
+
+import massim.config.TeamConfig;
+import massim.monitor.ReplayReader;
+import massim.protocol.DynamicWorldData;
+import massim.protocol.messagecontent.Action;
+import massim.protocol.messagecontent.SimStart;
+import massim.scenario.AbstractSimulation;
+import massim.util.IOUtil;
+import massim.util.Log;
+import massim.util.RNG;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Re-simulates a simulation from its {@link ActionJournal} (without any agents or network), e.g. to reconstruct
+ * the state of any step or to check that a change of the simulation does not change its outcome.
+ * <br>
+ * While re-simulating, the static data, the random fails and the result of each step are compared with the
+ * journal. Every difference is logged and counted as a mismatch.
+ */
+public class JournalPlayer {
+
+    private final File file;
+    private final JSONObject header;
+    private final List<JSONObject> steps = new ArrayList<>();
+
+    private long length = 0;
+
+    private AbstractSimulation sim;
+    private Map<String, SimStart> initialPercepts;
+    private int currentStep = -1;
+    private int mismatches = 0;
+
+    /**
+     * Reads a journal.
+     * @param file the journal file
+     * @throws IOException if the journal could not be read or is not a journal
+     */
+    public JournalPlayer(File file) throws IOException {
+        this.file = file;
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        JSONObject header = null;
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue; // a last line without line break is incomplete
+            String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            try {
+                if (header == null) header = new JSONObject(line);
+                else steps.add(new JSONObject(line));
+            } catch (JSONException e) {
+                Log.log(Log.Level.ERROR, "Ignoring invalid journal entry: " + e.getMessage());
+                break;
+            }
+            lineStart = i + 1;
+            length = lineStart;
+        }
+        if (header == null) throw new IOException("Empty journal " + file);
+        if (header.optInt("journal") != ActionJournal.VERSION)
+            throw new IOException("Unsupported journal version " + header.opt("journal"));
+        this.header = header;
+    }
+
+    /**
+     * @return the number of steps in the journal
+     */
+    public int getStepCount() {
+        return steps.size();
+    }
+
+    /**
+     * @return the number of steps of the simulation (as configured)
+     */
+    public int getTotalSteps() {
+        return header.getInt("steps");
+    }
+
+    /**
+     * @return the configuration of the simulation
+     */
+    public JSONObject getConfig() {
+        return header.getJSONObject("config");
+    }
+
+    /**
+     * @return the length of the valid part of the journal (i.e. without an incomplete last entry) in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of differences between the re-simulation and the journal (so far)
+     */
+    public int getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * @return the initial percepts the simulation created (or null if it has not been created yet)
+     */
+    public Map<String, SimStart> getInitialPercepts() {
+        return initialPercepts;
+    }
+
+    /**
+     * @return the simulation (after the last step that has been re-simulated) or null if nothing was simulated yet
+     */
+    public AbstractSimulation getSimulation() {
+        return sim;
+    }
+
+    /**
+     * Re-simulates the simulation up to (and including) the given step. Continues the current re-simulation if
+     * possible, otherwise starts from the beginning.
+     * @param step the step
+     * @return the state after the step
+     * @throws IOException if the step is not in the journal or the simulation could not be created
+     */
+    public DynamicWorldData stepTo(int step) throws IOException {
+        if (step < 0 || step >= steps.size())
+            throw new IOException("Step " + step + " is not in the journal (" + steps.size() + " steps)");
+        if (sim == null || step < currentStep) restart();
+        while (currentStep < step) simulateStep(steps.get(currentStep + 1));
+        return sim.getSnapshot();
+    }
+
+    /**
+     * Creates and initializes the simulation (again) as the server did.
+     * @throws IOException if the simulation could not be created
+     */
+    public void restart() throws IOException {
+        JSONObject config = header.getJSONObject("config");
+        String className = config.optString("scenarioClass", "");
+        try {
+            sim = (AbstractSimulation) AbstractSimulation.class.getClassLoader()
+                    .loadClass("massim.scenario." + className)
+                    .newInstance();
+        } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+            throw new IOException("Could not load scenario class: " + className);
+        }
+
+        Set<TeamConfig> teams = new LinkedHashSet<>();
+        JSONArray teamsJSON = header.getJSONArray("teams");
+        for (int i = 0; i < teamsJSON.length(); i++) {
+            JSONObject teamJSON = teamsJSON.getJSONObject(i);
+            TeamConfig team = new TeamConfig(teamJSON.getString("name"));
+            JSONArray agents = teamJSON.getJSONArray("agents");
+            for (int a = 0; a < agents.length(); a++) team.addAgent(agents.getString(a), "");
+            teams.add(team);
+        }
+
+        RNG.initialize(header.getLong("seed"));
+        initialPercepts = sim.init(header.getInt("steps"), config, teams);
+        currentStep = -1;
+        compare("static data", header.getJSONObject("static"), new JSONObject(sim.getStaticData()));
+    }
+
+    /**
+     * Continues the re-simulation from a snapshot of the simulation instead of simulating all steps up to it.
+     * The restored simulation is compared with the journal like a re-simulated step.
+     * @param snapshot a snapshot of the simulation of this journal
+     * @throws IOException if the snapshot is invalid or its step is not in the journal
+     */
+    public void restore(SimulationSnapshot snapshot) throws IOException {
+        int step = snapshot.getStep();
+        if (step < 0 || step >= steps.size())
+            throw new IOException("Step " + step + " of the snapshot is not in the journal (" + steps.size()
+                    + " steps)");
+        SimulationSnapshot.Restored restored = snapshot.restore();
+        sim = restored.simulation;
+        initialPercepts = restored.initialPercepts;
+        currentStep = step;
+        compare("static data", header.getJSONObject("static"), new JSONObject(sim.getStaticData()));
+        JSONObject result = steps.get(step).optJSONObject("result");
+        if (result != null) compare("step " + step + " result", result, sim.getResult());
+    }
+
+    /**
+     * Feeds the commands and actions of one step to the simulation and compares the outcome.
+     */
+    private void simulateStep(JSONObject entry) {
+        int step = entry.getInt("step");
+        JSONArray commands = entry.optJSONArray("commands");
+        if (commands != null) {
+            for (int i = 0; i < commands.length(); i++) {
+                JSONArray command = commands.getJSONArray(i);
+                String[] words = new String[command.length()];
+                for (int w = 0; w < words.length; w++) words[w] = command.getString(w);
+                sim.handleCommand(words);
+            }
+        }
+
+        Map<String, Action> actions = new HashMap<>();
+        JSONObject actionsJSON = entry.getJSONObject("actions");
+        actionsJSON.keySet().forEach(agent -> actions.put(agent, ActionJournal.toAction(actionsJSON.getJSONArray(agent))));
+
+        sim.preStep(step);
+        sim.step(step, actions);
+        currentStep = step;
+
+        Set<String> recordedFails = new TreeSet<>();
+        JSONArray failsJSON = entry.optJSONArray("randomFail");
+        if (failsJSON != null) for (int i = 0; i < failsJSON.length(); i++) recordedFails.add(failsJSON.getString(i));
+        Set<String> fails = new TreeSet<>();
+        actions.forEach((agent, action) -> {
+            if (action == Action.STD_RANDOM_FAIL_ACTION) fails.add(agent);
+        });
+        if (!fails.equals(recordedFails)) {
+            mismatches++;
+            Log.log(Log.Level.ERROR, "Step " + step + ": random fails differ. Journal: " + recordedFails
+                    + ", re-simulation: " + fails);
+        }
+        JSONObject result = entry.optJSONObject("result");
+        if (result != null) compare("step " + step + " result", result, sim.getResult());
+    }
+
+    /**
+     * Compares recorded and re-simulated data (both normalized by serializing them first).
+     */
+    private void compare(String what, JSONObject recorded, JSONObject simulated) {
+        if (!normalize(recorded).similar(normalize(simulated))) {
+            mismatches++;
+            Log.log(Log.Level.ERROR, "The " + what + " differs from the journal.");
+        }
+    }
+
+    /**
+     * @return a copy of the JSON in which all arrays of named objects are sorted by name (or id), since the order
+     * of some collections in the data depends on hash codes that change between runs
+     */
+    private static JSONObject normalize(JSONObject json) {
+        return (JSONObject) sort(new JSONObject(json.toString()));
+    }
+
+    private static Object sort(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            for (String key : new ArrayList<>(object.keySet())) object.put(key, sort(object.get(key)));
+            return object;
+        }
+        if (!(value instanceof JSONArray)) return value;
+        JSONArray array = (JSONArray) value;
+        List<Object> elements = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) elements.add(sort(array.get(i)));
+        for (String keyField : new String[]{"name", "id"}) {
+            if (elements.stream().allMatch(e -> e instanceof JSONObject && ((JSONObject) e).opt(keyField) instanceof String)) {
+                elements.sort(Comparator.comparing(e -> ((JSONObject) e).getString(keyField)));
+                break;
+            }
+        }
+        return new JSONArray(elements);
+    }
+
+    /**
+     * Compares each re-simulated step with the corresponding step of a replay.
+     * @param replayDir the replay directory
+     * @return the number of steps that differ
+     * @throws IOException if the replay could not be read
+     */
+    public int verifyReplay(File replayDir) throws IOException {
+        int differences = 0;
+        try (ReplayReader replay = new ReplayReader(replayDir)) {
+            for (int step = 0; step < steps.size(); step++) {
+                DynamicWorldData state = stepTo(step);
+                String recorded = replay.readStep(state.step);
+                if (recorded == null) {
+                    Log.log(Log.Level.ERROR, "Step " + state.step + " is not in the replay.");
+                    differences++;
+                }
+                else if (!normalize(new JSONObject(recorded)).similar(normalize(new JSONObject(state)))) {
+                    Log.log(Log.Level.ERROR, "Step " + state.step + " differs from the replay.");
+                    differences++;
+                }
+            }
+        }
+        mismatches += differences;
+        return differences;
+    }
+
+    /**
+     * Re-simulates a journal.
+     * <br>
+     * Usage: <code>JournalPlayer journal [-step n] [-out file] [-verify replayDir]</code>
+     * <ul>
+     *     <li>without options, all steps are re-simulated and compared with the journal</li>
+     *     <li><code>-step</code>: re-simulate only up to step n and print its state (as JSON)</li>
+     *     <li><code>-out</code>: write the state to the file instead</li>
+     *     <li><code>-verify</code>: also compare all steps with the steps of a replay</li>
+     * </ul>
+     * Exits with status 1 if the re-simulation differs from the journal (or replay).
+     * @param args the journal file and options
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            Log.log(Log.Level.ERROR, "Usage: JournalPlayer journal [-step n] [-out file] [-verify replayDir]");
+            System.exit(1);
+        }
+        int step = -1;
+        String out = null;
+        String replayDir = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-step":
+                    step = Integer.parseInt(args[++i]);
+                    break;
+                case "-out":
+                    out = args[++i];
+                    break;
+                case "-verify":
+                    replayDir = args[++i];
+                    break;
+                default:
+                    Log.log(Log.Level.ERROR, "Unknown option: " + args[i]);
+            }
+        }
+
+        JournalPlayer player = new JournalPlayer(new File(args[0]));
+        long start = System.currentTimeMillis();
+        if (replayDir != null) player.verifyReplay(new File(replayDir));
+        if (step >= 0) {
+            JSONObject state = new JSONObject(player.stepTo(step));
+            if (out == null) System.out.println(state.toString());
+            else IOUtil.writeJSONToFile(state, new File(out));
+        }
+        else if (player.getStepCount() > 0) player.stepTo(player.getStepCount() - 1);
+
+        Log.log(Log.Level.NORMAL, "Re-simulated " + (player.currentStep + 1) + " steps of " + player.file + " in "
+                + (System.currentTimeMillis() - start) + " ms with " + player.getMismatches() + " mismatches.");
+        System.exit(player.getMismatches() == 0? 0 : 1);
+    }
+}
@@ -0,0 +1,32 @@
+package massim;
+
+import massim.protocol.messagecontent.Action;
+import massim.protocol.messagecontent.RequestAction;
+import massim.protocol.messagecontent.SimEnd;
+import massim.protocol.messagecontent.SimStart;
+
+/**
+ * An agent running in the same JVM as the server (see {@link Server#runHeadless(org.json.JSONObject, java.util.Map)}).
+ * It receives the same percepts a remote agent would get, just without serialization.
+ */
+public interface LocalAgent {
+
+    /**
+     * Called when a simulation starts.
+     * @param percept the sim-start percept of the agent
+     */
+    void handleInitialPercept(SimStart percept);
+
+    /**
+     * Called in each step. The simulation continues as soon as all agents have returned their actions.
+     * @param percept the step percept of the agent
+     * @return the action of the agent (null means no action)
+     */
+    Action requestAction(RequestAction percept);
+
+    /**
+     * Called when a simulation ends.
+     * @param percept the sim-end percept of the agent
+     */
+    void handleFinalPercept(SimEnd percept);
+}
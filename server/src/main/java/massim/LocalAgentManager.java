@@ -0,0 +1,70 @@
+package massim;
+
+import massim.protocol.messagecontent.Action;
+import massim.protocol.messagecontent.RequestAction;
+import massim.protocol.messagecontent.SimEnd;
+import massim.protocol.messagecontent.SimStart;
+import massim.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes percepts and actions directly to and from agents running in the same JVM.
+ * There are no threads, sockets or timeouts involved: agents are called one after another (ordered by name),
+ * so a step takes exactly as long as the agents need to decide.
+ */
+class LocalAgentManager implements AgentHandler {
+
+    private Map<String, LocalAgent> agents;
+    private AtomicLong messageCounter = new AtomicLong();
+
+    /**
+     * @param agents the agents by name (i.e. the name of their account)
+     */
+    LocalAgentManager(Map<String, LocalAgent> agents) {
+        this.agents = new HashMap<>(agents);
+    }
+
+    @Override
+    public void handleInitialPercepts(String match, Map<String, SimStart> initialPercepts) {
+        new TreeMap<>(initialPercepts).forEach((agName, percept) -> {
+            LocalAgent agent = agents.get(agName);
+            if (agent != null) agent.handleInitialPercept(percept);
+        });
+    }
+
+    @Override
+    public Map<String, Action> requestActions(Map<String, RequestAction> percepts, StepProfiler profiler) {
+        Map<String, Action> actions = new HashMap<>();
+        new TreeMap<>(percepts).forEach((agName, percept) -> {
+            Action action = null;
+            LocalAgent agent = agents.get(agName);
+            if (agent != null) {
+                percept.finalize(messageCounter.getAndIncrement(), Long.MAX_VALUE); // no deadline
+                long start = System.nanoTime();
+                try {
+                    action = agent.requestAction(percept);
+                } catch (RuntimeException e) {
+                    Log.log(Log.Level.ERROR, "Agent " + agName + " failed: " + e);
+                }
+                profiler.recordLatency(agName, System.nanoTime() - start);
+            }
+            actions.put(agName, action == null? Action.STD_NO_ACTION : action);
+        });
+        return actions;
+    }
+
+    @Override
+    public void handleFinalPercepts(String match, Map<String, SimEnd> finalPercepts) {
+        new TreeMap<>(finalPercepts).forEach((agName, percept) -> {
+            LocalAgent agent = agents.get(agName);
+            if (agent != null) agent.handleFinalPercept(percept);
+        });
+    }
+
+    @Override
+    public void stop() {}
+}
@@ -1,60 +1,222 @@
 package massim;
 
+import massim.monitor.CityJsonWriter;
+import massim.monitor.JsonDelta;
+import massim.monitor.ReplayReader;
 import massim.protocol.WorldData;
 import massim.protocol.DynamicWorldData;
-import massim.protocol.StaticWorldData;
-import massim.util.IOUtil;
+import massim.util.Log;
 
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.zip.Deflater;
 
+/**
+ * Saves the states of simulations as replays.
+ * The static data is written once, each step is appended exactly once to the replay's step stream and index
+ * (see {@link ReplayReader} for the format): every {@link #keyframeInterval} steps completely, in between only
+ * the changes since the previous step.
+ */
 public class ReplayWriter {
 
-    private static final int GROUP_SIZE = 5;
+    /**
+     * Default number of steps from one keyframe to the next.
+     */
+    public final static int DEFAULT_KEYFRAME_INTERVAL = 50;
 
     private String replayPath;
+    private int keyframeInterval;
+    private boolean compress;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[8192];
+    private final CityJsonWriter jsonWriter = new CityJsonWriter();
 
-    private int lastGroup = -1;
-    private JSONObject cache = new JSONObject();
+    private String currentReplay;
+    private DataOutputStream data;
+    private DataOutputStream index;
+    private long offset;
+    private int records;
+    private JSONObject lastStep;
 
     public ReplayWriter(String replayPath) {
+        this(replayPath, DEFAULT_KEYFRAME_INTERVAL, true);
+    }
+
+    /**
+     * @param replayPath the directory to create the replays in
+     * @param keyframeInterval number of steps from one keyframe to the next
+     * @param compress whether to deflate the steps
+     */
+    public ReplayWriter(String replayPath, int keyframeInterval, boolean compress) {
         this.replayPath = replayPath;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.compress = compress;
     }
 
-    public void updateState(String simId, String startTime, WorldData world) {
-        if (world instanceof DynamicWorldData) {
-            DynamicWorldData dynamicWorld = (DynamicWorldData) world;
+    /**
+     * Adds a state to the replay of a simulation.
+     * @param simId the ID of the simulation
+     * @param startTime string representation of the simulation's start time
+     * @param world the static data or a snapshot of a step
+     */
+    public synchronized void updateState(String simId, String startTime, WorldData world) {
+        File dir = Paths.get(this.replayPath, startTime + "-" + simId).toFile();
+        if (!dir.exists()) dir.mkdirs();
 
-            int step = dynamicWorld.step;
-            int group = step / GROUP_SIZE;
-            String stepStr = String.valueOf(step);
+        try {
+            if (world instanceof DynamicWorldData) {
+                if (!dir.getPath().equals(currentReplay)) open(dir);
+                appendStep((DynamicWorldData) world);
+            } else {
+                try (OutputStream out = new FileOutputStream(new File(dir, ReplayReader.STATIC_FILE))) {
+                    jsonWriter.write(world).writeTo(out);
+                }
+            }
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not write replay " + dir + ": " + e.getMessage());
+        }
+    }
 
-            if (lastGroup != group || cache.has(stepStr)) cache = new JSONObject();
-            cache.put(stepStr, new JSONObject(dynamicWorld));
-            write(startTime, simId, String.valueOf(group * GROUP_SIZE), cache);
+    /**
+     * Opens the step stream and index of a new replay.
+     * @param dir the replay directory
+     */
+    private void open(File dir) throws IOException {
+        close();
+        data = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(dir, ReplayReader.DATA_FILE))));
+        index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(dir, ReplayReader.INDEX_FILE))));
+        data.writeInt(ReplayReader.MAGIC);
+        data.writeInt(ReplayReader.VERSION);
+        data.writeByte(compress? ReplayReader.FLAG_DEFLATE : 0);
+        data.writeInt(keyframeInterval);
+        offset = ReplayReader.HEADER_SIZE;
+        records = 0;
+        lastStep = null;
+        currentReplay = dir.getPath();
+    }
 
-            lastGroup = group;
-        } else {
-            write(startTime, simId, "static", new JSONObject(world));
+    /**
+     * Continues the existing replay of a simulation (e.g. after the simulation was resumed): removes the given
+     * step and all later steps, so that the next steps passed to {@link #updateState(String, String, WorldData)}
+     * are appended (starting with a keyframe). If there is no such replay (or it has a different format), the
+     * next step starts a new one.
+     * @param simId the ID of the simulation
+     * @param startTime string representation of the simulation's (original) start time
+     * @param firstStep the first step that will be written again
+     */
+    public synchronized void continueReplay(String simId, String startTime, int firstStep) {
+        File dir = Paths.get(this.replayPath, startTime + "-" + simId).toFile();
+        File dataFile = new File(dir, ReplayReader.DATA_FILE);
+        File indexFile = new File(dir, ReplayReader.INDEX_FILE);
+        if (!dataFile.isFile() || !indexFile.isFile()) return;
+        close();
+        try (RandomAccessFile dataRaf = new RandomAccessFile(dataFile, "rw");
+             RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "rw")) {
+            if (dataRaf.length() < ReplayReader.HEADER_SIZE || dataRaf.readInt() != ReplayReader.MAGIC
+                    || dataRaf.readInt() != ReplayReader.VERSION
+                    || dataRaf.readByte() != (compress? ReplayReader.FLAG_DEFLATE : 0)) {
+                Log.log(Log.Level.ERROR, "Cannot continue replay " + dir + ", starting a new one.");
+                return;
+            }
+            // keep all records of earlier steps (the data may contain a record that is not in the index yet)
+            int kept = 0;
+            long end = ReplayReader.HEADER_SIZE;
+            long entries = indexRaf.length() / ReplayReader.INDEX_ENTRY_SIZE;
+            while (kept < entries) {
+                indexRaf.seek((long) kept * ReplayReader.INDEX_ENTRY_SIZE);
+                int step = indexRaf.readInt();
+                long recordOffset = indexRaf.readLong();
+                if (step >= firstStep) break;
+                dataRaf.seek(recordOffset + 1);
+                int length = ReplayReader.readVarInt(dataRaf);
+                end = recordOffset + 1 + varIntSize(length) + length;
+                kept++;
+            }
+            if (end > dataRaf.length()) throw new IOException("index does not match data");
+            dataRaf.setLength(end);
+            indexRaf.setLength((long) kept * ReplayReader.INDEX_ENTRY_SIZE);
+            offset = end;
+            records = kept;
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Cannot continue replay " + dir + " (" + e.getMessage() + "), starting a new one.");
+            return;
         }
+        try {
+            data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile, true)));
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not write replay " + dir + ": " + e.getMessage());
+            close();
+            return;
+        }
+        lastStep = null;
+        currentReplay = dir.getPath();
     }
 
-    private void write(String startTime, String simId, String name, JSONObject json) {
-        String prefix = startTime + "-" + simId;
-        File file = Paths.get(this.replayPath, prefix, name + ".json").toFile();
-        File dir = file.getParentFile();
-        if (!dir.exists()) dir.mkdirs();
+    /**
+     * Appends a step (as keyframe or delta) to the stream and the index.
+     * Both are flushed, so that the step can be read immediately.
+     */
+    private void appendStep(DynamicWorldData world) throws IOException {
+        byte type = lastStep == null || records % keyframeInterval == 0? ReplayReader.KEYFRAME : ReplayReader.DELTA;
+        jsonWriter.write(world);
+        // the tree is only needed to compute a delta (to this step or from it to the next one)
+        boolean nextIsKeyframe = (records + 1) % keyframeInterval == 0;
+        JSONObject json = type == ReplayReader.DELTA || !nextIsKeyframe? jsonWriter.toJSONObject() : null;
+        byte[] payload = type == ReplayReader.KEYFRAME? encode(jsonWriter.toByteArray())
+                : encode(JsonDelta.diff(lastStep, json).toString().getBytes(StandardCharsets.UTF_8));
+
+        data.writeByte(type);
+        ReplayReader.writeVarInt(data, payload.length);
+        data.write(payload);
+        data.flush();
+        index.writeInt(world.step);
+        index.writeLong(offset);
+        index.writeByte(type);
+        index.flush();
+        offset += 1 + varIntSize(payload.length) + payload.length;
+        records++;
+        lastStep = nextIsKeyframe? null : json;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    /**
+     * @return the UTF-8 encoded JSON (deflated if configured)
+     */
+    private byte[] encode(byte[] bytes) {
+        if (!compress) return bytes;
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        compressed.reset();
+        while (!deflater.finished()) compressed.write(buffer, 0, deflater.deflate(buffer));
+        return compressed.toByteArray();
+    }
 
+    /**
+     * Closes the files of the current replay (if any).
+     */
+    public synchronized void close() {
         try {
-            FileWriter writer = new FileWriter(file);
-            json.write(writer);
-            writer.close();
+            if (data != null) data.close();
+            if (index != null) index.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.log(Log.Level.ERROR, "Could not close replay " + currentReplay + ": " + e.getMessage());
         }
+        data = null;
+        index = null;
+        currentReplay = null;
+        lastStep = null;
     }
 }
@@ -13,6 +13,7 @@ import massim.util.IOUtil;
 import massim.util.InputManager;
 import massim.util.Log;
 import massim.util.RNG;
+import massim.util.SimulationContext;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -21,7 +22,11 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -36,15 +41,51 @@ public class Server {
 
     private final InputManager inputManager = new InputManager();
     private LoginManager loginManager;
-    private AgentManager agentManager;
+    private AgentHandler agentManager;
     private Monitor monitor;
     private ReplayWriter replayWriter;
 
+    /**
+     * the match currently shown in the monitor (if matches run concurrently)
+     */
+    private final AtomicReference<String> monitoredMatch = new AtomicReference<>();
+
+    /**
+     * teams that currently play in a match (if matches run concurrently)
+     */
+    private final Set<TeamConfig> busyTeams = new HashSet<>();
+    private int runningMatches = 0;
+
+    /**
+     * the step profilers of all running matches
+     */
+    private final Map<String, StepProfiler> profilers = new ConcurrentHashMap<>();
+
+    /**
+     * to let only one match at a time handle console inputs (so that pausing one match pauses all)
+     */
+    private final Object inputLock = new Object();
+
     /**
      * whether server should stop after the next match (random mode)
      */
     private boolean stopped = false;
 
+    /**
+     * the tournament checkpoint to resume the tournament from (or null)
+     */
+    private File resumeFile;
+
+    /**
+     * records the progress of the tournament (null if no journals are saved)
+     */
+    private TournamentCheckpoint checkpoint;
+
+    /**
+     * whether the tournament was aborted because a simulation could not be resumed
+     */
+    private volatile boolean aborted = false;
+
     public static void main(String[] args){
 
         Server server = new Server();
@@ -72,6 +113,9 @@ public class Server {
                         i--;
                     }
                     break;
+                case "-resume":
+                    server.resumeFile = new File(args[++i]);
+                    break;
                 case "--monitor":
                     if (i + 1 < args.length) {
                         try {
@@ -128,7 +172,8 @@ public class Server {
         server.config.monitorPort = monitorPort;
 
         if (server.config.replayPath != null) {
-            server.replayWriter = new ReplayWriter(server.config.replayPath);
+            server.replayWriter = new ReplayWriter(server.config.replayPath, server.config.replayKeyframeInterval,
+                    server.config.replayCompression);
         }
 
         server.go();
@@ -145,30 +190,42 @@ public class Server {
         inputManager.stop();
     }
 
+    /**
+     * Runs all matches of the given configuration with agents running in the same JVM. No sockets, XML messages,
+     * agent threads or timeouts are involved, i.e. steps advance as fast as the agents return their actions.
+     * Results and replays are written just like in a normal server run; the monitor and console commands are
+     * not available.
+     * @param conf the configuration (same format as for the normal server)
+     * @param agents all agents (of all teams) by account name
+     */
+    public static void runHeadless(JSONObject conf, Map<String, LocalAgent> agents){
+        Server server = new Server();
+        server.config = parseServerConfig(conf);
+        if (!server.config.replayPath.isEmpty()) {
+            server.replayWriter = new ReplayWriter(server.config.replayPath, server.config.replayKeyframeInterval,
+                    server.config.replayCompression);
+        }
+        server.setupLog();
+        server.agentManager = new LocalAgentManager(agents);
+        server.runTournament();
+        Log.log(Log.Level.NORMAL, "All simulations run.");
+    }
+
     /**
      * Starts server operation according to its configuration.
      */
     private void go(){
 
         //setup text I/O
-        switch(config.logLevel){
-            case "debug": Log.setLogLevel(Log.Level.DEBUG); break;
-            case "error": Log.setLogLevel(Log.Level.ERROR); break;
-            case "critical": Log.setLogLevel(Log.Level.CRITICAL); break;
-            default: Log.setLogLevel(Log.Level.NORMAL);
-        }
-        if(config.logPath != null){
-            File logFile = new File(config.logPath + File.separator + "MASSim-log-" + timestamp() + ".log");
-            File dir = logFile.getParentFile();
-            if(!dir.exists()) dir.mkdirs();
-            Log.setLogFile(logFile);
-        }
+        setupLog();
         inputManager.start();
 
         // setup backend
-        agentManager = new AgentManager(config.teams, config.agentTimeout, config.maxPacketLength);
+        AgentManager networkAgents = new AgentManager(config.teams, config.agentTimeout, config.minAgentTimeout,
+                config.disconnectedTimeout, config.maxPacketLength);
+        agentManager = networkAgents;
         try {
-            loginManager = new LoginManager(agentManager, config.port, config.backlog);
+            loginManager = new LoginManager(networkAgents, config.port, config.backlog);
             loginManager.start();
         } catch (IOException e) {
             Log.log(Log.Level.CRITICAL, "Cannot open server socket.");
@@ -177,7 +234,7 @@ public class Server {
 
         // setup monitor
         if (config.monitorPort > 0) try {
-            monitor = new Monitor(config.monitorPort);
+            monitor = new Monitor(config.monitorPort, config.monitorHistoryBytes);
         } catch (ExecutionException e) {
             Log.log(Log.Level.ERROR, "Monitor not started: " + e.getLocalizedMessage());
         } catch (InterruptedException ignored) {}
@@ -216,7 +273,37 @@ public class Server {
             }
         }
 
-        // run matches according to tournament mode
+        runTournament();
+    }
+
+    /**
+     * Sets log level and log file according to the configuration.
+     */
+    private void setupLog(){
+        switch(config.logLevel){
+            case "debug": Log.setLogLevel(Log.Level.DEBUG); break;
+            case "error": Log.setLogLevel(Log.Level.ERROR); break;
+            case "critical": Log.setLogLevel(Log.Level.CRITICAL); break;
+            default: Log.setLogLevel(Log.Level.NORMAL);
+        }
+        switch(config.logFlush){
+            case "line": Log.setFlushPolicy(Log.FlushPolicy.LINE, config.logFlushInterval); break;
+            case "interval": Log.setFlushPolicy(Log.FlushPolicy.INTERVAL, config.logFlushInterval); break;
+            default: Log.setFlushPolicy(Log.FlushPolicy.BATCH, config.logFlushInterval);
+        }
+        if(config.logPath != null){
+            File logFile = new File(config.logPath + File.separator + "MASSim-log-" + timestamp() + ".log");
+            File dir = logFile.getParentFile();
+            if(!dir.exists()) dir.mkdirs();
+            Log.setLogFile(logFile);
+        }
+    }
+
+    /**
+     * Runs matches according to the tournament mode.
+     */
+    private void runTournament(){
+        if (!setupCheckpoint()) return;
         switch(config.tournamentMode){
             case ServerConfig.MODE_ROUND_ROBIN:
                 // run a match for each team combination
@@ -225,12 +312,13 @@ public class Server {
                     System.exit(0);
                 }
                 int[] indices = IntStream.rangeClosed(0, config.teamsPerMatch - 1).toArray();
+                List<Set<TeamConfig>> matches = new ArrayList<>();
                 boolean nextMatch = true;
                 while (nextMatch){
                     Set<TeamConfig> matchTeams = new HashSet<>();
                     for (int index : indices) matchTeams.add(config.teams.get(index));
 
-                    runMatch(matchTeams);
+                    matches.add(matchTeams);
 
                     // determine the next team constellation
                     for (int i = indices.length - 1; i >= 0; i--) {
@@ -244,15 +332,34 @@ public class Server {
                         if (i == 0) nextMatch = false; // no team constellation left
                     }
                 }
+                runMatches(matches);
                 break;
             case ServerConfig.MODE_MANUAL:
-                if(config.manualModeTeams != null) config.manualModeTeams.forEach(this::runMatch);
+                if(config.manualModeTeams != null) runMatches(config.manualModeTeams);
                 break;
             case ServerConfig.MODE_RANDOM:
-                while(!stopped){
+                int matchNumber = 0;
+                if (checkpoint != null) {
+                    // finish the interrupted matches first
+                    Map<String, TeamConfig> teamMap = config.teams.stream()
+                            .collect(Collectors.toMap(TeamConfig::getName, t -> t));
+                    for (Map.Entry<String, List<String>> match : checkpoint.getUnfinishedMatches().entrySet()) {
+                        if (aborted) break;
+                        if (!teamMap.keySet().containsAll(match.getValue())) {
+                            Log.log(Log.Level.CRITICAL, "Teams of match " + match.getKey() + " not configured.");
+                            aborted = true;
+                            break;
+                        }
+                        runMatch(match.getKey(),
+                                match.getValue().stream().map(teamMap::get).collect(Collectors.toSet()));
+                    }
+                    matchNumber = checkpoint.getMatchCount();
+                }
+                while(!stopped && !aborted){
                     List<TeamConfig> teams = new Vector<>(config.teams);
                     RNG.shuffle(teams);
-                    runMatch(new HashSet<>(teams.subList(0, config.teamsPerMatch)));
+                    Set<TeamConfig> matchTeams = new HashSet<>(teams.subList(0, config.teamsPerMatch));
+                    runMatch(matchKey(matchNumber++, matchTeams), matchTeams);
                 }
                 break;
             default:
@@ -260,6 +367,106 @@ public class Server {
         }
     }
 
+    /**
+     * Loads the checkpoint of the tournament to resume or creates a new one (if journals are saved).
+     * @return false if the tournament cannot be resumed
+     */
+    private boolean setupCheckpoint() {
+        if (resumeFile != null) {
+            try {
+                checkpoint = TournamentCheckpoint.load(resumeFile);
+            } catch (IOException e) {
+                Log.log(Log.Level.CRITICAL, "Could not resume tournament: " + e.getMessage());
+                return false;
+            }
+            Log.log(Log.Level.NORMAL, "Resuming tournament from " + resumeFile);
+        }
+        else if (config.journalPath != null && !config.journalPath.isEmpty()) {
+            checkpoint = new TournamentCheckpoint(new File(config.journalPath, "tournament_" + timestamp() + ".json"));
+        }
+        return true;
+    }
+
+    /**
+     * @param number the number of the match in the tournament
+     * @param teams the teams of the match
+     * @return the key identifying the match in the tournament checkpoint
+     */
+    private static String matchKey(int number, Set<TeamConfig> teams) {
+        return "match" + number + "-" + teams.stream()
+                .map(TeamConfig::getName).sorted().collect(Collectors.joining("-"));
+    }
+
+    /**
+     * @return whether the checkpoint (of a resumed tournament) says the match is finished
+     */
+    private boolean isFinished(String matchKey) {
+        return checkpoint != null && checkpoint.isFinished(matchKey);
+    }
+
+    /**
+     * Runs the given matches one after another or - if configured - several matches without common teams at the
+     * same time. Each concurrent match runs in its own {@link SimulationContext}. Matches that are already finished
+     * (according to the checkpoint of a resumed tournament) are skipped.
+     * @param matches the teams of each match (in the order in which the matches should be started)
+     */
+    private void runMatches(List<Set<TeamConfig>> matches) {
+        if (config.concurrentMatches <= 1) {
+            for (int i = 0; i < matches.size() && !aborted; i++) {
+                String matchKey = matchKey(i, matches.get(i));
+                if (!isFinished(matchKey)) runMatch(matchKey, matches.get(i));
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.concurrentMatches);
+        // the concurrent matches share the processors (for their parallel streams)
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / config.concurrentMatches);
+        List<Integer> pending = IntStream.range(0, matches.size())
+                .filter(i -> !isFinished(matchKey(i, matches.get(i))))
+                .boxed().collect(Collectors.toCollection(LinkedList::new));
+        synchronized (busyTeams) {
+            while ((!pending.isEmpty() && !aborted) || runningMatches > 0) {
+                Integer match = null;
+                if (runningMatches < config.concurrentMatches && !aborted) {
+                    match = pending.stream()
+                            .filter(i -> matches.get(i).stream().noneMatch(busyTeams::contains))
+                            .findFirst().orElse(null);
+                }
+                if (match == null) {
+                    try {
+                        busyTeams.wait();
+                    } catch (InterruptedException e) {
+                        Log.log(Log.Level.ERROR, "Interrupted while waiting for matches to finish.");
+                        break;
+                    }
+                    continue;
+                }
+                pending.remove(match);
+                Set<TeamConfig> teams = matches.get(match);
+                busyTeams.addAll(teams);
+                runningMatches++;
+                String matchName = matchKey(match, teams);
+                executor.execute(() -> {
+                    try {
+                        SimulationContext.run(matchName, parallelism, () -> runMatch(matchName, teams));
+                    } catch (ExecutionException e) {
+                        Log.log(Log.Level.ERROR, "Match " + matchName + " failed: " + e.getCause());
+                    } catch (InterruptedException e) {
+                        Log.log(Log.Level.ERROR, "Interrupted while running match " + matchName);
+                    } finally {
+                        synchronized (busyTeams) {
+                            busyTeams.removeAll(teams);
+                            runningMatches--;
+                            busyTeams.notifyAll();
+                        }
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+    }
+
     /**
      * @return a string representation of the current time in the form yyyy-MM-dd-HH-mm-ss
      */
@@ -277,64 +484,315 @@ public class Server {
 
     /**
      * Runs a match for the given teams. Sim configuration is taken from the server config.
+     * If the match was interrupted (according to the checkpoint of a resumed tournament), it continues with the
+     * interrupted simulation.
+     * @param matchKey the key identifying the match in the tournament checkpoint
      * @param matchTeams a set of all teams to participate in the simulation
      */
-    private void runMatch(Set<TeamConfig> matchTeams) {
-
-        String startTime = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date());
-
-        JSONObject result = new JSONObject();
-        for (JSONObject simConfig: config.simConfigs){
-            // initialize random
-            long randomSeed = simConfig.optLong("randomSeed", System.currentTimeMillis());
-            Log.log(Log.Level.NORMAL, "Configuring random seed: " + randomSeed);
-            RNG.initialize(randomSeed);
-            // create and run scenario instance with the given teams
-            String className = simConfig.optString("scenarioClass", "");
-            if (className.equals("")){
-                Log.log(Log.Level.ERROR, "No scenario class specified.");
-                continue;
-            }
-            try {
-                AbstractSimulation sim = (AbstractSimulation) AbstractSimulation.class.getClassLoader()
-                                                                .loadClass("massim.scenario." + className)
-                                                                .newInstance();
-
-                int steps = simConfig.optInt("steps", 1000);
-
-                // handle initial state
-                Map<String, SimStart> initialPercepts = sim.init(steps, simConfig, matchTeams);
-                handleSimState(sim.getName(), startTime, sim.getStaticData());
-                agentManager.handleInitialPercepts(initialPercepts);
-
-                // handle steps
-                for (int i = 0; i < steps; i++){
-                    Log.log(Log.Level.NORMAL, "Simulation at step " + i);
-                    handleInputs(sim);
-                    Map<String, RequestAction> percepts = sim.preStep(i);
-                    Map<String, Action> actions = agentManager.requestActions(percepts);
-                    sim.step(i, actions); // execute step with agent actions
-                    handleSimState(sim.getName(), startTime, sim.getSnapshot());
+    private void runMatch(String matchKey, Set<TeamConfig> matchTeams) {
+
+        // concurrent matches are distinguished by the name of their context
+        String matchName = SimulationContext.current().getName();
+        String startTime = checkpoint == null? null : checkpoint.getStartTime(matchKey);
+        if (startTime == null) {
+            startTime = timestamp();
+            if (!matchName.isEmpty()) startTime += "-" + matchName;
+        }
+        ReplayWriter replay = matchName.isEmpty() || replayWriter == null? replayWriter
+                : new ReplayWriter(config.replayPath, config.replayKeyframeInterval, config.replayCompression);
+        boolean monitored = monitor != null && monitoredMatch.compareAndSet(null, matchName);
+
+        StepProfiler profiler = new StepProfiler(matchName);
+        String metricsName = "metrics_" + timestamp() + (matchName.isEmpty()? "" : "_" + matchName);
+        profiler.writeCSV(new File(config.resultPath + File.separator + metricsName + ".csv"));
+        profilers.put(matchName, profiler);
+
+        JSONObject result = checkpoint == null? new JSONObject() : checkpoint.getResults(matchKey);
+        int firstSim = checkpoint == null? 0 : checkpoint.getSimulation(matchKey);
+        File resumeJournal = checkpoint == null? null : checkpoint.getJournal(matchKey);
+        for (int simIndex = firstSim; simIndex < config.simConfigs.size() && !aborted; simIndex++){
+            AbstractSimulation sim;
+            if (simIndex == firstSim && resumeJournal != null) {
+                sim = resumeSimulation(resumeJournal, config.simConfigs.get(simIndex), startTime, monitored, replay,
+                        profiler);
+                if (sim == null) {
+                    Log.log(Log.Level.CRITICAL, "Could not resume match " + matchKey + ". Stopping the tournament.");
+                    aborted = true;
+                    break;
                 }
+            }
+            else {
+                sim = runSimulation(matchKey, simIndex, matchTeams, startTime, monitored, replay, profiler);
+                if (sim == null) continue;
+            }
 
-                // handle final state
-                Map<String, SimEnd> finalPercepts = sim.finish();
-                agentManager.handleFinalPercepts(finalPercepts);
-                result.put(sim.getName(), sim.getResult());
-            } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-                Log.log(Log.Level.ERROR, "Could not load scenario class: " + className);
+            // handle final state
+            Map<String, SimEnd> finalPercepts = sim.finish();
+            agentManager.handleFinalPercepts(matchName, finalPercepts);
+            result.put(sim.getName(), sim.getResult());
+            if (checkpoint != null) checkpoint.finishSimulation(matchKey, simIndex, sim.getName(), sim.getResult());
+        }
+
+        if (replay != null) replay.close();
+        if (monitored) monitoredMatch.set(null);
+
+        if (aborted) {
+            // the match remains unfinished in the checkpoint, so that it can be resumed again
+            profilers.remove(matchName);
+            profiler.close();
+            return;
+        }
+        if (checkpoint != null) checkpoint.finishMatch(matchKey);
+        writeResults(matchName, result, profiler, metricsName);
+    }
+
+    /**
+     * Creates and runs a simulation of a match (up to its last step).
+     * @param matchKey the key identifying the match in the tournament checkpoint
+     * @param simIndex the index of the simulation's config
+     * @param matchTeams a set of all teams to participate in the simulation
+     * @param startTime string representation of the match's start time
+     * @param monitored whether the monitor shows this match
+     * @param replay the replay writer for this match or null
+     * @param profiler the step profiler of the match
+     * @return the simulation or null if it could not be created
+     */
+    private AbstractSimulation runSimulation(String matchKey, int simIndex, Set<TeamConfig> matchTeams,
+                                             String startTime, boolean monitored, ReplayWriter replay,
+                                             StepProfiler profiler) {
+        JSONObject simConfig = config.simConfigs.get(simIndex);
+        // initialize random
+        long randomSeed = simConfig.optLong("randomSeed", System.currentTimeMillis());
+        Log.log(Log.Level.NORMAL, "Configuring random seed: " + randomSeed);
+        RNG.initialize(randomSeed);
+        // create and run scenario instance with the given teams
+        String className = simConfig.optString("scenarioClass", "");
+        if (className.equals("")){
+            Log.log(Log.Level.ERROR, "No scenario class specified.");
+            return null;
+        }
+        AbstractSimulation sim;
+        try {
+            sim = (AbstractSimulation) AbstractSimulation.class.getClassLoader()
+                                                            .loadClass("massim.scenario." + className)
+                                                            .newInstance();
+        } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+            Log.log(Log.Level.ERROR, "Could not load scenario class: " + className);
+            return null;
+        }
+
+        int steps = simConfig.optInt("steps", 1000);
+
+        // handle initial state
+        Map<String, SimStart> initialPercepts = sim.init(steps, simConfig, matchTeams);
+        handleSimState(sim.getName(), startTime, sim.getStaticData(), monitored, replay);
+        File journalFile = config.journalPath == null || config.journalPath.isEmpty()? null
+                : new File(config.journalPath, "journal_" + startTime + "-" + sim.getName() + ".jsonl");
+        ActionJournal journal = createJournal(journalFile, sim, randomSeed, steps, simConfig, matchTeams);
+        SnapshotWriter snapshots = createSnapshotWriter(journal, journalFile);
+        if (checkpoint != null)
+            checkpoint.startSimulation(matchKey, matchTeams, simIndex, journal == null? null : journalFile, startTime);
+        agentManager.handleInitialPercepts(SimulationContext.current().getName(), initialPercepts);
+
+        // handle steps
+        runSteps(sim, 0, steps, startTime, monitored, replay, journal, snapshots, profiler);
+        if (journal != null) journal.close();
+        if (snapshots != null) snapshots.discard();
+        return sim;
+    }
+
+    /**
+     * Writes the result and the step metrics of a match to files.
+     * @param matchName the name of the match (empty if matches do not run concurrently)
+     * @param result the results of the match's simulations
+     * @param profiler the step profiler of the match
+     * @param metricsName the name of the metrics files (without extension)
+     */
+    private void writeResults(String matchName, JSONObject result, StepProfiler profiler, String metricsName) {
+        String resultName = "result_" + timestamp() + (matchName.isEmpty()? "" : "_" + matchName) + ".json";
+        IOUtil.writeJSONToFile(result, new File(config.resultPath + File.separator + resultName));
+        profilers.remove(matchName);
+        profiler.close();
+        Log.log(Log.Level.NORMAL, profiler.summary());
+        IOUtil.writeJSONToFile(profiler.toJSON(), new File(config.resultPath + File.separator + metricsName + ".json"));
+    }
+
+    /**
+     * Resumes a simulation that was interrupted (e.g. because the server died) from its newest snapshot and its
+     * action journal. Only the journaled steps after the snapshot are re-simulated (without the agents). If there is
+     * no usable snapshot, all journaled steps are re-simulated. If the re-simulated simulation differs from the
+     * journal in any way, it is not resumed. Otherwise, the agents receive their
+     * sim-start percepts again (those that are not connected yet when they reconnect) and the simulation continues
+     * with the next step. The journal and the replay of the simulation are continued.
+     * @param journalFile the journal of the interrupted simulation
+     * @param simConfig the configuration of the simulation (has to match the journal)
+     * @param startTime string representation of the match's (original) start time
+     * @param monitored whether the monitor shows this match
+     * @param replay the replay writer for this match or null
+     * @param profiler the step profiler of the match
+     * @return the simulation after its last step or null if it could not be restored
+     */
+    private AbstractSimulation resumeSimulation(File journalFile, JSONObject simConfig, String startTime,
+                                                boolean monitored, ReplayWriter replay, StepProfiler profiler) {
+        long start = System.currentTimeMillis();
+        JournalPlayer player;
+        int snapshotStep = -1;
+        try {
+            player = new JournalPlayer(journalFile);
+            if (!player.getConfig().similar(simConfig)) {
+                Log.log(Log.Level.CRITICAL, "The configuration of the simulation differs from " + journalFile);
+                return null;
+            }
+            File snapshotFile = SimulationSnapshot.fileFor(journalFile);
+            if (snapshotFile.isFile()) {
+                try {
+                    SimulationSnapshot snapshot = SimulationSnapshot.read(snapshotFile);
+                    if (snapshot.getStep() < player.getStepCount()) {
+                        player.restore(snapshot);
+                        if (player.getMismatches() > 0)
+                            throw new IOException("the restored simulation differs from the journal");
+                        snapshotStep = snapshot.getStep();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // the journal alone is enough to restore the simulation
+                    Log.log(Log.Level.ERROR, "Could not restore snapshot " + snapshotFile + " (" + e.getMessage()
+                            + "), re-simulating from the start of the journal.");
+                    player = new JournalPlayer(journalFile);
+                }
             }
+            if (snapshotStep < 0) player.restart();
+        } catch (IOException e) {
+            Log.log(Log.Level.CRITICAL, "Could not restore simulation from " + journalFile + ": " + e.getMessage());
+            return null;
+        }
+        AbstractSimulation sim = player.getSimulation();
+        int firstStep = player.getStepCount();
+
+        // restore the state
+        Log.log(Log.Level.NORMAL, "Restoring simulation " + sim.getName() + " from " + journalFile
+                + " (" + (snapshotStep < 0? "no snapshot" : "snapshot of step " + snapshotStep) + ", "
+                + (firstStep - snapshotStep - 1) + " steps to re-simulate)");
+        if (replay != null) replay.continueReplay(sim.getName(), startTime, snapshotStep + 1);
+        handleSimState(sim.getName(), startTime, sim.getStaticData(), monitored, replay);
+        try {
+            for (int i = snapshotStep + 1; i < firstStep; i++) {
+                WorldData snapshot = player.stepTo(i);
+                if (replay != null) replay.updateState(sim.getName(), startTime, snapshot);
+            }
+        } catch (IOException e) {
+            Log.log(Log.Level.CRITICAL, "Could not restore simulation: " + e.getMessage());
+            return null;
+        }
+        if (player.getMismatches() > 0) {
+            Log.log(Log.Level.CRITICAL, "The restored simulation differs from the journal in "
+                    + player.getMismatches() + " places (has the simulation changed?).");
+            return null;
+        }
+        Log.log(Log.Level.NORMAL, "Simulation restored in " + (System.currentTimeMillis() - start) + " ms.");
+
+        ActionJournal journal = null;
+        try {
+            journal = new ActionJournal(journalFile, player.getLength());
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not continue journal " + journalFile + ": " + e.getMessage());
+        }
+        SnapshotWriter snapshots = createSnapshotWriter(journal, journalFile);
+
+        agentManager.handleInitialPercepts(SimulationContext.current().getName(), player.getInitialPercepts());
+        runSteps(sim, firstStep, player.getTotalSteps(), startTime, monitored, replay, journal, snapshots, profiler);
+        if (journal != null) journal.close();
+        if (snapshots != null) snapshots.discard();
+        return sim;
+    }
+
+    /**
+     * Runs steps of a simulation.
+     * @param sim the simulation
+     * @param firstStep the first step to run
+     * @param steps the number of steps of the simulation
+     * @param startTime string representation of the simulation's start time
+     * @param monitored whether the monitor shows this simulation
+     * @param replay the replay writer for this simulation or null
+     * @param journal the action journal of this simulation or null
+     * @param snapshots the snapshot writer of this simulation or null
+     * @param profiler the step profiler of the match
+     */
+    private void runSteps(AbstractSimulation sim, int firstStep, int steps, String startTime, boolean monitored,
+                          ReplayWriter replay, ActionJournal journal, SnapshotWriter snapshots,
+                          StepProfiler profiler) {
+        for (int i = firstStep; i < steps; i++){
+            Log.log(Log.Level.NORMAL, "Simulation at step %d", i);
+            profiler.startStep(i);
+            long start = System.nanoTime();
+            handleInputs(sim, journal);
+            profiler.record(StepProfiler.Phase.HANDLE_INPUTS, start);
+            start = System.nanoTime();
+            Map<String, RequestAction> percepts = sim.preStep(i);
+            profiler.record(StepProfiler.Phase.PRE_STEP, start);
+            start = System.nanoTime();
+            Map<String, Action> actions = agentManager.requestActions(percepts, profiler);
+            profiler.record(StepProfiler.Phase.REQUEST_ACTIONS, start);
+            if (journal != null) journal.beginStep(i, actions);
+            start = System.nanoTime();
+            sim.step(i, actions); // execute step with agent actions
+            profiler.record(StepProfiler.Phase.STEP, start);
+            if (journal != null) journal.endStep(actions, sim.getResult());
+            start = System.nanoTime();
+            WorldData snapshot = sim.getSnapshot();
+            if (snapshots != null) snapshots.afterStep(sim, i);
+            profiler.record(StepProfiler.Phase.SNAPSHOT, start);
+            start = System.nanoTime();
+            handleSimState(sim.getName(), startTime, snapshot, monitored, replay);
+            profiler.record(StepProfiler.Phase.SIM_STATE, start);
+            profiler.finishStep();
+            if (monitored && config.streamMetrics) monitor.updateMetrics(profiler.toJSON());
         }
+    }
 
-        // write match result to file
-        IOUtil.writeJSONToFile(result, new File(config.resultPath + File.separator + "result_" + timestamp() + ".json"));
+    /**
+     * Creates the action journal for a simulation (if journals are configured).
+     * @param file the journal file or null
+     * @return the journal or null
+     */
+    private ActionJournal createJournal(File file, AbstractSimulation sim, long randomSeed, int steps,
+                                        JSONObject simConfig, Set<TeamConfig> matchTeams) {
+        if (file == null) return null;
+        try {
+            return new ActionJournal(file, randomSeed, steps, simConfig, matchTeams, sim.getStaticData());
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not create journal " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates the snapshot writer for a journaled simulation (if snapshots are configured).
+     * @param journal the journal of the simulation or null
+     * @param journalFile the journal file
+     * @return the snapshot writer or null
+     */
+    private SnapshotWriter createSnapshotWriter(ActionJournal journal, File journalFile) {
+        if (journal == null || config.snapshotInterval <= 0) return null;
+        return new SnapshotWriter(SimulationSnapshot.fileFor(journalFile), config.snapshotInterval);
     }
 
     /**
      * Takes and processes all inputs from the input manager
      * @param sim the simulation that may receive some of the commands
+     * @param journal the journal recording the commands the simulation receives or null
      */
-    private void handleInputs(AbstractSimulation sim) {
+    private void handleInputs(AbstractSimulation sim, ActionJournal journal) {
+        synchronized (inputLock) {
+            handleInputsLocked(sim, journal);
+        }
+    }
+
+    /**
+     * Takes and processes all inputs from the input manager (while holding the input lock).
+     * @param sim the simulation that may receive some of the commands
+     * @param journal the journal recording the commands the simulation receives or null
+     */
+    private void handleInputsLocked(AbstractSimulation sim, ActionJournal journal) {
         boolean paused = false;
         // read inputs if inputs are available or execution is paused
         while(inputManager.hasInput() || paused){
@@ -351,6 +809,7 @@ public class Server {
                     default:
                         handleCommand(inputWords);
                         sim.handleCommand(inputWords);
+                        if (journal != null) journal.recordCommand(inputWords);
                         break;
                 }
             } catch (InterruptedException e) {
@@ -365,8 +824,17 @@ public class Server {
      * @param command the already split command string
      */
     private void handleCommand(String[] command) {
-        // TODO handle something
-        Log.log(Log.Level.NORMAL, "Command received: " + command[0]);
+        switch (command[0]) {
+            case "metrics":
+                profilers.values().forEach(profiler -> Log.log(Log.Level.NORMAL, profiler.summary()));
+                break;
+            case "viewers":
+                if (monitor != null) Log.log(Log.Level.NORMAL, monitor.viewerSummary());
+                else Log.log(Log.Level.NORMAL, "The monitor is not running.");
+                break;
+            default:
+                Log.log(Log.Level.NORMAL, "Command received: " + command[0]);
+        }
     }
 
     /**
@@ -374,10 +842,13 @@ public class Server {
      * @param simId the ID of the current sim
      * @param startTime string representation of the simulation's start time
      * @param world the world state
+     * @param monitored whether the monitor shows this simulation
+     * @param replay the replay writer for this simulation or null
      */
-    private void handleSimState(String simId, String startTime, WorldData world) {
-        if (monitor != null) monitor.updateState(world);
-        if (replayWriter != null) replayWriter.updateState(simId, startTime, world);
+    private void handleSimState(String simId, String startTime, WorldData world, boolean monitored,
+                                ReplayWriter replay) {
+        if (monitored) monitor.updateState(world);
+        if (replay != null) replay.updateState(simId, startTime, world);
     }
 
     /**
@@ -407,16 +878,40 @@ public class Server {
         Log.log(Log.Level.NORMAL, "Configuring backlog: " + config.backlog);
         config.agentTimeout = serverJSON.optInt("agentTimeout", 4000);
         Log.log(Log.Level.NORMAL, "Configuring agent timeout: " + config.agentTimeout);
+        config.minAgentTimeout = serverJSON.optLong("minAgentTimeout", config.agentTimeout / 4);
+        Log.log(Log.Level.NORMAL, "Configuring min agent timeout: " + config.minAgentTimeout);
+        config.disconnectedTimeout = serverJSON.optLong("disconnectedTimeout", config.agentTimeout / 4);
+        Log.log(Log.Level.NORMAL, "Configuring disconnected timeout: " + config.disconnectedTimeout);
+        config.streamMetrics = serverJSON.optBoolean("streamMetrics", false);
+        Log.log(Log.Level.NORMAL, "Configuring metrics streaming: " + config.streamMetrics);
+        config.monitorHistoryBytes = serverJSON.optLong("monitorHistory", Monitor.DEFAULT_HISTORY_BYTES / 1024 / 1024)
+                * 1024 * 1024;
+        Log.log(Log.Level.NORMAL, "Configuring monitor history: " + config.monitorHistoryBytes + " bytes");
         config.logPath = serverJSON.optString("logPath");
         Log.log(Log.Level.NORMAL, "Configuring log path: " + config.logPath);
         config.logLevel = serverJSON.optString("logLevel", "normal");
         Log.log(Log.Level.NORMAL, "Configuring log level: " + config.logLevel);
+        config.logFlush = serverJSON.optString("logFlush", "batch");
+        Log.log(Log.Level.NORMAL, "Configuring log flush: " + config.logFlush);
+        config.logFlushInterval = serverJSON.optLong("logFlushInterval", 1000);
+        Log.log(Log.Level.NORMAL, "Configuring log flush interval: " + config.logFlushInterval);
         config.resultPath = serverJSON.optString("resultPath", "results");
         Log.log(Log.Level.NORMAL, "Configuring result path: " + config.resultPath);
         config.maxPacketLength = serverJSON.optInt("maxPacketLength", 65536);
         Log.log(Log.Level.NORMAL, "Configuring max packet length: " + config.maxPacketLength);
         config.replayPath = serverJSON.optString("replayPath");
         Log.log(Log.Level.NORMAL, "Configuring replay path: " + config.replayPath);
+        config.replayKeyframeInterval = serverJSON.optInt("replayKeyframeInterval",
+                ReplayWriter.DEFAULT_KEYFRAME_INTERVAL);
+        Log.log(Log.Level.NORMAL, "Configuring replay keyframe interval: " + config.replayKeyframeInterval);
+        config.replayCompression = serverJSON.optBoolean("replayCompression", true);
+        Log.log(Log.Level.NORMAL, "Configuring replay compression: " + config.replayCompression);
+        config.journalPath = serverJSON.optString("journalPath");
+        Log.log(Log.Level.NORMAL, "Configuring journal path: " + config.journalPath);
+        config.snapshotInterval = serverJSON.optInt("snapshotInterval", 100);
+        Log.log(Log.Level.NORMAL, "Configuring snapshot interval: " + config.snapshotInterval);
+        config.concurrentMatches = serverJSON.optInt("concurrentMatches", 1);
+        Log.log(Log.Level.NORMAL, "Configuring concurrent matches: " + config.concurrentMatches);
 
         // parse teams
         JSONObject teamJSON = conf.optJSONObject("teams");
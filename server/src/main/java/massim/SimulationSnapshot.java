@@ -0,0 +1,185 @@
+package massim;
+
+import massim.protocol.messagecontent.SimStart;
+import massim.scenario.AbstractSimulation;
+import massim.util.RNG;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A copy of the complete state of a simulation after a step: the serialized simulation (world state incl. the
+ * counters for job and well names) and the state of the shared random sequence.
+ * <br>
+ * Snapshots are stored next to the simulation's {@link ActionJournal}, so that a simulation can be resumed from
+ * the newest snapshot and only the steps after it have to be re-simulated from the journal (see
+ * {@link JournalPlayer#restore(SimulationSnapshot)}).
+ */
+public class SimulationSnapshot {
+
+    /**
+     * the version of the snapshot format (to be increased whenever the serialized form of the simulation changes,
+     * so that older snapshots are rejected instead of being read with missing or misinterpreted fields)
+     */
+    public final static int VERSION = 2;
+
+    private final int step;
+    private final long seed;
+    private final String rngState;
+    private final byte[] simulation;
+
+    private SimulationSnapshot(int step, long seed, String rngState, byte[] simulation) {
+        this.step = step;
+        this.seed = seed;
+        this.rngState = rngState;
+        this.simulation = simulation;
+    }
+
+    /**
+     * Copies the state of a simulation. Has to be called from the simulation's context between two steps.
+     * @param sim the simulation
+     * @param step the last step the simulation executed
+     * @return the snapshot
+     * @throws IOException if the simulation could not be serialized
+     */
+    public static SimulationSnapshot take(AbstractSimulation sim, int step) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sim);
+        }
+        return new SimulationSnapshot(step, RNG.getSeed(), RNG.saveState(), bytes.toByteArray());
+    }
+
+    /**
+     * @param journal the journal of a simulation
+     * @return the file the snapshots of the simulation are stored in
+     */
+    public static File fileFor(File journal) {
+        String name = journal.getName();
+        if (name.endsWith(".jsonl")) name = name.substring(0, name.length() - ".jsonl".length());
+        return new File(journal.getParentFile(), name + ".snapshot");
+    }
+
+    /**
+     * @return the last step the simulation executed before the snapshot was taken
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Writes the snapshot (atomically, so that the previous snapshot remains if the server dies while writing).
+     * @param file the file to write to
+     * @throws IOException if the snapshot could not be written
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir);
+        File tmp = File.createTempFile("snapshot", ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                out.writeInt(VERSION);
+                out.writeInt(step);
+                out.writeLong(seed);
+                out.writeUTF(rngState);
+                out.writeInt(simulation.length);
+                out.write(simulation);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * @param file a file written by {@link #write(File)}
+     * @return the snapshot
+     * @throws IOException if the file could not be read or is not a snapshot
+     */
+    public static SimulationSnapshot read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+            int step = in.readInt();
+            long seed = in.readLong();
+            String rngState = in.readUTF();
+            byte[] simulation = new byte[in.readInt()];
+            in.readFully(simulation);
+            return new SimulationSnapshot(step, seed, rngState, simulation);
+        }
+    }
+
+    /**
+     * Restores the simulation and the random sequence (of the current context).
+     * @return the simulation (to continue with the step after {@link #getStep()}) and its initial percepts
+     * @throws IOException if the snapshot is invalid (e.g. the simulation changed since it was taken)
+     */
+    public Restored restore() throws IOException {
+        RNG.initialize(seed);
+        RNG.restoreState(rngState);
+        AbstractSimulation sim;
+        try (ObjectInputStream in = new SnapshotInputStream(new ByteArrayInputStream(simulation))) {
+            sim = (AbstractSimulation) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid snapshot", e);
+        }
+        return new Restored(sim, sim.restore());
+    }
+
+    /**
+     * A simulation restored from a snapshot.
+     */
+    public static class Restored {
+
+        public final AbstractSimulation simulation;
+        public final Map<String, SimStart> initialPercepts;
+
+        private Restored(AbstractSimulation simulation, Map<String, SimStart> initialPercepts) {
+            this.simulation = simulation;
+            this.initialPercepts = initialPercepts;
+        }
+    }
+
+    /**
+     * An object stream that only resolves the classes a simulation consists of: MASSim classes, java.lang and
+     * java.util (without subpackages) and arrays of these or of primitives.
+     */
+    private static class SnapshotInputStream extends ObjectInputStream {
+
+        SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName()))
+                throw new InvalidClassException(desc.getName(), "not allowed in snapshot");
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy classes not allowed in snapshot");
+        }
+
+        private static boolean isAllowed(String name) {
+            String component = name.replaceFirst("^\\[+", "");
+            if (component.length() != name.length()) {
+                if (component.length() == 1) return true; // primitive array
+                if (!component.startsWith("L") || !component.endsWith(";")) return false;
+                component = component.substring(1, component.length() - 1);
+            }
+            if (component.startsWith("massim.")) return true;
+            int lastDot = component.lastIndexOf('.');
+            String pkg = lastDot < 0? "" : component.substring(0, lastDot);
+            return pkg.equals("java.lang") || pkg.equals("java.util");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package massim;
+
+import massim.scenario.AbstractSimulation;
+import massim.util.Log;
+import massim.util.SimulationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Takes a {@link SimulationSnapshot} every n steps of a simulation. Compressing and writing happens in a background
+ * thread; if a snapshot is still waiting to be written when the next one is taken, only the newer one is written.
+ * <p>
+ * Serializing the simulation itself still happens in the step thread: the world is a mutable object graph without a
+ * cheaper way to get a consistent copy of it, so the next step has to wait until it is serialized. The pause is
+ * recorded in the {@link StepProfiler.Phase#SNAPSHOT} phase of the steps the snapshot is taken in.
+ */
+public class SnapshotWriter {
+
+    private final File file;
+    private final int interval;
+    private final AtomicReference<SimulationSnapshot> pending = new AtomicReference<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param file the file to write the snapshots to (each snapshot replaces the previous one)
+     * @param interval the number of steps between two snapshots
+     */
+    public SnapshotWriter(File file, int interval) {
+        this.file = file;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Takes a snapshot if it is due. Needs to be called after each step (and after the step was journaled).
+     * @param sim the simulation
+     * @param step the step the simulation just executed
+     */
+    public void afterStep(AbstractSimulation sim, int step) {
+        if ((step + 1) % interval != 0) return;
+        try {
+            SimulationSnapshot snapshot = SimulationSnapshot.take(sim, step);
+            if (pending.getAndSet(snapshot) == null) executor.execute(SimulationContext.wrap(this::writePending));
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not take snapshot of step " + step + ": " + e.getMessage());
+        }
+    }
+
+    private void writePending() {
+        SimulationSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null) return;
+        try {
+            snapshot.write(file);
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not write snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the last snapshot (if it is still pending) and stops the background thread.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Log.log(Log.Level.ERROR, "Interrupted while writing snapshot " + file);
+        }
+    }
+
+    /**
+     * Stops the background thread and deletes the snapshot. Called once the simulation is finished, since the
+     * snapshot is not needed to resume it anymore.
+     */
+    public void discard() {
+        pending.set(null);
+        close();
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not delete snapshot " + file + ": " + e.getMessage());
+        }
+    }
+}
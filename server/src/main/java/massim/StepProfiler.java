@@ -0,0 +1,233 @@
+package massim;
+
+import massim.util.Log;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Measures how long the phases of each simulation step take. All phases except {@link Phase#SERIALIZE} are wall
+ * times of consecutive parts of a step.
+ * Keeps rolling histograms (over the last {@link #WINDOW} steps) of all phases and of the agents' response times,
+ * and optionally writes one CSV line per step.
+ */
+class StepProfiler {
+
+    /**
+     * The phases of a step as executed by {@link Server}.
+     */
+    enum Phase {
+        /** processing console inputs */
+        HANDLE_INPUTS("handleInputs"),
+        /** computing the percepts */
+        PRE_STEP("preStep"),
+        /**
+         * converting the percepts to XML: the time of all agents' conversions added up. The agents are served in
+         * parallel, so this is not wall time; it overlaps with {@link #REQUEST_ACTIONS}, which it is part of (and it
+         * is 0 for agents running in the server's JVM, which get their percepts without XML).
+         */
+        SERIALIZE("serialize"),
+        /** sending the percepts and waiting for all actions */
+        REQUEST_ACTIONS("requestActions"),
+        /** executing the actions */
+        STEP("step"),
+        /** creating the snapshot of the world (and the simulation snapshot, if due) */
+        SNAPSHOT("snapshot"),
+        /** notifying the monitor and the replay writer */
+        SIM_STATE("simState");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * The number of recent samples the rolling histograms are computed from.
+     */
+    final static int WINDOW = 100;
+
+    private final String name;
+    private final Histogram[] phases = new Histogram[Phase.values().length];
+    private final Map<String, Histogram> agents = new TreeMap<>();
+
+    private final long[] currentStep = new long[Phase.values().length];
+    private long currentMaxLatency;
+    private int step = -1;
+    private PrintWriter csv;
+
+    /**
+     * @param name the name of the profiled match
+     */
+    StepProfiler(String name) {
+        this.name = name;
+        for (int i = 0; i < phases.length; i++) phases[i] = new Histogram();
+    }
+
+    /**
+     * Writes a line with the duration of each phase per step to the given file.
+     * @param file the CSV file to create
+     */
+    void writeCSV(File file) {
+        try {
+            File dir = file.getParentFile();
+            if (dir != null) dir.mkdirs();
+            csv = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+            StringBuilder header = new StringBuilder("step");
+            for (Phase phase : Phase.values()) header.append(",").append(phase.label).append("Ms");
+            csv.println(header.append(",maxAgentLatencyMs"));
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not create metrics file " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts measuring a new step (and finishes the previous one).
+     * @param step the new step
+     */
+    synchronized void startStep(int step) {
+        finishStep();
+        this.step = step;
+    }
+
+    /**
+     * Adds the time of a phase to the current step.
+     * @param phase the phase
+     * @param startNanos the start of the phase as given by {@link System#nanoTime()}
+     */
+    void record(Phase phase, long startNanos) {
+        add(phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds a duration to a phase of the current step.
+     * @param phase the phase
+     * @param nanos the duration in ns
+     */
+    synchronized void add(Phase phase, long nanos) {
+        currentStep[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Records the time an agent needed to send its action.
+     * @param agent the name of the agent
+     * @param nanos the time between sending the percept and receiving the action in ns
+     */
+    synchronized void recordLatency(String agent, long nanos) {
+        agents.computeIfAbsent(agent, a -> new Histogram()).add(nanos);
+        currentMaxLatency = Math.max(currentMaxLatency, nanos);
+    }
+
+    /**
+     * Finishes the current step (if any), i.e. adds its phases to the histograms and writes them to the CSV file.
+     */
+    synchronized void finishStep() {
+        if (step < 0) return;
+        for (int i = 0; i < phases.length; i++) phases[i].add(currentStep[i]);
+        if (csv != null) {
+            StringBuilder line = new StringBuilder().append(step);
+            for (long nanos : currentStep) line.append(",").append(toMillis(nanos));
+            csv.println(line.append(",").append(toMillis(currentMaxLatency)));
+        }
+        Arrays.fill(currentStep, 0);
+        currentMaxLatency = 0;
+        step = -1;
+    }
+
+    /**
+     * Finishes the current step and closes the CSV file.
+     */
+    synchronized void close() {
+        finishStep();
+        if (csv != null) csv.close();
+        csv = null;
+    }
+
+    /**
+     * @return the statistics of all phases and agents as JSON
+     */
+    synchronized JSONObject toJSON() {
+        JSONObject result = new JSONObject();
+        result.put("match", name);
+        JSONObject phaseJSON = new JSONObject();
+        for (Phase phase : Phase.values()) phaseJSON.put(phase.label, phases[phase.ordinal()].toJSON());
+        result.put("phases", phaseJSON);
+        JSONObject agentJSON = new JSONObject();
+        agents.forEach((agent, histogram) -> agentJSON.put(agent, histogram.toJSON()));
+        result.put("agentLatency", agentJSON);
+        return result;
+    }
+
+    /**
+     * @return a human readable table of the phase statistics
+     */
+    synchronized String summary() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("Step metrics%s (ms, last %d steps):%n", name.isEmpty()? "" : " of " + name, WINDOW));
+        s.append(String.format("%-16s %9s %9s %9s %9s %9s%n", "phase", "mean", "p50", "p95", "max", "total"));
+        for (Phase phase : Phase.values()) s.append(phases[phase.ordinal()].format(phase.label));
+        agents.entrySet().stream()
+                .max(Comparator.comparingDouble(e -> e.getValue().mean()))
+                .ifPresent(e -> s.append(e.getValue().format("agent " + e.getKey())));
+        return s.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1e4) / 100d;
+    }
+
+    /**
+     * Keeps the last {@link #WINDOW} samples and the totals of all samples.
+     */
+    private static class Histogram {
+
+        private final long[] samples = new long[WINDOW];
+        private int next = 0;
+        private long count = 0;
+        private long total = 0;
+
+        void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            count++;
+            total += nanos;
+        }
+
+        private long[] window() {
+            long[] window = Arrays.copyOf(samples, (int) Math.min(count, WINDOW));
+            Arrays.sort(window);
+            return window;
+        }
+
+        double mean() {
+            long[] window = window();
+            return window.length == 0? 0 : Arrays.stream(window).sum() / (double) window.length;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+        }
+
+        JSONObject toJSON() {
+            long[] window = window();
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("mean", toMillis((long) mean()));
+            json.put("p50", toMillis(percentile(window, .5)));
+            json.put("p95", toMillis(percentile(window, .95)));
+            json.put("max", toMillis(window.length == 0? 0 : window[window.length - 1]));
+            json.put("total", toMillis(total));
+            return json;
+        }
+
+        String format(String label) {
+            long[] window = window();
+            return String.format("%-16s %9.2f %9.2f %9.2f %9.2f %9.2f%n", label, toMillis((long) mean()),
+                    toMillis(percentile(window, .5)), toMillis(percentile(window, .95)),
+                    toMillis(window.length == 0? 0 : window[window.length - 1]), toMillis(total));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package massim;
+
+import massim.config.TeamConfig;
+import massim.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Records the progress of a tournament, so that the server can resume it after it was interrupted.
+ * <br>
+ * The file contains a JSON object with an entry for each started match (by a key that identifies the match within
+ * the tournament): its teams, whether it is finished, the index of its current simulation (in the match config),
+ * the journal of that simulation, the start time of the match and the results of the simulations that are already
+ * finished.
+ * The file is replaced (atomically) whenever a simulation starts or ends.
+ */
+public class TournamentCheckpoint {
+
+    public final static int VERSION = 1;
+
+    private final File file;
+    private final JSONObject matches;
+
+    /**
+     * Creates a new (empty) checkpoint. Nothing is written before the first simulation starts.
+     * @param file the file to store the checkpoint in
+     */
+    public TournamentCheckpoint(File file) {
+        this(file, new JSONObject());
+    }
+
+    private TournamentCheckpoint(File file, JSONObject matches) {
+        this.file = file;
+        this.matches = matches;
+    }
+
+    /**
+     * Reads a checkpoint to resume the tournament. The checkpoint continues to be written to the same file.
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file could not be read or is not a checkpoint
+     */
+    public static TournamentCheckpoint load(File file) throws IOException {
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (json.optInt("checkpoint") != VERSION)
+                throw new IOException("Unsupported checkpoint version " + json.opt("checkpoint"));
+            return new TournamentCheckpoint(file, json.getJSONObject("matches"));
+        } catch (JSONException e) {
+            throw new IOException("Invalid checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of matches that have been started
+     */
+    public synchronized int getMatchCount() {
+        return matches.length();
+    }
+
+    /**
+     * @param match the key of a match
+     * @return whether all simulations of the match are finished
+     */
+    public synchronized boolean isFinished(String match) {
+        JSONObject entry = matches.optJSONObject(match);
+        return entry != null && entry.optBoolean("finished");
+    }
+
+    /**
+     * @return the keys of all matches that have been started but not finished, mapped to the names of their teams
+     */
+    public synchronized Map<String, List<String>> getUnfinishedMatches() {
+        Map<String, List<String>> unfinished = new TreeMap<>();
+        for (String match : matches.keySet()) {
+            JSONObject entry = matches.getJSONObject(match);
+            if (entry.optBoolean("finished")) continue;
+            List<String> teams = new ArrayList<>();
+            JSONArray teamsJSON = entry.getJSONArray("teams");
+            for (int i = 0; i < teamsJSON.length(); i++) teams.add(teamsJSON.getString(i));
+            unfinished.put(match, teams);
+        }
+        return unfinished;
+    }
+
+    /**
+     * @param match the key of a match
+     * @return the index of the first simulation of the match that is not finished (0 for a new match)
+     */
+    public synchronized int getSimulation(String match) {
+        JSONObject entry = matches.optJSONObject(match);
+        return entry == null? 0 : entry.getInt("simulation");
+    }
+
+    /**
+     * @param match the key of a match
+     * @return the journal of the match's current simulation if it has been started (otherwise null)
+     */
+    public synchronized File getJournal(String match) {
+        JSONObject entry = matches.optJSONObject(match);
+        return entry == null || !entry.has("journal")? null : new File(entry.getString("journal"));
+    }
+
+    /**
+     * @param match the key of a match
+     * @return the start time of the match (as used in the names of its journals and replays) or null if the match
+     * has not been started
+     */
+    public synchronized String getStartTime(String match) {
+        JSONObject entry = matches.optJSONObject(match);
+        return entry == null? null : entry.optString("startTime", null);
+    }
+
+    /**
+     * @param match the key of a match
+     * @return a copy of the results of the match's finished simulations (by simulation name)
+     */
+    public synchronized JSONObject getResults(String match) {
+        JSONObject entry = matches.optJSONObject(match);
+        return entry == null? new JSONObject() : new JSONObject(entry.getJSONObject("results").toString());
+    }
+
+    /**
+     * Records that a simulation of a match has been started.
+     * @param match the key of the match
+     * @param teams the teams of the match
+     * @param index the index of the simulation in the match config
+     * @param journal the journal of the simulation (or null if it is not journaled)
+     * @param startTime the start time of the match
+     */
+    public synchronized void startSimulation(String match, Set<TeamConfig> teams, int index, File journal,
+                                             String startTime) {
+        JSONObject entry = matches.optJSONObject(match);
+        if (entry == null) {
+            JSONArray teamsJSON = new JSONArray();
+            teams.stream().map(TeamConfig::getName).sorted().forEach(teamsJSON::put);
+            entry = new JSONObject().put("teams", teamsJSON).put("finished", false).put("results", new JSONObject());
+            matches.put(match, entry);
+        }
+        entry.put("simulation", index);
+        entry.put("journal", journal == null? null : journal.getPath());
+        entry.put("startTime", startTime);
+        save();
+    }
+
+    /**
+     * Records the result of a finished simulation.
+     * @param match the key of the match
+     * @param index the index of the simulation in the match config
+     * @param simulation the name of the simulation
+     * @param result the result of the simulation
+     */
+    public synchronized void finishSimulation(String match, int index, String simulation, JSONObject result) {
+        JSONObject entry = matches.getJSONObject(match);
+        entry.getJSONObject("results").put(simulation, result);
+        entry.put("simulation", index + 1);
+        entry.remove("journal");
+        save();
+    }
+
+    /**
+     * Records that all simulations of a match are finished.
+     * @param match the key of the match
+     */
+    public synchronized void finishMatch(String match) {
+        JSONObject entry = matches.optJSONObject(match);
+        if (entry == null) return;
+        entry.put("finished", true);
+        save();
+    }
+
+    private void save() {
+        JSONObject json = new JSONObject().put("checkpoint", VERSION).put("matches", matches);
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir);
+            File tmp = File.createTempFile("tournament", ".tmp", dir);
+            try {
+                Files.write(tmp.toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not write tournament checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+}
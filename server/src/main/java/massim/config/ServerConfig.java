@@ -25,14 +25,28 @@ public class ServerConfig {
     public int backlog;
     public Map<String, String> accounts = new HashMap<>();
     public long agentTimeout;
+    public long minAgentTimeout;
+    public long disconnectedTimeout;
     public String logPath;
     public String resultPath;
+    public boolean streamMetrics;
+
+    /**
+     * The number of bytes the monitor may use to keep the most recent steps.
+     */
+    public long monitorHistoryBytes;
 
     /**
      * The level at which to log.
      */
     public String logLevel;
 
+    /**
+     * When to flush the log ("line", "batch" or "interval") and the interval in ms.
+     */
+    public String logFlush;
+    public long logFlushInterval;
+
     /**
      * All teams to participate in any simulation.
      */
@@ -48,8 +62,30 @@ public class ServerConfig {
      */
     public String replayPath;
 
+    /**
+     * The number of replay steps from one complete step (keyframe) to the next and whether to compress replays.
+     */
+    public int replayKeyframeInterval;
+    public boolean replayCompression;
+
+    /**
+     * The path where action journals (for re-simulation) should be saved. If empty, no journals are saved.
+     */
+    public String journalPath;
+
+    /**
+     * The number of steps between two snapshots of a journaled simulation (to resume it from). If 0, no snapshots
+     * are taken and a resumed simulation is re-simulated from the start of its journal.
+     */
+    public int snapshotInterval;
+
     /**
      * The port for the webmonitor or 0.
      */
     public int monitorPort;
+
+    /**
+     * The maximum number of matches to run at the same time (only matches without common teams run at the same time).
+     */
+    public int concurrentMatches;
 }
@@ -9,6 +9,7 @@ import massim.protocol.messagecontent.SimEnd;
 import massim.protocol.messagecontent.SimStart;
 import org.json.JSONObject;
 
+import java.io.Serializable;
 import java.util.Map;
 import java.util.Set;
 
@@ -16,7 +17,9 @@ import java.util.Set;
  * A (very abstract) simulation.
  * @author ta10
  */
-public abstract class AbstractSimulation {
+public abstract class AbstractSimulation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * Setup the scenario. Called before the first step.
@@ -27,6 +30,13 @@ public abstract class AbstractSimulation {
      */
     public abstract Map<String, SimStart> init(int steps, JSONObject config, Set<TeamConfig> matchTeams);
 
+    /**
+     * Called instead of {@link #init(int, JSONObject, Set)} after the simulation has been deserialized from a
+     * snapshot. Recreates everything that is not part of the serialized state.
+     * @return map of agent names to their respective initial (sim-start) percept
+     */
+    public abstract Map<String, SimStart> restore();
+
     /**
      * Called before each step.
      * Can be used to prepare the actual step and definitely needs to calculate the agents' percepts.
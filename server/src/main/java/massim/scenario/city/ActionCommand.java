@@ -0,0 +1,230 @@
+package massim.scenario.city;
+
+import massim.protocol.messagecontent.Action;
+import massim.protocol.scenario.city.Actions;
+import massim.scenario.city.data.*;
+import massim.scenario.city.data.facilities.Facility;
+import massim.scenario.city.data.facilities.WellType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An agent action that has already been decoded and resolved against the static parts of the world
+ * (items, facilities, entities, well types and upgrades), so that executing it does not need to parse
+ * or look up its parameters again.
+ * Decoding does not validate anything - the {@link ActionExecutor} still checks the resolved values in the
+ * original order, so that the action results do not change.
+ */
+class ActionCommand {
+
+    /**
+     * All action types known to the executor.
+     */
+    enum Opcode {
+        RANDOM_FAIL(Action.RANDOM_FAIL), NO_ACTION(Action.NO_ACTION),
+        GO_TO(Actions.GO_TO), BUILD(Actions.BUILD), DISMANTLE(Actions.DISMANTLE),
+        GIVE(Actions.GIVE), RECEIVE(Actions.RECEIVE), STORE(Actions.STORE), RETRIEVE(Actions.RETRIEVE),
+        RETRIEVE_DELIVERED(Actions.RETRIEVE_DELIVERED), ASSEMBLE(Actions.ASSEMBLE),
+        ASSIST_ASSEMBLE(Actions.ASSIST_ASSEMBLE), BUY(Actions.BUY), DELIVER_JOB(Actions.DELIVER_JOB),
+        BID_FOR_JOB(Actions.BID_FOR_JOB), DUMP(Actions.DUMP), TRADE(Actions.TRADE), CHARGE(Actions.CHARGE),
+        RECHARGE(Actions.RECHARGE), CONTINUE(Actions.CONTINUE), ABORT(Actions.ABORT), GATHER(Actions.GATHER),
+        UPGRADE(Actions.UPGRADE), UNKNOWN(null);
+
+        private final static Map<String, Opcode> byName = new HashMap<>();
+
+        static {
+            for (Opcode opcode : values()) {
+                if (opcode.actionType != null) byName.put(opcode.actionType, opcode);
+            }
+        }
+
+        private final String actionType;
+
+        Opcode(String actionType) {
+            this.actionType = actionType;
+        }
+
+        /**
+         * @param actionType an action type as sent by an agent
+         * @return the opcode for the action type or {@link #UNKNOWN}
+         */
+        static Opcode of(String actionType) {
+            Opcode opcode = actionType == null? null : byName.get(actionType);
+            return opcode == null? UNKNOWN : opcode;
+        }
+    }
+
+    private final Action action;
+    private final Opcode opcode;
+    private final int paramCount;
+
+    /**
+     * The first parameter if it names something that cannot be resolved statically (e.g. a job).
+     */
+    private String name;
+
+    /**
+     * The agent named in the action (receiver or assembler) and its entity.
+     */
+    private String counterpart;
+    private Entity counterpartEntity;
+
+    private Item item;
+    private int amount = -1;
+    private Facility facility;
+    private Location destination;
+    private WellType wellType;
+    private Upgrade upgrade;
+
+    /**
+     * Decodes an action.
+     * @param action the action to decode
+     * @param world the world to resolve the parameters in
+     */
+    ActionCommand(Action action, WorldState world) {
+        this.action = action;
+        this.opcode = Opcode.of(action.getActionType());
+        List<String> params = action.getParameters();
+        this.paramCount = params.size();
+
+        switch (opcode) {
+            case GO_TO:
+                if (paramCount == 1) facility = world.getFacility(params.get(0));
+                else if (paramCount == 2) destination = Location.parse(params.get(0), params.get(1));
+                break;
+            case BUILD:
+                if (paramCount == 1) wellType = world.getWellType(params.get(0));
+                break;
+            case GIVE: // (agent, item, amount)
+                if (paramCount == 3) {
+                    setCounterpart(params.get(0), world);
+                    item = world.getItemByName(params.get(1));
+                    amount = parseAmount(params.get(2));
+                }
+                break;
+            case STORE:
+            case RETRIEVE:
+            case RETRIEVE_DELIVERED:
+            case BUY:
+            case DUMP:
+            case TRADE: // (item, amount)
+                if (paramCount == 2) {
+                    item = world.getItemByName(params.get(0));
+                    amount = parseAmount(params.get(1));
+                }
+                break;
+            case ASSEMBLE: // (item)
+                if (paramCount == 1) item = world.getItemByName(params.get(0));
+                break;
+            case ASSIST_ASSEMBLE: // (agent)
+                if (paramCount == 1) setCounterpart(params.get(0), world);
+                break;
+            case DELIVER_JOB: // (job)
+                if (paramCount == 1) name = params.get(0);
+                break;
+            case BID_FOR_JOB: // (job, price)
+                if (paramCount == 2) {
+                    name = params.get(0);
+                    amount = parseAmount(params.get(1));
+                }
+                break;
+            case UPGRADE: // (upgrade)
+                if (paramCount == 1) upgrade = world.getUpgrade(params.get(0));
+                break;
+        }
+    }
+
+    private void setCounterpart(String agent, WorldState world) {
+        counterpart = agent;
+        counterpartEntity = world.getEntity(agent);
+    }
+
+    /**
+     * @param param a parameter string
+     * @return the integer value of the string or -1 if it is not a valid integer
+     */
+    private static int parseAmount(String param) {
+        try {
+            return Integer.parseInt(param);
+        } catch (NumberFormatException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the original action
+     */
+    Action getAction() {
+        return action;
+    }
+
+    Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * @return the number of parameters of the original action
+     */
+    int getParamCount() {
+        return paramCount;
+    }
+
+    /**
+     * @return the unresolved name parameter (e.g. of a job) or null
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name of the agent referenced by this action or null
+     */
+    String getCounterpart() {
+        return counterpart;
+    }
+
+    /**
+     * @return the entity referenced by this action or null if there is none (or no such entity)
+     */
+    Entity getCounterpartEntity() {
+        return counterpartEntity;
+    }
+
+    /**
+     * @return the item referenced by this action or null
+     */
+    Item getItem() {
+        return item;
+    }
+
+    /**
+     * @return the amount (or price) parameter or -1 if it was missing or invalid
+     */
+    int getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return the facility referenced by name (goto) or null
+     */
+    Facility getFacility() {
+        return facility;
+    }
+
+    /**
+     * @return the destination given by coordinates (goto) or null
+     */
+    Location getDestination() {
+        return destination;
+    }
+
+    WellType getWellType() {
+        return wellType;
+    }
+
+    Upgrade getUpgrade() {
+        return upgrade;
+    }
+}
@@ -8,10 +8,9 @@ import massim.scenario.city.data.*;
 import massim.scenario.city.data.facilities.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-import static massim.protocol.scenario.city.Actions.*;
-
 /**
  * How else to execute agent actions.
  */
@@ -44,18 +43,36 @@ public class ActionExecutor {
 
     /**
      * Contains all agents that actually received items this turn.
+     * (Gives may be executed in parallel.)
+     */
+    private final Set<Entity> receivers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Contains all agents that performed a receive action this turn.
+     */
+    private final List<Entity> receiving = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Contains all agents whose movement failed with {@link #FAILED_NO_ROUTE} this turn.
      */
-    private Set<Entity> receivers;
+    private final List<Entity> failedMovers = Collections.synchronizedList(new ArrayList<>());
 
     /**
-     * Contains all agents that want to assemble an item this turn.
+     * Contains all agents that want to assemble an item this turn, mapped to the item (null if it is unknown).
+     * A new map for each step, since its iteration order determines the order of assembly.
      */
-    private Set<Entity> assemblers;
+    private Map<Entity, Item> assemblers;
 
     /**
      * Keys: assemblers, Values: sets of assistants
      */
-    private Map<Entity, Set<Entity>> assistants;
+    private final Map<Entity, Set<Entity>> assistants = new HashMap<>();
+
+    /**
+     * Scratch collections for assembly (only used in {@link #postProcess()}).
+     */
+    private final Set<Role> presentRoles = new HashSet<>();
+    private final List<Entity> assemblyAssistants = new ArrayList<>();
 
     ActionExecutor(WorldState world) {
         this.world = world;
@@ -66,56 +83,76 @@ public class ActionExecutor {
      * So, should be called before each step.
      */
     void preProcess(){
-        receivers = new HashSet<>();
-        assemblers = new HashSet<>();
-        assistants = new HashMap<>();
+        receivers.clear();
+        receiving.clear();
+        failedMovers.clear();
+        assemblers = new HashMap<>();
+        assistants.clear();
+    }
+
+    /**
+     * Decodes all actions of a step (in parallel if parallel action execution is enabled), so that
+     * {@link #execute(String, Map, int)} only has to apply them.
+     * @param actions the actions of all agents
+     * @return mapping from agent names to their decoded actions
+     */
+    Map<String, ActionCommand> compile(Map<String, Action> actions) {
+        if (world.isParallelActions()) {
+            return actions.entrySet().parallelStream()
+                    .filter(e -> e.getValue() != null)
+                    .collect(Collectors.toConcurrentMap(Map.Entry::getKey,
+                            e -> new ActionCommand(e.getValue(), world)));
+        }
+        return actions.entrySet().stream()
+                .filter(e -> e.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> new ActionCommand(e.getValue(), world)));
     }
 
     /**
      * Execute an action for a given agent.
      * @param agent the name of the agent
-     * @param actions the actions of all agents
+     * @param commands the (decoded) actions of all agents
      * @param stepNo the current step
      */
-    void execute(String agent, Map<String, Action> actions, int stepNo) {
+    void execute(String agent, Map<String, ActionCommand> commands, int stepNo) {
 
         Entity entity = world.getEntity(agent);
 
-        Action action = actions.get(agent);
-        if(action == null){
+        ActionCommand command = commands.get(agent);
+        if(command == null){
             Log.log(Log.Level.CRITICAL, "Step " + stepNo + ": No action for agent " + agent + " provided.");
-            action = Action.STD_NO_ACTION;
+            command = new ActionCommand(Action.STD_NO_ACTION, world);
         }
-        entity.setLastAction(action);
-        List<String> params = action.getParameters();
-        switch (action.getActionType()){
+        entity.setLastAction(command.getAction());
+        int paramCount = command.getParamCount();
+        switch (command.getOpcode()){
 
-            case Action.RANDOM_FAIL:
+            case RANDOM_FAIL:
                 entity.setLastActionResult(FAILED);
                 break;
 
-            case Action.NO_ACTION:
+            case NO_ACTION:
                 entity.setLastActionResult(SUCCESSFUL);
                 break;
 
             case GO_TO:
-                if(params.size() == 0){ // no params => follow existing route
+                if(paramCount == 0){ // no params => follow existing route
                     if(entity.getRoute() == null){
                         entity.setLastActionResult(FAILED_WRONG_PARAM);
                         break;
                     }
                 }
                 Location destination;
-                if(params.size() == 1){ // param must be facility name
-                    Facility facility = world.getFacility(params.get(0));
+                if(paramCount == 1){ // param must be facility name
+                    Facility facility = command.getFacility();
                     if(facility == null || facility instanceof ResourceNode || facility instanceof Well){
                         entity.setLastActionResult(FAILED_UNKNOWN_FACILITY);
                         break;
                     }
                     destination = facility.getLocation();
                 }
-                else if(params.size() == 2){ // params must be (lat,lon)
-                    destination = Location.parse(params.get(0), params.get(1));
+                else if(paramCount == 2){ // params must be (lat,lon)
+                    destination = command.getDestination();
                 }
                 else{ // too many parameters
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
@@ -134,21 +171,21 @@ public class ActionExecutor {
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
-                entity.setLastActionResult(entity.advanceRoute(world.getGotoCost())? SUCCESSFUL : FAILED_NO_ROUTE);
+                advanceRoute(entity);
                 break;
 
             case BUILD:
-                if(params.size() > 1){
+                if(paramCount > 1){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     return;
                 }
-                if(params.size() == 1) { // param must be well type name
+                if(paramCount == 1) { // param must be well type name
                     Facility facility = world.getFacilityByLocation(entity.getLocation());
                     if(facility != null) { // current location is not free
                         entity.setLastActionResult(FAILED_LOCATION);
                         return;
                     }
-                    WellType wellType = world.getWellType(params.get(0));
+                    WellType wellType = command.getWellType();
                     if(wellType == null) {
                         entity.setLastActionResult(FAILED_UNKNOWN_FACILITY);
                         return;
@@ -174,13 +211,13 @@ public class ActionExecutor {
                         return;
                     }
                     Well well = (Well) facility;
-                    well.build(entity.getSkill());
+                    world.buildWell(well, entity.getSkill());
                     entity.setLastActionResult(SUCCESSFUL);
                 }
                 break;
 
             case DISMANTLE:
-                if(params.size() > 0){
+                if(paramCount > 0){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     return;
                 }
@@ -191,24 +228,23 @@ public class ActionExecutor {
                 }
                 Well well = (Well) fac;
                 entity.setLastActionResult(SUCCESSFUL);
-                if(well.dismantle(entity.getSkill())){
+                if(world.dismantleWell(well, entity.getSkill())){
                     world.removeWell(well);
-                    int refund = (int) (RNG.nextDouble() * .5 * well.getCost()); // refund up to 50% of a well's cost
+                    int refund = (int) (RNG.stream("dismantle", stepNo, agent).nextDouble() * .5 * well.getCost()); // refund up to 50% of a well's cost
                     TeamState team = world.getTeam(world.getTeamForAgent(agent));
                     team.addMassium(refund);
                 }
                 break;
 
             case GIVE: // 3 params (agent, item, amount)
-                if(params.size() != 3){
+                if(paramCount != 3){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                 }
                 else {
-                    String receiver = params.get(0);
-                    Item item = world.getItemByName(params.get(1));
-                    Entity receiverEntity = world.getEntity(receiver);
-                    int amount = -1;
-                    try { amount = Integer.parseInt(params.get(2)); } catch (NumberFormatException ignored) {}
+                    Item item = command.getItem();
+                    Entity receiverEntity = command.getCounterpartEntity();
+                    int amount = command.getAmount();
+                    ActionCommand receiverCommand = commands.get(command.getCounterpart());
 
                     if(receiverEntity == null || amount < 0){
                         entity.setLastActionResult(FAILED_WRONG_PARAM);
@@ -216,7 +252,7 @@ public class ActionExecutor {
                     else if (item == null) {
                         entity.setLastActionResult(FAILED_UNKNOWN_ITEM);
                     }
-                    else if (!actions.get(receiver).getActionType().equals(RECEIVE)) {
+                    else if (receiverCommand == null || receiverCommand.getOpcode() != ActionCommand.Opcode.RECEIVE) {
                         entity.setLastActionResult(FAILED_COUNTERPART);
                     }
                     else if (!receiverEntity.getLocation().inRange(entity.getLocation())) {
@@ -237,10 +273,11 @@ public class ActionExecutor {
                 break;
 
             case RECEIVE:
+                receiving.add(entity);
                 break; // action is processed in give-action, result in postProcess()
 
             case STORE: // 2 params (item, amount)
-                if(params.size() != 2){
+                if(paramCount != 2){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     return;
                 }
@@ -254,15 +291,12 @@ public class ActionExecutor {
                     return;
                 }
                 Storage storage = (Storage)facility;
-                Item item = world.getItemByName(params.get(0));
+                Item item = command.getItem();
                 if(item == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_ITEM);
                     return;
                 }
-                int amount = -1;
-                try{
-                    amount = Integer.parseInt(params.get(1));
-                } catch(NumberFormatException ignored){}
+                int amount = command.getAmount();
                 if(amount < 1 || amount > entity.getItemCount(item)){
                     entity.setLastActionResult(FAILED_ITEM_AMOUNT);
                     return;
@@ -282,7 +316,7 @@ public class ActionExecutor {
 
             case RETRIEVE:           // 2 params (item, amount)
             case RETRIEVE_DELIVERED: // 2 params (item, amount)
-                if(params.size() != 2){
+                if(paramCount != 2){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     return;
                 }
@@ -296,16 +330,14 @@ public class ActionExecutor {
                     return;
                 }
                 storage = (Storage)facility;
-                item = world.getItemByName(params.get(0));
+                item = command.getItem();
                 if(item == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_ITEM);
                     return;
                 }
-                amount = -1;
-                try{
-                    amount = Integer.parseInt(params.get(1));
-                } catch(NumberFormatException ignored){}
-                int retrievable = action.getActionType().equals(RETRIEVE)?
+                amount = command.getAmount();
+                boolean retrieveStored = command.getOpcode() == ActionCommand.Opcode.RETRIEVE;
+                int retrievable = retrieveStored?
                                               storage.getStored(item, world.getTeamForAgent(agent))
                                             : storage.getDelivered(item, world.getTeamForAgent(agent));
                 if (amount < 1 || amount > retrievable){
@@ -316,7 +348,7 @@ public class ActionExecutor {
                     entity.setLastActionResult(FAILED_CAPACITY);
                     return;
                 }
-                if(action.getActionType().equals(RETRIEVE))
+                if(retrieveStored)
                     storage.removeStored(item, amount, world.getTeamForAgent(agent));
                 else
                     storage.removeDelivered(item, amount, world.getTeamForAgent(agent));
@@ -325,7 +357,7 @@ public class ActionExecutor {
                 break;
 
             case ASSEMBLE: // 1 param (item)
-                if(params.size() != 1){
+                if(paramCount != 1){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
@@ -338,22 +370,22 @@ public class ActionExecutor {
                     entity.setLastActionResult(FAILED_WRONG_FACILITY);
                     break;
                 }
-                assemblers.add(entity);
+                assemblers.put(entity, command.getItem());
                 assistants.putIfAbsent(entity, new HashSet<>());
                 break;
 
             case ASSIST_ASSEMBLE: // 1 param (agent)
-                if(params.size() != 1){
+                if(paramCount != 1){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
-                Entity assembler = world.getEntity(params.get(0));
+                Entity assembler = command.getCounterpartEntity();
                 if (assembler == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_AGENT);
                     break;
                 }
-                Action counterPartAction = actions.get(params.get(0));
-                if(counterPartAction != null && !counterPartAction.getActionType().equals(ASSEMBLE)){
+                ActionCommand counterpartCommand = commands.get(command.getCounterpart());
+                if(counterpartCommand != null && counterpartCommand.getOpcode() != ActionCommand.Opcode.ASSEMBLE){
                     entity.setLastActionResult(FAILED_COUNTERPART);
                     break;
                 }
@@ -368,7 +400,7 @@ public class ActionExecutor {
 
             // sell base items in shops - AY 2019
             case BUY: // 2 params (item, amount)
-                if(params.size() != 2){
+                if(paramCount != 2){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
@@ -382,15 +414,12 @@ public class ActionExecutor {
                     break;
                 }
                 Shop shop = (Shop)facility;
-                item = world.getItemByName(params.get(0));
+                item = command.getItem();
                 if(item == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_ITEM);
                     break;
                 }
-                amount = -1;
-                try{
-                    amount = Integer.parseInt(params.get(1));
-                } catch(NumberFormatException ignored){}
+                amount = command.getAmount();
                 if(amount < 1 || amount > shop.getItemCount(item)){
                     entity.setLastActionResult(FAILED_ITEM_AMOUNT);
                     break;
@@ -406,11 +435,11 @@ public class ActionExecutor {
                 break;
 
             case DELIVER_JOB: // 1 param (job)
-                if(params.size() != 1){
+                if(paramCount != 1){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
-                Job job = world.getJob(params.get(0));
+                Job job = world.getJob(command.getName());
                 if(job == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_JOB);
                     break;
@@ -460,20 +489,17 @@ public class ActionExecutor {
                 }
 
             case BID_FOR_JOB: // 2 params (job, price)
-                if(params.size() != 2){
+                if(paramCount != 2){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
-                job = world.getJob(params.get(0));
+                job = world.getJob(command.getName());
                 if(job == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_JOB);
                     break;
                 }
                 // naughty - AY 2019
-                price = -1;
-                try{
-                    price = Integer.parseInt(params.get(1));
-                } catch(NumberFormatException ignored){}
+                price = command.getAmount();
                 if(price < 0){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
@@ -492,7 +518,7 @@ public class ActionExecutor {
                 break;
 
             case DUMP: // 2 params (item, amount)
-                if(params.size() != 2){
+                if(paramCount != 2){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
@@ -505,15 +531,12 @@ public class ActionExecutor {
                     entity.setLastActionResult(FAILED_WRONG_FACILITY);
                     break;
                 }
-                item = world.getItemByName(params.get(0));
+                item = command.getItem();
                 if (item == null){
                     entity.setLastActionResult(FAILED_UNKNOWN_ITEM);
                     break;
                 }
-                amount = -1;
-                try{
-                    amount = Integer.parseInt(params.get(1));
-                } catch(NumberFormatException ignored){}
+                amount = command.getAmount();
                 if(amount < 1 || amount > entity.getItemCount(item)){
                     entity.setLastActionResult(FAILED_ITEM_AMOUNT);
                     break;
@@ -523,11 +546,11 @@ public class ActionExecutor {
                 break;
 
             case TRADE: // 2 params (item, amount)
-                if(params.size() != 2) {
+                if(paramCount != 2) {
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
-                item = world.getItemByName(params.get(0));
+                item = command.getItem();
                 if(item == null) {
                     entity.setLastActionResult(FAILED_UNKNOWN_ITEM);
                     return;
@@ -536,10 +559,7 @@ public class ActionExecutor {
                     entity.setLastActionResult(FAILED_ITEM_TYPE);
                     return;
                 }
-                amount = -1;
-                try{
-                    amount = Integer.parseInt(params.get(1));
-                } catch(NumberFormatException ignored){}
+                amount = command.getAmount();
                 if (amount < 1 || amount > entity.getItemCount(item)) {
                     entity.setLastActionResult(FAILED_ITEM_AMOUNT);
                     return;
@@ -557,7 +577,7 @@ public class ActionExecutor {
                 return;
 
             case CHARGE: // no params
-                if(params.size() != 0){
+                if(paramCount != 0){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
@@ -575,11 +595,11 @@ public class ActionExecutor {
                 break;
 
             case RECHARGE: // no params
-                if(params.size() != 0){
+                if(paramCount != 0){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
-                if(RNG.nextDouble() < world.getRechargeRate()) {
+                if(RNG.stream("recharge", stepNo, agent).nextDouble() < world.getRechargeRate()) {
                     entity.charge(1);
                     entity.setLastActionResult(SUCCESSFUL);
                 }
@@ -589,7 +609,7 @@ public class ActionExecutor {
 
             case CONTINUE:
                 if (entity.getRoute() != null)
-                    entity.setLastActionResult(entity.advanceRoute(world.getGotoCost())? SUCCESSFUL : FAILED_NO_ROUTE);
+                    advanceRoute(entity);
                 else // nothing happens successfully
                     entity.setLastActionResult(SUCCESSFUL);
                 break;
@@ -600,7 +620,7 @@ public class ActionExecutor {
                 break;
 
             case GATHER: // no params
-                if(params.size() != 0){
+                if(paramCount != 0){
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     break;
                 }
@@ -630,7 +650,7 @@ public class ActionExecutor {
                 }
 
             case UPGRADE:
-                if(params.size() != 1) {
+                if(paramCount != 1) {
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     return;
                 }
@@ -643,8 +663,7 @@ public class ActionExecutor {
                     entity.setLastActionResult(FAILED_WRONG_FACILITY);
                     break;
                 }
-                String upgradeName = params.get(0);
-                Upgrade upgrade = world.getUpgrade(upgradeName);
+                Upgrade upgrade = command.getUpgrade();
                 if(upgrade == null) {
                     entity.setLastActionResult(FAILED_WRONG_PARAM);
                     return;
@@ -670,15 +689,12 @@ public class ActionExecutor {
      */
     void postProcess(){
         // set last action result for receiver agents
-        world.getEntities().stream()
-                .filter(r -> r.getLastAction().getActionType().equals(RECEIVE))
-                .forEach(r -> r.setLastActionResult(receivers.contains(r)? SUCCESSFUL : FAILED_COUNTERPART));
+        receiving.forEach(r -> r.setLastActionResult(receivers.contains(r)? SUCCESSFUL : FAILED_COUNTERPART));
 
         // handle assembly
         // assemblers and assistants are performing correct actions in the correct facility
         // agents are in the same workshop
-        assemblers.forEach(assembler -> {
-            Item item = world.getItemByName(assembler.getLastAction().getParameters().get(0));
+        assemblers.forEach((assembler, item) -> {
             if(item == null){
                 assembler.setLastActionResult(FAILED_UNKNOWN_ITEM);
                 assistants.get(assembler).forEach(a -> a.setLastActionResult(FAILED_COUNTERPART));
@@ -688,19 +704,18 @@ public class ActionExecutor {
                 assistants.get(assembler).forEach(a -> a.setLastActionResult(FAILED_COUNTERPART));
             }
             else{ // item exists and can be assembled
-                Set<Entity> assembleTeam = new HashSet<>(assistants.get(assembler));
-                assembleTeam.add(assembler);
-                Set<Role> presentRoles = assembleTeam.stream().map(Entity::getRole).collect(Collectors.toSet());
-                Set<Role> missingRoles = new HashSet<>(item.getRequiredRoles());
-                missingRoles.removeAll(presentRoles);
+                presentRoles.clear();
+                presentRoles.add(assembler.getRole());
+                assistants.get(assembler).forEach(a -> presentRoles.add(a.getRole()));
 
-                if(missingRoles.size() > 0){
+                if(!presentRoles.containsAll(item.getRequiredRoles())){
                     assembler.setLastActionResult(FAILED_TOOLS);
                     assistants.get(assembler).forEach(a -> a.setLastActionResult(FAILED_TOOLS));
                 }
                 else{ // all "tools" available, check items now
                     // sort assembly helpers by name
-                    List<Entity> assemblyAssistants = new ArrayList<>(assistants.get(assembler));
+                    assemblyAssistants.clear();
+                    assemblyAssistants.addAll(assistants.get(assembler));
                     assemblyAssistants.sort((e1, e2) -> {
                         String ag1 = world.getAgentForEntity(e1);
                         String ag2 = world.getAgentForEntity(e2);
@@ -720,6 +735,27 @@ public class ActionExecutor {
         });
     }
 
+    /**
+     * @return all entities whose movement failed with {@link #FAILED_NO_ROUTE} in the last step
+     */
+    List<Entity> getFailedMovers() {
+        return failedMovers;
+    }
+
+    /**
+     * Moves an entity along its route and records whether that worked.
+     * @param entity the entity to move
+     */
+    private void advanceRoute(Entity entity) {
+        if(entity.advanceRoute(world.getGotoCost())){
+            entity.setLastActionResult(SUCCESSFUL);
+        }
+        else{
+            entity.setLastActionResult(FAILED_NO_ROUTE);
+            failedMovers.add(entity);
+        }
+    }
+
     /**
      * Checks if a team of entities has all necessary items (except tools) to assemble an item.
      * If called to apply changes, checks first whether changes can be applied in total
@@ -738,7 +774,7 @@ public class ActionExecutor {
             if(!dryRunResult.equals(SUCCESSFUL)) return dryRunResult;
         }
         int freedVolume = 0;
-        for(Item part: item.getRequiredItems()){
+        for(Item part: world.getBillOfMaterials().getParts(item)){
             int needed = 1;
             int take = Math.min(needed, assembler.getItemCount(part));
             if(applyChanges) assembler.removeItem(part, take);
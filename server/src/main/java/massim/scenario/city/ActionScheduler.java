@@ -0,0 +1,154 @@
+package massim.scenario.city;
+
+import massim.protocol.scenario.city.data.JobData;
+import massim.scenario.city.data.Entity;
+import massim.scenario.city.data.Job;
+import massim.scenario.city.data.WorldState;
+import massim.scenario.city.data.facilities.Facility;
+
+import java.util.*;
+
+/**
+ * Partitions the actions of one step into groups that do not share any mutable state.
+ * The groups can be executed in parallel, while the actions within one group are executed in the (shuffled) order
+ * of the agents. Since no two groups touch the same resources, the results are the same as if all actions were
+ * executed one after another.
+ */
+class ActionScheduler {
+
+    /**
+     * Resources that are not bound to a single object.
+     */
+    private enum SharedResource {
+        /** the facilities of the world (wells may be added, removed and changed) */
+        FACILITIES,
+        /** the assemblers and assistants collected by the {@link ActionExecutor} */
+        ASSEMBLY
+    }
+
+    private WorldState world;
+
+    ActionScheduler(WorldState world) {
+        this.world = world;
+    }
+
+    /**
+     * Groups the agents by the resources their actions touch.
+     * @param agents all agents in execution order
+     * @param commands the decoded actions of all agents
+     * @return the independent groups of agents, each in execution order (and ordered by their first agent)
+     */
+    List<List<String>> partition(List<String> agents, Map<String, ActionCommand> commands) {
+        boolean facilitiesChange = commands.values().stream()
+                .map(ActionCommand::getOpcode)
+                .anyMatch(op -> op == ActionCommand.Opcode.BUILD || op == ActionCommand.Opcode.DISMANTLE);
+
+        int[] parent = new int[agents.size()];
+        Map<Object, Integer> owners = new HashMap<>();
+        for (int i = 0; i < agents.size(); i++) {
+            parent[i] = i;
+            for (Object resource : getResources(agents.get(i), commands.get(agents.get(i)), facilitiesChange)) {
+                Integer owner = owners.putIfAbsent(resource, i);
+                if (owner != null) union(parent, owner, i);
+            }
+        }
+
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < agents.size(); i++) {
+            groups.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(agents.get(i));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Determines all resources an action might read or modify (a superset is fine).
+     * @param agent the acting agent
+     * @param command the agent's action (null if the agent did not send an action)
+     * @param facilitiesChange whether any action of this step may add or remove facilities
+     * @return the resources of the action
+     */
+    private Set<Object> getResources(String agent, ActionCommand command, boolean facilitiesChange) {
+        Set<Object> resources = new HashSet<>();
+        Entity entity = world.getEntity(agent);
+        resources.add(entity);
+        if (command == null) return resources;
+
+        switch (command.getOpcode()) {
+            case GO_TO: case CONTINUE: case ABORT: case NO_ACTION: case RANDOM_FAIL: case RECEIVE: case UNKNOWN:
+            case RECHARGE:
+                // only the entity itself (routes are computed from the immutable map, random numbers are drawn
+                // from the agent's own stream)
+                break;
+            case GIVE:
+                addIfPresent(resources, command.getCounterpartEntity());
+                break;
+            case ASSEMBLE:
+            case ASSIST_ASSEMBLE:
+                resources.add(SharedResource.ASSEMBLY);
+                addIfPresent(resources, command.getCounterpartEntity());
+                addFacility(resources, entity, facilitiesChange);
+                break;
+            case BUILD: // may change the efficiency of another team's well
+            case DISMANTLE:
+                resources.add(world.getTeam(world.getTeamForAgent(agent)));
+                addFacility(resources, entity, facilitiesChange);
+                break;
+            case BUY:
+            case TRADE:
+            case UPGRADE:
+                resources.add(world.getTeam(world.getTeamForAgent(agent)));
+                addFacility(resources, entity, facilitiesChange);
+                break;
+            case STORE:
+            case RETRIEVE:
+            case RETRIEVE_DELIVERED:
+            case DUMP:
+            case CHARGE:
+            case GATHER:
+                addFacility(resources, entity, facilitiesChange);
+                break;
+            case DELIVER_JOB:
+            case BID_FOR_JOB:
+                resources.add(world.getTeam(world.getTeamForAgent(agent)));
+                Job job = command.getName() == null? null : world.getJob(command.getName());
+                if (job != null) {
+                    resources.add(job);
+                    resources.add(job.getStorage());
+                    if (!job.getPoster().equals(JobData.POSTER_SYSTEM)) resources.add(world.getTeam(job.getPoster()));
+                }
+                break;
+        }
+        return resources;
+    }
+
+    /**
+     * Adds the facility at the entity's location (and the facilities as a whole if they might change).
+     */
+    private void addFacility(Set<Object> resources, Entity entity, boolean facilitiesChange) {
+        if (facilitiesChange) resources.add(SharedResource.FACILITIES);
+        Facility facility = world.getFacilityByLocation(entity.getLocation());
+        addIfPresent(resources, facility);
+    }
+
+    private static void addIfPresent(Set<Object> resources, Object resource) {
+        if (resource != null) resources.add(resource);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Merges two groups, keeping the lower index as the root so that groups are ordered by their first agent.
+     */
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) parent[rootB] = rootA;
+        else if (rootB < rootA) parent[rootA] = rootB;
+    }
+}
@@ -5,6 +5,7 @@ package massim.scenario.city;
 
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.PointList;
@@ -17,9 +18,13 @@ import massim.scenario.city.data.Location;
 import massim.scenario.city.data.Route;
 import massim.scenario.city.util.GraphHopperManager;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.DoubleSupplier;
 
 /**
  * Holds the map and allows to access it.
@@ -27,21 +32,51 @@ import java.util.Set;
  */
 public class CityMap implements Serializable {
 
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name of a map without roads (no OSM data needed): every location is reachable and all routes are straight
+	 * lines, as if every agent could fly. Useful for tests and benchmarks.
+	 */
+	public final static String NO_MAP = "none";
+
+	private String mapName;
+	private boolean roadless;
 	private int cellSize;
 	private double minLat;
 	private double maxLat;
 	private double minLon;
 	private double maxLon;
 	private Location center;
+	private transient GraphHopper hopper;
 
 	public CityMap(String mapName, int cellSize, double minLat, double maxLat, double minLon, double maxLon, Location center) {
+		this.mapName = mapName;
 		this.cellSize = cellSize;
 		this.minLon = minLon;
 		this.maxLon = maxLon;
 		this.minLat = minLat;
 		this.maxLat = maxLat;
 		this.center = center;
-		GraphHopperManager.init(mapName);
+		this.roadless = NO_MAP.equals(mapName);
+		if (!roadless) hopper = GraphHopperManager.acquire(mapName);
+	}
+
+	/**
+	 * Acquires the routing data again when the map is deserialized (e.g. from a snapshot).
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (!roadless) hopper = GraphHopperManager.acquire(mapName);
+	}
+
+	/**
+	 * Releases the routing data of the map. Routes cannot be computed afterwards.
+	 */
+	public void release(){
+		if (hopper == null) return;
+		hopper = null;
+		GraphHopperManager.release(mapName);
 	}
 
 	/**
@@ -54,7 +89,7 @@ public class CityMap implements Serializable {
     public Route findRoute(Location from, Location to, Set<String> permissions){
 		if(from == null || to == null) return null;
 		if(!isReachable(to, permissions)) return null; // target must be reachable
-		if (permissions.contains(GraphHopperManager.PERMISSION_AIR))
+		if (roadless || permissions.contains(GraphHopperManager.PERMISSION_AIR))
 			return getNewAirRoute(from, to);
 		if (permissions.contains(GraphHopperManager.PERMISSION_ROAD) && existsRoute(to, from))
 			return getNewCarRoute(from, to);
@@ -90,7 +125,7 @@ public class CityMap implements Serializable {
         GHRequest req = new GHRequest(from.getLat(), from.getLon(), to.getLat(), to.getLon())
                 .setWeighting("shortest")
                 .setVehicle("car");
-        return GraphHopperManager.getHopper().route(req);
+        return hopper.route(req);
     }
 
     /**
@@ -173,7 +208,8 @@ public class CityMap implements Serializable {
      * @return a new location object fitting the description or null if there was no road found to snap to
      */
 	private Location getNearestRoad(Location loc){
-		QueryResult qr = GraphHopperManager.getHopper().getLocationIndex().findClosest(loc.getLat(), loc.getLon(),
+		if (roadless) return loc;
+		QueryResult qr = hopper.getLocationIndex().findClosest(loc.getLat(), loc.getLon(),
 				EdgeFilter.ALL_EDGES);
 		try {
 			GHPoint3D snap = qr.getSnappedPoint();
@@ -193,6 +229,14 @@ public class CityMap implements Serializable {
 		return getRandomLocationInBounds(roads, iterations, minLat, maxLat, minLon, maxLon);
 	}
 
+	/**
+	 * Like {@link #getRandomLocation(Set, int)} but draws from the given stream instead of the shared RNG.
+	 * @param random the random stream to use
+	 */
+	public Location getRandomLocation(Set<String> roads, int iterations, SplittableRandom random) {
+		return getRandomLocationInBounds(roads, iterations, minLat, maxLat, minLon, maxLon, random::nextDouble);
+	}
+
 	/**
 	 * Tries to find a random location on this map (reachable from the center) within some bounds.
      * <b>The bounds provided must be within map bounds.</b>
@@ -206,12 +250,29 @@ public class CityMap implements Serializable {
 	 */
 	public Location getRandomLocationInBounds(Set<String> roads, int iterations,
                                               double minLat, double maxLat, double minLon, double maxLon) {
+		return getRandomLocationInBounds(roads, iterations, minLat, maxLat, minLon, maxLon, RNG::nextDouble);
+	}
+
+	/**
+	 * Like {@link #getRandomLocationInBounds(Set, int, double, double, double, double)} but draws from the given
+	 * stream instead of the shared RNG. Can be called from multiple threads (with different streams).
+	 * @param random the random stream to use
+	 */
+	public Location getRandomLocationInBounds(Set<String> roads, int iterations,
+											  double minLat, double maxLat, double minLon, double maxLon,
+											  SplittableRandom random) {
+		return getRandomLocationInBounds(roads, iterations, minLat, maxLat, minLon, maxLon, random::nextDouble);
+	}
+
+	private Location getRandomLocationInBounds(Set<String> roads, int iterations,
+											   double minLat, double maxLat, double minLon, double maxLon,
+											   DoubleSupplier random) {
 		Location loc;
 		for (int i = 0; i < iterations; i++) {
 			double latDiff = maxLat - minLat;
 			double lonDiff = maxLon - minLon;
-			double lat = minLat + RNG.nextDouble() * latDiff;
-			double lon = minLon + RNG.nextDouble() * lonDiff;
+			double lat = minLat + random.getAsDouble() * latDiff;
+			double lon = minLon + random.getAsDouble() * lonDiff;
 			loc = getNearestRoad(new Location(lon, lat));
 			if (isReachable(loc, roads)) return loc;
 		}
@@ -225,11 +286,11 @@ public class CityMap implements Serializable {
      * @param loc the location to check
      * @param roads the roads that may be used
      * @return true if the location is reachable (i.e. it's not null, it's within map bounds,
-	 * and the permissions contain "air" or a route to the center and back exists)
+	 * and the map has no roads, the permissions contain "air" or a route to the center and back exists)
      */
 	private boolean isReachable(Location loc, Set<String> roads) {
         if (loc == null || !isInBounds(loc)) return false;
-        return roads.contains("air") || (existsRoute(loc, center) && existsRoute(center, loc));
+        return roadless || roads.contains("air") || (existsRoute(loc, center) && existsRoute(center, loc));
     }
 
     /**
@@ -14,7 +14,6 @@ import massim.protocol.scenario.city.util.LocationUtil;
 import massim.scenario.AbstractSimulation;
 import massim.scenario.city.data.*;
 import massim.scenario.city.data.facilities.Facility;
-import massim.scenario.city.data.facilities.Shop;
 import massim.scenario.city.data.facilities.Storage;
 import massim.scenario.city.data.facilities.Well;
 import massim.scenario.city.data.facilities.WellType;
@@ -32,11 +31,16 @@ import java.util.stream.Collectors;
  */
 public class CitySimulation extends AbstractSimulation {
 
+    private static final long serialVersionUID = 1L;
+
     private int currentStep = -1;
     private WorldState world;
-    private ActionExecutor actionExecutor;
     private Generator generator;
-    private StaticCityData staticData;
+
+    // not part of snapshots (recreated from the world state)
+    private transient ActionExecutor actionExecutor;
+    private transient ActionScheduler actionScheduler;
+    private transient StaticCityData staticData;
 
     @Override
     public Map<String, SimStart> init(int steps, JSONObject config, Set<TeamConfig> matchTeams) {
@@ -51,7 +55,13 @@ public class CitySimulation extends AbstractSimulation {
 
         // create the most important things
         world = new WorldState(steps, config, matchTeams, generator);
+        return restore();
+    }
+
+    @Override
+    public Map<String, SimStart> restore() {
         actionExecutor = new ActionExecutor(world);
+        actionScheduler = new ActionScheduler(world);
 
         // create data objects for all items
         List<Item> allItems = world.getItems();
@@ -95,7 +105,7 @@ public class CitySimulation extends AbstractSimulation {
                 new CityInitialPercept(
                         agName,
                         world.getSimID(),
-                        steps,
+                        world.getSteps(),
                         world.getTeamForAgent(agName),
                         world.getMapName(),
                         world.getSeedCapital(),
@@ -244,8 +254,7 @@ public class CitySimulation extends AbstractSimulation {
     }
 
     private List<WellData> buildWellData() {
-        return world.getWells().stream()
-                .sorted()
+        return world.getWells().stream() // already sorted
                 .map(well -> new WellData(well.getName(), well.getLocation().getLat(), well.getLocation().getLon(),
                         well.getTeam(), well.getTypeName(), well.getIntegrity()))
                 .collect(Collectors.toList());
@@ -354,26 +363,33 @@ public class CitySimulation extends AbstractSimulation {
     public void step(int stepNo, Map<String, Action> actions) {
         // execute all actions in random order
         List<String> agents = world.getAgents();
-        RNG.shuffle(agents);
+        RNG.shuffle(agents, RNG.stream("shuffle", stepNo));
         actionExecutor.preProcess();
 
-        // determine random fail
+        // determine random fail (independently for each agent)
         new ArrayList<>(actions.keySet()).forEach(agent -> {
-            if (RNG.nextInt(100) < world.getRandomFail()){
+            if (RNG.stream("randomFail", stepNo, agent).nextInt(100) < world.getRandomFail()){
                 actions.put(agent, Action.STD_RANDOM_FAIL_ACTION);
             }
         });
 
-        // execute all actions
-        for(String agent: agents)
-            actionExecutor.execute(agent, actions, stepNo);
+        // decode all actions, then execute them
+        Map<String, ActionCommand> commands = actionExecutor.compile(actions);
+        if(world.isParallelActions()){
+            // independent groups in parallel, actions within a group in the shuffled order
+            actionScheduler.partition(agents, commands).parallelStream()
+                    .forEach(group -> group.forEach(agent -> actionExecutor.execute(agent, commands, stepNo)));
+        }
+        else {
+            for(String agent: agents)
+                actionExecutor.execute(agent, commands, stepNo);
+        }
         actionExecutor.postProcess();
 
         // check if agents may be stuck @IMPROVE can this be prevented with GH?
         Set<String> roads = new HashSet<>(Collections.singletonList("road"));
-        world.getEntities().stream()
+        actionExecutor.getFailedMovers().stream()
                 .filter(e -> !e.getRole().getName().equals("drone"))
-                .filter(e -> e.getLastActionResult().equals(ActionExecutor.FAILED_NO_ROUTE))
                 .forEach(entity -> {
             Route route = world.getMap().findRoute(entity.getLocation(), world.getMap().getCenter(), roads);
             if(route == null){ // no route, agent must be stuck
@@ -399,8 +415,8 @@ public class CitySimulation extends AbstractSimulation {
         });
 
         // sell base items in shops - AY 2019
-        // step shops
-        world.getShops().forEach(Shop::step);
+        // restock shops that are due
+        world.restockShops(stepNo);
 
         // process new jobs (created in this step)
         world.processNewJobs();
@@ -416,12 +432,7 @@ public class CitySimulation extends AbstractSimulation {
                 .forEach(job -> ((AuctionJob)job).assign());
 
         // retrieve points from all wells
-        world.getWells().stream()
-                .filter(Well::generatesPoints)
-                .forEach(well -> {
-            TeamState team = world.getTeam(well.getTeam());
-            team.addScore(well.getEfficiency());
-        });
+        world.getTeams().forEach(team -> team.addScore(team.getWellEfficiency()));
     }
 
     @Override
@@ -432,6 +443,7 @@ public class CitySimulation extends AbstractSimulation {
             TeamState team = world.getTeam(world.getTeamForAgent(agent));
             results.put(agent, new SimEnd(rankings.get(team), team.getScore()));
         });
+        world.getMap().release();
         return results;
     }
 
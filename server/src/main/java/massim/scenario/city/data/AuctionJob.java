@@ -9,6 +9,8 @@ import massim.scenario.city.data.facilities.Storage;
  */
 public class AuctionJob extends Job{
 
+    private static final long serialVersionUID = 1L;
+
     private TeamState assignedTeam;
 
     private Integer lowestBid;
@@ -0,0 +1,183 @@
+package massim.scenario.city.data;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Compiled bill of materials for all items of a simulation.
+ * Items are numbered in topological order (parts before the items they are assembled into, then by name)
+ * and base items (those that do not need assembly) are numbered by name. For each item, the base items needed
+ * to build it are stored as dense count vectors and as sparse (index, amount) arrays, so that restocking,
+ * job valuation and assembly checks can use primitive loops instead of recursive map merging.
+ * <br>
+ * The item graph must not change after the bill of materials has been created.
+ * Arrays returned by this class are shared and must not be modified.
+ */
+public class BillOfMaterials implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Item> items;
+    private final List<Item> baseItems = new ArrayList<>();
+
+    private final int[][] baseVectors;
+    private final int[][] baseIndices;
+    private final int[][] baseAmounts;
+    private final Item[][] parts;
+    private final int[] volumes;
+    private final int[] values;
+
+    /**
+     * Compiles the bill of materials for a closed set of items (i.e. all parts must be contained as well).
+     * @param allItems all items of the simulation
+     */
+    public BillOfMaterials(Collection<Item> allItems) {
+        Map<Item, Integer> depth = new HashMap<>();
+        allItems.forEach(item -> computeDepth(item, depth));
+        items = new ArrayList<>(allItems);
+        items.sort(Comparator.<Item>comparingInt(depth::get).thenComparing(Item::getName));
+        for (int i = 0; i < items.size(); i++) items.get(i).setIndex(i);
+
+        items.stream().filter(item -> !item.needsAssembly()).sorted().forEach(baseItems::add);
+        Map<Item, Integer> baseIndexOf = new HashMap<>();
+        for (int i = 0; i < baseItems.size(); i++) baseIndexOf.put(baseItems.get(i), i);
+
+        int n = items.size();
+        baseVectors = new int[n][];
+        baseIndices = new int[n][];
+        baseAmounts = new int[n][];
+        parts = new Item[n][];
+        volumes = new int[n];
+        values = new int[n];
+        for (int i = 0; i < n; i++) { // parts are always compiled before the items they are needed for
+            Item item = items.get(i);
+            int[] vector = new int[baseItems.size()];
+            if (!item.needsAssembly()) {
+                vector[baseIndexOf.get(item)] = 1;
+            } else {
+                for (Item part : item.getRequiredItems()) {
+                    int[] partVector = baseVectors[part.getIndex()];
+                    for (int b = 0; b < vector.length; b++) vector[b] += partVector[b];
+                }
+            }
+            baseVectors[i] = vector;
+
+            int nonZero = 0;
+            for (int count : vector) if (count != 0) nonZero++;
+            baseIndices[i] = new int[nonZero];
+            baseAmounts[i] = new int[nonZero];
+            Map<Item, Integer> requiredBaseItems = new LinkedHashMap<>();
+            for (int b = 0, k = 0; b < vector.length; b++) {
+                if (vector[b] == 0) continue;
+                baseIndices[i][k] = b;
+                baseAmounts[i][k++] = vector[b];
+                requiredBaseItems.put(baseItems.get(b), vector[b]);
+            }
+            item.setRequiredBaseItems(requiredBaseItems);
+
+            parts[i] = item.getRequiredItems().stream().sorted().toArray(Item[]::new);
+            volumes[i] = item.getVolume();
+            values[i] = item.getValue();
+        }
+    }
+
+    private static int computeDepth(Item item, Map<Item, Integer> depth) {
+        Integer known = depth.get(item);
+        if (known != null) return known;
+        int d = 0;
+        for (Item part : item.getRequiredItems()) d = Math.max(d, computeDepth(part, depth) + 1);
+        depth.put(item, d);
+        return d;
+    }
+
+    /**
+     * @return all items in topological order
+     */
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * @param item an item of this bill of materials
+     * @return the topological index of the item
+     */
+    public int getIndex(Item item) {
+        return item.getIndex();
+    }
+
+    /**
+     * @return the number of base items
+     */
+    public int getBaseItemCount() {
+        return baseItems.size();
+    }
+
+    /**
+     * @param baseIndex index of a base item
+     * @return the base item with that index
+     */
+    public Item getBaseItem(int baseIndex) {
+        return baseItems.get(baseIndex);
+    }
+
+    /**
+     * @param item an item
+     * @return how many of each base item (by base index) are needed to build the item
+     */
+    public int[] getBaseItemVector(Item item) {
+        return baseVectors[getIndex(item)];
+    }
+
+    /**
+     * @param item an item
+     * @return the (ascending) indices of the base items needed to build the item
+     */
+    public int[] getBaseItemIndices(Item item) {
+        return baseIndices[getIndex(item)];
+    }
+
+    /**
+     * @param item an item
+     * @return the amounts of the base items needed to build the item (matching {@link #getBaseItemIndices(Item)})
+     */
+    public int[] getBaseItemAmounts(Item item) {
+        return baseAmounts[getIndex(item)];
+    }
+
+    /**
+     * @param item an item
+     * @return the direct parts of the item, sorted by name
+     */
+    public Item[] getParts(Item item) {
+        return parts[getIndex(item)];
+    }
+
+    /**
+     * @param item an item
+     * @return the volume of the item
+     */
+    public int getVolume(Item item) {
+        return volumes[getIndex(item)];
+    }
+
+    /**
+     * @param item an item
+     * @return the value of the item
+     */
+    public int getValue(Item item) {
+        return values[getIndex(item)];
+    }
+
+    /**
+     * Sums up the value of some items. Base items are counted with a value of 1, assembled items with their value.
+     * @param box the items to value
+     * @return the total value of the items
+     */
+    public int getValue(ItemBox box) {
+        int value = 0;
+        for (Item item : box.getStoredTypes()) {
+            value += box.getItemCount(item) * (item.needsAssembly()? getValue(item) : 1);
+        }
+        return value;
+    }
+}
@@ -5,6 +5,8 @@ package massim.scenario.city.data;
  */
 public class BoundedItemBox extends ItemBox{
 
+    private static final long serialVersionUID = 1L;
+
     private int capacity;
     private int currentVolume = 0;
 
@@ -3,10 +3,14 @@ package massim.scenario.city.data;
 import massim.protocol.messagecontent.Action;
 import massim.scenario.city.ActionExecutor;
 
+import java.io.Serializable;
+
 /**
  * The body of an agent in the City scenario.
  */
-public class Entity {
+public class Entity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private Role role;
     private Location location;
@@ -1,5 +1,6 @@
 package massim.scenario.city.data;
 
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Stream;
 import java.util.stream.Collectors;
@@ -7,13 +8,17 @@ import java.util.stream.Collectors;
 /**
  * An item in the City scenario.
  */
-public class Item implements Comparable<Item>{
+public class Item implements Comparable<Item>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     private String id;
     private int volume;
     private Set<Item> requiredItems;
     private Map<Item, Integer> requiredBaseItems;
     private Set<Role> rolesNeeded;
     private int value;
+    private int index = -1;
 
     public Item(String id, int volume, int value, Set<Item> parts, Set<Role> roles){
         this.id = id;
@@ -71,23 +76,44 @@ public class Item implements Comparable<Item>{
 
     /**
      * @return all base items that are needed to build the item and its required items
+     * (ordered by base item name once a {@link BillOfMaterials} has been compiled)
      */
     public Map<Item, Integer> getRequiredBaseItems(){
         if(requiredBaseItems == null) {
-            requiredBaseItems = new HashMap<>();
+            Map<Item, Integer> baseItems = new HashMap<>();
             if (!needsAssembly()) {
-                requiredBaseItems.put(this, 1);
+                baseItems.put(this, 1);
             } else {
                 for (Item requiredItem : requiredItems) {
                     requiredItem.getRequiredBaseItems().forEach((item, number) -> {
-                        requiredBaseItems.merge(item, number, Integer::sum);
+                        baseItems.merge(item, number, Integer::sum);
                     });
                 }
             }
+            requiredBaseItems = baseItems;
         }
         return requiredBaseItems;
     }
 
+    /**
+     * Sets the base items computed by the {@link BillOfMaterials}.
+     * @param baseItems the base items needed to build this item
+     */
+    void setRequiredBaseItems(Map<Item, Integer> baseItems){
+        requiredBaseItems = Collections.unmodifiableMap(baseItems);
+    }
+
+    /**
+     * @return the index of this item in the {@link BillOfMaterials} (or -1 if it has not been compiled yet)
+     */
+    int getIndex(){
+        return index;
+    }
+
+    void setIndex(int index){
+        this.index = index;
+    }
+
     @Override
     public String toString(){
         String ret = "Item " + id + ": \tvol("+volume+")\tval(" + getValue() + ")";
@@ -2,6 +2,7 @@ package massim.scenario.city.data;
 
 import massim.protocol.scenario.city.data.ItemAmountData;
 
+import java.io.Serializable;
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
@@ -9,7 +10,9 @@ import java.util.stream.Collectors;
 /**
  * Container for items.
  */
-public class ItemBox {
+public class ItemBox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private Map<Item, Integer> items = new TreeMap<>();
 
@@ -5,16 +5,16 @@ import massim.protocol.scenario.city.data.JobData;
 import massim.scenario.city.data.facilities.Storage;
 import massim.util.Log;
 
+import java.io.Serializable;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * A job in the City scenario.
  */
-public class Job {
+public class Job implements Serializable {
 
-    private final static AtomicInteger counter = new AtomicInteger();
+    private static final long serialVersionUID = 1L;
 
     JobStatus status = JobStatus.FUTURE;
     private String name = "";
@@ -132,9 +132,13 @@ public class Job {
 
     /**
      * Gives the job a name if it has none.
+     * @param number the number for the job's name (jobs are numbered per simulation)
+     * @return true if the job got a name
      */
-    void acquireName(){
-        if(name.equals("")) name = "job" + counter.getAndIncrement();
+    boolean acquireName(int number){
+        if(!name.equals("")) return false;
+        name = "job" + number;
+        return true;
     }
 
     public int getBeginStep() {
@@ -1,50 +1,77 @@
 package massim.scenario.city.data;
 
 import massim.util.Log;
+import massim.util.SimulationContext;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 
 /**
  * Represents a map location in the city scenario.
+ * The coordinates are rounded once (to the proximity of the simulation the location is created in) and stored as
+ * integers (in units of 10^-proximity), which are used for the getters as well as for equality.
  */
-public class Location {
+public class Location implements Serializable {
 
-    private double lat;
-    private double lon;
-    private static int proximity;
-    private static double divisor;
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Powers of ten to scale coordinates with (exact as doubles).
+     */
+    private final static double[] SCALES = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12};
+
+    private final double lat;
+    private final double lon;
+    private final int proximity;
+    private final long latKey;
+    private final long lonKey;
 
     public Location(double lon, double lat) {
         this.lat = lat;
         this.lon = lon;
+        this.proximity = getProximity();
+        this.latKey = round(lat, proximity);
+        this.lonKey = round(lon, proximity);
     }
 
     public static int getProximity() {
-        return proximity;
+        return SimulationContext.current().getProximity();
     }
 
     /**
      * @return the location's latitude
      */
     public double getLat() {
-        return BigDecimal.valueOf(lat).setScale(proximity, BigDecimal.ROUND_HALF_UP).doubleValue();
+        return latKey / SCALES[proximity];
     }
 
     /**
      * @return the location's longitude
      */
     public double getLon() {
-        return BigDecimal.valueOf(lon).setScale(proximity, BigDecimal.ROUND_HALF_UP).doubleValue();
+        return lonKey / SCALES[proximity];
+    }
+
+    /**
+     * @return the exact (not rounded) latitude, e.g. for storing the location
+     */
+    public double getExactLat() {
+        return lat;
+    }
+
+    /**
+     * @return the exact (not rounded) longitude, e.g. for storing the location
+     */
+    public double getExactLon() {
+        return lon;
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        long temp = approximate(lat);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = approximate(lon);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
+        result = prime * result + (int) (latKey ^ (latKey >>> 32));
+        result = prime * result + (int) (lonKey ^ (lonKey >>> 32));
         return result;
     }
 
@@ -57,25 +84,38 @@ public class Location {
         if (obj.getClass() != Location.class)
             return false;
         Location other = (Location) obj;
-        return approximate(lat) == approximate(other.lat) && approximate(lon) == approximate(other.lon);
+        return latKey == other.latKey && lonKey == other.lonKey && proximity == other.proximity;
     }
 
     /**
-     * Calculates a value of a coordinate to determine which coordinates are considered equal
-     * @param coordinate the coordinate to approximate
-     * @return the approximated value of the coordinate
+     * Rounds a coordinate half up (away from zero) to the given number of decimal places, like
+     * BigDecimal.valueOf(coordinate).setScale(proximity, BigDecimal.ROUND_HALF_UP) does. Only coordinates that are
+     * (almost) exactly between two values need the decimal representation to decide.
+     * @param coordinate the coordinate to round
+     * @param proximity the number of decimal places
+     * @return the rounded coordinate in units of 10^-proximity
      */
-    private static long approximate(double coordinate){
-        return Math.round(coordinate / divisor);
+    private static long round(double coordinate, int proximity){
+        if (proximity < 0 || proximity >= SCALES.length)
+            throw new IllegalArgumentException("Invalid proximity: " + proximity);
+        double scaled = Math.abs(coordinate) * SCALES[proximity];
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        long rounded;
+        if (Math.abs(fraction - .5) > Math.max(1e-6, scaled * 1e-15)) // larger than the rounding error of scaled
+            rounded = (long) floor + (fraction > .5? 1 : 0);
+        else
+            rounded = BigDecimal.valueOf(Math.abs(coordinate)).setScale(proximity, BigDecimal.ROUND_HALF_UP)
+                    .unscaledValue().longValue();
+        return coordinate < 0? -rounded : rounded;
     }
 
     /**
-     * Sets the global proximity value
+     * Sets the proximity value (of the current simulation), which all locations created afterwards are rounded to
      * @param newProximity the new proximity value
      */
     public static void setProximity(int newProximity){
-        proximity = newProximity;
-        divisor = 1d / Math.pow(10d, proximity);
+        SimulationContext.current().setProximity(newProximity);
     }
 
     /**
@@ -96,7 +136,7 @@ public class Location {
     }
 
     /**
-     * Checks if two locations are "near" each other. Depends on {@link Location#proximity}.
+     * Checks if two locations are "near" each other. Depends on {@link #getProximity()}.
      * @param other another location
      * @return whether both locations are considered equal/in range
      */
@@ -10,6 +10,8 @@ import massim.scenario.city.data.facilities.Storage;
  */
 public class Mission extends AuctionJob {
 
+    private static final long serialVersionUID = 1L;
+
     private String missionID;
 
     /**
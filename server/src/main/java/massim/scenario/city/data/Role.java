@@ -2,13 +2,16 @@ package massim.scenario.city.data;
 
 import massim.protocol.scenario.city.data.RoleData;
 
+import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
  * An agent's role in the City scenario.
  */
-public class Role {
+public class Role implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * Data object of the role, contains serializable information.
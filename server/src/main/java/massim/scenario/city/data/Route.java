@@ -1,12 +1,15 @@
 package massim.scenario.city.data;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Represents a route in the City scenario (from one {@link Location} to another).
  */
-public class Route {
+public class Route implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private LinkedList<Location> route;
 
@@ -1,12 +1,17 @@
 package massim.scenario.city.data;
 
+import java.io.Serializable;
+
 /**
  * Stores some team info.
  */
-public class TeamState {
+public class TeamState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private long massium;
     private long score = 0;
+    private int wellEfficiency = 0;
 
     private String name;
 
@@ -38,4 +43,18 @@ public class TeamState {
     public long getScore() {
         return score;
     }
+
+    /**
+     * @param efficiency the efficiency to add (or subtract) when a well starts (or stops) generating points
+     */
+    void addWellEfficiency(int efficiency) {
+        wellEfficiency += efficiency;
+    }
+
+    /**
+     * @return the summed efficiency of all wells of this team that currently generate points
+     */
+    public int getWellEfficiency() {
+        return wellEfficiency;
+    }
 }
@@ -2,10 +2,14 @@ package massim.scenario.city.data;
 
 import massim.protocol.scenario.city.data.UpgradeData;
 
+import java.io.Serializable;
+
 /**
  * An upgrade.
  */
-public class Upgrade {
+public class Upgrade implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String name;
     private int cost;
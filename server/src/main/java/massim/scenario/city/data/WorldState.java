@@ -7,15 +7,21 @@ import massim.config.TeamConfig;
 import massim.scenario.city.CityMap;
 import massim.scenario.city.data.facilities.*;
 import massim.scenario.city.util.Generator;
+import massim.scenario.city.util.WorldCache;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.*;
 
 /**
  * State of the world.
  */
-public class WorldState {
+public class WorldState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private CityMap cityMap;
 
@@ -31,10 +37,13 @@ public class WorldState {
     private double minLat;
     private double maxLat;
     private double restock;
+    private boolean parallelActions;
+    private int proximity;
 
     private Map<String, Item> items = new HashMap<>();
     private List<Item> assembledItems = new ArrayList<>();
     private List<Item> resources = new ArrayList<>();
+    private BillOfMaterials billOfMaterials;
 
     private Map<String, Role> roles = new HashMap<>();
 
@@ -43,19 +52,20 @@ public class WorldState {
     private List<Dump> dumps = new ArrayList<>();
     private List<ChargingStation> chargingStations = new ArrayList<>();
     private List<Shop> shops = new ArrayList<>();
+    private transient PriorityQueue<Shop> restockQueue = createRestockQueue(); // the comparator is not serializable
 
     // sell base items in shops - AY 2019
     private Map<Item, List<Shop>> shopsByItem = new HashMap<>();
 
     private List<Storage> storages = new ArrayList<>();
     private List<ResourceNode> resourceNodes = new ArrayList<>();
-    private Set<Well> wells = new HashSet<>();
+    private List<Well> wells = new ArrayList<>(); // sorted by name
 
     private Vector<String> agentNames;
     private Map<String, String> agentToTeam = new HashMap<>();
     private Map<String, Entity> agentToEntity = new HashMap<>();
     private Map<Entity, String> entityToAgent = new HashMap<>();
-    private Map<Location, Facility> facilityByLocation = new HashMap<>();
+    private transient Map<Location, Facility> facilityByLocation = new HashMap<>(); // hashes depend on proximity
     private Map<String, TeamState> teams = new HashMap<>();
     private Map<String, Job> jobs = new HashMap<>();
     private List<Job> newJobs = new Vector<>();
@@ -63,7 +73,8 @@ public class WorldState {
     private Generator gen;
 
     private Map<String, WellType> wellTypes;
-    private Set<Integer> wellNumbers = new HashSet<>();
+    private int nextWellNumber = 0;
+    private int nextJobNumber = 0;
 
     private Map<String, Upgrade> upgrades = new HashMap<>();
 
@@ -87,7 +98,7 @@ public class WorldState {
         Log.log(Log.Level.NORMAL, "Configuring scenario minLat: " + minLat);
         maxLat = config.optDouble("maxLat", 0);
         Log.log(Log.Level.NORMAL, "Configuring scenario maxLat: " + maxLat);
-        int proximity = config.optInt("proximity", 4);
+        proximity = config.optInt("proximity", 4);
         Log.log(Log.Level.NORMAL, "Configuring scenario proximity: " + proximity);
         Location.setProximity(proximity);
         int cellSize = config.optInt("cellSize", 500);
@@ -103,6 +114,8 @@ public class WorldState {
         Log.log(Log.Level.NORMAL, "Configuring cost for goto: " + gotoCost);
         rechargeRate = config.optDouble("rechargeRate", 0.3);
         Log.log(Log.Level.NORMAL, "Configuring recharge rate: " + rechargeRate);
+        parallelActions = config.optBoolean("parallelActions", false);
+        Log.log(Log.Level.NORMAL, "Configuring parallel action execution: " + parallelActions);
 
 
         // restocking of base items in shops - AY 2019
@@ -146,13 +159,62 @@ public class WorldState {
             }
         }
 
-        // generate the things
-        generator.generateItems(new ArrayList<>(roles.values())).forEach(i -> items.put(i.getName(), i));
+        // generate the things (or load them from the world cache)
+        String cacheDir = config.optString(WorldCache.CONFIG_KEY, "");
+        Log.log(Log.Level.NORMAL, "Configuring world cache: " + cacheDir);
+        WorldCache cache = null;
+        if (!cacheDir.isEmpty()) {
+            if (config.has("randomSeed")) cache = new WorldCache(cacheDir, config, RNG.getSeed(), mapName);
+            else Log.log(Log.Level.ERROR, "World cache needs a fixed randomSeed, generating world.");
+        }
+        JSONObject cached = cache == null? null : cache.load();
+        List<Item> generatedItems = null;
+        List<Facility> generatedFacilities = null;
+        Location[] initialLocations = null;
+        if (cached != null) {
+            try {
+                generatedItems = WorldCache.decodeItems(cached, roles);
+                Map<String, Item> itemsByName = new HashMap<>();
+                generatedItems.forEach(i -> itemsByName.put(i.getName(), i));
+                generatedFacilities = WorldCache.decodeFacilities(cached, itemsByName, teams.keySet());
+                wellTypes = WorldCache.decodeWellTypes(cached);
+                initialLocations = WorldCache.decodeInitialLocations(cached);
+                if (initialLocations.length != roleSequence.size())
+                    throw new IllegalArgumentException("wrong number of initial locations");
+                RNG.restoreState(cached.getString("rng"));
+            } catch (Exception e) {
+                Log.log(Log.Level.ERROR, "Invalid cached world " + cache.getFile() + ": " + e.getMessage());
+                cached = null;
+            }
+        }
+        if (cached == null) generatedItems = generator.generateItems(new ArrayList<>(roles.values()));
+        generatedItems.forEach(i -> items.put(i.getName(), i));
+        billOfMaterials = new BillOfMaterials(items.values());
         for (Item item : items.values()) {
             if(item.needsAssembly()) assembledItems.add(item);
             else resources.add(item);
         }
-        generator.generateFacilities(this).forEach(f -> facilities.put(f.getName(), f));
+        if (cached == null) {
+            generatedFacilities = generator.generateFacilities(this);
+            wellTypes = generator.generateWellTypes();
+
+            // draw initial locations
+            initialLocations = new Location[roleSequence.size()];
+            Set<String> roads = new HashSet<>(Collections.singletonList("roads"));
+            for (int i = 0; i < initialLocations.length; i++) {
+                initialLocations[i] = cityMap.getRandomLocation(roads, 1000);
+            }
+
+            if (cache != null) {
+                try {
+                    cache.save(WorldCache.encode(generatedItems, generatedFacilities, wellTypes,
+                                                 initialLocations, RNG.saveState()));
+                } catch (IllegalArgumentException e) {
+                    Log.log(Log.Level.ERROR, "Generated world not cached: " + e.getMessage());
+                }
+            }
+        }
+        generatedFacilities.forEach(f -> facilities.put(f.getName(), f));
         facilities.values().forEach(f -> facilityByLocation.put(f.getLocation(), f));
         facilities.values().forEach(f -> {
             if(f instanceof Workshop) workshops.add((Workshop) f);
@@ -162,7 +224,6 @@ public class WorldState {
             else if(f instanceof Dump) dumps.add((Dump) f);
             else if(f instanceof ResourceNode) resourceNodes.add((ResourceNode) f);
         });
-        wellTypes = generator.generateWellTypes();
 
         // store shops by items they sell
         // sell base items in shops - AY 2019
@@ -172,18 +233,13 @@ public class WorldState {
                 // .filter(item -> !(item instanceof Tool) && !item.needsAssembly())
                 .filter(item -> !item.needsAssembly())
                 .forEach(item -> shopsByItem.get(item).add(shop)));
+        restockQueue.addAll(shops);
 
-        // draw initial locations
-        Location[] initialLocations = new Location[roleSequence.size()];
-        Set<String> roads = new HashSet<>(Collections.singletonList("roads"));
-        for (int i = 0; i < initialLocations.length; i++) {
-            initialLocations[i] = cityMap.getRandomLocation(roads, 1000);
-        }
-
+        Location[] entityLocations = initialLocations;
         // create entities and map to agents
         matchTeams.forEach(team -> {
             for (int i = 0; i < roleSequence.size(); i++) {
-                Entity e = new Entity(roles.get(roleSequence.get(i)), initialLocations[i]);
+                Entity e = new Entity(roles.get(roleSequence.get(i)), entityLocations[i]);
                 String agentName;
                 if(team.getAgentNames().size() > i) {
                     agentName = team.getAgentNames().get(i);
@@ -199,6 +255,23 @@ public class WorldState {
         });
     }
 
+    /**
+     * Restores what is not serialized with the world (after setting the proximity, which the locations created
+     * from now on are rounded to).
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        Location.setProximity(proximity);
+        facilityByLocation = new HashMap<>();
+        facilities.values().forEach(f -> facilityByLocation.put(f.getLocation(), f));
+        restockQueue = createRestockQueue();
+        restockQueue.addAll(shops);
+    }
+
+    private static PriorityQueue<Shop> createRestockQueue() {
+        return new PriorityQueue<>(Comparator.comparingInt(Shop::getNextRestockStep).thenComparing(Shop::getName));
+    }
+
     /**
      * Reads role information from the "role" JSON object.
      * @param roles the JSON object hopefully containing some roles
@@ -353,7 +426,7 @@ public class WorldState {
     public void processNewJobs() {
         RNG.shuffle(newJobs);
         newJobs.forEach(job -> {
-            job.acquireName();
+            if (job.acquireName(nextJobNumber)) nextJobNumber++;
             jobs.put(job.getName(), job);
         });
         newJobs.clear();
@@ -394,13 +467,28 @@ public class WorldState {
         return shops;
     }
 
+    /**
+     * Restocks all shops that are due in the given step (and only those).
+     * @param stepNo the current step
+     */
+    public void restockShops(int stepNo) {
+        while(!restockQueue.isEmpty() && restockQueue.peek().getNextRestockStep() <= stepNo){
+            Shop shop = restockQueue.poll();
+            shop.restockDue();
+            restockQueue.add(shop);
+        }
+    }
+
     public List<Storage> getStorages() {
         return storages;
     }
 
     public List<ResourceNode> getResourceNodes() { return resourceNodes; }
 
-    public Set<Well> getWells() { return wells; }
+    /**
+     * @return an unmodifiable view of all wells, sorted by name
+     */
+    public List<Well> getWells() { return Collections.unmodifiableList(wells); }
 
     /**
      * @return a new list of all team states
@@ -437,6 +525,13 @@ public class WorldState {
         return rechargeRate;
     }
 
+    /**
+     * @return whether independent actions may be executed in parallel
+     */
+    public boolean isParallelActions(){
+        return parallelActions;
+    }
+
     /**
      * @return the energy cost for the goto action
      */
@@ -493,28 +588,32 @@ public class WorldState {
      * @param multiplier the factor to multiply the restock chance with
      */
     public void jobRestock(Job j, double multiplier){
-        j.getRequiredItems().forEach((item, number) -> item.getRequiredBaseItems().forEach((baseItem, baseNumber) -> {
-            // resource nodes are now unlimited and have all items
-            // therefore this restockResource value is meaningless - AY 2019
-            // double chance = resourceSet.contains(baseItem)? restockResource : restock;
-            double chance = restock;
-            chance *= multiplier;
-            while(chance >= 1){
-                Shop shop = getRandomShop(baseItem);
-                if(shop != null) shop.restock(baseItem, number * baseNumber);
-                chance--;
-            }
-            if(chance > 0.001){
-                if(RNG.nextDouble() < chance){
+        // resource nodes are now unlimited and have all items
+        // therefore this restockResource value is meaningless - AY 2019
+        // double chance = resourceSet.contains(baseItem)? restockResource : restock;
+        double chance = restock * multiplier;
+        j.getRequiredItems().forEach((item, number) -> {
+            int[] baseIndices = billOfMaterials.getBaseItemIndices(item);
+            int[] baseAmounts = billOfMaterials.getBaseItemAmounts(item);
+            for (int k = 0; k < baseIndices.length; k++) {
+                Item baseItem = billOfMaterials.getBaseItem(baseIndices[k]);
+                int amount = number * baseAmounts[k];
+                double remaining = chance;
+                while(remaining >= 1){
                     Shop shop = getRandomShop(baseItem);
-                    if(shop != null) shop.restock(baseItem, number * baseNumber);
+                    if(shop != null) shop.restock(baseItem, amount);
+                    remaining--;
+                }
+                if(remaining > 0.001){
+                    if(RNG.nextDouble() < remaining){
+                        Shop shop = getRandomShop(baseItem);
+                        if(shop != null) shop.restock(baseItem, amount);
+                    }
                 }
             }
-        }));
+        });
     }
 
-
-
     /**
      * Retrieves the well type of the given name.
      * @param typeName name of the well type
@@ -530,16 +629,11 @@ public class WorldState {
      * @param agent name of the agent that created the well
      */
     public void addWell(WellType wellType, String agent) {
-        int wellNumber;
-        while(true){
-            wellNumber = RNG.nextInt(10000);
-            if(!wellNumbers.contains(wellNumber)) break;
-        }
-        wellNumbers.add(wellNumber);
-        Well well = new Well("well" + wellNumber, getTeamForAgent(agent), getEntity(agent).getLocation(), wellType);
+        Well well = new Well("well" + nextWellNumber++, getTeamForAgent(agent), getEntity(agent).getLocation(), wellType);
         facilities.put(well.getName(), well);
         facilityByLocation.put(well.getLocation(), well);
-        wells.add(well);
+        wells.add(-Collections.binarySearch(wells, well) - 1, well);
+        updateWellEfficiency(well, false);
     }
 
     /**
@@ -549,7 +643,52 @@ public class WorldState {
     public void removeWell(Well w) {
         facilities.remove(w.getName());
         facilityByLocation.remove(w.getLocation());
-        wells.remove(w);
+        int index = Collections.binarySearch(wells, w);
+        if(index >= 0) {
+            wells.remove(index);
+            if(w.generatesPoints()) getTeam(w.getTeam()).addWellEfficiency(-w.getEfficiency());
+        }
+    }
+
+    /**
+     * Builds up a well (and keeps track of the team's efficiency).
+     * @param well the well to build up
+     * @param skill the skill of the building entity
+     */
+    public void buildWell(Well well, int skill) {
+        boolean generatedPoints = well.generatesPoints();
+        well.build(skill);
+        updateWellEfficiency(well, generatedPoints);
+    }
+
+    /**
+     * Dismantles a well (and keeps track of the team's efficiency). Does not remove the well.
+     * @param well the well to dismantle
+     * @param skill the skill of the dismantling entity
+     * @return whether the well is completely dismantled
+     */
+    public boolean dismantleWell(Well well, int skill) {
+        boolean generatedPoints = well.generatesPoints();
+        boolean dismantled = well.dismantle(skill);
+        updateWellEfficiency(well, generatedPoints);
+        return dismantled;
+    }
+
+    /**
+     * Updates the efficiency of the well's team if the well started or stopped generating points.
+     * @param well the well that might have changed
+     * @param generatedPoints whether the well generated points before the change
+     */
+    private void updateWellEfficiency(Well well, boolean generatedPoints) {
+        if(well.generatesPoints() == generatedPoints) return;
+        getTeam(well.getTeam()).addWellEfficiency(generatedPoints? -well.getEfficiency() : well.getEfficiency());
+    }
+
+    /**
+     * @return the compiled bill of materials of all items
+     */
+    public BillOfMaterials getBillOfMaterials() {
+        return billOfMaterials;
     }
 
     /**
@@ -7,6 +7,8 @@ import massim.scenario.city.data.Location;
  */
 public class ChargingStation extends Facility {
 
+    private static final long serialVersionUID = 1L;
+
     private int rate;
 
     public ChargingStation(String name, Location location, int rate) {
@@ -7,6 +7,8 @@ import massim.scenario.city.data.Location;
  */
 public class Dump extends Facility{
 
+    private static final long serialVersionUID = 1L;
+
     public Dump(String name, Location location) {
         super(name, location);
     }
@@ -3,11 +3,15 @@ package massim.scenario.city.data.facilities;
 import massim.scenario.city.data.Location;
 import massim.util.NameComparator;
 
+import java.io.Serializable;
+
 /**
  * Represents a generic facility in the city scenario.
  * @author ta10
  */
-public abstract class Facility implements Comparable<Facility>{
+public abstract class Facility implements Comparable<Facility>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String name;
     private Location location;
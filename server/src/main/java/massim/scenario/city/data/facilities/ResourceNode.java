@@ -9,6 +9,8 @@ import massim.util.Log;
  */
 public class ResourceNode extends Facility{
 
+    private static final long serialVersionUID = 1L;
+
     private final Item resource;
     private final int threshold;
     private int gathered = 0;
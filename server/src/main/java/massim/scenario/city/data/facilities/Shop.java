@@ -12,13 +12,16 @@ import java.util.stream.Collectors;
  */
 public class Shop extends Facility{
 
+    private static final long serialVersionUID = 1L;
+
     private int tradeModifier;
 
     private ItemBox stock = new ItemBox();
     private Map<Item, Integer> prices = new HashMap<>();
     private Map<Item, Integer> initialAmounts = new HashMap<>();
     private int restock;
-    private int nextRestock;
+    private int nextRestockStep;
+    private Set<Item> belowInitial = new LinkedHashSet<>();
     private List<Item> offeredItemsSorted = new ArrayList<>();
 
     /**
@@ -30,7 +33,7 @@ public class Shop extends Facility{
     public Shop(String name, Location location, int restock, int tradeModifier) {
         super(name, location);
         this.restock = restock;
-        this.nextRestock = restock;
+        this.nextRestockStep = Math.max(1, restock) - 1;
         this.tradeModifier = tradeModifier;
     }
 
@@ -74,7 +77,9 @@ public class Shop extends Facility{
      * @return the total price that has to be paid for the items
      */
     public int buy(Item item, int amount){
-        return stock.remove(item, amount) * getPrice(item);
+        int price = stock.remove(item, amount) * getPrice(item);
+        if(getItemCount(item) < getInitialAmount(item)) belowInitial.add(item);
+        return price;
     }
 
     /**
@@ -84,6 +89,7 @@ public class Shop extends Facility{
      */
     public void restock(Item item, int amount){
         stock.store(item, amount);
+        if(getItemCount(item) >= getInitialAmount(item)) belowInitial.remove(item);
     }
 
     /**
@@ -105,15 +111,23 @@ public class Shop extends Facility{
     }
 
     /**
-     * Should be called after each step. Triggers restocking.
+     * @return the step in which this shop restocks next
+     */
+    public int getNextRestockStep() {
+        return nextRestockStep;
+    }
+
+    /**
+     * Restocks one of each item that is below its initial amount and schedules the next restock.
+     * Should only be called in the step returned by {@link #getNextRestockStep()}.
      */
-    public void step(){
-        nextRestock = Math.max(0, nextRestock - 1);
-        if(nextRestock == 0){
-            nextRestock = restock;
-            stock.getStoredTypes().stream()
-                    .filter(item -> getItemCount(item) < initialAmounts.get(item))
-                    .forEach(item -> restock(item, 1));
+    public void restockDue(){
+        nextRestockStep += Math.max(1, restock);
+        Iterator<Item> it = belowInitial.iterator();
+        while(it.hasNext()){
+            Item item = it.next();
+            stock.store(item, 1);
+            if(getItemCount(item) >= getInitialAmount(item)) it.remove();
         }
     }
 
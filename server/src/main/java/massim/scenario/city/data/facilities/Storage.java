@@ -13,6 +13,8 @@ import java.util.*;
  */
 public class Storage extends Facility{
 
+    private static final long serialVersionUID = 1L;
+
     private int capacity;
     private int storedVolume = 0;
 
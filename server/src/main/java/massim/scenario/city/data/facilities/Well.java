@@ -8,6 +8,8 @@ import massim.scenario.city.data.Location;
  */
 public class Well extends Facility {
 
+    private static final long serialVersionUID = 1L;
+
     private int integrity;
     private boolean completed = false;
     private String team;
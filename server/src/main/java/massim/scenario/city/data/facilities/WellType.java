@@ -2,10 +2,14 @@ package massim.scenario.city.data.facilities;
 
 import massim.protocol.scenario.city.data.WellTypeData;
 
+import java.io.Serializable;
+
 /**
  * Describes the values a new well can have.
  */
-public class WellType {
+public class WellType implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String name;
     private int initialIntegrity;
@@ -7,6 +7,8 @@ import massim.scenario.city.data.Location;
  */
 public class Workshop extends Facility{
 
+    private static final long serialVersionUID = 1L;
+
     public Workshop(String name, Location location) {
         super(name, location);
     }
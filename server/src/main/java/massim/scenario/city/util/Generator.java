@@ -7,13 +7,17 @@ import massim.util.Log;
 import massim.util.RNG;
 import org.json.JSONObject;
 
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Utility to generate random elements with.
  */
-public class Generator {
+public class Generator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private double quadSize;
 
@@ -309,13 +313,16 @@ public class Generator {
             }
             items.addAll(layerItems);
         }
-        items.forEach(item -> Log.log(Log.Level.NORMAL, String.format("%s: vol(%d), val(%d)",
-                item.getName(), item.getVolume(), item.getValue())));
+        items.forEach(item -> Log.log(Log.Level.NORMAL, "%s: vol(%d), val(%d)",
+                item.getName(), item.getVolume(), item.getValue()));
         return items;
     }
 
     /**
-     * Generates a number of facilities dependent on config parameters
+     * Generates a number of facilities dependent on config parameters.
+     * The quadrants of the map are drawn in parallel, each with its own random stream. The draws are then merged
+     * in a fixed order (by facility type, then by quadrant), which resolves duplicate locations and assigns the
+     * names, so the same seed always yields the same facilities (independent of the number of threads).
      * @return a list of facilities
      */
     public List<Facility> generateFacilities(WorldState world) {
@@ -324,62 +331,53 @@ public class Generator {
         double minLon = world.getMinLon();
         double maxLon = world.getMaxLon();
 
+        List<double[]> quadrants = new ArrayList<>();
+        for (double a = minLat; a < maxLat; a += quadSize) {
+            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
+                quadrants.add(new double[]{a, b});
+            }
+        }
+        List<Map<FacilityType, List<FacilityDraw>>> draws = IntStream.range(0, quadrants.size()).parallel()
+                .mapToObj(q -> drawQuadrant(world, q, quadrants.get(q)))
+                .collect(Collectors.toList());
+
+        // merge all draws (sequentially)
+        SplittableRandom random = RNG.stream("generate/facilities");
         List<Facility> facilities = new ArrayList<>();
         List<Shop> shops = new ArrayList<>();
         Set<Location> locations = new HashSet<>();
+        Set<String> teams = world.getTeams().stream().map(TeamState::getName).collect(Collectors.toSet());
 
         // generate charging stations
         int chargingCounter = 0;
-        for (double a = minLat; a < maxLat; a += quadSize) {
-            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
-
-                int numberOfFacilities = 0;
-                if(chargingDensity < 1){
-                    if(RNG.nextDouble() < shopDensity) numberOfFacilities = 1;
-                }
-                else numberOfFacilities = new Float(chargingDensity).intValue();
-
-                for(int i = 0; i < numberOfFacilities; i++){
-                    ChargingStation charging = new ChargingStation("chargingStation" + chargingCounter,
-                            getUniqueLocationInBounds(locations, world, a, a + quadSize, b, b + quadSize),
-                            RNG.nextInt(rateMax - rateMin + 1) + rateMin);
-                    facilities.add(charging);
-                    locations.add(charging.getLocation());
-                    chargingCounter++;
-                }
-            }
+        for (FacilityDraw draw : getDraws(draws, FacilityType.CHARGING_STATION)) {
+            ChargingStation charging = new ChargingStation("chargingStation" + chargingCounter,
+                    getUniqueLocation(draw, locations, world, random), draw.values[0]);
+            facilities.add(charging);
+            locations.add(charging.getLocation());
+            chargingCounter++;
         }
-
         if(chargingCounter == 0){ // create at least 1 charging station
             ChargingStation charging = new ChargingStation("chargingStation" + chargingCounter,
-                    getUniqueLocation(locations, world),
-                    RNG.nextInt((rateMax-rateMin) + 1) + rateMin);
+                    getUniqueLocation(locations, world, random),
+                    random.nextInt((rateMax-rateMin) + 1) + rateMin);
             facilities.add(charging);
             locations.add(charging.getLocation());
         }
 
         // generate shops
-        for(double a = minLat; a < maxLat; a += quadSize) {
-            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
-                int numberOfFacilities = 0;
-                if(shopDensity < 1){
-                    if(RNG.nextDouble() < shopDensity) numberOfFacilities = 1;
-                } else {
-                    numberOfFacilities = new Float(shopDensity).intValue();
-                }
-                for(int i = 0; i < numberOfFacilities; i++) {
-                    Location loc = getUniqueLocationInBounds(locations, world, a, a + quadSize, b, b + quadSize);
-                    // sell base items in shops - AY 2019
-                    Shop shop = new Shop("shop" + shops.size(), loc, between(restockMin, restockMax), between(tradeModMin, tradeModMax));
-                    facilities.add(shop);
-                    locations.add(shop.getLocation());
-                    shops.add(shop);
-                }
-            }
+        for (FacilityDraw draw : getDraws(draws, FacilityType.SHOP)) {
+            // sell base items in shops - AY 2019
+            Shop shop = new Shop("shop" + shops.size(), getUniqueLocation(draw, locations, world, random),
+                    draw.values[0], draw.values[1]);
+            facilities.add(shop);
+            locations.add(shop.getLocation());
+            shops.add(shop);
         }
         if(shops.size() == 0){
             // sell base items in shops - AY 2019
-            Shop shop = new Shop("shop" + shops.size(), getUniqueLocation(locations, world), between(restockMin, restockMax), between(tradeModMin, tradeModMax));
+            Shop shop = new Shop("shop" + shops.size(), getUniqueLocation(locations, world, random),
+                    between(random, restockMin, restockMax), between(random, tradeModMin, tradeModMax));
             facilities.add(shop);
             locations.add(shop.getLocation());
             shops.add(shop);
@@ -390,102 +388,69 @@ public class Generator {
         shopItems.addAll(world.getResources());
         List<Item> usedItems = new ArrayList<>();
         for(Shop shop: shops){
-            int numberOfProducts = Math.min(RNG.nextInt(maxProd - minProd + 1) + minProd, shopItems.size());
+            int numberOfProducts = Math.min(random.nextInt(maxProd - minProd + 1) + minProd, shopItems.size());
 
             List<Item> unusedItems = new ArrayList<>(shopItems); // items not used for this shop
             for(int j = 0; j < numberOfProducts; j++){
-                int productNumber = RNG.nextInt(unusedItems.size());
+                int productNumber = random.nextInt(unusedItems.size());
                 Item item = unusedItems.get(productNumber);
-                float priceAdd = (RNG.nextInt(priceAddMax - priceAddMin + 1) + priceAddMin) /
-100.0f;
+                float priceAdd = (random.nextInt(priceAddMax - priceAddMin + 1) + priceAddMin) / 100.0f;
                 int price = (int) (item.getValue() * priceAdd);
-                shop.addItem(item, RNG.nextInt(amountMax - amountMin + 1) + amountMin, price);
+                shop.addItem(item, random.nextInt(amountMax - amountMin + 1) + amountMin, price);
                 unusedItems.remove(productNumber);
                 usedItems.add(item);
             }
         }
         shopItems.removeAll(usedItems);
         for(Item item: shopItems){
-            int shopNumber = RNG.nextInt(shops.size());
+            int shopNumber = random.nextInt(shops.size());
             Shop shop = shops.get(shopNumber);
-            float priceAdd = (RNG.nextInt((priceAddMax-priceAddMin) + 1) + priceAddMin) / 100.0f;
+            float priceAdd = (random.nextInt((priceAddMax-priceAddMin) + 1) + priceAddMin) / 100.0f;
             int price = (int) (item.getValue() * priceAdd);
-            shop.addItem(item, RNG.nextInt((amountMax-amountMin) + 1) + amountMin, price);
+            shop.addItem(item, random.nextInt((amountMax-amountMin) + 1) + amountMin, price);
         }
 
-
         // generate dumps
         int dumpCounter = 0;
-        for (double a = minLat; a < maxLat; a += quadSize) {
-            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
-                int numberOfFacilities = 0;
-                if(dumpDensity < 1){
-                    if(RNG.nextDouble() < dumpDensity) numberOfFacilities = 1;
-                }
-                else numberOfFacilities = new Float(dumpDensity).intValue();
-                for(int i = 0; i < numberOfFacilities; i++){
-                    Location loc = getUniqueLocationInBounds(locations, world, a, a + quadSize, b, b + quadSize);
-                    Dump dump1 = new Dump("dump" + dumpCounter, loc);
-                    facilities.add(dump1);
-                    locations.add(dump1.getLocation());
-                    dumpCounter++;
-                }
-            }
+        for (FacilityDraw draw : getDraws(draws, FacilityType.DUMP)) {
+            Dump dump1 = new Dump("dump" + dumpCounter, getUniqueLocation(draw, locations, world, random));
+            facilities.add(dump1);
+            locations.add(dump1.getLocation());
+            dumpCounter++;
         }
         if(dumpCounter == 0){
-            Dump dump = new Dump("dump" + dumpCounter, getUniqueLocation(locations, world));
+            Dump dump = new Dump("dump" + dumpCounter, getUniqueLocation(locations, world, random));
             facilities.add(dump);
             locations.add(dump.getLocation());
         }
 
         //generate workshops
         int workshopCounter = 0;
-        for (double a = minLat; a < maxLat; a += quadSize) {
-            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
-                int numberOfFacilities = 0;
-                if(workshopDensity < 1){
-                    if(RNG.nextDouble() < workshopDensity) numberOfFacilities = 1;
-                }
-                else numberOfFacilities = new Float(workshopDensity).intValue();
-                for(int i = 0; i < numberOfFacilities; i++){
-                    Location loc = getUniqueLocationInBounds(locations, world, a, a + quadSize, b, b + quadSize);
-                    Workshop workshop = new Workshop("workshop" + workshopCounter, loc);
-                    facilities.add(workshop);
-                    locations.add(workshop.getLocation());
-                    workshopCounter++;
-                }
-            }
+        for (FacilityDraw draw : getDraws(draws, FacilityType.WORKSHOP)) {
+            Workshop workshop = new Workshop("workshop" + workshopCounter,
+                    getUniqueLocation(draw, locations, world, random));
+            facilities.add(workshop);
+            locations.add(workshop.getLocation());
+            workshopCounter++;
         }
         if(workshopCounter == 0){
-            Workshop workshop = new Workshop("workshop" + workshopCounter, getUniqueLocation(locations, world));
+            Workshop workshop = new Workshop("workshop" + workshopCounter, getUniqueLocation(locations, world, random));
             facilities.add(workshop);
             locations.add(workshop.getLocation());
         }
 
         // generate storage
         int storageCounter = 0;
-        for (double a = minLat; a < maxLat; a += quadSize) {
-            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
-                int numberOfFacilities = 0;
-                if(storageDensity < 1){
-                    if(RNG.nextDouble() < storageDensity) numberOfFacilities = 1;
-                }
-                else numberOfFacilities = new Float(storageDensity).intValue();
-                for(int i = 0; i < numberOfFacilities; i++){
-                    Location loc = getUniqueLocationInBounds(locations, world, a, a + quadSize, b, b + quadSize);
-                    Storage storage = new Storage("storage" + storageCounter, loc,
-                            (RNG.nextInt(capacityMax - capacityMin + 1) + capacityMin),
-                            world.getTeams().stream().map(TeamState::getName).collect(Collectors.toSet()));
-                    facilities.add(storage);
-                    locations.add(storage.getLocation());
-                    storageCounter++;
-                }
-            }
+        for (FacilityDraw draw : getDraws(draws, FacilityType.STORAGE)) {
+            Storage storage = new Storage("storage" + storageCounter,
+                    getUniqueLocation(draw, locations, world, random), draw.values[0], teams);
+            facilities.add(storage);
+            locations.add(storage.getLocation());
+            storageCounter++;
         }
         if(storageCounter == 0){
-            Storage storage = new Storage("storage" + storageCounter, getUniqueLocation(locations, world),
-                    (RNG.nextInt(capacityMax - capacityMin + 1) + capacityMin),
-                    world.getTeams().stream().map(TeamState::getName).collect(Collectors.toSet()));
+            Storage storage = new Storage("storage" + storageCounter, getUniqueLocation(locations, world, random),
+                    (random.nextInt(capacityMax - capacityMin + 1) + capacityMin), teams);
             facilities.add(storage);
             locations.add(storage.getLocation());
         }
@@ -494,27 +459,18 @@ public class Generator {
         int rnCounter = 0;
         // generate at least 1 resource node for each resource
         for (Item item : world.getResources()) {
-            Location loc = getUniqueLocation(locations, world);
-            ResourceNode node = new ResourceNode("node" + rnCounter++, loc, item, between(thresholdMin, thresholdMax));
+            Location loc = getUniqueLocation(locations, world, random);
+            ResourceNode node = new ResourceNode("node" + rnCounter++, loc, item,
+                    between(random, thresholdMin, thresholdMax));
             facilities.add(node);
             locations.add(loc);
         }
-        for(double a = minLat; a < maxLat; a += quadSize) {
-            for (double b = minLon; b < maxLon; b += quadSize) { // (a,b) = corner of the current quadrant
-                int numberOfFacilities = 0;
-                if(resourceDensity < 1){
-                    if(RNG.nextDouble() < resourceDensity) numberOfFacilities = 1;
-                }
-                else numberOfFacilities = new Float(resourceDensity).intValue();
-                for(int i = 0; i < numberOfFacilities; i++){
-                    Location loc = getUniqueLocationInBounds(locations, world, a, a + quadSize, b, b + quadSize);
-                    int resIndex = RNG.nextInt(world.getResources().size());
-                    ResourceNode node = new ResourceNode("node" + rnCounter++, loc,
-                            world.getResources().get(resIndex), between(thresholdMin, thresholdMax));
-                    facilities.add(node);
-                    locations.add(loc);
-                }
-            }
+        for (FacilityDraw draw : getDraws(draws, FacilityType.RESOURCE_NODE)) {
+            Location loc = getUniqueLocation(draw, locations, world, random);
+            ResourceNode node = new ResourceNode("node" + rnCounter++, loc,
+                    world.getResources().get(draw.values[0]), draw.values[1]);
+            facilities.add(node);
+            locations.add(loc);
         }
 
         for(Facility fac: facilities) Log.log(Log.Level.NORMAL, "Created facility: " + fac);
@@ -522,21 +478,139 @@ public class Generator {
         return facilities;
     }
 
+    /**
+     * The types of facilities that are placed per quadrant (in the order they are generated).
+     */
+    private enum FacilityType {
+        CHARGING_STATION, SHOP, DUMP, WORKSHOP, STORAGE, RESOURCE_NODE
+    }
+
+    /**
+     * A facility drawn for a quadrant before its name is known and its location is checked for global uniqueness.
+     */
+    private static class FacilityDraw {
+        private final double[] quadrant;
+        private final Location location;
+        private final int[] values;
+
+        private FacilityDraw(double[] quadrant, Location location, int... values) {
+            this.quadrant = quadrant;
+            this.location = location;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Draws all facilities of one quadrant. Uses a random stream that only depends on the quadrant,
+     * so that it can be called in parallel for all quadrants.
+     * @param world the world to draw locations in
+     * @param index the index of the quadrant
+     * @param quadrant (lat, lon) of the quadrant's corner
+     * @return the drawn facilities (with locations unique within the quadrant) by type
+     */
+    private Map<FacilityType, List<FacilityDraw>> drawQuadrant(WorldState world, int index, double[] quadrant) {
+        SplittableRandom random = RNG.stream("generate/quadrant", index);
+        Set<Location> locations = new HashSet<>();
+        Map<FacilityType, List<FacilityDraw>> result = new EnumMap<>(FacilityType.class);
+        for (FacilityType type : FacilityType.values()) {
+            List<FacilityDraw> draws = new ArrayList<>();
+            int numberOfFacilities;
+            switch (type) {
+                case CHARGING_STATION:
+                    numberOfFacilities = numberOfFacilities(chargingDensity, shopDensity, random);
+                    break;
+                case SHOP:
+                    numberOfFacilities = numberOfFacilities(shopDensity, shopDensity, random);
+                    break;
+                case DUMP:
+                    numberOfFacilities = numberOfFacilities(dumpDensity, dumpDensity, random);
+                    break;
+                case WORKSHOP:
+                    numberOfFacilities = numberOfFacilities(workshopDensity, workshopDensity, random);
+                    break;
+                case STORAGE:
+                    numberOfFacilities = numberOfFacilities(storageDensity, storageDensity, random);
+                    break;
+                default:
+                    numberOfFacilities = numberOfFacilities(resourceDensity, resourceDensity, random);
+            }
+            for (int i = 0; i < numberOfFacilities; i++) {
+                Location loc = getUniqueLocationInBounds(locations, world, quadrant[0], quadrant[0] + quadSize,
+                        quadrant[1], quadrant[1] + quadSize, random);
+                locations.add(loc);
+                switch (type) {
+                    case CHARGING_STATION:
+                        draws.add(new FacilityDraw(quadrant, loc, random.nextInt(rateMax - rateMin + 1) + rateMin));
+                        break;
+                    case SHOP:
+                        draws.add(new FacilityDraw(quadrant, loc,
+                                between(random, restockMin, restockMax), between(random, tradeModMin, tradeModMax)));
+                        break;
+                    case STORAGE:
+                        draws.add(new FacilityDraw(quadrant, loc,
+                                random.nextInt(capacityMax - capacityMin + 1) + capacityMin));
+                        break;
+                    case RESOURCE_NODE:
+                        draws.add(new FacilityDraw(quadrant, loc, random.nextInt(world.getResources().size()),
+                                between(random, thresholdMin, thresholdMax)));
+                        break;
+                    default:
+                        draws.add(new FacilityDraw(quadrant, loc));
+                }
+            }
+            result.put(type, draws);
+        }
+        return result;
+    }
+
+    /**
+     * @param density number of facilities per quadrant (if >= 1)
+     * @param probability probability of placing one facility (if density < 1)
+     * @param random the random stream to use
+     * @return the number of facilities to place in a quadrant
+     */
+    private static int numberOfFacilities(double density, double probability, SplittableRandom random) {
+        if (density < 1) return random.nextDouble() < probability? 1 : 0;
+        return new Float(density).intValue();
+    }
+
+    /**
+     * @return all draws of the given type (ordered by quadrant)
+     */
+    private static List<FacilityDraw> getDraws(List<Map<FacilityType, List<FacilityDraw>>> draws, FacilityType type) {
+        List<FacilityDraw> result = new ArrayList<>();
+        draws.forEach(quadrant -> result.addAll(quadrant.get(type)));
+        return result;
+    }
+
+    /**
+     * @return the drawn location or (if it is already in use) a new unique location within the draw's quadrant
+     */
+    private Location getUniqueLocation(FacilityDraw draw, Set<Location> locations, WorldState world,
+                                       SplittableRandom random) {
+        if (!locations.contains(draw.location)) return draw.location;
+        return getUniqueLocationInBounds(locations, world, draw.quadrant[0], draw.quadrant[0] + quadSize,
+                draw.quadrant[1], draw.quadrant[1] + quadSize, random);
+    }
+
     /**
      * Tries to get a new random location with < 1000 attempts.
      * @param world the world to look for a location in
      * @return a new random location or the "center" of the map if no such location could be found in reasonable time
      */
-    private Location getRandomLocation(WorldState world){
-        return world.getMap().getRandomLocation(new HashSet<>(Collections.singletonList(GraphHopperManager.PERMISSION_ROAD)), 1000);
+    private Location getRandomLocation(WorldState world, SplittableRandom random){
+        return world.getMap().getRandomLocation(
+                new HashSet<>(Collections.singletonList(GraphHopperManager.PERMISSION_ROAD)), 1000, random);
     }
 
     /**
      * Tries to get a new random location within certain bounds
      */
-    private Location getRandomLocationInBounds(WorldState world, double minLat, double maxLat, double minLon, double maxLon){
-        return world.getMap().getRandomLocationInBounds(new HashSet<>(Collections.singletonList(GraphHopperManager.PERMISSION_ROAD)),
-                1000, minLat, maxLat, minLon, maxLon);
+    private Location getRandomLocationInBounds(WorldState world, double minLat, double maxLat, double minLon,
+                                               double maxLon, SplittableRandom random){
+        return world.getMap().getRandomLocationInBounds(
+                new HashSet<>(Collections.singletonList(GraphHopperManager.PERMISSION_ROAD)),
+                1000, minLat, maxLat, minLon, maxLon, random);
     }
 
     /**
@@ -544,11 +618,11 @@ public class Generator {
      * @param locations locations that are already in use
      * @param world the world to look for a location in
      */
-    private Location getUniqueLocation(Set<Location> locations, WorldState world){
-        Location loc = getRandomLocation(world);
+    private Location getUniqueLocation(Set<Location> locations, WorldState world, SplittableRandom random){
+        Location loc = getRandomLocation(world, random);
         for(int i=0; i<100; i++){
             if(locations.contains(loc)){
-                loc = getRandomLocation(world);
+                loc = getRandomLocation(world, random);
                 continue;
             }
             return loc;
@@ -559,11 +633,12 @@ public class Generator {
     /**
      * Tries to get a unique location within certain bounds
      */
-    private Location getUniqueLocationInBounds(Set<Location> locations, WorldState world, double minLat, double maxLat, double minLon, double maxLon){
-        Location loc = getRandomLocationInBounds(world, minLat, maxLat, minLon, maxLon);
+    private Location getUniqueLocationInBounds(Set<Location> locations, WorldState world, double minLat,
+                                               double maxLat, double minLon, double maxLon, SplittableRandom random){
+        Location loc = getRandomLocationInBounds(world, minLat, maxLat, minLon, maxLon, random);
         for(int i=0; i<100; i++){
             if(locations.contains(loc)){
-                loc = getRandomLocationInBounds(world, minLat, maxLat, minLon, maxLon);
+                loc = getRandomLocationInBounds(world, minLat, maxLat, minLon, maxLon, random);
                 continue;
             }
             return loc;
@@ -577,25 +652,21 @@ public class Generator {
      * @param stepNo the number of the current step
      */
     public Set<Job> generateJobs(int stepNo, WorldState world) {
-        Set<Job> jobs = new HashSet<>();
+        Set<Job> jobs = new LinkedHashSet<>(); // keep the order, the jobs are shuffled with the shared sequence later
 
         if(RNG.nextDouble() <= jobProbability) jobs.addAll(generateJob(world, stepNo, "regular"));
         if(RNG.nextDouble() <= auctionProbability) jobs.addAll(generateJob(world, stepNo, "auction"));
         if(RNG.nextDouble() <= missionProbability) jobs.addAll(generateJob(world, stepNo, "mission"));
 
         // Log jobs
-        for(Job job: jobs){
+        if (Log.isEnabled(Log.Level.NORMAL)) for(Job job: jobs){
             List<String> reqItems = new ArrayList<>();
-            int value = 0;
-            for(Item item: job.getRequiredItems().getStoredTypes()){
-                reqItems.add(job.getRequiredItems().getItemCount(item) + "x " + item.getName());
-                if(item.needsAssembly()) value += job.getRequiredItems().getItemCount(item) *item.getValue();
-                else value += job.getRequiredItems().getItemCount(item);
-            }
+            job.getRequiredItems().forEach((item, amount) -> reqItems.add(amount + "x " + item.getName()));
+            int value = world.getBillOfMaterials().getValue(job.getRequiredItems());
 
-            Log.log(Log.Level.NORMAL, String.format("New %s: resources(%d), reward(%d), %d-%d, %s, %s",
+            Log.log(Log.Level.NORMAL, "New %s: resources(%d), reward(%d), %d-%d, %s, %s",
                     job.getClass().getSimpleName(), value, job.getReward(), job.getBeginStep(), job.getEndStep(),
-                    job.getStorage().getName(), String.join(", ", reqItems)));
+                    job.getStorage().getName(), String.join(", ", reqItems));
         }
 
         return jobs;
@@ -659,7 +730,7 @@ public class Generator {
             int cost = (int) (costFactor * (efficiency + Math.sqrt(efficiency)));
             WellType type = new WellType(name, Math.max(integrity/2, 1), Math.max(integrity, 1), cost, efficiency);
             result.put(name, type);
-            Log.log(Log.Level.NORMAL, String.format("%s: eff(%d), int(%d), cost(%d)", name, efficiency, integrity, cost));
+            Log.log(Log.Level.NORMAL, "%s: eff(%d), int(%d), cost(%d)", name, efficiency, integrity, cost);
         }
         return result;
     }
@@ -672,4 +743,14 @@ public class Generator {
     private int between(int min, int max) {
         return min + RNG.nextInt(1 + max - min);
     }
+
+    /**
+     * @param random the random stream to use
+     * @param min min value
+     * @param max max value
+     * @return random int between min and max values (both bounds inclusive)
+     */
+    private static int between(SplittableRandom random, int min, int max) {
+        return min + random.nextInt(1 + max - min);
+    }
 }
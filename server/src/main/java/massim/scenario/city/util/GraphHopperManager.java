@@ -4,43 +4,112 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.EncodingManager;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Creates and holds the current GraphHopper instance.
+ * Creates and holds the GraphHopper instances (one per map, so that simulations on different maps can run
+ * at the same time).
+ * <br>
+ * Each simulation acquires the instance for its map and releases it when it is finished. An instance that is not
+ * used anymore is kept until another map has to be loaded, so that consecutive simulations on the same map do not
+ * load it again.
  */
 public class GraphHopperManager {
 
 	public final static String PERMISSION_AIR = "air";
 	public final static String PERMISSION_ROAD = "road";
 
-	private static String mapName;
-	private static GraphHopper hopper;
+	/**
+	 * A (possibly still loading) instance and the number of simulations using it.
+	 */
+	private static class Entry {
+		final CompletableFuture<GraphHopper> hopper = new CompletableFuture<>();
+		int users = 0;
+	}
+
+	private final static Map<String, Entry> hoppers = new HashMap<>(); // guarded by itself
 
     /**
-     * Creates a new GraphHopper for the given map name.
-     * @param newMapName the name of the map to load
+     * Gets the GraphHopper for the given map, loading it if necessary (which may take a few minutes). Simulations
+     * on the same map wait for the same instance. Each call must be followed by a call to {@link #release(String)}.
+     * @param mapName the name of the map to load
+     * @return the GraphHopper instance for the map
      */
-	public static void init(String newMapName){
-		
-		if(newMapName.equals(mapName)) return;
+	public static GraphHopper acquire(String mapName){
+		Entry entry;
+		boolean load = false;
+		synchronized (hoppers) {
+			entry = hoppers.get(mapName);
+			if (entry == null) {
+				evictUnused();
+				entry = new Entry();
+				hoppers.put(mapName, entry);
+				load = true;
+			}
+			entry.users++;
+		}
+		if (load) {
+			try {
+				entry.hopper.complete(load(mapName));
+			} catch (RuntimeException e) {
+				synchronized (hoppers) {
+					hoppers.remove(mapName, entry);
+				}
+				entry.hopper.completeExceptionally(e);
+				throw e;
+			}
+		}
+		try {
+			return entry.hopper.join();
+		} catch (CompletionException e) {
+			synchronized (hoppers) {
+				entry.users--;
+			}
+			throw e.getCause() instanceof RuntimeException? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+    /**
+     * Marks the GraphHopper for the given map as no longer used by one simulation.
+     * @param mapName the name of the map
+     */
+	public static void release(String mapName){
+		synchronized (hoppers) {
+			Entry entry = hoppers.get(mapName);
+			if (entry != null && entry.users > 0) entry.users--;
+		}
+	}
 
-		mapName = newMapName;
-		hopper = new GraphHopper().forDesktop();
+	/**
+	 * Closes all loaded instances that are not used by any simulation.
+	 */
+	private static void evictUnused(){
+		Iterator<Entry> it = hoppers.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (entry.users == 0 && entry.hopper.isDone()) {
+				it.remove();
+				GraphHopper hopper = entry.hopper.getNow(null);
+				if (hopper != null) hopper.close();
+			}
+		}
+	}
+
+	private static GraphHopper load(String mapName){
+		GraphHopper hopper = new GraphHopper().forDesktop();
 		hopper.setOSMFile("osm" + File.separator + mapName + ".osm.pbf");
 		hopper.setCHEnabled(false); // CH does not work with shortest weighting (at the moment)
-		
+
 		// where to store GH files?
 		hopper.setGraphHopperLocation("graphs" + File.separator + mapName);
 		hopper.setEncodingManager(new EncodingManager("car"));
 
 		// this may take a few minutes
 		hopper.importOrLoad();
-	}
-
-    /**
-     * @return the current GraphHopper instance
-     */
-	public static GraphHopper getHopper(){
 		return hopper;
 	}
 }
@@ -0,0 +1,316 @@
+package massim.scenario.city.util;
+
+import massim.scenario.city.data.Item;
+import massim.scenario.city.data.Location;
+import massim.scenario.city.data.Role;
+import massim.scenario.city.data.facilities.*;
+import massim.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache for generated worlds (items, facilities incl. stock, well types and initial entity locations).
+ * A cached world is identified by a hash of the simulation config (with sorted keys), the random seed and the map,
+ * so a cached world is only used if it would have been generated exactly like this anyway.
+ */
+public class WorldCache {
+
+    /**
+     * Key of the (optional) cache directory in the sim config. Not part of the hash.
+     */
+    public final static String CONFIG_KEY = "worldCache";
+
+    /**
+     * Increase whenever the generation or the format changes.
+     */
+    private final static int VERSION = 1;
+
+    private File file;
+
+    /**
+     * @param directory the cache directory
+     * @param simConfig the config of the simulation
+     * @param seed the random seed of the simulation
+     * @param mapName the name of the map
+     */
+    public WorldCache(String directory, JSONObject simConfig, long seed, String mapName) {
+        this.file = new File(directory, computeKey(simConfig, seed, mapName) + ".json");
+    }
+
+    /**
+     * @return the file the world is stored in
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the cached world or null if there is none (or it could not be read)
+     */
+    public JSONObject load() {
+        if (!file.isFile()) return null;
+        try {
+            JSONObject world = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (world.optInt("version", -1) != VERSION) return null;
+            Log.log(Log.Level.NORMAL, "Loading generated world from " + file);
+            return world;
+        } catch (Exception e) {
+            Log.log(Log.Level.ERROR, "Could not read cached world " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a world (atomically, so that concurrent simulations never read a partial file).
+     * @param world the world as created by {@link #encode(List, List, Map, Location[], String)}
+     */
+    public void save(JSONObject world) {
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir);
+            File tmp = File.createTempFile("world", ".tmp", dir);
+            Files.write(tmp.toPath(), world.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Log.log(Log.Level.NORMAL, "Stored generated world in " + file);
+        } catch (IOException e) {
+            Log.log(Log.Level.ERROR, "Could not store generated world in " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the cache key for the given parameters
+     */
+    static String computeKey(JSONObject simConfig, long seed, String mapName) {
+        JSONObject config = new JSONObject(simConfig.toString());
+        config.remove(CONFIG_KEY);
+        String input = VERSION + "|" + seed + "|" + mapName + "|" + canonical(config);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash) key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a string representation of a JSON value with sorted object keys
+     */
+    private static String canonical(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            StringBuilder sb = new StringBuilder("{");
+            new TreeSet<>(obj.keySet()).forEach(key ->
+                    sb.append(JSONObject.quote(key)).append(':').append(canonical(obj.get(key))).append(','));
+            return sb.append('}').toString();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < arr.length(); i++) sb.append(canonical(arr.get(i))).append(',');
+            return sb.append(']').toString();
+        }
+        return JSONObject.valueToString(value);
+    }
+
+    /**
+     * Encodes a generated world.
+     * @param items all items in the order they were generated
+     * @param facilities all facilities in the order they were generated
+     * @param wellTypes all well types
+     * @param initialLocations the initial entity locations
+     * @param rngState the state of the shared RNG after generation
+     * @return the JSON representation of the world
+     * @throws IllegalArgumentException if the world cannot be stored (e.g. a facility or entity has no location)
+     */
+    public static JSONObject encode(List<Item> items, List<Facility> facilities, Map<String, WellType> wellTypes,
+                                    Location[] initialLocations, String rngState) {
+        JSONObject world = new JSONObject();
+        world.put("version", VERSION);
+        world.put("rng", rngState);
+
+        JSONArray itemsJson = new JSONArray();
+        for (Item item : items) {
+            JSONObject itemJson = new JSONObject();
+            itemJson.put("name", item.getName());
+            itemJson.put("volume", item.getVolume());
+            itemJson.put("value", item.getValue());
+            item.getRequiredItems().stream().map(Item::getName).sorted().forEach(p -> itemJson.append("parts", p));
+            item.getRequiredRoles().stream().map(Role::getName).sorted().forEach(r -> itemJson.append("roles", r));
+            itemsJson.put(itemJson);
+        }
+        world.put("items", itemsJson);
+
+        JSONArray facilitiesJson = new JSONArray();
+        for (Facility facility : facilities) {
+            if (facility.getLocation() == null)
+                throw new IllegalArgumentException("Facility " + facility.getName() + " has no location");
+            JSONObject facJson = new JSONObject();
+            facJson.put("name", facility.getName());
+            facJson.put("lat", facility.getLocation().getExactLat());
+            facJson.put("lon", facility.getLocation().getExactLon());
+            if (facility instanceof ChargingStation) {
+                facJson.put("type", "charging");
+                facJson.put("rate", ((ChargingStation) facility).getRate());
+            } else if (facility instanceof Shop) {
+                Shop shop = (Shop) facility;
+                facJson.put("type", "shop");
+                facJson.put("restock", shop.getRestock());
+                facJson.put("tradeModifier", shop.getTradeModifier());
+                shop.getOfferedItems().stream().sorted().forEach(item -> facJson.append("stock", new JSONObject()
+                        .put("item", item.getName())
+                        .put("amount", shop.getInitialAmount(item))
+                        .put("price", shop.getPrice(item))));
+            } else if (facility instanceof Storage) {
+                facJson.put("type", "storage");
+                facJson.put("capacity", ((Storage) facility).getCapacity());
+            } else if (facility instanceof ResourceNode) {
+                facJson.put("type", "resource");
+                facJson.put("resource", ((ResourceNode) facility).getResource().getName());
+                facJson.put("threshold", ((ResourceNode) facility).getThreshold());
+            } else if (facility instanceof Dump) {
+                facJson.put("type", "dump");
+            } else if (facility instanceof Workshop) {
+                facJson.put("type", "workshop");
+            } else {
+                throw new IllegalArgumentException("Cannot store facility " + facility);
+            }
+            facilitiesJson.put(facJson);
+        }
+        world.put("facilities", facilitiesJson);
+
+        JSONArray wellTypesJson = new JSONArray();
+        new TreeMap<>(wellTypes).values().forEach(type -> wellTypesJson.put(new JSONObject()
+                .put("name", type.getName())
+                .put("initialIntegrity", type.getInitialIntegrity())
+                .put("maxIntegrity", type.getMaxIntegrity())
+                .put("cost", type.getCost())
+                .put("efficiency", type.getEfficiency())));
+        world.put("wellTypes", wellTypesJson);
+
+        JSONArray locationsJson = new JSONArray();
+        for (Location loc : initialLocations) {
+            if (loc == null) throw new IllegalArgumentException("No initial location found for some entity");
+            locationsJson.put(new JSONArray().put(loc.getExactLat()).put(loc.getExactLon()));
+        }
+        world.put("initialLocations", locationsJson);
+        return world;
+    }
+
+    /**
+     * @param world a cached world
+     * @param roles all roles by name
+     * @return the items of the world (in the order they were generated)
+     */
+    public static List<Item> decodeItems(JSONObject world, Map<String, Role> roles) {
+        List<Item> items = new ArrayList<>();
+        Map<String, Item> byName = new HashMap<>();
+        JSONArray itemsJson = world.getJSONArray("items");
+        for (int i = 0; i < itemsJson.length(); i++) {
+            JSONObject itemJson = itemsJson.getJSONObject(i);
+            Set<Item> parts = new HashSet<>();
+            JSONArray partsJson = itemJson.optJSONArray("parts");
+            if (partsJson != null) for (int j = 0; j < partsJson.length(); j++) {
+                parts.add(Objects.requireNonNull(byName.get(partsJson.getString(j)), "unknown part"));
+            }
+            Set<Role> itemRoles = new HashSet<>();
+            JSONArray rolesJson = itemJson.optJSONArray("roles");
+            if (rolesJson != null) for (int j = 0; j < rolesJson.length(); j++) {
+                itemRoles.add(Objects.requireNonNull(roles.get(rolesJson.getString(j)), "unknown role"));
+            }
+            Item item = new Item(itemJson.getString("name"), itemJson.getInt("volume"), itemJson.getInt("value"),
+                    parts, itemRoles);
+            items.add(item);
+            byName.put(item.getName(), item);
+        }
+        return items;
+    }
+
+    /**
+     * @param world a cached world
+     * @param items all items by name
+     * @param teams the names of all teams
+     * @return the facilities of the world (in the order they were generated)
+     */
+    public static List<Facility> decodeFacilities(JSONObject world, Map<String, Item> items, Set<String> teams) {
+        List<Facility> facilities = new ArrayList<>();
+        JSONArray facilitiesJson = world.getJSONArray("facilities");
+        for (int i = 0; i < facilitiesJson.length(); i++) {
+            JSONObject facJson = facilitiesJson.getJSONObject(i);
+            String name = facJson.getString("name");
+            Location loc = new Location(facJson.getDouble("lon"), facJson.getDouble("lat"));
+            switch (facJson.getString("type")) {
+                case "charging":
+                    facilities.add(new ChargingStation(name, loc, facJson.getInt("rate")));
+                    break;
+                case "shop":
+                    Shop shop = new Shop(name, loc, facJson.getInt("restock"), facJson.getInt("tradeModifier"));
+                    JSONArray stock = facJson.optJSONArray("stock");
+                    if (stock != null) for (int j = 0; j < stock.length(); j++) {
+                        JSONObject entry = stock.getJSONObject(j);
+                        shop.addItem(Objects.requireNonNull(items.get(entry.getString("item")), "unknown item"),
+                                entry.getInt("amount"), entry.getInt("price"));
+                    }
+                    facilities.add(shop);
+                    break;
+                case "storage":
+                    facilities.add(new Storage(name, loc, facJson.getInt("capacity"), teams));
+                    break;
+                case "resource":
+                    facilities.add(new ResourceNode(name, loc,
+                            Objects.requireNonNull(items.get(facJson.getString("resource")), "unknown item"),
+                            facJson.getInt("threshold")));
+                    break;
+                case "dump":
+                    facilities.add(new Dump(name, loc));
+                    break;
+                case "workshop":
+                    facilities.add(new Workshop(name, loc));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown facility type " + facJson.getString("type"));
+            }
+        }
+        return facilities;
+    }
+
+    /**
+     * @param world a cached world
+     * @return the well types of the world by name
+     */
+    public static Map<String, WellType> decodeWellTypes(JSONObject world) {
+        Map<String, WellType> wellTypes = new HashMap<>();
+        JSONArray typesJson = world.getJSONArray("wellTypes");
+        for (int i = 0; i < typesJson.length(); i++) {
+            JSONObject typeJson = typesJson.getJSONObject(i);
+            WellType type = new WellType(typeJson.getString("name"), typeJson.getInt("initialIntegrity"),
+                    typeJson.getInt("maxIntegrity"), typeJson.getInt("cost"), typeJson.getInt("efficiency"));
+            wellTypes.put(type.getName(), type);
+        }
+        return wellTypes;
+    }
+
+    /**
+     * @param world a cached world
+     * @return the initial entity locations
+     */
+    public static Location[] decodeInitialLocations(JSONObject world) {
+        JSONArray locationsJson = world.getJSONArray("initialLocations");
+        Location[] locations = new Location[locationsJson.length()];
+        for (int i = 0; i < locations.length; i++) {
+            JSONArray loc = locationsJson.getJSONArray(i);
+            locations[i] = new Location(loc.getDouble(1), loc.getDouble(0));
+        }
+        return locations;
+    }
+}
@@ -1,24 +1,60 @@
 package massim.util;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Logger utility for the MASSim server. Supports 4 different log levels.
+ * <br>
+ * Logging does not block the calling thread: messages are put into a lock-free ring buffer and written (in the
+ * order they were logged) by a single background thread, which formats them and writes them in batches.
+ * The level is checked before anything is formatted; messages logged with format and arguments are only formatted
+ * by the background thread (so the arguments must not be changed after logging them).
+ * Logging threads never wait for the background thread: when the buffer is full, critical messages and errors are
+ * written by the logging thread itself (possibly before older messages), while all other messages are dropped and
+ * only their number is logged. Should the background thread ever stop, messages are written by the logging threads
+ * themselves.
+ * All messages are written before the JVM shuts down (or when {@link #flush()} is called).
  */
 public class Log {
 
     public enum Level { CRITICAL, ERROR, NORMAL, DEBUG }
 
-    private static Level logLevel = Level.NORMAL;
-    private static File outputFile = null;
-    private static FileWriter writer = null;
+    /**
+     * When to flush the console and the log file:
+     * after each message ({@link #LINE}), after each batch of messages that were waiting at the same time
+     * ({@link #BATCH}) or at most every flush interval ({@link #INTERVAL}). Critical messages and errors are always
+     * flushed immediately.
+     */
+    public enum FlushPolicy { LINE, BATCH, INTERVAL }
+
+    final static int BUFFER_SIZE = 8192; // must be a power of two
+    private final static int MAX_BATCH = 512;
+    private final static long MAX_BACKOFF = TimeUnit.MILLISECONDS.toNanos(1);
 
-    private static Map<Level, OutputStream> outputs = new HashMap<>();
-    private static Map<Level, String> typeStrings = new HashMap<>();
+    private static volatile Level logLevel = Level.NORMAL;
+    private static volatile File outputFile = null;
+    private static volatile FlushPolicy flushPolicy = FlushPolicy.BATCH;
+    private static volatile long flushInterval = 1000;
+
+    private static Map<Level, OutputStream> outputs = new EnumMap<>(Level.class);
+    private static Map<Level, String> typeStrings = new EnumMap<>(Level.class);
+
+    /**
+     * The ring buffer: producers claim a sequence number and fill the slot, the writer thread empties the slots
+     * in sequence order.
+     */
+    private final static AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final static AtomicLong claimed = new AtomicLong();
+    private final static AtomicLong dropped = new AtomicLong();
+    private static volatile long consumed = 0;
+    private static volatile boolean writerWaiting = false;
+    private final static Thread writerThread;
 
     static{ // initialization
         outputs.put(Level.CRITICAL, System.err);
@@ -31,39 +67,98 @@ public class Log {
         typeStrings.put(Level.NORMAL, "[ NORMAL  ] ");
         typeStrings.put(Level.DEBUG, "[ DEBUG  ] ");
 
+        writerThread = new Thread(new Writer(), "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+
         Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
             e.printStackTrace();
-            logToFile(typeStrings.get(Level.ERROR) + e + " : " + Arrays.toString(e.getStackTrace()));
+            enqueue(new Entry(Level.ERROR, false, "", e + " : " + Arrays.toString(e.getStackTrace()), null));
         });
     }
 
     /**
-     * Logs a string with a certain log level to the respective output stream if the current log level permits.
-     * @param level the log level at which to log
-     * @param message the message to log
+     * A message waiting to be written.
      */
-    private static synchronized void logString(Level level, String message) {
-        if (level.ordinal() <= logLevel.ordinal()){
-            OutputStream out = outputs.get(level);
-            String typeString = typeStrings.get(level);
-            try {
-                out.write(typeString.getBytes());
-                out.write(message.getBytes());
-                logToFile(typeString + message);
-            } catch (IOException e) {
-                System.err.println("Error while trying to write log string: " + message);
+    private static class Entry {
+        final Level level;
+        final boolean console;
+        final String prefix;
+        final String format;
+        final Object[] args;
+        final CountDownLatch flushed;
+
+        Entry(Level level, boolean console, String prefix, String format, Object[] args) {
+            this.level = level;
+            this.console = console;
+            this.prefix = prefix;
+            this.format = format;
+            this.args = args;
+            this.flushed = null;
+        }
+
+        /**
+         * Creates a marker to wait for all previous messages to be written.
+         */
+        Entry(CountDownLatch flushed) {
+            this.level = Level.CRITICAL;
+            this.console = false;
+            this.prefix = null;
+            this.format = null;
+            this.args = null;
+            this.flushed = flushed;
+        }
+
+        String text() {
+            String message = format;
+            if (args != null && args.length > 0) {
+                try {
+                    message = String.format(format, args);
+                } catch (RuntimeException e) { // invalid format or failing toString() of an argument
+                    message = format + " (" + e + ")";
+                }
             }
+            return typeStrings.get(level) + prefix + message + "\n";
         }
     }
 
+    /**
+     * @param level a log level
+     * @return true if messages of the level are currently being logged (to check before preparing a message)
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= logLevel.ordinal();
+    }
+
     /**
      * Logs a string at the given log level if the level is currently being logged.
-     * In {@link Level#DEBUG}, some meta info is prepended.
+     * In {@link Level#DEBUG}, some meta info is prepended. Messages of simulations running in their own
+     * {@link SimulationContext} are prefixed with the name of the context.
      * @param type the log level to use
      * @param msg the message to log
      */
     public static void log(Level type, String msg) {
+        if (!isEnabled(type)) return;
+        enqueue(new Entry(type, true, prefix(), msg, null));
+    }
 
+    /**
+     * Logs a message at the given log level if the level is currently being logged.
+     * The message is only formatted (with {@link String#format(String, Object...)}) when it is written.
+     * @param type the log level to use
+     * @param format the format string
+     * @param args the arguments of the format string (must not be changed afterwards)
+     */
+    public static void log(Level type, String format, Object... args) {
+        if (!isEnabled(type)) return;
+        enqueue(new Entry(type, true, prefix(), format, args));
+    }
+
+    /**
+     * @return the meta info (in debug mode) and context name to put in front of a message
+     */
+    private static String prefix() {
         String metaInfo = "";
         if (logLevel == Level.DEBUG){
             int maxMetaLength = 90;
@@ -75,7 +170,81 @@ public class Log {
             }
         }
 
-        logString(type, metaInfo +" ##   " + msg + "\n");
+        String context = SimulationContext.current().getName();
+        return context.isEmpty()? metaInfo + " ##   " : metaInfo + " ##   [" + context + "] ";
+    }
+
+    /**
+     * Puts an entry into the ring buffer. If the buffer is full, critical messages and errors are written directly
+     * and other messages are dropped. Only flush markers wait for space.
+     */
+    private static void enqueue(Entry entry) {
+        if (Thread.currentThread() == writerThread) return; // could not wait for itself
+        long backoff = 1000;
+        while (true) {
+            if (!writerThread.isAlive()) {
+                writeDirectly(entry);
+                return;
+            }
+            long sequence = claimed.get();
+            if (sequence - consumed < BUFFER_SIZE) {
+                // the slot stays free once it is free, as consumed only grows
+                if (!claimed.compareAndSet(sequence, sequence + 1)) continue;
+                slots.set((int) sequence & (BUFFER_SIZE - 1), entry);
+                if (writerWaiting) LockSupport.unpark(writerThread);
+                return;
+            }
+            LockSupport.unpark(writerThread);
+            if (entry.flushed == null) {
+                if (entry.level.ordinal() <= Level.ERROR.ordinal()) writeDirectly(entry);
+                else dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.parkNanos(backoff);
+            backoff = Math.min(2 * backoff, MAX_BACKOFF);
+        }
+    }
+
+    /**
+     * Writes an entry on the calling thread (if the writer thread is not running anymore or the buffer is full).
+     */
+    private static synchronized void writeDirectly(Entry entry) {
+        if (entry.flushed != null) {
+            entry.flushed.countDown();
+            return;
+        }
+        String text = entry.text();
+        if (entry.console) {
+            OutputStream out;
+            synchronized (outputs) {
+                out = outputs.get(entry.level);
+            }
+            try {
+                out.write(text.getBytes());
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error while trying to write log string: " + text);
+            }
+        }
+        File f = outputFile;
+        if (f != null) {
+            try (java.io.Writer w = new FileWriter(f, true)) {
+                w.write(text);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Waits until all messages logged so far have been written and flushed (at most a few seconds).
+     */
+    public static void flush() {
+        if (Thread.currentThread() == writerThread) return;
+        CountDownLatch latch = new CountDownLatch(1);
+        enqueue(new Entry(latch));
+        LockSupport.unpark(writerThread);
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {}
     }
 
     /**
@@ -94,6 +263,16 @@ public class Log {
         outputFile = f;
     }
 
+    /**
+     * Sets when the console and the log file are flushed.
+     * @param policy the flush policy
+     * @param interval the minimum time between two flushes in ms (for {@link FlushPolicy#INTERVAL})
+     */
+    public static void setFlushPolicy(FlushPolicy policy, long interval) {
+        flushPolicy = policy;
+        flushInterval = Math.max(1, interval);
+    }
+
     /**
      * Changes the output stream for a given log level.
      * @param level the level to change the log destination of
@@ -101,7 +280,9 @@ public class Log {
      */
     public void changeOutputStream(Level level, OutputStream out){
         if(out != null){
-            outputs.put(level, out);
+            synchronized (outputs) {
+                outputs.put(level, out);
+            }
         }
     }
 
@@ -116,10 +297,10 @@ public class Log {
         String t = "";
         String x = "";
         /*
-         * 2 means this method and the calling method are ignored. thus, any method
+         * 3 means this method, prefix() and the log method are ignored. thus, any method
          * calling getMetaInfo should have been called from outside.
          */
-        StackTraceElement ls = stack[2];
+        StackTraceElement ls = stack[3];
         t += x;
         t += ls.getClassName() + "." + ls.getMethodName() + ":" + ls.getLineNumber();
         return String.format("%02d:%02d:%02d",
@@ -131,24 +312,148 @@ public class Log {
     }
 
     /**
-     * Writes a string to the log file.
-     * @param s the string to write
+     * Takes the entries from the ring buffer, formats them and writes them to the console and the log file.
      */
-    private static synchronized void logToFile(String s){
+    private static class Writer implements Runnable {
 
-        if(outputFile == null) return;
+        private final StringBuilder console = new StringBuilder();
+        private final StringBuilder file = new StringBuilder();
+        private OutputStream consoleOut;
+        private java.io.Writer fileWriter;
+        private File currentFile;
+        private boolean dirty = false;
+        private long lastFlush = System.currentTimeMillis();
 
-        if (writer == null){
-            try {
-                writer = new FileWriter(outputFile, true);
-            } catch (IOException ignored) {}
+        private final List<CountDownLatch> flushed = new ArrayList<>();
+        private long next = 0;
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    if (writeBatch()) continue;
+                    if (dirty && System.currentTimeMillis() - lastFlush >= flushInterval) writeOut(true);
+
+                    // wait for new entries
+                    writerWaiting = true;
+                    if (slots.get((int) next & (BUFFER_SIZE - 1)) == null)
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(dirty? flushInterval : 100));
+                    writerWaiting = false;
+                } catch (Throwable e) { // e.g. a failing custom output stream - the messages of the batch are lost
+                    console.setLength(0);
+                    file.setLength(0);
+                    consoleOut = null;
+                    flushed.forEach(CountDownLatch::countDown);
+                    flushed.clear();
+                    writerWaiting = false;
+                    System.err.println("Error while trying to write log: " + e);
+                }
+            }
         }
 
-        if(writer != null){
+        /**
+         * Writes the entries that are waiting (up to {@link #MAX_BATCH}) and the number of dropped messages.
+         * @return true if any entries were taken from the buffer or dropped messages were reported
+         */
+        private boolean writeBatch() {
+            int batch = 0;
+            boolean urgent = false;
+            Entry entry;
+            while (batch < MAX_BATCH && (entry = slots.get((int) next & (BUFFER_SIZE - 1))) != null) {
+                slots.set((int) next & (BUFFER_SIZE - 1), null);
+                consumed = ++next;
+                batch++;
+                if (entry.flushed != null) {
+                    flushed.add(entry.flushed);
+                    urgent = true;
+                    continue;
+                }
+                write(entry);
+                if (entry.level.ordinal() <= Level.ERROR.ordinal() || flushPolicy == FlushPolicy.LINE) {
+                    writeOut(true);
+                    urgent = false;
+                }
+            }
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                write(new Entry(Level.ERROR, true, "", lost + " log message(s) dropped (log buffer full)", null));
+                urgent = true;
+            }
+            if (batch == 0 && lost == 0) return false;
+            boolean flush = urgent || flushPolicy != FlushPolicy.INTERVAL
+                    || System.currentTimeMillis() - lastFlush >= flushInterval;
+            writeOut(flush);
+            flushed.forEach(CountDownLatch::countDown);
+            flushed.clear();
+            return true;
+        }
+
+        private void write(Entry entry) {
+            String text = entry.text();
+            if (entry.console) {
+                OutputStream out;
+                synchronized (outputs) {
+                    out = outputs.get(entry.level);
+                }
+                if (out != consoleOut) writeConsole();
+                consoleOut = out;
+                console.append(text);
+            }
+            file.append(text);
+        }
+
+        /**
+         * Writes the buffered text.
+         * @param flush whether to flush the console and the log file afterwards
+         */
+        private void writeOut(boolean flush) {
+            writeConsole();
+            if (consoleOut != null && flush) {
+                try {
+                    consoleOut.flush();
+                } catch (IOException ignored) {}
+            }
+            writeFile();
+            if (fileWriter != null) {
+                try {
+                    if (flush) fileWriter.flush();
+                    dirty = !flush;
+                } catch (IOException ignored) {}
+            }
+            if (flush) lastFlush = System.currentTimeMillis();
+        }
+
+        private void writeConsole() {
+            if (console.length() == 0 || consoleOut == null) return;
             try {
-                writer.append(s);
-                writer.flush();
-            } catch (IOException ignored) {}
+                consoleOut.write(console.toString().getBytes());
+            } catch (IOException e) {
+                System.err.println("Error while trying to write log string: " + console);
+            }
+            console.setLength(0);
+        }
+
+        private void writeFile() {
+            File f = outputFile;
+            if (f == null) {
+                file.setLength(0);
+                return;
+            }
+            if (!f.equals(currentFile)) {
+                try {
+                    if (fileWriter != null) fileWriter.close();
+                    fileWriter = new BufferedWriter(new FileWriter(f, true));
+                } catch (IOException e) {
+                    fileWriter = null;
+                }
+                currentFile = f;
+            }
+            if (fileWriter != null && file.length() > 0) {
+                try {
+                    fileWriter.append(file);
+                } catch (IOException ignored) {}
+            }
+            file.setLength(0);
         }
     }
 }
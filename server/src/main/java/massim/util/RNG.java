@@ -1,49 +1,197 @@
 package massim.util;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Implements the random number generation (wraps standard Java Random for now).
+ * <br>
+ * Apart from the shared sequence, independent streams can be derived from the seed for a subsystem, a step and
+ * an entity (see {@link #stream(String, long, String)}). The numbers drawn from such a stream do not depend on
+ * any other stream, so things that use them can be executed in any order (or in parallel) and are still
+ * reproducible. Streams are not thread-safe and should not be shared between threads.
+ * <br>
+ * Seed and shared sequence belong to the {@link SimulationContext} of the calling thread.
  */
 public abstract class RNG {
 
-    private static Random random = new Random(System.currentTimeMillis());
-
     /**
-     * Initializes the rng to the given seed.
+     * Initializes the rng (of the current simulation) to the given seed.
      * @param seed the seed for the rng
      */
-    public static synchronized void initialize(long seed){
-        random = new Random(seed);
+    public static void initialize(long seed){
+        SimulationContext context = SimulationContext.current();
+        synchronized (context) {
+            context.setSeed(seed);
+        }
+    }
+
+    /**
+     * @return the seed the rng (of the current simulation) was last initialized with
+     */
+    public static long getSeed(){
+        return SimulationContext.current().getSeed();
+    }
+
+    /**
+     * @return the current state of the shared sequence (to continue it later with {@link #restoreState(String)})
+     */
+    public static String saveState(){
+        SimulationContext context = SimulationContext.current();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            synchronized (context) {
+                out.writeObject(context.getRandom());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Continues the shared sequence from a saved state. Only a {@link Random} is deserialized from the state, any
+     * other class is rejected (the state may come from a file).
+     * @param state a state as returned by {@link #saveState()}
+     * @throws IOException if the state is invalid
+     */
+    public static void restoreState(String state) throws IOException {
+        SimulationContext context = SimulationContext.current();
+        try (ObjectInputStream in = new RandomInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(state)))) {
+            Random random = (Random) in.readObject();
+            synchronized (context) {
+                context.setRandom(random);
+            }
+        } catch (ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+            throw new IOException("Invalid RNG state", e);
+        }
+    }
+
+    /**
+     * An object stream that only resolves {@link Random} (which has no fields of other classes).
+     */
+    private static class RandomInputStream extends ObjectInputStream {
+
+        RandomInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!desc.getName().equals(Random.class.getName()))
+                throw new InvalidClassException(desc.getName(), "not allowed in RNG state");
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy classes not allowed in RNG state");
+        }
+    }
+
+    /**
+     * @param subsystem name of the subsystem using the stream
+     * @return a new random stream for the subsystem, derived from the current seed
+     */
+    public static SplittableRandom stream(String subsystem){
+        return new SplittableRandom(mix(getSeed() ^ mix(hash(subsystem))));
+    }
+
+    /**
+     * @param subsystem name of the subsystem using the stream
+     * @param step the step (or any other number) the stream is used for
+     * @return a new random stream for the subsystem and step, derived from the current seed
+     */
+    public static SplittableRandom stream(String subsystem, long step){
+        return new SplittableRandom(mix(mix(getSeed() ^ mix(hash(subsystem))) + step));
+    }
+
+    /**
+     * @param subsystem name of the subsystem using the stream
+     * @param step the step (or any other number) the stream is used for
+     * @param entity name of the entity (e.g. agent) the stream is used for
+     * @return a new random stream for the subsystem, step and entity, derived from the current seed
+     */
+    public static SplittableRandom stream(String subsystem, long step, String entity){
+        return new SplittableRandom(mix(mix(mix(getSeed() ^ mix(hash(subsystem))) + step) ^ hash(entity)));
+    }
+
+    /**
+     * Shuffles a list with the given stream (like {@link Collections#shuffle(List, Random)}).
+     * @param list the list to shuffle
+     * @param stream the stream to draw from
+     */
+    public static void shuffle(List<?> list, SplittableRandom stream){
+        for (int i = list.size() - 1; i > 0; i--) {
+            Collections.swap(list, i, stream.nextInt(i + 1));
+        }
+    }
+
+    /**
+     * @return a 64 bit (FNV-1a) hash of the string, which does not depend on the JVM
+     */
+    private static long hash(String s){
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     /**
      * @see Random#nextInt()
      */
-    public static synchronized int nextInt(){
-        return random.nextInt();
+    public static int nextInt(){
+        SimulationContext context = SimulationContext.current();
+        synchronized (context) {
+            return context.getRandom().nextInt();
+        }
     }
 
     /**
      * @see Random#nextInt(int)
      */
-    public static synchronized int nextInt(int bound){
-        return random.nextInt(bound);
+    public static int nextInt(int bound){
+        SimulationContext context = SimulationContext.current();
+        synchronized (context) {
+            return context.getRandom().nextInt(bound);
+        }
     }
 
     /**
      * @see Random#nextDouble()
      */
-    public static synchronized double nextDouble(){ return random.nextDouble(); }
+    public static double nextDouble(){
+        SimulationContext context = SimulationContext.current();
+        synchronized (context) {
+            return context.getRandom().nextDouble();
+        }
+    }
 
     /**
      * Shuffles a list with the internal random object.
      * @see Collections#shuffle
      * @param list the list to shuffle
      */
-    public static synchronized void shuffle(List<?> list){
-        Collections.shuffle(list, random);
+    public static void shuffle(List<?> list){
+        SimulationContext context = SimulationContext.current();
+        synchronized (context) {
+            Collections.shuffle(list, context.getRandom());
+        }
     }
 }
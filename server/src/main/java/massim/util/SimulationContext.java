@@ -0,0 +1,187 @@
+package massim.util;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the state that used to be global for the whole server (random numbers, location proximity),
+ * so that multiple simulations can run in the same JVM at the same time.
+ * <br>
+ * A simulation started with {@link #run(String, int, Runnable)} is executed in its own fork/join pool, whose
+ * threads all belong to the new context. Parallel streams started by the simulation are executed in the same pool,
+ * so they see the same context. Tasks that a simulation hands to other threads have to be wrapped with
+ * {@link #wrap(Runnable)} to keep the context. All other threads (e.g. when only one simulation runs at a time)
+ * share the {@link #DEFAULT} context. While a simulation runs in its own context, the random numbers and the
+ * proximity of the default context cannot be used, so that a thread that lost its context fails instead of silently
+ * using the state of another simulation.
+ */
+public class SimulationContext {
+
+    /**
+     * The context of all threads that do not belong to a simulation started with {@link #run(String, Runnable)}.
+     */
+    public final static SimulationContext DEFAULT = new SimulationContext("");
+
+    /**
+     * The contexts of threads that run a task passed to {@link #wrap(Runnable)}.
+     */
+    private final static ThreadLocal<SimulationContext> bound = new ThreadLocal<>();
+
+    /**
+     * The number of simulations running in their own context.
+     */
+    private final static AtomicInteger running = new AtomicInteger();
+
+    private final String name;
+
+    private Random random = new Random(System.currentTimeMillis());
+    private volatile long seed = System.currentTimeMillis();
+
+    private volatile int proximity;
+
+    private SimulationContext(String name) {
+        this.name = name;
+        setProximity(4); // the default of the sim config
+    }
+
+    /**
+     * @return the context of the current thread
+     */
+    public static SimulationContext current() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker) return ((Worker) thread).context;
+        SimulationContext context = bound.get();
+        return context != null? context : DEFAULT;
+    }
+
+    /**
+     * Runs a task in a new context (with as many threads as there are processors) and waits for it to finish.
+     * @see #run(String, int, Runnable)
+     */
+    public static void run(String name, Runnable task) throws ExecutionException, InterruptedException {
+        run(name, Runtime.getRuntime().availableProcessors(), task);
+    }
+
+    /**
+     * Runs a task in a new context and waits for it to finish.
+     * @param name name of the new context (e.g. to distinguish log messages)
+     * @param parallelism the maximum number of threads the task (and its parallel streams) may use
+     * @param task the task to run
+     * @throws ExecutionException if the task threw an exception
+     * @throws InterruptedException if interrupted while waiting for the task
+     */
+    public static void run(String name, int parallelism, Runnable task)
+            throws ExecutionException, InterruptedException {
+        SimulationContext context = new SimulationContext(name);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism), p -> new Worker(p, context), null, false);
+        running.incrementAndGet();
+        try {
+            pool.submit(task).get();
+        } finally {
+            running.decrementAndGet();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Binds a task to the context of the current thread, so that it can be executed by any other thread.
+     * @param task the task
+     * @return a task that runs the given task in the current context
+     */
+    public static Runnable wrap(Runnable task) {
+        SimulationContext context = current();
+        return () -> {
+            SimulationContext previous = bound.get();
+            bound.set(context);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) bound.remove();
+                else bound.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Fails if the default context is used while simulations run in their own contexts (i.e. by a thread that
+     * should belong to one of them).
+     */
+    private void checkAccess() {
+        if (this == DEFAULT && running.get() > 0)
+            throw new IllegalStateException("Thread " + Thread.currentThread().getName()
+                    + " uses the default simulation context while simulations run in their own contexts.");
+    }
+
+    /**
+     * @return the name of this context (empty for the default context)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the shared random sequence of this context
+     */
+    Random getRandom() {
+        checkAccess();
+        return random;
+    }
+
+    /**
+     * @param random the new shared random sequence of this context
+     */
+    void setRandom(Random random) {
+        checkAccess();
+        this.random = random;
+    }
+
+    /**
+     * @return the seed of this context's random numbers
+     */
+    long getSeed() {
+        checkAccess();
+        return seed;
+    }
+
+    /**
+     * @param seed the new seed (the shared sequence is reset)
+     */
+    void setSeed(long seed) {
+        checkAccess();
+        this.random = new Random(seed);
+        this.seed = seed;
+    }
+
+    /**
+     * @return the number of decimal places of two coordinates that have to match for two locations to be equal
+     */
+    public int getProximity() {
+        checkAccess();
+        return proximity;
+    }
+
+    /**
+     * @param proximity the new proximity value of this context
+     */
+    public void setProximity(int proximity) {
+        checkAccess();
+        this.proximity = proximity;
+    }
+
+    /**
+     * A fork/join thread that belongs to a context.
+     */
+    private static class Worker extends ForkJoinWorkerThread {
+
+        private final SimulationContext context;
+
+        private Worker(ForkJoinPool pool, SimulationContext context) {
+            super(pool);
+            this.context = context;
+            setName("sim-" + context.name + "-" + getPoolIndex());
+        }
+    }
+}
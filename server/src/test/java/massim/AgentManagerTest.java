@@ -0,0 +1,39 @@
+package massim;
+
+import org.junit.Test;
+
+/**
+ * Tests how long the server waits for the actions of an agent.
+ */
+public class AgentManagerTest {
+
+    private final static long TIMEOUT = 4000;
+    private final static long MIN = 500;
+    private final static long DISCONNECTED = 1000;
+
+    @Test
+    public void timeoutAdaptsToAgent() {
+        // an agent that answers in time always gets the full timeout, however slow it is
+        assert AgentManager.getTimeout(true, 0, 0, TIMEOUT, MIN, DISCONNECTED) == TIMEOUT;
+        assert AgentManager.getTimeout(true, 0, 3900, TIMEOUT, MIN, DISCONNECTED) == TIMEOUT;
+
+        // disconnected agents cannot receive the request anyway
+        assert AgentManager.getTimeout(false, 0, 0, TIMEOUT, MIN, DISCONNECTED) == DISCONNECTED;
+        assert AgentManager.getTimeout(false, 5, 100, TIMEOUT, MIN, DISCONNECTED) == DISCONNECTED;
+
+        // halved for each consecutive timeout
+        assert AgentManager.getTimeout(true, 1, 0, TIMEOUT, MIN, DISCONNECTED) == 2000;
+        assert AgentManager.getTimeout(true, 2, 0, TIMEOUT, MIN, DISCONNECTED) == 1000;
+        assert AgentManager.getTimeout(true, 3, 0, TIMEOUT, MIN, DISCONNECTED) == MIN;
+        assert AgentManager.getTimeout(true, 100, 0, TIMEOUT, MIN, DISCONNECTED) == MIN;
+
+        // but not below twice the mean response time of the agent
+        assert AgentManager.getTimeout(true, 3, 400, TIMEOUT, MIN, DISCONNECTED) == 800;
+        assert AgentManager.getTimeout(true, 3, 400.2, TIMEOUT, MIN, DISCONNECTED) == 801;
+        assert AgentManager.getTimeout(true, 1, 1500, TIMEOUT, MIN, DISCONNECTED) == 3000;
+        assert AgentManager.getTimeout(true, 1, 3000, TIMEOUT, MIN, DISCONNECTED) == TIMEOUT;
+
+        // never more than the full timeout (e.g. if the min timeout is configured too high)
+        assert AgentManager.getTimeout(true, 2, 0, TIMEOUT, 10000, DISCONNECTED) == TIMEOUT;
+    }
+}
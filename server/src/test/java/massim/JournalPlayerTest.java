@@ -0,0 +1,83 @@
+package massim;
+
+import massim.config.TeamConfig;
+import massim.protocol.messagecontent.Action;
+import massim.scenario.city.CityMap;
+import massim.scenario.city.CitySimulation;
+import massim.util.IOUtil;
+import massim.util.RNG;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Records a short simulation in an action journal and checks that re-simulating it gives the same results.
+ */
+public class JournalPlayerTest {
+
+    private final static int STEPS = 60;
+    private final static long SEED = 23;
+
+    @Test
+    public void resimulatesJournal() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        File journalFile = new File(dir, "journal.jsonl");
+        File replays = new File(dir, "replays");
+
+        JSONObject matchConf = IOUtil.readJSONObject("conf/QuickTest.json").getJSONArray("match").getJSONObject(0);
+        matchConf.put("map", CityMap.NO_MAP); // no OSM data needed
+        matchConf.put("randomFail", 10);
+        Set<TeamConfig> teams = new LinkedHashSet<>(Arrays.asList(new TeamConfig("A"), new TeamConfig("B")));
+        for (TeamConfig team : teams) {
+            for (int i = 1; i <= 10; i++) team.addAgent("agent" + team.getName() + i, "1");
+        }
+
+        // record the simulation like the server does
+        RNG.initialize(SEED);
+        CitySimulation sim = new CitySimulation();
+        sim.init(STEPS, matchConf, teams);
+        ReplayWriter replay = new ReplayWriter(replays.getPath());
+        replay.updateState(sim.getName(), "t", sim.getStaticData());
+        ActionJournal journal = new ActionJournal(journalFile, SEED, STEPS, matchConf, teams, sim.getStaticData());
+        Random random = new Random(5);
+        for (int step = 0; step < STEPS; step++) {
+            if (step == 20) {
+                String[] command = {"give", "item1", "agentA1", "2"};
+                journal.recordCommand(command);
+                sim.handleCommand(command);
+            }
+            sim.preStep(step);
+            Map<String, Action> actions = new HashMap<>();
+            for (TeamConfig team : teams) {
+                for (String agent : team.getAgentNames()) {
+                    int choice = random.nextInt(3);
+                    actions.put(agent, choice == 0? new Action("goto", "shop" + (1 + random.nextInt(3)))
+                            : choice == 1? new Action("charge") : Action.STD_NO_ACTION);
+                }
+            }
+            journal.beginStep(step, actions);
+            sim.step(step, actions);
+            journal.endStep(actions, sim.getResult());
+            replay.updateState(sim.getName(), "t", sim.getSnapshot());
+        }
+        journal.close();
+        replay.close();
+
+        JournalPlayer player = new JournalPlayer(journalFile);
+        assert player.getStepCount() == STEPS;
+        player.stepTo(STEPS - 1);
+        assert player.getMismatches() == 0;
+        assert player.getSimulation().getResult().similar(sim.getResult());
+
+        // going back restarts the re-simulation, which has to compare equal with every recorded step
+        assert player.verifyReplay(Objects.requireNonNull(replays.listFiles())[0]) == 0;
+        assert player.getMismatches() == 0;
+
+        Files.walk(dir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+}
@@ -0,0 +1,168 @@
+package massim;
+
+import massim.config.TeamConfig;
+import massim.monitor.JsonDelta;
+import massim.monitor.ReplayReader;
+import massim.protocol.DynamicWorldData;
+import massim.protocol.WorldData;
+import massim.protocol.messagecontent.Action;
+import massim.scenario.city.CityMap;
+import massim.scenario.city.CitySimulation;
+import massim.util.IOUtil;
+import massim.util.RNG;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Tests the replay format: deltas between steps, reading steps back from keyframes and deltas and continuing
+ * a replay.
+ */
+public class ReplayWriterTest {
+
+    @Test
+    public void deltasRestoreTheNewVersion() {
+        JSONObject from = new JSONObject()
+                .put("step", 1)
+                .put("removed", "x")
+                .put("nested", new JSONObject().put("a", 1).put("b", new JSONObject().put("c", "d")))
+                .put("entities", new JSONArray()
+                        .put(new JSONObject().put("name", "e1").put("charge", 10))
+                        .put(new JSONObject().put("name", "e2").put("charge", 20))
+                        .put(new JSONObject().put("name", "e3").put("charge", 30)))
+                .put("route", new JSONArray().put(1).put(2).put(3).put(4))
+                .put("params", new JSONArray().put("a"))
+                .put("other", new JSONArray().put(1).put(2));
+        JSONObject to = new JSONObject()
+                .put("step", 2)
+                .put("added", true)
+                .put("nested", new JSONObject().put("a", 2).put("b", new JSONObject().put("c", "d")))
+                .put("entities", new JSONArray()
+                        .put(new JSONObject().put("name", "e3").put("charge", 30))
+                        .put(new JSONObject().put("name", "e4").put("charge", 40))
+                        .put(new JSONObject().put("name", "e1").put("charge", 11)))
+                .put("route", new JSONArray().put(3).put(4))
+                .put("params", new JSONArray().put("a").put("b"))
+                .put("other", new JSONArray().put(2).put(1));
+
+        JSONObject delta = JsonDelta.diff(from, to);
+        JSONObject arrays = delta.getJSONObject("a");
+        assert arrays.getJSONObject("entities").getString("k").equals("name");
+        assert arrays.getJSONObject("entities").has("n"); // reordered
+        assert arrays.getJSONObject("route").getInt("t") == 2;
+        assert arrays.getJSONObject("params").getJSONArray("p").length() == 1;
+        assert delta.getJSONObject("s").has("other"); // neither trimmed nor appended
+
+        JSONObject copy = new JSONObject(from.toString());
+        assert JsonDelta.apply(copy, new JSONObject(delta.toString())).similar(to);
+        assert JsonDelta.diff(to, to).length() == 0;
+    }
+
+    @Test
+    public void readsAllStepsBack() throws IOException {
+        for (boolean compress : new boolean[]{true, false}) {
+            File replays = Files.createTempDirectory("replays").toFile();
+            List<String> expected = writeReplay(new ReplayWriter(replays.getPath(), 7, compress), 40);
+            File dir = Objects.requireNonNull(replays.listFiles())[0];
+
+            checkSteps(dir, expected);
+            Files.delete(new File(dir, ReplayReader.INDEX_FILE).toPath());
+            checkSteps(dir, expected); // with the index rebuilt from the data
+
+            for (File file : Objects.requireNonNull(dir.listFiles())) file.delete();
+            dir.delete();
+            replays.delete();
+        }
+    }
+
+    @Test
+    public void continuesReplay() throws IOException {
+        File replays = Files.createTempDirectory("replays").toFile();
+        List<String> expected = writeReplay(new ReplayWriter(replays.getPath(), 7, true), 40);
+        File dir = Objects.requireNonNull(replays.listFiles())[0];
+
+        // as if the simulation was resumed after step 24 (with a partial record at the end of the data)
+        Files.write(new File(dir, ReplayReader.DATA_FILE).toPath(), new byte[]{ReplayReader.DELTA, 5, 1},
+                StandardOpenOption.APPEND);
+        ReplayWriter writer = new ReplayWriter(replays.getPath(), 7, true) {
+            @Override
+            public synchronized void updateState(String simId, String startTime, WorldData world) {
+                // the resumed simulation only passes on the steps after the snapshot
+                if (world instanceof DynamicWorldData && ((DynamicWorldData) world).getStep() >= 25)
+                    super.updateState(simId, startTime, world);
+            }
+        };
+        writer.continueReplay(dir.getName().substring("t-".length()), "t", 25);
+        List<String> continued = writeReplay(writer, 40);
+        expected.subList(25, 40).clear();
+        expected.addAll(continued.subList(25, 40));
+        checkSteps(dir, expected);
+
+        for (File file : Objects.requireNonNull(dir.listFiles())) file.delete();
+        dir.delete();
+        replays.delete();
+    }
+
+    /**
+     * Reads the steps forward, backward and in random order.
+     */
+    private static void checkSteps(File dir, List<String> expected) throws IOException {
+        try (ReplayReader reader = new ReplayReader(dir)) {
+            assert reader.getStepCount() == expected.size();
+            List<Integer> order = new ArrayList<>();
+            for (int step = 0; step < expected.size(); step++) order.add(step);
+            for (int step = expected.size() - 1; step >= 0; step--) order.add(step);
+            List<Integer> shuffled = new ArrayList<>(order.subList(0, expected.size()));
+            Collections.shuffle(shuffled, new Random(3));
+            order.addAll(shuffled);
+            for (int step : order) {
+                String json = reader.readStep(step);
+                assert json != null;
+                assert new JSONObject(json).similar(new JSONObject(expected.get(step))) : "step " + step;
+            }
+            assert reader.readStep(expected.size()) == null;
+        }
+    }
+
+    /**
+     * Runs a simulation on the roadless map and writes its steps to a replay.
+     * @return the JSON of each step
+     */
+    private static List<String> writeReplay(ReplayWriter writer, int steps) throws IOException {
+        RNG.initialize(17);
+        JSONObject matchConf = IOUtil.readJSONObject("conf/QuickTest.json").getJSONArray("match").getJSONObject(0);
+        matchConf.put("map", CityMap.NO_MAP);
+        Set<TeamConfig> teams = new LinkedHashSet<>(Arrays.asList(new TeamConfig("A"), new TeamConfig("B")));
+        for (TeamConfig team : teams) {
+            for (int i = 1; i <= 10; i++) team.addAgent("agent" + team.getName() + i, "1");
+        }
+        CitySimulation sim = new CitySimulation();
+        sim.init(steps, matchConf, teams);
+        writer.updateState(sim.getName(), "t", sim.getStaticData());
+
+        Random random = new Random(5);
+        List<String> expected = new ArrayList<>();
+        for (int step = 0; step < steps; step++) {
+            sim.preStep(step);
+            Map<String, Action> actions = new HashMap<>();
+            for (TeamConfig team : teams) {
+                for (String agent : team.getAgentNames()) {
+                    int choice = random.nextInt(3);
+                    actions.put(agent, choice == 0? new Action("goto", "shop" + (1 + random.nextInt(3)))
+                            : choice == 1? new Action("charge") : Action.STD_NO_ACTION);
+                }
+            }
+            sim.step(step, actions);
+            writer.updateState(sim.getName(), "t", sim.getSnapshot());
+            expected.add(new JSONObject(sim.getSnapshot()).toString());
+        }
+        writer.close();
+        return expected;
+    }
+}
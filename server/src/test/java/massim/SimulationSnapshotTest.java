@@ -0,0 +1,160 @@
+package massim;
+
+import massim.config.TeamConfig;
+import massim.protocol.messagecontent.Action;
+import massim.scenario.city.CityMap;
+import massim.scenario.city.CitySimulation;
+import massim.util.IOUtil;
+import massim.util.RNG;
+import massim.util.SimulationContext;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Takes snapshots of a short simulation and checks that restoring the newest one and re-simulating only the
+ * steps after it (from the journal) gives the same simulation.
+ */
+public class SimulationSnapshotTest {
+
+    private final static int STEPS = 60;
+    private final static long SEED = 29;
+
+    @Test
+    public void resumesFromSnapshot() throws Exception {
+        File dir = Files.createTempDirectory("snapshot").toFile();
+        File journalFile = new File(dir, "journal.jsonl");
+        File snapshotFile = SimulationSnapshot.fileFor(journalFile);
+
+        SnapshotWriter snapshots = new SnapshotWriter(snapshotFile, 25);
+        CitySimulation sim = record(journalFile, snapshots);
+        snapshots.close();
+        SimulationSnapshot snapshot = SimulationSnapshot.read(snapshotFile);
+        assert snapshot.getStep() == 49;
+
+        // restore in a new context (with its own random sequence) and re-simulate only the steps after the snapshot
+        SimulationContext.run("resumed", () -> {
+            try {
+                JournalPlayer player = new JournalPlayer(journalFile);
+                player.restore(snapshot);
+                assert player.getMismatches() == 0;
+                assert player.getInitialPercepts().size() == 20;
+                player.stepTo(STEPS - 1);
+                assert player.getMismatches() == 0; // incl. the random fails, which depend on the random sequence
+                assert player.getSimulation().getResult().similar(sim.getResult());
+                assert new JSONObject(player.getSimulation().getSnapshot()).getJSONArray("entities")
+                        .similar(new JSONObject(sim.getSnapshot()).getJSONArray("entities"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        // the snapshot is no longer needed when the simulation is finished
+        snapshots = new SnapshotWriter(snapshotFile, 25);
+        snapshots.discard();
+        assert !snapshotFile.exists();
+
+        Files.walk(dir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    /**
+     * All classes of the simulation have to declare their serial version, so that snapshots stay readable after
+     * the server is rebuilt.
+     */
+    @Test
+    public void classesDeclareSerialVersion() throws IOException {
+        CitySimulation sim = record(Files.createTempFile("journal", ".jsonl").toFile(), null);
+        Set<Class<?>> classes = new HashSet<>();
+        try (ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream()) {
+            @Override
+            protected void annotateClass(Class<?> cl) {
+                classes.add(cl);
+            }
+        }) {
+            out.writeObject(sim);
+        }
+        for (Class<?> cl : classes) {
+            if (!cl.getName().startsWith("massim.") || cl.isEnum()) continue;
+            try {
+                cl.getDeclaredField("serialVersionUID");
+            } catch (NoSuchFieldException e) {
+                throw new AssertionError(cl.getName() + " does not declare serialVersionUID");
+            }
+        }
+    }
+
+    @Test
+    public void rejectsForeignClasses() throws IOException {
+        File file = Files.createTempFile("foreign", ".snapshot").toFile();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new File("x"));
+        }
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SimulationSnapshot.VERSION);
+            out.writeInt(0);
+            out.writeLong(SEED);
+            out.writeUTF(RNG.saveState());
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+        SimulationSnapshot snapshot = SimulationSnapshot.read(file);
+        try {
+            snapshot.restore();
+            assert false : "restored a snapshot with a foreign class";
+        } catch (InvalidClassException expected) {
+            // only simulation classes are resolved
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    /**
+     * Runs a simulation on the roadless map (with a console command in between) like the server does.
+     * @param journalFile the file to record the journal in
+     * @param snapshots the snapshot writer or null
+     * @return the simulation after the last step
+     */
+    private static CitySimulation record(File journalFile, SnapshotWriter snapshots) throws IOException {
+        JSONObject matchConf = IOUtil.readJSONObject("conf/QuickTest.json").getJSONArray("match").getJSONObject(0);
+        matchConf.put("map", CityMap.NO_MAP); // no OSM data needed
+        matchConf.put("randomFail", 10);
+        Set<TeamConfig> teams = new LinkedHashSet<>(Arrays.asList(new TeamConfig("A"), new TeamConfig("B")));
+        for (TeamConfig team : teams) {
+            for (int i = 1; i <= 10; i++) team.addAgent("agent" + team.getName() + i, "1");
+        }
+
+        RNG.initialize(SEED);
+        CitySimulation sim = new CitySimulation();
+        sim.init(STEPS, matchConf, teams);
+        ActionJournal journal = new ActionJournal(journalFile, SEED, STEPS, matchConf, teams, sim.getStaticData());
+        Random random = new Random(5);
+        for (int step = 0; step < STEPS; step++) {
+            if (step == 20) {
+                String[] command = {"give", "item1", "agentA1", "2"};
+                journal.recordCommand(command);
+                sim.handleCommand(command);
+            }
+            sim.preStep(step);
+            Map<String, Action> actions = new HashMap<>();
+            for (TeamConfig team : teams) {
+                for (String agent : team.getAgentNames()) {
+                    int choice = random.nextInt(3);
+                    actions.put(agent, choice == 0? new Action("goto", "shop" + (1 + random.nextInt(3)))
+                            : choice == 1? new Action("charge") : Action.STD_NO_ACTION);
+                }
+            }
+            journal.beginStep(step, actions);
+            sim.step(step, actions);
+            journal.endStep(actions, sim.getResult());
+            if (snapshots != null) snapshots.afterStep(sim, step);
+        }
+        journal.close();
+        return sim;
+    }
+}
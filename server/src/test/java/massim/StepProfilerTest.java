@@ -0,0 +1,66 @@
+package massim;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Tests the step metrics: the rolling window of the statistics and the CSV lines.
+ */
+public class StepProfilerTest {
+
+    private final static long MS = 1000000;
+
+    @Test
+    public void statisticsUseLastSteps() {
+        StepProfiler profiler = new StepProfiler("test");
+        // 1 ms per step at first, then 2..101 ms, which push all 1 ms steps out of the window
+        int steps = 50 + StepProfiler.WINDOW;
+        for (int step = 0; step < steps; step++) {
+            profiler.startStep(step);
+            profiler.add(StepProfiler.Phase.STEP, (step < 50? 1 : step - 48) * MS);
+            profiler.recordLatency("agentA1", 3 * MS);
+        }
+        profiler.close();
+
+        JSONObject json = profiler.toJSON();
+        JSONObject step = json.getJSONObject("phases").getJSONObject("step");
+        assert step.getLong("count") == steps;
+        assert step.getDouble("mean") == 51.5;
+        assert step.getDouble("p50") == 51;
+        assert step.getDouble("p95") == 96;
+        assert step.getDouble("max") == 101;
+        assert step.getDouble("total") == 50 + (2 + 101) * 50;
+        assert json.getJSONObject("phases").getJSONObject("preStep").getDouble("max") == 0;
+        assert json.getJSONObject("agentLatency").getJSONObject("agentA1").getDouble("p95") == 3;
+        assert profiler.summary().contains("agent agentA1");
+    }
+
+    @Test
+    public void writesLinePerStep() throws IOException {
+        File file = Files.createTempFile("metrics", ".csv").toFile();
+        StepProfiler profiler = new StepProfiler("test");
+        profiler.writeCSV(file);
+        for (int step = 0; step < 3; step++) {
+            profiler.startStep(step);
+            profiler.add(StepProfiler.Phase.PRE_STEP, (step + 1) * MS);
+            profiler.add(StepProfiler.Phase.SERIALIZE, MS / 2);
+            profiler.add(StepProfiler.Phase.SERIALIZE, MS / 4); // added up over the agents
+            profiler.recordLatency("agentA1", 2 * MS);
+            profiler.recordLatency("agentA2", 12345678);
+        }
+        profiler.close();
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        assert lines.size() == 4;
+        assert lines.get(0).equals("step,handleInputsMs,preStepMs,serializeMs,requestActionsMs,stepMs,snapshotMs,"
+                + "simStateMs,maxAgentLatencyMs");
+        assert lines.get(1).equals("0,0.0,1.0,0.75,0.0,0.0,0.0,0.0,12.35");
+        assert lines.get(3).equals("2,0.0,3.0,0.75,0.0,0.0,0.0,0.0,12.35");
+        Files.delete(file.toPath());
+    }
+}
@@ -0,0 +1,51 @@
+package massim;
+
+import massim.config.TeamConfig;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Tests that a tournament checkpoint records the progress of the matches and can be read back.
+ */
+public class TournamentCheckpointTest {
+
+    @Test
+    public void recordsProgress() throws IOException {
+        File file = Files.createTempFile("tournament", ".json").toFile();
+        Set<TeamConfig> teams = new HashSet<>(Arrays.asList(new TeamConfig("B"), new TeamConfig("A")));
+        File journal = new File("journal_t-sim2.jsonl");
+
+        TournamentCheckpoint checkpoint = new TournamentCheckpoint(file);
+        checkpoint.startSimulation("match0-A-B", teams, 0, null, "t");
+        checkpoint.finishSimulation("match0-A-B", 0, "sim1", new JSONObject().put("A", 1));
+        checkpoint.startSimulation("match0-A-B", teams, 1, journal, "t");
+        checkpoint.startSimulation("match1-A-B", teams, 0, null, "u");
+        checkpoint.finishSimulation("match1-A-B", 0, "sim1", new JSONObject());
+        checkpoint.finishMatch("match1-A-B");
+
+        TournamentCheckpoint loaded = TournamentCheckpoint.load(file);
+        assert loaded.getMatchCount() == 2;
+        assert loaded.isFinished("match1-A-B");
+        assert !loaded.isFinished("match0-A-B");
+        assert !loaded.isFinished("match2-A-B");
+        assert loaded.getUnfinishedMatches().equals(
+                Collections.singletonMap("match0-A-B", Arrays.asList("A", "B")));
+        assert loaded.getSimulation("match0-A-B") == 1;
+        assert journal.equals(loaded.getJournal("match0-A-B"));
+        assert loaded.getStartTime("match0-A-B").equals("t");
+        assert loaded.getResults("match0-A-B").similar(
+                new JSONObject().put("sim1", new JSONObject().put("A", 1)));
+
+        // a new match starts with the first simulation
+        assert loaded.getSimulation("match2-A-B") == 0;
+        assert loaded.getJournal("match2-A-B") == null;
+        assert loaded.getStartTime("match2-A-B") == null;
+
+        Files.delete(file.toPath());
+    }
+}
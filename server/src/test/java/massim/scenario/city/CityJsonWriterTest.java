@@ -0,0 +1,58 @@
+package massim.scenario.city;
+
+import massim.config.TeamConfig;
+import massim.monitor.CityJsonWriter;
+import massim.protocol.WorldData;
+import massim.protocol.messagecontent.Action;
+import massim.util.IOUtil;
+import massim.util.RNG;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tests that the streaming JSON writer produces the same JSON as org.json's bean conversion.
+ */
+public class CityJsonWriterTest {
+
+    @Test
+    public void matchesBeanConversion() throws IOException {
+        RNG.initialize(17);
+        JSONObject matchConf = IOUtil.readJSONObject("conf/QuickTest.json").getJSONArray("match").getJSONObject(0);
+        matchConf.put("map", CityMap.NO_MAP);
+        Set<TeamConfig> teams = new LinkedHashSet<>(Arrays.asList(new TeamConfig("A"), new TeamConfig("B")));
+        for (TeamConfig team : teams) {
+            for (int i = 1; i <= 10; i++) team.addAgent("agent" + team.getName() + i, "1");
+        }
+        CitySimulation sim = new CitySimulation();
+        sim.init(30, matchConf, teams);
+
+        CityJsonWriter writer = new CityJsonWriter();
+        assertSameJson(writer, sim.getStaticData());
+        for (int step = 0; step < 30; step++) {
+            sim.preStep(step);
+            Map<String, Action> actions = new HashMap<>();
+            for (TeamConfig team : teams) {
+                for (String agent : team.getAgentNames()) {
+                    actions.put(agent, step % 3 == 0? new Action("goto", "shop1") : new Action("charge"));
+                }
+            }
+            sim.step(step, actions);
+            assertSameJson(writer, sim.getSnapshot());
+        }
+    }
+
+    /**
+     * Compares the writer's output (and the tree read back from it) with the bean conversion. The latter is
+     * compared in its string form, since similar() also compares the number types (e.g. Long and Integer).
+     */
+    private static void assertSameJson(CityJsonWriter writer, WorldData data) {
+        String json = writer.write(data).toString();
+        String expected = new JSONObject(data).toString();
+        assert json.length() == expected.length();
+        assert new JSONObject(json).similar(new JSONObject(expected));
+        assert writer.toJSONObject().similar(new JSONObject(expected));
+    }
+}
@@ -760,6 +760,150 @@ public class CitySimulationTest {
         assert !e1.getLastActionResult().equals(ActionExecutor.FAILED_NO_ROUTE);
     }
 
+    /**
+     * Runs the same simulation (same seed and actions) with sequential and with parallel action execution and
+     * compares the states after each step.
+     */
+    @Test
+    public void parallelActionsMatchSequential() throws IOException {
+        List<String> sequential = runActions(false);
+        List<String> parallel = runActions(true);
+        RNG.initialize(seed);
+        assert sequential.size() == parallel.size();
+        for (int i = 0; i < sequential.size(); i++) {
+            assert sequential.get(i).equals(parallel.get(i)) : "states differ after step " + i;
+        }
+    }
+
+    /**
+     * Runs a new simulation with random actions (seeded, and mostly fitting the facility an agent is at, so that
+     * many of them succeed and touch shared facilities).
+     * @param parallelActions whether to execute the actions in parallel
+     * @return the state after each step
+     */
+    private static List<String> runActions(boolean parallelActions) throws IOException {
+        JSONObject matchConf = IOUtil.readJSONObject("conf/QuickTest.json").getJSONArray("match").getJSONObject(0);
+        matchConf.put("parallelActions", parallelActions);
+        matchConf.put("randomFail", 5);
+        Set<TeamConfig> teams = new LinkedHashSet<>(Arrays.asList(new TeamConfig("A"), new TeamConfig("B")));
+        for (TeamConfig team : teams) {
+            for (int i = 1; i <= 15; i++) team.addAgent("agent" + team.getName() + i, "1");
+        }
+
+        RNG.initialize(seed);
+        CitySimulation simulation = new CitySimulation();
+        simulation.init(100, matchConf, teams);
+        WorldState world = simulation.getWorldState();
+        Random random = new Random(11);
+        List<String> states = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            simulation.preStep(i);
+            Map<String, Action> actions = new HashMap<>();
+            for (String agent : world.getAgents()) actions.put(agent, randomAction(world, agent, random));
+            simulation.step(i, actions);
+            states.add(describe(world));
+        }
+        return states;
+    }
+
+    private static Action randomAction(WorldState world, String agent, Random random) {
+        Entity entity = world.getEntity(agent);
+        Facility facility = world.getFacilityByLocation(entity.getLocation());
+        List<Item> items = world.getItems();
+        String item = items.get(random.nextInt(items.size())).getName();
+        List<String> agents = world.getAgents();
+        String other = agents.get(random.nextInt(agents.size()));
+        List<Job> jobs = world.getJobs().stream()
+                .sorted(Comparator.comparing(CitySimulationTest::describe)).collect(Collectors.toList());
+        String job = jobs.isEmpty()? "none" : jobs.get(random.nextInt(jobs.size())).getName();
+
+        if (facility != null && random.nextInt(4) > 0) {
+            if (facility instanceof Shop) return new Action("buy", item, "1");
+            if (facility instanceof Storage) {
+                switch (random.nextInt(4)) {
+                    case 0: return new Action("store", item, "1");
+                    case 1: return new Action("retrieve", item, "1");
+                    case 2: return new Action("bid_for_job", job, "1");
+                    default: return new Action("deliver_job", job);
+                }
+            }
+            if (facility instanceof Workshop)
+                return random.nextBoolean()? new Action("assemble", item) : new Action("assist_assemble", other);
+            if (facility instanceof Dump) return new Action("dump", item, "1");
+            if (facility instanceof ChargingStation) return new Action("charge");
+            if (facility instanceof ResourceNode) return new Action("gather");
+            if (facility instanceof Well) return new Action("dismantle");
+        }
+        switch (random.nextInt(6)) {
+            case 0: return new Action("give", other, item, "1");
+            case 1: return new Action("receive");
+            case 2:
+                List<String> wellTypes = world.getWellTypes().stream().map(WellType::getName).sorted()
+                        .collect(Collectors.toList());
+                return new Action("build", wellTypes.get(random.nextInt(wellTypes.size())));
+            case 3: return new Action("recharge");
+            default:
+                List<Facility> facilities = world.getFacilities();
+                facilities.sort(Comparator.comparing(Facility::getName));
+                return new Action("goto", facilities.get(random.nextInt(facilities.size())).getName());
+        }
+    }
+
+    /**
+     * @return a description of everything the actions of a step can change (independent of hash codes and of the
+     * names of jobs, which are numbered globally)
+     */
+    private static String describe(WorldState world) {
+        StringBuilder state = new StringBuilder();
+        for (String agent : world.getAgents()) {
+            Entity entity = world.getEntity(agent);
+            Action action = entity.getLastAction();
+            state.append(agent).append(' ').append(entity.getLocation().getLat()).append(',')
+                    .append(entity.getLocation().getLon()).append(' ').append(entity.getCurrentBattery()).append(' ')
+                    .append(action == null? null : action.getActionType() + action.getParameters()).append(' ')
+                    .append(entity.getLastActionResult()).append(' ').append(describe(entity.getInventory()))
+                    .append('\n');
+        }
+        for (TeamState team : world.getTeams()) {
+            state.append(team.getName()).append(' ').append(team.getMassium()).append(' ').append(team.getScore())
+                    .append('\n');
+        }
+        for (Shop shop : world.getShops()) {
+            state.append(shop.getName());
+            shop.getOfferedItemsSorted().forEach(item -> state.append(' ').append(shop.getItemCount(item)));
+            state.append('\n');
+        }
+        for (Storage storage : world.getStorages()) {
+            state.append(storage.getName());
+            for (TeamState team : world.getTeams()) {
+                for (Item item : world.getItems()) {
+                    state.append(' ').append(storage.getStored(item, team.getName())).append('/')
+                            .append(storage.getDelivered(item, team.getName()));
+                }
+            }
+            state.append('\n');
+        }
+        world.getWells().stream().sorted(Comparator.comparing(Well::getName)).forEach(well -> state
+                .append(well.getName()).append(' ').append(well.getTeam()).append(' ').append(well.getIntegrity())
+                .append('\n'));
+        world.getJobs().stream().map(CitySimulationTest::describe).sorted()
+                .forEach(job -> state.append(job).append('\n'));
+        return state.toString();
+    }
+
+    private static String describe(Job job) {
+        String description = job.getClass().getSimpleName() + " " + job.getBeginStep() + "-" + job.getEndStep() + " "
+                + job.getReward() + " " + job.getStorage().getName() + " " + job.getPoster() + " "
+                + describe(job.getRequiredItems()) + " " + job.getStatus();
+        if (job instanceof AuctionJob) description += " " + ((AuctionJob) job).getLowestBid();
+        return description;
+    }
+
+    private static String describe(ItemBox box) {
+        return box.getStoredTypes().stream().sorted(Comparator.comparing(Item::getName))
+                .map(item -> item.getName() + "x" + box.getItemCount(item)).collect(Collectors.joining(","));
+    }
+
     /**
      * @return a new action-map where each agent just skips
      */
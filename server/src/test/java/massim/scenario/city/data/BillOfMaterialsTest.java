@@ -0,0 +1,54 @@
+package massim.scenario.city.data;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Testing the compiled bill of materials.
+ */
+public class BillOfMaterialsTest {
+
+    /**
+     * Checks whether the compiled base items match the recursively computed ones and whether items are
+     * ordered topologically.
+     */
+    @Test
+    public void matchesRecursiveComputation(){
+        Item b0 = new Item("item0", 5, 10, new HashSet<>(), new HashSet<>());
+        Item b1 = new Item("item1", 7, 20, new HashSet<>(), new HashSet<>());
+        Item b2 = new Item("item2", 3, 30, new HashSet<>(), new HashSet<>());
+        Item a3 = new Item("item3", 10, 0, new HashSet<>(Arrays.asList(b0, b1)), new HashSet<>());
+        Item a4 = new Item("item4", 10, 0, new HashSet<>(Arrays.asList(a3, b1, b2)), new HashSet<>());
+        Item a5 = new Item("item5", 10, 0, new HashSet<>(Arrays.asList(a3, a4)), new HashSet<>());
+
+        // compute the expected values before the items are compiled
+        List<Item> items = Arrays.asList(a5, b2, a4, b0, a3, b1);
+        Map<Item, Map<Item, Integer>> expected = new HashMap<>();
+        items.forEach(item -> expected.put(item, new HashMap<>(item.getRequiredBaseItems())));
+
+        BillOfMaterials bom = new BillOfMaterials(items);
+
+        assertEquals(Arrays.asList(b0, b1, b2, a3, a4, a5), bom.getItems());
+        assertEquals(3, bom.getBaseItemCount());
+        for (Item item : items) {
+            assertEquals(expected.get(item), item.getRequiredBaseItems());
+            int[] vector = bom.getBaseItemVector(item);
+            int[] indices = bom.getBaseItemIndices(item);
+            int[] amounts = bom.getBaseItemAmounts(item);
+            assertEquals(indices.length, amounts.length);
+            for (int k = 0; k < indices.length; k++) {
+                assertEquals(amounts[k], vector[indices[k]]);
+                assertEquals((int) expected.get(item).get(bom.getBaseItem(indices[k])), amounts[k]);
+            }
+            for (Item part : bom.getParts(item)) assertTrue(bom.getIndex(part) < bom.getIndex(item));
+            assertEquals(item.getValue(), bom.getValue(item));
+            assertEquals(item.getVolume(), bom.getVolume(item));
+        }
+        assertArrayEquals(new int[]{2, 3, 1}, bom.getBaseItemVector(a5));
+    }
+}
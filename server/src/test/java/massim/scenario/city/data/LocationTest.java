@@ -2,6 +2,10 @@ package massim.scenario.city.data;
 
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -18,15 +22,76 @@ public class LocationTest {
 
         double lat = 10d;
 
-        Location l1 = new Location(50.1111, lat);
-        Location l2 = new Location(50.1112, lat);
-
-        // check multiple proximity values
+        // check multiple proximity values (locations are rounded when they are created)
 
         Location.setProximity(3);
-        assertTrue(l1.equals(l2));
+        assertTrue(new Location(50.1111, lat).equals(new Location(50.1112, lat)));
+
+        Location.setProximity(4);
+        assertFalse(new Location(50.1111, lat).equals(new Location(50.1112, lat)));
+    }
+
+    /**
+     * Checks whether the precomputed coordinates are rounded exactly like the original BigDecimal rounding,
+     * for random coordinates as well as for coordinates that lie exactly between two rounded values.
+     */
+    @Test
+    public void roundingMatchesBigDecimal(){
+        Random random = new Random(17);
+        for (int proximity = 1; proximity <= 6; proximity++) {
+            Location.setProximity(proximity);
+            for (int i = 0; i < 10000; i++) {
+                double lat = -90 + random.nextDouble() * 180;
+                double lon = -180 + random.nextDouble() * 360;
+                checkRounding(lon, lat, proximity);
+                // e.g. 48.12345 for proximity 4
+                String tie = "." + String.format("%0" + proximity + "d", random.nextInt((int) Math.pow(10, proximity)))
+                        + "5";
+                checkRounding(Double.parseDouble((random.nextInt(360) - 180) + tie),
+                        Double.parseDouble((random.nextInt(180) - 90) + tie), proximity);
+            }
+        }
+    }
+
+    private static void checkRounding(double lon, double lat, int proximity) {
+        Location loc = new Location(lon, lat);
+        assertEquals(BigDecimal.valueOf(lat).setScale(proximity, BigDecimal.ROUND_HALF_UP).doubleValue(),
+                loc.getLat(), 0);
+        assertEquals(BigDecimal.valueOf(lon).setScale(proximity, BigDecimal.ROUND_HALF_UP).doubleValue(),
+                loc.getLon(), 0);
+        assertTrue(loc.equals(new Location(lon, lat)));
+        assertEquals(loc.hashCode(), new Location(lon, lat).hashCode());
+    }
+
+    /**
+     * Checks the rounding for some known values (half up, i.e. away from zero).
+     */
+    @Test
+    public void roundsHalfUp(){
+        Location.setProximity(2);
+        assertEquals(1.23, new Location(1.23456, 0).getLon(), 0);
+        assertEquals(1.01, new Location(1.005, 0).getLon(), 0); // 1.00499999999999989... as a double
+        assertEquals(-1.01, new Location(-1.005, 0).getLon(), 0);
+        assertEquals(2.68, new Location(0, 2.675).getLat(), 0);
+        assertEquals(-0.13, new Location(0, -0.125).getLat(), 0);
+        assertEquals(0.0, new Location(0, 0.004999).getLat(), 0);
 
         Location.setProximity(4);
-        assertFalse(l1.equals(l2));
+        assertEquals(48.8566, new Location(0, 48.85655).getLat(), 0);
+        assertEquals(2.3522, new Location(2.352219, 0).getLon(), 0);
+        assertEquals(-179.9999, new Location(-179.99985, 0).getLon(), 0);
+    }
+
+    /**
+     * A location keeps the proximity of the simulation it was created in.
+     */
+    @Test
+    public void keepsProximity(){
+        Location.setProximity(2);
+        Location loc = new Location(1.23456, 0);
+        Location.setProximity(4);
+        assertEquals(1.23, loc.getLon(), 0);
+        assertEquals(1.2346, new Location(1.23456, 0).getLon(), 0);
+        assertFalse(loc.equals(new Location(1.23, 0)));
     }
-}
\ No newline at end of file
+}
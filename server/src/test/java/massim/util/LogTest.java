@@ -0,0 +1,161 @@
+package massim.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests the asynchronous logging: message order, a full buffer and writing all messages before the JVM exits.
+ */
+public class LogTest {
+
+    private final static Pattern MESSAGE = Pattern.compile("##   (\\w+) (\\d+)$");
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Before
+    public void captureOutput() {
+        Log.setLogLevel(Log.Level.NORMAL);
+        Log.flush();
+        new Log().changeOutputStream(Log.Level.NORMAL, out);
+        new Log().changeOutputStream(Log.Level.ERROR, err);
+    }
+
+    @After
+    public void restoreOutput() {
+        Log.flush();
+        new Log().changeOutputStream(Log.Level.NORMAL, System.out);
+        new Log().changeOutputStream(Log.Level.ERROR, System.err);
+    }
+
+    /**
+     * @return the messages (name and number) written to the stream
+     */
+    private static List<String[]> messages(ByteArrayOutputStream stream) {
+        List<String[]> messages = new ArrayList<>();
+        for (String line : new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            Matcher matcher = MESSAGE.matcher(line);
+            if (matcher.find()) messages.add(new String[]{matcher.group(1), matcher.group(2)});
+        }
+        return messages;
+    }
+
+    @Test
+    public void keepsOrderOfEachThread() throws Exception {
+        int threads = 4, count = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String name = "thread" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < count; i++) Log.log(Log.Level.NORMAL, "%s %d", name, i);
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+        Log.flush();
+
+        Map<String, Integer> next = new HashMap<>();
+        for (String[] message : messages(out)) {
+            int expected = next.getOrDefault(message[0], 0);
+            assert Integer.parseInt(message[1]) == expected : Arrays.toString(message);
+            next.put(message[0], expected + 1);
+        }
+        assert next.size() == threads;
+        for (int received : next.values()) assert received == count;
+    }
+
+    @Test
+    public void dropsMessagesWhenFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {}
+                out.write(b, off, len);
+            }
+        };
+        new Log().changeOutputStream(Log.Level.NORMAL, blocking);
+        Log.log(Log.Level.NORMAL, "blocking 0");
+        assert writing.await(5, TimeUnit.SECONDS);
+
+        // the writer thread is stuck, so the buffer fills up - but logging must not wait for it
+        int count = Log.BUFFER_SIZE + 100;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                for (int i = 0; i < count; i++) Log.log(Log.Level.NORMAL, "message %d", i);
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+            release.countDown();
+        }
+        Log.flush();
+
+        List<String[]> messages = messages(out);
+        assert messages.size() == 1 + Log.BUFFER_SIZE;
+        for (int i = 0; i < Log.BUFFER_SIZE; i++) assert messages.get(i + 1)[1].equals(String.valueOf(i));
+        assert new String(err.toByteArray(), StandardCharsets.UTF_8)
+                .contains("100 log message(s) dropped (log buffer full)");
+    }
+
+    @Test
+    public void writesAllBeforeExit() throws Exception {
+        File log = Files.createTempFile("log", ".txt").toFile();
+        File console = Files.createTempFile("console", ".txt").toFile();
+        try {
+            Process process = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), Exiting.class.getName(), log.getPath())
+                    .redirectOutput(console)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            assert process.waitFor(30, TimeUnit.SECONDS);
+            assert process.exitValue() == 0;
+            for (File file : new File[]{log, console}) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                content.write(Files.readAllBytes(file.toPath()));
+                List<String[]> messages = messages(content);
+                assert messages.size() == Exiting.COUNT : file + ": " + messages.size();
+                assert messages.get(Exiting.COUNT - 1)[1].equals(String.valueOf(Exiting.COUNT - 1));
+            }
+        } finally {
+            Files.delete(log.toPath());
+            Files.delete(console.toPath());
+        }
+    }
+
+    /**
+     * Logs messages that are only flushed at exit (then exits).
+     */
+    public static class Exiting {
+
+        final static int COUNT = 5000;
+
+        public static void main(String[] args) {
+            Log.setLogFile(new File(args[0]));
+            Log.setFlushPolicy(Log.FlushPolicy.INTERVAL, TimeUnit.HOURS.toMillis(1));
+            for (int i = 0; i < COUNT; i++) Log.log(Log.Level.NORMAL, "message %d", i);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package massim.util;
+
+import massim.config.TeamConfig;
+import massim.protocol.messagecontent.Action;
+import massim.scenario.city.CityMap;
+import massim.scenario.city.CitySimulation;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests running simulations in their own contexts at the same time.
+ */
+public class SimulationContextTest {
+
+    private final static int STEPS = 40;
+
+    @Test
+    public void concurrentMatchesMatchSequential() throws Exception {
+        String first = simulate(11, 4);
+        String second = simulate(23, 5);
+        assert !first.equals(second);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> firstConcurrent = executor.submit(() -> simulateInContext("first", 11, 4));
+            Future<String> secondConcurrent = executor.submit(() -> simulateInContext("second", 23, 5));
+            assert first.equals(firstConcurrent.get());
+            assert second.equals(secondConcurrent.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void wrappedTasksKeepContext() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SimulationContext.run("wrapped", 1, () -> {
+                RNG.initialize(42);
+                try {
+                    long seed = executor.submit(() -> {
+                        Long[] result = new Long[1];
+                        SimulationContext.wrap(() -> result[0] = RNG.getSeed()).run();
+                        return result[0];
+                    }).get();
+                    assert seed == 42;
+                    // a thread without the context must not use the default one
+                    executor.submit(RNG::getSeed).get();
+                    assert false : "default context used while a simulation runs";
+                } catch (ExecutionException e) {
+                    assert e.getCause() instanceof IllegalStateException;
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        RNG.initialize(42); // the default context can be used again
+    }
+
+    private static String simulateInContext(String name, long seed, int proximity) throws Exception {
+        String[] result = new String[1];
+        SimulationContext.run(name, 2, () -> result[0] = simulate(seed, proximity));
+        return result[0];
+    }
+
+    /**
+     * Runs a simulation (with parallel action execution and random fails) on the roadless map.
+     * @return the result and the entities after the last step
+     */
+    private static String simulate(long seed, int proximity) {
+        JSONObject matchConf;
+        try {
+            matchConf = IOUtil.readJSONObject("conf/QuickTest.json").getJSONArray("match").getJSONObject(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        matchConf.put("map", CityMap.NO_MAP);
+        matchConf.put("parallelActions", true);
+        matchConf.put("randomFail", 10);
+        matchConf.put("proximity", proximity);
+        Set<TeamConfig> teams = new LinkedHashSet<>(Arrays.asList(new TeamConfig("A"), new TeamConfig("B")));
+        for (TeamConfig team : teams) {
+            for (int i = 1; i <= 10; i++) team.addAgent("agent" + team.getName() + i, "1");
+        }
+
+        RNG.initialize(seed);
+        CitySimulation sim = new CitySimulation();
+        sim.init(STEPS, matchConf, teams);
+        Random random = new Random(seed);
+        for (int step = 0; step < STEPS; step++) {
+            sim.preStep(step);
+            Map<String, Action> actions = new HashMap<>();
+            for (TeamConfig team : teams) {
+                for (String agent : team.getAgentNames()) {
+                    int choice = random.nextInt(3);
+                    actions.put(agent, choice == 0? new Action("goto", "shop" + (1 + random.nextInt(3)))
+                            : choice == 1? new Action("charge") : Action.STD_NO_ACTION);
+                }
+            }
+            sim.step(step, actions);
+        }
+        return sim.getResult() + "\n" + new JSONObject(sim.getSnapshot()).getJSONArray("entities");
+    }
+}